@@ -5,6 +5,7 @@
 package core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -13,6 +14,7 @@ import movement.Path;
 import routing.MessageRouter;
 import routing.hibop.IdentityTable;
 import routing.util.RoutingInfo;
+import util.Tuple;
 
 import static core.Constants.DEBUG;
 
@@ -37,6 +39,14 @@ public class DTNHost implements Comparable<DTNHost> {
 	private String name;
 	private List<MessageListener> msgListeners;
 	private List<MovementListener> movListeners;
+	/** new destinations (and speeds) not yet told to the movement listeners
+	 * or null if the listeners are informed immediately */
+	private List<Tuple<Coord, Double>> bufferedDestinations;
+	/** (time, x, y) of the points where the latest move started and
+	 * turned or null if the moves are not traced */
+	private double[] moveTrace;
+	/** number of values in the move trace */
+	private int moveTraceLength;
 	private List<NetworkInterface> net;
 	private ModuleCommunicationBus comBus;
 
@@ -90,6 +100,8 @@ public class DTNHost implements Comparable<DTNHost> {
 
 		this.nextTimeToMove = movement.nextPathAvailable();
 		this.path = null;
+		HostStates.register(this.address);
+		storeState();
 
 		if (movLs != null) { // inform movement listeners about the location
 			for (MovementListener l : movLs) {
@@ -226,6 +238,7 @@ public class DTNHost implements Comparable<DTNHost> {
 	 */
 	public void setLocation(Coord location) {
 		this.location = location.clone();
+		storeState();
 	}
 
 	/**
@@ -362,6 +375,40 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.router.update();
 	}
 
+	/**
+	 * Returns the simulation time until which moving and updating this host
+	 * has no effect, provided that no events occur and no other host moves
+	 * or connects before that. The host is idle until it's time to start
+	 * moving again if it isn't moving, its activeness doesn't change with
+	 * time and its interfaces and router are idle.
+	 * @return The time until which the host is idle (the current time if the
+	 * host isn't idle)
+	 * @see MessageRouter#getIdleUntil()
+	 * @see NetworkInterface#isIdle()
+	 */
+	public double getIdleUntil() {
+		double now = SimClock.getTime();
+		if (this.path != null || !this.movement.isAlwaysActive()) {
+			return now;
+		}
+		for (NetworkInterface i : net) {
+			if (!i.isIdle()) {
+				return now;
+			}
+		}
+		return Math.min(this.nextTimeToMove, this.router.getIdleUntil());
+	}
+
+	/**
+	 * Prepares the router of this host for the next update. Unlike
+	 * {@link #update(boolean)}, this can be called concurrently for
+	 * different hosts.
+	 * @see MessageRouter#prepareUpdate()
+	 */
+	public void prepareUpdate() {
+		this.router.prepareUpdate();
+	}
+
 	/**
 	 * Tears down all connections for this host.
 	 */
@@ -393,9 +440,13 @@ public class DTNHost implements Comparable<DTNHost> {
 		double distance;
 		double dx, dy;
 
+		this.moveTraceLength = 0;
 		if (!isMovementActive() || SimClock.getTime() < this.nextTimeToMove) {
 			return;
 		}
+		if (this.moveTrace != null) {
+			addToMoveTrace(SimClock.getTime());
+		}
 		if (this.destination == null) {
 			if (!setNextWaypoint()) {
 				return;
@@ -403,13 +454,19 @@ public class DTNHost implements Comparable<DTNHost> {
 		}
 
 		possibleMovement = timeIncrement * speed;
+		double totalMovement = possibleMovement;
 		distance = this.location.distance(this.destination);
 
 		while (possibleMovement >= distance) {
 			// node can move past its next destination
 			this.location.setLocation(this.destination); // snap to destination
 			possibleMovement -= distance;
+			if (this.moveTrace != null && totalMovement > 0) {
+				addToMoveTrace(SimClock.getTime() + timeIncrement *
+						(totalMovement - possibleMovement) / totalMovement);
+			}
 			if (!setNextWaypoint()) { // get a new waypoint
+				storeState();
 				return; // no more waypoints left
 			}
 			distance = this.location.distance(this.destination);
@@ -421,6 +478,63 @@ public class DTNHost implements Comparable<DTNHost> {
 		dy = (possibleMovement/distance) * (this.destination.getY() -
 				this.location.getY());
 		this.location.translate(dx, dy);
+		storeState();
+	}
+
+	/**
+	 * Makes this host trace its moves (see {@link #getMoveTrace()})
+	 */
+	public void traceMoves() {
+		if (this.moveTrace == null) {
+			this.moveTrace = new double[3 * 4];
+		}
+	}
+
+	/**
+	 * Returns the trace of the latest move: the time and location where the
+	 * host started moving and where it passed waypoints, as consecutive
+	 * (time, x, y) values. Between the points and after the last one (until
+	 * the end of the move) the host moved along a straight line. The trace
+	 * is empty if the host didn't move. The returned array must not be
+	 * modified.
+	 * @return The move trace or null if the moves are not traced
+	 * @see #getMoveTraceLength()
+	 * @see #traceMoves()
+	 */
+	public double[] getMoveTrace() {
+		return this.moveTrace;
+	}
+
+	/**
+	 * Returns the number of values in the move trace
+	 * @return The number of values (three per point)
+	 * @see #getMoveTrace()
+	 */
+	public int getMoveTraceLength() {
+		return this.moveTraceLength;
+	}
+
+	/**
+	 * Adds the current location to the move trace
+	 * @param time The time when the host was in the location
+	 */
+	private void addToMoveTrace(double time) {
+		if (this.moveTraceLength + 3 > this.moveTrace.length) {
+			this.moveTrace = Arrays.copyOf(this.moveTrace,
+					this.moveTrace.length * 2);
+		}
+		this.moveTrace[moveTraceLength++] = time;
+		this.moveTrace[moveTraceLength++] = this.location.getX();
+		this.moveTrace[moveTraceLength++] = this.location.getY();
+	}
+
+	/**
+	 * Stores the location, speed and destination of this host to the
+	 * {@link HostStates} store
+	 */
+	private void storeState() {
+		HostStates.store(this.address, this.location, this.speed,
+				this.destination);
 	}
 
 	/**
@@ -445,7 +559,11 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.count++;
 		this.average_speed +=this.speed;
 		
-		if (this.movListeners != null) {
+		if (this.bufferedDestinations != null) {
+			this.bufferedDestinations.add(new Tuple<Coord, Double>(
+					this.destination, this.speed));
+		}
+		else if (this.movListeners != null) {
 			for (MovementListener l : this.movListeners) {
 				l.newDestination(this, this.destination, this.speed);
 			}
@@ -454,6 +572,44 @@ public class DTNHost implements Comparable<DTNHost> {
 		return true;
 	}
 
+	/**
+	 * Returns true if this host can be moved concurrently with other hosts
+	 * @return true if this host can be moved in parallel
+	 * @see MovementModel#canMoveInParallel()
+	 */
+	public boolean canMoveInParallel() {
+		return this.movement.canMoveInParallel();
+	}
+
+	/**
+	 * Makes this host buffer the new destinations until
+	 * {@link #flushMovementEvents()} is called instead of informing the
+	 * movement listeners immediately
+	 */
+	public void bufferMovementEvents() {
+		if (this.movListeners != null) { /* listeners can be added later */
+			this.bufferedDestinations = new ArrayList<Tuple<Coord, Double>>();
+		}
+	}
+
+	/**
+	 * Informs the movement listeners about the buffered new destinations
+	 * @see #bufferMovementEvents()
+	 */
+	public void flushMovementEvents() {
+		if (this.bufferedDestinations == null ||
+				this.bufferedDestinations.isEmpty()) {
+			return;
+		}
+
+		for (Tuple<Coord, Double> d : this.bufferedDestinations) {
+			for (MovementListener l : this.movListeners) {
+				l.newDestination(this, d.getKey(), d.getValue());
+			}
+		}
+		this.bufferedDestinations.clear();
+	}
+
 	public double getSpeed() {
 		return speed;
 	}
@@ -462,6 +618,7 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 	public void setSpeed(double speed) {
 		this.speed = speed;
+		storeState();
 	}
 	
 	/**
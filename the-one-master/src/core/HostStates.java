@@ -0,0 +1,184 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Central store of the hosts' movement state: location, speed and
+ * destination of every host in contiguous arrays indexed by the host's
+ * address. {@link DTNHost} keeps its entry up to date whenever the host
+ * moves or gets a new destination, so code that scans the state of all
+ * hosts (e.g., contact detection and location reports) can read the arrays
+ * instead of following the references to every host's {@link Coord}
+ * objects. The hosts' own Coord objects remain as they were.
+ * <P>The arrays must not be modified by anyone else than the hosts. They
+ * are replaced by larger ones when hosts are added, so references to them
+ * should not be kept over host creation.</P>
+ */
+public class HostStates {
+	/** how many hosts the arrays are sized for initially */
+	private static final int INITIAL_CAPACITY = 64;
+
+	private static double[] xs;
+	private static double[] ys;
+	private static double[] speeds;
+	/** coordinates of the current destinations (NaN if none) */
+	private static double[] destXs;
+	private static double[] destYs;
+	/** number of hosts (largest registered address + 1) */
+	private static int nrofHosts;
+
+	static {
+		DTNSim.registerForReset(HostStates.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Resets the store (removes all the hosts)
+	 */
+	public static void reset() {
+		xs = new double[INITIAL_CAPACITY];
+		ys = new double[INITIAL_CAPACITY];
+		speeds = new double[INITIAL_CAPACITY];
+		destXs = new double[INITIAL_CAPACITY];
+		destYs = new double[INITIAL_CAPACITY];
+		Arrays.fill(destXs, Double.NaN);
+		Arrays.fill(destYs, Double.NaN);
+		nrofHosts = 0;
+	}
+
+	/**
+	 * Reserves room for a host in the store
+	 * @param address Address of the host
+	 */
+	static synchronized void register(int address) {
+		if (address >= xs.length) {
+			int capacity = Math.max(xs.length * 2, address + 1);
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			speeds = Arrays.copyOf(speeds, capacity);
+			int oldLength = destXs.length;
+			destXs = Arrays.copyOf(destXs, capacity);
+			destYs = Arrays.copyOf(destYs, capacity);
+			Arrays.fill(destXs, oldLength, capacity, Double.NaN);
+			Arrays.fill(destYs, oldLength, capacity, Double.NaN);
+		}
+		if (address >= nrofHosts) {
+			nrofHosts = address + 1;
+		}
+	}
+
+	/**
+	 * Stores the state of a (registered) host. Hosts can store their states
+	 * concurrently.
+	 * @param address Address of the host
+	 * @param location Location of the host or null if it has none
+	 * @param speed Speed of the host
+	 * @param destination Destination of the host or null if it has none
+	 */
+	static void store(int address, Coord location, double speed,
+			Coord destination) {
+		if (location != null) {
+			xs[address] = location.getX();
+			ys[address] = location.getY();
+		}
+		else {
+			xs[address] = Double.NaN;
+			ys[address] = Double.NaN;
+		}
+		speeds[address] = speed;
+		if (destination != null) {
+			destXs[address] = destination.getX();
+			destYs[address] = destination.getY();
+		}
+		else {
+			destXs[address] = Double.NaN;
+			destYs[address] = Double.NaN;
+		}
+	}
+
+	/**
+	 * Returns the number of hosts in the store
+	 * @return The number of hosts (largest address + 1)
+	 */
+	public static int getNrofHosts() {
+		return nrofHosts;
+	}
+
+	/**
+	 * Returns the x coordinate of a host's location
+	 * @param address Address of the host
+	 * @return The x coordinate
+	 */
+	public static double getX(int address) {
+		return xs[address];
+	}
+
+	/**
+	 * Returns the y coordinate of a host's location
+	 * @param address Address of the host
+	 * @return The y coordinate
+	 */
+	public static double getY(int address) {
+		return ys[address];
+	}
+
+	/**
+	 * Returns the speed of a host
+	 * @param address Address of the host
+	 * @return The speed
+	 */
+	public static double getSpeed(int address) {
+		return speeds[address];
+	}
+
+	/**
+	 * Returns the x coordinates of the hosts' locations by address. The
+	 * array may be longer than the number of hosts.
+	 * @return The x coordinates
+	 */
+	public static double[] getXs() {
+		return xs;
+	}
+
+	/**
+	 * Returns the y coordinates of the hosts' locations by address. The
+	 * array may be longer than the number of hosts.
+	 * @return The y coordinates
+	 */
+	public static double[] getYs() {
+		return ys;
+	}
+
+	/**
+	 * Returns the speeds of the hosts by address. The array may be longer
+	 * than the number of hosts.
+	 * @return The speeds
+	 */
+	public static double[] getSpeeds() {
+		return speeds;
+	}
+
+	/**
+	 * Returns the x coordinates of the hosts' destinations by address (NaN
+	 * for hosts without a destination). The array may be longer than the
+	 * number of hosts.
+	 * @return The x coordinates
+	 */
+	public static double[] getDestinationXs() {
+		return destXs;
+	}
+
+	/**
+	 * Returns the y coordinates of the hosts' destinations by address (NaN
+	 * for hosts without a destination). The array may be longer than the
+	 * number of hosts.
+	 * @return The y coordinates
+	 */
+	public static double[] getDestinationYs() {
+		return destYs;
+	}
+}
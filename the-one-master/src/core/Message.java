@@ -4,11 +4,11 @@
  */
 package core;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * A message that is created at a node or passed between nodes.
@@ -22,12 +22,15 @@ public class Message implements Comparable<Message> {
 	public String id;
 	/** Size of the message (bytes) */
 	private int size;
-	/** List of nodes this message has passed */
-	public List<DTNHost> path;
+	/** The last node this message has passed (replicates share the
+	 * common part of their paths) */
+	private PathNode path;
 	/** Next unique identifier to be given */
 	private static int nextUniqueId;
 	/** Unique ID of this message */
 	private int uniqueId;
+	/** Index of the message ID (see {@link MessageIdRegistry}) */
+	private int idIndex;
 	/** The time this message was received */
 	private double timeReceived;
 	/** The time when this message was created */
@@ -45,6 +48,9 @@ public class Message implements Comparable<Message> {
 	 * stored in the properties should be immutable because only a shallow
 	 * copy of the properties is made when replicating messages */
 	private Map<String, Object> properties;
+	/** true if the properties may be shared with other replicates (and
+	 * must be copied before they are modified) */
+	private boolean propertiesShared;
 
 	/** Application ID of the application that created the message */
 	private String	appID;
@@ -63,11 +69,25 @@ public class Message implements Comparable<Message> {
 	 * @param size Size of the message (in bytes)
 	 */
 	public Message(DTNHost from, DTNHost to, String id, int size) {
+		this(from, to, id, MessageIdRegistry.getIndex(id), size);
+	}
+
+	/**
+	 * Creates a new Message with an already registered message ID.
+	 * @param from Who the message is (originally) from
+	 * @param to Who the message is (originally) to
+	 * @param id Message identifier
+	 * @param idIndex Index of the message identifier
+	 * @param size Size of the message (in bytes)
+	 */
+	private Message(DTNHost from, DTNHost to, String id, int idIndex,
+			int size) {
 		this.from = from;
 		this.to = to;
 		this.id = id;
+		this.idIndex = idIndex;
 		this.size = size;
-		this.path = new ArrayList<DTNHost>();
+		this.path = null;
 		this.uniqueId = nextUniqueId;
 
 		this.timeCreated = SimClock.getTime();
@@ -106,6 +126,16 @@ public class Message implements Comparable<Message> {
 		return this.id;
 	}
 
+	/**
+	 * Returns the index of the message ID. All replicates of a message have
+	 * the same index and the indices of different message IDs are small
+	 * consecutive integers (see {@link MessageIdRegistry}).
+	 * @return The index of the message ID
+	 */
+	public int getIdIndex() {
+		return this.idIndex;
+	}
+
 	/**
 	 * Returns an ID that is unique per message instance
 	 * (different for replicates too)
@@ -128,23 +158,44 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.path = new PathNode(node, this.path);
 	}
 
 	/**
 	 * Returns a list of nodes this message has passed so far
-	 * @return The list as vector
+	 * @return The list (can't be modified; empty if the message has no path)
 	 */
 	public List<DTNHost> getHops() {
-		return this.path;
+		if (this.path == null) {
+			return Collections.emptyList();
+		}
+		return this.path.getHosts();
+	}
+
+	/**
+	 * Returns true if this message has passed the given node
+	 * @param node The node
+	 * @return True if the node is on the message's path
+	 */
+	public boolean hasPassed(DTNHost node) {
+		for (PathNode n = this.path; n != null; n = n.previous) {
+			if (n.host == node) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
 	 * Returns the amount of hops this message has passed
-	 * @return the amount of hops this message has passed
+	 * @return the amount of hops this message has passed (-1 if the message
+	 * has no path)
 	 */
 	public int getHopCount() {
-		return this.path.size() -1;
+		if (this.path == null) {
+			return -1;
+		}
+		return this.path.length -1;
 	}
 
 	/**
@@ -250,13 +301,15 @@ public class Message implements Comparable<Message> {
 	}
 
 	/**
-	 * Deep copies message data from other message. If new fields are
+	 * Copies message data from other message. If new fields are
 	 * introduced to this class, most likely they should be copied here too
-	 * (unless done in constructor).
+	 * (unless done in constructor). The path (which can't be modified, only
+	 * extended) is shared with the other message and so are the properties
+	 * until either message modifies them.
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
+		this.path = m.path;
 		this.timeCreated = m.timeCreated;
 		this.responseSize = m.responseSize;
 		this.requestMsg  = m.requestMsg;
@@ -264,10 +317,9 @@ public class Message implements Comparable<Message> {
 		this.appID = m.appID;
 
 		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
-			}
+			this.properties = m.properties;
+			this.propertiesShared = true;
+			m.propertiesShared = true;
 		}
 	}
 
@@ -317,6 +369,11 @@ public class Message implements Comparable<Message> {
 			   that don't use the property feature  */
 			this.properties = new HashMap<String, Object>();
 		}
+		else if (this.propertiesShared) {
+			/* copy on write; the other replicates keep the old values */
+			this.properties = new HashMap<String, Object>(this.properties);
+			this.propertiesShared = false;
+		}
 
 		this.properties.put(key, value);
 	}
@@ -326,7 +383,7 @@ public class Message implements Comparable<Message> {
 	 * @return A replicate of the message
 	 */
 	public Message replicate() {
-		Message m = new Message(from, to, id, size);
+		Message m = new Message(from, to, id, idIndex, size);
 		m.copyFrom(this);
 		return m;
 	}
@@ -360,4 +417,41 @@ public class Message implements Comparable<Message> {
 		this.appID = appID;
 	}
 
+
+	/**
+	 * A node on a message's path. Every node refers to the node of the
+	 * previous hop, so the replicates of a message share the common part of
+	 * their paths and passing a node doesn't copy the path.
+	 */
+	private static final class PathNode {
+		/** the host of this hop */
+		private final DTNHost host;
+		/** the node of the previous hop (null for the first hop) */
+		private final PathNode previous;
+		/** number of nodes on the path up to and including this one */
+		private final int length;
+		/** the hosts of the path up to this node (created when needed) */
+		private List<DTNHost> hosts;
+
+		private PathNode(DTNHost host, PathNode previous) {
+			this.host = host;
+			this.previous = previous;
+			this.length = (previous == null ? 1 : previous.length + 1);
+		}
+
+		/**
+		 * Returns the hosts of the path from the first hop to this one
+		 * @return The hosts (can't be modified)
+		 */
+		private List<DTNHost> getHosts() {
+			if (this.hosts == null) {
+				DTNHost[] array = new DTNHost[this.length];
+				for (PathNode n = this; n != null; n = n.previous) {
+					array[n.length - 1] = n.host;
+				}
+				this.hosts = Collections.unmodifiableList(Arrays.asList(array));
+			}
+			return this.hosts;
+		}
+	}
 }
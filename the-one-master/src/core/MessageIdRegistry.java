@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Registry that gives every message ID (i.e., every logical message and all
+ * its replicates) a dense integer index: the first registered ID gets index
+ * 0, the next one 1 and so on. The index of a message is available with
+ * {@link Message#getIdIndex()}, so that per message state (e.g., which
+ * messages are known to be delivered) can be kept in arrays or bit sets
+ * instead of hash sets of ID strings.
+ */
+public class MessageIdRegistry {
+	private static HashMap<String, Integer> indices;
+	private static List<String> ids;
+
+	static {
+		DTNSim.registerForReset(MessageIdRegistry.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Resets the registry (forgets all the IDs)
+	 */
+	public static synchronized void reset() {
+		indices = new HashMap<String, Integer>();
+		ids = new ArrayList<String>();
+	}
+
+	/**
+	 * Returns the index of a message ID. The ID is registered if it hasn't
+	 * been registered before.
+	 * @param id The message ID
+	 * @return Index of the ID
+	 */
+	public static synchronized int getIndex(String id) {
+		Integer index = indices.get(id);
+		if (index == null) {
+			index = ids.size();
+			indices.put(id, index);
+			ids.add(id);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the message ID of an index
+	 * @param index The index
+	 * @return The message ID
+	 */
+	public static synchronized String getId(int index) {
+		return ids.get(index);
+	}
+
+	/**
+	 * Returns the number of registered IDs
+	 * @return The number of IDs (largest index + 1)
+	 */
+	public static synchronized int size() {
+		return ids.size();
+	}
+}
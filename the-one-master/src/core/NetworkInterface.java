@@ -50,6 +50,9 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	private static final int CON_DOWN = 2;
 
 	private static Random rng;
+	/** time of the connection event the listeners are being notified of
+	 * (NaN when no notification is going on) */
+	private static double listenerEventTime;
 	protected DTNHost host = null;
 
 	protected String interfacetype;
@@ -60,6 +63,17 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	protected double oldTransmitRange;
 	protected int transmitSpeed;
 	protected ConnectivityOptimizer optimizer = null;
+	/** index of this interface in the optimizer (-1 if not set) */
+	private int optimizerIndex = -1;
+	/** time of the connection event being handled (NaN for current time) */
+	private double eventTime = Double.NaN;
+	/** connects this interface to the interfaces it visits */
+	private final ConnectivityOptimizer.InterfaceVisitor connector =
+		new ConnectivityOptimizer.InterfaceVisitor() {
+			public void visit(NetworkInterface ni) {
+				connect(ni);
+			}
+		};
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
 	private double lastScanTime;
@@ -81,6 +95,23 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public static void reset() {
 		rng = new Random(0);
+		listenerEventTime = Double.NaN;
+	}
+
+	/**
+	 * Returns the time of the connection event the connection listeners are
+	 * being notified of. Connectivity optimizers may detect contacts that
+	 * started or ended between two updates; the listeners get the exact time
+	 * of such events while the simulation clock (and thus the routers) stays
+	 * at the current time.
+	 * @return The time of the event, or the current simulation time if
+	 * no connection event is being notified or the event happened now
+	 */
+	public static double getConnectionEventTime() {
+		if (Double.isNaN(listenerEventTime)) {
+			return SimClock.getTime();
+		}
+		return listenerEventTime;
 	}
 
 	/**
@@ -284,6 +315,19 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return true;
 	}
 
+	/**
+	 * Returns true if updating this interface can't change anything as long
+	 * as no host moves, i.e., the interface is always active, scans
+	 * continuously and none of its connections is transferring data.
+	 * Interfaces whose connections have time dependent state should
+	 * override this.
+	 * @return true if the interface is idle
+	 */
+	public boolean isIdle() {
+		return (ah == null || ah.isAlwaysActive()) && scanInterval == 0 &&
+			!isTransferring();
+	}
+
 	/**
 	 * Returns true if one of the connections of this interface is transferring
 	 * data
@@ -308,6 +352,87 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public abstract void connect(NetworkInterface anotherInterface);
 
+	/**
+	 * Updates the location of this interface in the connectivity optimizer,
+	 * tears down the connections that are out of range and tries to connect
+	 * to all the interfaces that the optimizer finds near this interface
+	 * (see {@link #connect(NetworkInterface)}). If the optimizer detects
+	 * the contacts itself ({@link ConnectivityOptimizer#detectsContacts()}),
+	 * only the location is updated.
+	 */
+	protected void updateContacts() {
+		optimizer.updateLocation(this);
+		if (optimizer.detectsContacts()) {
+			return;
+		}
+
+		// First break the old ones
+		for (int i=0; i<this.connections.size(); ) {
+			Connection con = this.connections.get(i);
+			NetworkInterface anotherInterface = con.getOtherInterface(this);
+
+			// all connections should be up at this stage
+			assert con.isUp() : "Connection " + con + " was down!";
+
+			if (!isWithinRange(anotherInterface)) {
+				disconnect(con,anotherInterface);
+				connections.remove(i);
+			}
+			else {
+				i++;
+			}
+		}
+		// Then find new possible connections
+		optimizer.visitNearInterfaces(this, connector);
+	}
+
+	/**
+	 * Tears down a connection of this interface. Used by the connectivity
+	 * optimizers that detect the contacts themselves.
+	 * @param index Index of the connection in the list returned by
+	 * {@link #getConnections()}
+	 */
+	public void disconnect(int index) {
+		Connection con = this.connections.get(index);
+		disconnect(con, con.getOtherInterface(this));
+		this.connections.remove(index);
+	}
+
+	/**
+	 * Tears down a connection of this interface that went down at the given
+	 * (past) time of the current update interval. The connection listeners
+	 * get the time (see {@link #getConnectionEventTime()}).
+	 * @param index Index of the connection in the list returned by
+	 * {@link #getConnections()}
+	 * @param time The time when the connection went down
+	 */
+	public void disconnect(int index, double time) {
+		this.eventTime = time;
+		try {
+			disconnect(index);
+		} finally {
+			this.eventTime = Double.NaN;
+		}
+	}
+
+	/**
+	 * Returns the index the connectivity optimizer has given to this
+	 * interface
+	 * @return The index or -1 if the optimizer hasn't set it
+	 */
+	public int getOptimizerIndex() {
+		return this.optimizerIndex;
+	}
+
+	/**
+	 * Sets the index of this interface in the connectivity optimizer. Only
+	 * the optimizer should call this.
+	 * @param index The new index
+	 */
+	public void setOptimizerIndex(int index) {
+		this.optimizerIndex = index;
+	}
+
 	/**
 	 * Connects this host to another host. The derived class should check
 	 * that all pre-requisites for making a connection are satisfied before
@@ -407,17 +532,22 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		if (this.cListeners == null) {
 			return;
 		}
-		for (ConnectionListener cl : this.cListeners) {
-			switch (type) {
-			case CON_UP:
-				cl.hostsConnected(this.host, otherHost);
-				break;
-			case CON_DOWN:
-				cl.hostsDisconnected(this.host, otherHost);
-				break;
-			default:
-				assert false : type;	// invalid type code
+		listenerEventTime = this.eventTime;
+		try {
+			for (ConnectionListener cl : this.cListeners) {
+				switch (type) {
+				case CON_UP:
+					cl.hostsConnected(this.host, otherHost);
+					break;
+				case CON_DOWN:
+					cl.hostsDisconnected(this.host, otherHost);
+					break;
+				default:
+					assert false : type;	// invalid type code
+				}
 			}
+		} finally {
+			listenerEventTime = Double.NaN;
 		}
 	}
 
@@ -450,6 +580,23 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public abstract void createConnection(NetworkInterface anotherInterface);
 
+	/**
+	 * Creates a connection to another host that came up at the given (past)
+	 * time of the current update interval. The connection listeners get the
+	 * time (see {@link #getConnectionEventTime()}).
+	 * @param anotherInterface The interface to create the connection to
+	 * @param time The time when the connection came up
+	 */
+	public void createConnection(NetworkInterface anotherInterface,
+			double time) {
+		this.eventTime = time;
+		try {
+			createConnection(anotherInterface);
+		} finally {
+			this.eventTime = Double.NaN;
+		}
+	}
+
 	/**
 	 * Disconnect a connection between this and another host.
 	 * @param anotherInterface The other host's network interface to disconnect
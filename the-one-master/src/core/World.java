@@ -7,11 +7,22 @@ package core;
 import input.EventQueue;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
+import interfaces.ConnectivityGrid;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import movement.MovementModel;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -37,6 +48,40 @@ public class World {
 	 */
 	public static final String SIMULATE_CON_ONCE_S = "simulateConnectionsOnce";
 
+	/**
+	 * Number of threads used for preparing the host updates -setting id
+	 * ({@value}). Integer. With more than one thread, the routers of all
+	 * hosts first prepare their update in parallel (see
+	 * {@link routing.MessageRouter#prepareUpdate()}) and then the hosts are
+	 * updated one by one in the same order as with a single thread, so the
+	 * results don't depend on this setting. Default is 1.
+	 */
+	public static final String UPDATE_THREADS_S = "updateThreads";
+
+	/**
+	 * Number of threads used for moving the hosts -setting id ({@value}).
+	 * Integer. With 0 (default) all hosts are moved one by one using the
+	 * common random number stream of the movement models. Otherwise every
+	 * host draws its random numbers from a stream of its own and the hosts
+	 * whose movement models are independent of the others are moved with
+	 * this many threads; the rest are moved after them in address order.
+	 * The movement listeners are informed in host address order after all
+	 * hosts have moved. The results are the same with any positive value,
+	 * but differ from the results with 0.
+	 */
+	public static final String MOVEMENT_THREADS_S = "movementThreads";
+
+	/**
+	 * Should the update intervals where nothing can change be skipped
+	 * -setting id ({@value}). Boolean (true/false). If true, after every
+	 * update the world computes the time until which all hosts are idle (see
+	 * {@link DTNHost#getIdleUntil()}) and until then (and the next event)
+	 * only advances the clock and informs the update listeners on every
+	 * update interval. The results are the same as without skipping.
+	 * Default = false.
+	 */
+	public static final String SKIP_IDLE_UPDATES_S = "skipIdleUpdates";
+
 	private int sizeX;
 	private int sizeY;
 	private List<EventQueue> eventQueues;
@@ -56,6 +101,26 @@ public class World {
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
 	private boolean simulateConOnce;
+	/** executor of the parallel update preparation (null if disabled) */
+	private ExecutorService updateExecutor;
+	/** update preparation tasks (one per thread) */
+	private List<Callable<Void>> prepareTasks;
+	/** is every host moved with its own random number stream */
+	private boolean moveWithHostStreams;
+	/** executor of the parallel movement (null if moved in one thread) */
+	private ExecutorService movementExecutor;
+	/** tasks that move the independently moving hosts (one per thread) */
+	private List<Callable<Void>> moveTasks;
+	/** hosts that must be moved one by one, in address order */
+	private List<DTNHost> sequentialMovers;
+	/** random number streams of the hosts (indexed by address) */
+	private Random[] hostStreams;
+	/** the time increment of the ongoing parallel movement */
+	private double moveIncrement;
+	/** are the idle update intervals skipped */
+	private boolean skipIdleUpdates;
+	/** the time until which all hosts are idle */
+	private double idleUntil;
 
 	/**
 	 * Constructor.
@@ -91,6 +156,21 @@ public class World {
 		}
 		simulateConOnce = s.getBoolean(SIMULATE_CON_ONCE_S, false);
 
+		int nrofThreads = s.getInt(UPDATE_THREADS_S, 1);
+		s.ensurePositiveValue(nrofThreads, UPDATE_THREADS_S);
+		if (nrofThreads > 1) {
+			initUpdateExecutor(nrofThreads);
+		}
+
+		int nrofMoveThreads = s.getInt(MOVEMENT_THREADS_S, 0);
+		s.ensurePositiveValue(nrofMoveThreads, MOVEMENT_THREADS_S);
+		if (nrofMoveThreads > 0) {
+			initParallelMovement(nrofMoveThreads);
+		}
+
+		this.skipIdleUpdates = s.getBoolean(SKIP_IDLE_UPDATES_S, false);
+		this.idleUntil = Double.NEGATIVE_INFINITY;
+
 		if(randomizeUpdates) {
 			// creates the update order array that can be shuffled
 			this.updateOrder = new ArrayList<DTNHost>(this.hosts);
@@ -100,6 +180,131 @@ public class World {
 		}
 	}
 
+	/**
+	 * Creates the executor and the tasks for preparing host updates in
+	 * parallel. Task i prepares the hosts i, i + nrofThreads, ...
+	 * @param nrofThreads Number of threads to use
+	 */
+	private void initUpdateExecutor(final int nrofThreads) {
+		this.updateExecutor = createExecutor(nrofThreads, "host-update");
+
+		this.prepareTasks = new ArrayList<Callable<Void>>(nrofThreads);
+		for (int i = 0; i < nrofThreads; i++) {
+			final int first = i;
+			this.prepareTasks.add(new Callable<Void>() {
+				public Void call() {
+					for (int j = first, n = hosts.size(); j < n;
+							j += nrofThreads) {
+						hosts.get(j).prepareUpdate();
+					}
+					return null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Creates the random number streams of the hosts and the tasks for
+	 * moving the hosts in parallel. Task i moves every nrofThreads'th of the
+	 * hosts that can be moved in parallel, starting from the i'th one.
+	 * @param nrofThreads Number of threads to use
+	 */
+	private void initParallelMovement(final int nrofThreads) {
+		this.moveWithHostStreams = true;
+		this.hostStreams = new Random[hosts.size()];
+		this.sequentialMovers = new ArrayList<DTNHost>();
+		final List<DTNHost> parallelMovers = new ArrayList<DTNHost>();
+
+		for (DTNHost host : hosts) {
+			hostStreams[host.getAddress()] =
+				MovementModel.createHostRandom(host.getAddress());
+			host.bufferMovementEvents();
+			if (host.canMoveInParallel()) {
+				parallelMovers.add(host);
+			} else {
+				sequentialMovers.add(host);
+			}
+		}
+
+		if (nrofThreads > 1) {
+			this.movementExecutor = createExecutor(nrofThreads, "host-move");
+		}
+		this.moveTasks = new ArrayList<Callable<Void>>(nrofThreads);
+		for (int i = 0; i < nrofThreads; i++) {
+			final int first = i;
+			this.moveTasks.add(new Callable<Void>() {
+				public Void call() {
+					try {
+						for (int j = first, n = parallelMovers.size(); j < n;
+								j += nrofThreads) {
+							moveWithOwnStream(parallelMovers.get(j),
+									moveIncrement);
+						}
+					} finally {
+						MovementModel.setRandomStream(null);
+					}
+					return null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Creates an executor whose (daemon) threads are stopped when idle
+	 * @param nrofThreads Number of threads
+	 * @param name Name of the threads
+	 * @return The executor
+	 */
+	private static ExecutorService createExecutor(int nrofThreads,
+			final String name) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(nrofThreads,
+				nrofThreads, 1, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name);
+				t.setDaemon(true); /* don't prevent exiting the simulator */
+				return t;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Runs tasks with an executor (or in this thread if the executor is
+	 * null) and waits until all of them are done
+	 * @param executor The executor
+	 * @param tasks The tasks to run
+	 */
+	private static void runAll(ExecutorService executor,
+			List<Callable<Void>> tasks) {
+		try {
+			if (executor == null) {
+				for (Callable<Void> task : tasks) {
+					task.call();
+				}
+				return;
+			}
+			for (Future<Void> f : executor.invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			throw new SimError("Interrupted while updating hosts", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			} else if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new SimError("Updating hosts failed", e);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) { /* can't happen: the tasks don't throw */
+			throw new SimError(e);
+		}
+	}
+
 	/**
 	 * Moves hosts in the world for the time given time initialize host
 	 * positions properly. SimClock must be set to <CODE>-time</CODE> before
@@ -152,6 +357,17 @@ public class World {
 
 		setNextEventQueue();
 
+		if (this.skipIdleUpdates && this.nextQueueEventTime > runUntil &&
+				runUntil + this.updateInterval < this.idleUntil) {
+			/* no events and all hosts are idle: nothing can change */
+			simClock.setTime(runUntil);
+			if (this.updateOrder != null) {
+				shuffleUpdateOrder(); /* keep the same update order sequence */
+			}
+			informUpdateListeners();
+			return;
+		}
+
 		/* process all events that are due until next interval update */
 		while (this.nextQueueEventTime <= runUntil) {
 			simClock.setTime(this.nextQueueEventTime);
@@ -166,18 +382,55 @@ public class World {
 
 		updateHosts();
 
-		/* inform all update listeners */
+		if (this.skipIdleUpdates) {
+			this.idleUntil = getIdleUntil();
+		}
+
+		informUpdateListeners();
+	}
+
+	/**
+	 * Informs all update listeners about an update
+	 */
+	private void informUpdateListeners() {
 		for (UpdateListener ul : this.updateListeners) {
 			ul.updated(this.hosts);
 		}
 	}
 
+	/**
+	 * Returns the time until which all hosts are idle. The margin of one
+	 * update interval in {@link #update()} makes sure that rounding errors
+	 * in the hosts' own time checks don't matter.
+	 * @return The smallest idle time of the hosts
+	 * @see DTNHost#getIdleUntil()
+	 */
+	private double getIdleUntil() {
+		double now = SimClock.getTime();
+		double until = Double.MAX_VALUE;
+
+		for (int i=0, n = hosts.size(); i < n && until > now; i++) {
+			until = Math.min(until, hosts.get(i).getIdleUntil());
+		}
+		return until;
+	}
+
 	/**
 	 * Updates all hosts (calls update for every one of them). If update
 	 * order randomizing is on (updateOrder array is defined), the calls
-	 * are made in random order.
+	 * are made in random order. With pairwise contact detection the
+	 * contacts of all hosts are detected first
+	 * (see {@link ConnectivityGrid#PAIRWISE_CONTACTS_S}).
 	 */
 	private void updateHosts() {
+		if (simulateConnections) {
+			ConnectivityGrid.detectAllContacts();
+		}
+
+		if (this.updateExecutor != null) {
+			prepareHosts();
+		}
+
 		if (this.updateOrder == null) { // randomizing is off
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
@@ -189,8 +442,7 @@ public class World {
 		else { // update order randomizing is on
 			assert this.updateOrder.size() == this.hosts.size() :
 				"Nrof hosts has changed unexpectedly";
-			Random rng = new Random(SimClock.getIntTime());
-			Collections.shuffle(this.updateOrder, rng);
+			shuffleUpdateOrder();
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
@@ -204,17 +456,67 @@ public class World {
 		}
 	}
 
+	/**
+	 * Shuffles the update order of the hosts
+	 */
+	private void shuffleUpdateOrder() {
+		Random rng = new Random(SimClock.getIntTime());
+		Collections.shuffle(this.updateOrder, rng);
+	}
+
+	/**
+	 * Prepares the updates of all hosts in parallel and waits until all
+	 * of them are done
+	 */
+	private void prepareHosts() {
+		runAll(updateExecutor, prepareTasks);
+	}
+
 	/**
 	 * Moves all hosts in the world for a given amount of time
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (this.moveWithHostStreams) {
+			moveHostsWithOwnStreams(timeIncrement);
+			return;
+		}
+
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);
 		}
 	}
 
+	/**
+	 * Moves all hosts with their own random number streams: first the
+	 * independent ones in parallel and then the rest in address order.
+	 * Finally informs the movement listeners about all the moves in host
+	 * address order.
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	private void moveHostsWithOwnStreams(double timeIncrement) {
+		this.moveIncrement = timeIncrement;
+		runAll(movementExecutor, moveTasks);
+
+		try {
+			for (DTNHost host : sequentialMovers) {
+				moveWithOwnStream(host, timeIncrement);
+			}
+		} finally {
+			MovementModel.setRandomStream(null);
+		}
+
+		for (int i=0, n = hosts.size(); i<n; i++) {
+			hosts.get(i).flushMovementEvents();
+		}
+	}
+
+	private void moveWithOwnStream(DTNHost host, double timeIncrement) {
+		MovementModel.setRandomStream(hostStreams[host.getAddress()]);
+		host.move(timeIncrement);
+	}
+
 	/**
 	 * Asynchronously cancels the currently running simulation
 	 */
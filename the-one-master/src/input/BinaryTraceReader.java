@@ -0,0 +1,454 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import core.SettingsError;
+import core.SimError;
+
+/**
+ * Reader for binary traces written by {@link BinaryTraceWriter}. The blocks
+ * of the trace are memory mapped when they are needed and the samples of a
+ * time instance are read to primitive arrays, so reading a trace doesn't
+ * create any objects per sample. The blocks of the next time instances can
+ * be mapped and loaded to memory in advance with {@link #prefetch(int)}.
+ * The locations of the trace are already normalized (like the locations
+ * {@link ExternalMovementReader} gives by default).
+ */
+public class BinaryTraceReader {
+	private RandomAccessFile file;
+	private FileChannel channel;
+	/** bytes per coordinate value (4 for floats, 8 for doubles) */
+	private int valueSize;
+	private double minTime;
+	private double maxTime;
+	private double minX;
+	private double maxX;
+	private double minY;
+	private double maxY;
+
+	/** node IDs by node index */
+	private String[] ids;
+	/** node indices by node ID (created when needed) */
+	private Map<String, Integer> indices;
+
+	/** file offsets of the blocks */
+	private long[] blockOffsets;
+	/** lengths of the blocks in bytes */
+	private int[] blockLengths;
+	/** times of the first time instances of the blocks */
+	private double[] blockTimes;
+	/** numbers of time instances in the blocks */
+	private int[] blockInstances;
+	/** prefetched blocks that haven't been opened yet */
+	private MappedByteBuffer[] mappedBlocks;
+	/** index of the block to read the next time instance from */
+	private int block;
+	/** the current block or null if no block is open */
+	private ByteBuffer buffer;
+	/** number of time instances left in the current block */
+	private int instancesLeft;
+
+	private double lastTimeStamp = -1;
+	private int nrofSamples;
+	private int[] nodeIndices;
+	private double[] xs;
+	private double[] ys;
+
+	/**
+	 * Constructor. Creates a new reader that reads the data from a file.
+	 * @param inFilePath Path to the binary trace file
+	 * @throws SettingsError if the file wasn't found or is not a valid
+	 * binary trace
+	 */
+	public BinaryTraceReader(String inFilePath) {
+		try {
+			file = new RandomAccessFile(inFilePath, "r");
+			channel = file.getChannel();
+			readHeader();
+			file.seek(file.length() - 8);
+			file.seek(file.readLong());
+			readFooter();
+		} catch (IOException e) {
+			close();
+			throw new SettingsError("Couldn't read binary trace file " +
+					inFilePath, e);
+		}
+
+		this.block = 0;
+		this.nodeIndices = new int[ids.length];
+		this.xs = new double[ids.length];
+		this.ys = new double[ids.length];
+	}
+
+	/**
+	 * Returns true if the file is a binary trace file (written by
+	 * {@link BinaryTraceWriter})
+	 * @param filePath Path to the file
+	 * @return True if the file starts with the binary trace identifier
+	 */
+	public static boolean isBinaryTrace(String filePath) {
+		File f = new File(filePath);
+		if (!f.isFile() || f.length() < BinaryTraceWriter.HEADER_SIZE + 8) {
+			return false;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(f));
+			try {
+				return in.readInt() == BinaryTraceWriter.MAGIC;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private void readHeader() throws IOException {
+		if (file.readInt() != BinaryTraceWriter.MAGIC) {
+			throw new IOException("Not a binary trace file");
+		}
+		int version = file.readInt();
+		if (version != BinaryTraceWriter.VERSION) {
+			throw new IOException("Unsupported binary trace version " +
+					version);
+		}
+		valueSize = file.readByte();
+		if (valueSize != 4 && valueSize != 8) {
+			throw new IOException("Invalid coordinate value size " +
+					valueSize);
+		}
+		minTime = file.readDouble();
+		maxTime = file.readDouble();
+		minX = file.readDouble();
+		maxX = file.readDouble();
+		minY = file.readDouble();
+		maxY = file.readDouble();
+	}
+
+	private void readFooter() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Channels.newInputStream(channel)));
+		try {
+			ids = new String[in.readInt()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = in.readUTF();
+			}
+
+			int nrofBlocks = in.readInt();
+			blockOffsets = new long[nrofBlocks];
+			blockLengths = new int[nrofBlocks];
+			blockTimes = new double[nrofBlocks];
+			blockInstances = new int[nrofBlocks];
+			mappedBlocks = new MappedByteBuffer[nrofBlocks];
+			for (int i = 0; i < nrofBlocks; i++) {
+				blockOffsets[i] = in.readLong();
+				blockLengths[i] = in.readInt();
+				blockTimes[i] = in.readDouble();
+				blockInstances[i] = in.readInt();
+			}
+		} catch (EOFException e) {
+			throw new IOException("Truncated binary trace file");
+		} catch (NegativeArraySizeException e) {
+			throw new IOException("Corrupted binary trace file");
+		}
+	}
+
+	/**
+	 * Returns the memory mapped contents of a block
+	 * @param i Index of the block
+	 * @return The mapped block
+	 */
+	private MappedByteBuffer mapBlock(int i) {
+		if (mappedBlocks[i] == null) {
+			try {
+				mappedBlocks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+						blockOffsets[i], blockLengths[i]);
+			} catch (IOException e) {
+				throw new SimError("Couldn't map binary trace block " + i, e);
+			}
+		}
+		return mappedBlocks[i];
+	}
+
+	/**
+	 * Opens a block for reading. The reader keeps no other reference to the
+	 * mapping, so it is released once the block has been read.
+	 * @param i Index of the block
+	 */
+	private void openBlock(int i) {
+		buffer = mapBlock(i);
+		mappedBlocks[i] = null;
+		instancesLeft = blockInstances[i];
+		block = i + 1;
+	}
+
+	/**
+	 * Reads all the samples that belong to the next time instance. The node
+	 * indices and locations of the samples can be queried with
+	 * {@link #getNodeIndices()}, {@link #getXs()} and {@link #getYs()}.
+	 * @return Number of samples read or 0 if there were no more samples
+	 */
+	public int readNextMovements() {
+		while (instancesLeft == 0) {
+			if (blockOffsets == null || block >= blockOffsets.length) {
+				nrofSamples = 0;
+				return 0;
+			}
+			openBlock(block);
+		}
+
+		lastTimeStamp = buffer.getDouble();
+		int n = buffer.getInt();
+		if (n > nodeIndices.length) {
+			nodeIndices = Arrays.copyOf(nodeIndices, n);
+			xs = Arrays.copyOf(xs, n);
+			ys = Arrays.copyOf(ys, n);
+		}
+
+		if (valueSize == 4) {
+			for (int i = 0; i < n; i++) {
+				nodeIndices[i] = buffer.getInt();
+				xs[i] = buffer.getFloat();
+				ys[i] = buffer.getFloat();
+			}
+		}
+		else {
+			for (int i = 0; i < n; i++) {
+				nodeIndices[i] = buffer.getInt();
+				xs[i] = buffer.getDouble();
+				ys[i] = buffer.getDouble();
+			}
+		}
+
+		instancesLeft--;
+		if (instancesLeft == 0) {
+			buffer = null;
+		}
+		nrofSamples = n;
+		return n;
+	}
+
+	/**
+	 * Makes sure that the blocks of (at least) the given number of next time
+	 * instances are mapped and loaded to physical memory, so that reading
+	 * them doesn't have to wait for the disk.
+	 * @param nrofInstances Number of time instances to prefetch
+	 */
+	public void prefetch(int nrofInstances) {
+		int left = nrofInstances - instancesLeft;
+		for (int i = block; left > 0 && i < blockOffsets.length; i++) {
+			if (mappedBlocks[i] == null) {
+				mapBlock(i).load();
+			}
+			left -= blockInstances[i];
+		}
+	}
+
+	/**
+	 * Moves the reader so that the next {@link #readNextMovements()} call
+	 * reads the first time instance whose time is equal to or later than
+	 * the given time
+	 * @param time The time (normalized, i.e., relative to the minimum time)
+	 */
+	public void seek(double time) {
+		int i = Arrays.binarySearch(blockTimes, time);
+		if (i < 0) {
+			i = Math.max(0, -i - 2); // the block before the insertion point
+		}
+		while (i > 0 && blockTimes[i - 1] == time) {
+			i--; // the first of the blocks with equal times
+		}
+
+		buffer = null;
+		instancesLeft = 0;
+		block = i;
+		Arrays.fill(mappedBlocks, null);
+		if (i >= blockOffsets.length) {
+			return;
+		}
+
+		openBlock(i);
+		int sampleSize = 4 + 2 * valueSize;
+		while (instancesLeft > 0) {
+			int start = buffer.position();
+			if (buffer.getDouble(start) >= time) {
+				break;
+			}
+			int n = buffer.getInt(start + 8);
+			buffer.position(start + 12 + n * sampleSize);
+			instancesLeft--;
+		}
+		if (instancesLeft == 0) {
+			buffer = null;
+		}
+	}
+
+	/**
+	 * Returns the time stamp of the last time instance read with
+	 * {@link #readNextMovements()}
+	 * @return The time stamp
+	 */
+	public double getLastTimeStamp() {
+		return lastTimeStamp;
+	}
+
+	/**
+	 * Returns the number of samples read by the last
+	 * {@link #readNextMovements()} call
+	 * @return The number of samples
+	 */
+	public int getNrofSamples() {
+		return nrofSamples;
+	}
+
+	/**
+	 * Returns the node indices of the samples of the last time instance.
+	 * The array is reused and it can be longer than the number of samples.
+	 * @return The node indices
+	 */
+	public int[] getNodeIndices() {
+		return nodeIndices;
+	}
+
+	/**
+	 * Returns the x coordinates of the samples of the last time instance.
+	 * The array is reused and it can be longer than the number of samples.
+	 * @return The x coordinates
+	 */
+	public double[] getXs() {
+		return xs;
+	}
+
+	/**
+	 * Returns the y coordinates of the samples of the last time instance.
+	 * The array is reused and it can be longer than the number of samples.
+	 * @return The y coordinates
+	 */
+	public double[] getYs() {
+		return ys;
+	}
+
+	/**
+	 * Returns the number of node IDs in the trace
+	 * @return The number of node IDs
+	 */
+	public int getNrofIds() {
+		return ids.length;
+	}
+
+	/**
+	 * Returns the node ID of a node index
+	 * @param index The node index
+	 * @return The node ID
+	 */
+	public String getId(int index) {
+		return ids[index];
+	}
+
+	/**
+	 * Returns the node index of a node ID
+	 * @param id The node ID
+	 * @return The node index or -1 if the ID is not in the trace
+	 */
+	public int getIndex(String id) {
+		if (indices == null) {
+			indices = new HashMap<String, Integer>();
+			for (int i = 0; i < ids.length; i++) {
+				indices.put(ids[i], i);
+			}
+		}
+		Integer i = indices.get(id);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * Returns true if the coordinates are stored as doubles (i.e., exactly)
+	 * @return True for double coordinates, false for float coordinates
+	 */
+	public boolean hasDoubleCoordinates() {
+		return valueSize == 8;
+	}
+
+	/**
+	 * Returns maximum time value of the trace (not normalized)
+	 * @return the maxTime
+	 */
+	public double getMaxTime() {
+		return maxTime;
+	}
+
+	/**
+	 * Returns maximum x coordinate value of the trace (not normalized)
+	 * @return the maxX
+	 */
+	public double getMaxX() {
+		return maxX;
+	}
+
+	/**
+	 * Returns maximum y coordinate value of the trace (not normalized)
+	 * @return the maxY
+	 */
+	public double getMaxY() {
+		return maxY;
+	}
+
+	/**
+	 * Returns minimum time value of the trace
+	 * @return the minTime
+	 */
+	public double getMinTime() {
+		return minTime;
+	}
+
+	/**
+	 * Returns minimum x coordinate value of the trace
+	 * @return the minX
+	 */
+	public double getMinX() {
+		return minX;
+	}
+
+	/**
+	 * Returns minimum y coordinate value of the trace
+	 * @return the minY
+	 */
+	public double getMinY() {
+		return minY;
+	}
+
+	/**
+	 * Closes the trace file and releases the mapped blocks
+	 */
+	public void close() {
+		buffer = null;
+		instancesLeft = 0;
+		if (mappedBlocks != null) {
+			Arrays.fill(mappedBlocks, null);
+		}
+		try {
+			if (file != null) {
+				file.close();
+			}
+		} catch (IOException e) {
+			// nothing to do; the file is not used anymore
+		}
+	}
+}
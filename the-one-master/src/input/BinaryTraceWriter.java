@@ -0,0 +1,163 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import util.Tuple;
+
+import core.Coord;
+
+/**
+ * Converts {@link ExternalMovementReader} text traces to the binary trace
+ * format of {@link BinaryTraceReader}. The trace is read with
+ * {@link ExternalMovementReader}, so the binary trace has exactly the same
+ * time instances and locations (already normalized) the text trace gives.
+ * <P>Binary trace file format (big endian):</P>
+ * <PRE>
+ * header:  int magic, int version, byte bytes per coordinate value (4|8),
+ *          double minTime, maxTime, minX, maxX, minY, maxY
+ * blocks:  time instances: double time, int number of samples,
+ *          samples: int node index, x, y (float or double)
+ * footer:  int number of node IDs, node IDs (modified UTF-8 strings),
+ *          int number of blocks, for each block: long offset,
+ *          int length (bytes), double time of the first instance,
+ *          int number of instances
+ * trailer: long offset of the footer
+ * </PRE>
+ * The node indices are the indices of the node IDs in the footer, in the
+ * order the IDs first appear in the trace.
+ * <P>Usage: <CODE>java input.BinaryTraceWriter textTrace binaryTrace
+ * [float|double]</CODE>. Float coordinates make the trace almost half as
+ * big, but the locations are rounded to float precision; with double
+ * coordinates simulations give exactly the same results as with the text
+ * trace.</P>
+ */
+public class BinaryTraceWriter {
+	/** Identifies binary trace files ("ONET") */
+	public static final int MAGIC = 0x4F4E4554;
+	/** Version of the file format */
+	public static final int VERSION = 1;
+	/** Size of the header in bytes */
+	public static final int HEADER_SIZE = 4 + 4 + 1 + 6 * 8;
+	/** Default (minimum) size of a block in bytes */
+	public static final int DEF_BLOCK_SIZE = 1024 * 1024;
+
+	/**
+	 * Converts a text trace file to a binary trace file
+	 * @param args Path of the text trace, path of the binary trace and
+	 * optionally the precision of the coordinates ("float" or "double")
+	 * @throws IOException if the conversion fails
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: java input.BinaryTraceWriter " +
+					"textTrace binaryTrace [float|double]");
+			System.exit(1);
+		}
+		boolean doubles = args.length > 2 && args[2].equals("double");
+		convert(args[0], args[1], doubles, DEF_BLOCK_SIZE);
+	}
+
+	/**
+	 * Converts a text trace file to a binary trace file
+	 * @param textFile Path of the text trace
+	 * @param binaryFile Path of the binary trace
+	 * @param doubles If true, coordinates are written as doubles (otherwise
+	 * as floats)
+	 * @param blockSize Minimum size of a block (in bytes); a new block is
+	 * started when a block has reached this size
+	 * @throws IOException if the conversion fails
+	 */
+	public static void convert(String textFile, String binaryFile,
+			boolean doubles, int blockSize) throws IOException {
+		ExternalMovementReader reader = new ExternalMovementReader(textFile);
+		List<String> ids = new ArrayList<String>();
+		Map<String, Integer> indices = new HashMap<String, Integer>();
+		List<long[]> blocks = new ArrayList<long[]>(); // offset, length, n
+		List<Double> firstTimes = new ArrayList<Double>();
+		int valueSize = doubles ? 8 : 4;
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(binaryFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeByte(valueSize);
+			out.writeDouble(reader.getMinTime());
+			out.writeDouble(reader.getMaxTime());
+			out.writeDouble(reader.getMinX());
+			out.writeDouble(reader.getMaxX());
+			out.writeDouble(reader.getMinY());
+			out.writeDouble(reader.getMaxY());
+
+			long offset = HEADER_SIZE;
+			long blockStart = offset;
+			int nrofInstances = 0;
+			List<Tuple<String, Coord>> moves;
+
+			while ((moves = reader.readNextMovements()).size() > 0) {
+				if (nrofInstances == 0) {
+					firstTimes.add(reader.getLastTimeStamp());
+				}
+				out.writeDouble(reader.getLastTimeStamp());
+				out.writeInt(moves.size());
+				for (Tuple<String, Coord> t : moves) {
+					Integer i = indices.get(t.getKey());
+					if (i == null) {
+						i = ids.size();
+						indices.put(t.getKey(), i);
+						ids.add(t.getKey());
+					}
+					out.writeInt(i);
+					if (doubles) {
+						out.writeDouble(t.getValue().getX());
+						out.writeDouble(t.getValue().getY());
+					}
+					else {
+						out.writeFloat((float)t.getValue().getX());
+						out.writeFloat((float)t.getValue().getY());
+					}
+				}
+				offset += 12 + moves.size() * (4L + 2 * valueSize);
+				nrofInstances++;
+
+				if (offset - blockStart >= blockSize) {
+					blocks.add(new long[] {blockStart, offset - blockStart,
+							nrofInstances});
+					blockStart = offset;
+					nrofInstances = 0;
+				}
+			}
+			if (nrofInstances > 0) {
+				blocks.add(new long[] {blockStart, offset - blockStart,
+						nrofInstances});
+			}
+
+			out.writeInt(ids.size());
+			for (String id : ids) {
+				out.writeUTF(id);
+			}
+			out.writeInt(blocks.size());
+			for (int i = 0; i < blocks.size(); i++) {
+				long[] block = blocks.get(i);
+				out.writeLong(block[0]);
+				out.writeInt((int)block[1]);
+				out.writeDouble(firstTimes.get(i));
+				out.writeInt((int)block[2]);
+			}
+			out.writeLong(offset);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -10,7 +10,6 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.Collection;
 import java.util.Hashtable;
-import java.util.List;
 import java.util.Map;
 
 import movement.map.MapNode;
@@ -92,35 +91,35 @@ public class WKTMapReader extends WKTReader {
 	 */
 	public void addPaths(Reader input, int nodeType) throws IOException {
 		this.nodeType = nodeType;
-		String type;
-		String contents;
 
-		init(input);
-
-		while((type = nextType()) != null) {
-			if (type.equals(LINESTRING)) {
-				contents = readNestedContents();
-				updateMap(parseLineString(contents));
+		new WKTParser(input).parse(new WKTParser.Handler() {
+			@Override
+			public void lineString(double[] coords, int nrofPoints) {
+				updateMap(coords, 0, nrofPoints);
 			}
-			else if (type.equals(MULTILINESTRING)) {
-				for (List<Coord> list : parseMultilinestring()) {
-					updateMap(list);
+
+			@Override
+			public void multiLineString(double[] coords, int[] lineEnds,
+					int nrofLines) {
+				int start = 0;
+				for (int i = 0; i < nrofLines; i++) {
+					updateMap(coords, start, lineEnds[i]);
+					start = lineEnds[i];
 				}
 			}
-			else {
-				// known type but not interesting -> skip
-				readNestedContents();
-			}
-		}
+		});
 	}
 
 	/**
-	 * Updates simulation map with coordinates in the list
-	 * @param coords The list of coordinates
+	 * Updates simulation map with coordinates of a line
+	 * @param coords The coordinates (x and y of each point)
+	 * @param start Index of the first point of the line
+	 * @param end Index of the point after the last point of the line
 	 */
-	private void updateMap(List<Coord> coords) {
+	private void updateMap(double[] coords, int start, int end) {
 		MapNode previousNode = null;
-		for (Coord c : coords) {
+		for (int i = start; i < end; i++) {
+			Coord c = new Coord(coords[2*i], coords[2*i + 1]);
 			previousNode = createOrUpdateNode(c, previousNode);
 		}
 	}
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Streaming parser for "Well-known text syntax" data. The parser reads the
+ * characters from the input through its own buffer, parses the coordinate
+ * values directly from the characters and gives the coordinates of every
+ * <CODE>POINT</CODE>, <CODE>LINESTRING</CODE> and
+ * <CODE>MULTILINESTRING</CODE> to a {@link Handler} in primitive arrays.
+ * All other types are skipped. Coordinate tuples may have more than two
+ * values; only the first two (x and y) are used.
+ * <P>The coordinate values are exactly the ones {@link Double#parseDouble}
+ * gives: values whose digits fit in the 53 bit mantissa of a double (e.g.,
+ * all values with at most 15 digits) are converted with a single correctly
+ * rounded division and the rest with {@link Double#parseDouble}.</P>
+ */
+public class WKTParser {
+	/** size of the character buffer */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/** initial size of the coordinate array */
+	private static final int INIT_COORDS = 256;
+	/** biggest mantissa that is exactly representable as a double */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	/** powers of ten that are exactly representable as doubles */
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4,
+		1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+		1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	/** end of input "character" */
+	private static final int EOF = -1;
+
+	private final Reader input;
+	private final char[] buffer;
+	/** position of the next character in the buffer */
+	private int pos;
+	/** number of characters in the buffer */
+	private int limit;
+
+	/** characters of the current word or number */
+	private char[] token;
+	/** x and y values of the coordinates of the current type */
+	private double[] coords;
+	/** number of values in the coordinate array */
+	private int nrofValues;
+	/** end indices (in points) of the lines of a multilinestring */
+	private int[] lineEnds;
+
+	/**
+	 * Handler of the parsed data. The coordinate arrays are reused by the
+	 * parser, so the handler must copy the values it wants to keep. The
+	 * default implementations ignore the data.
+	 */
+	public static abstract class Handler {
+		/**
+		 * Called for every <CODE>POINT</CODE>
+		 * @param x The x coordinate
+		 * @param y The y coordinate
+		 * @throws IOException if the handler can't handle the data
+		 */
+		public void point(double x, double y) throws IOException { }
+
+		/**
+		 * Called for every <CODE>LINESTRING</CODE>
+		 * @param coords The coordinates: x of the first point, y of the
+		 * first point, x of the second point, etc.
+		 * @param nrofPoints Number of points in the line
+		 * @throws IOException if the handler can't handle the data
+		 */
+		public void lineString(double[] coords, int nrofPoints)
+			throws IOException { }
+
+		/**
+		 * Called for every <CODE>MULTILINESTRING</CODE>
+		 * @param coords The coordinates of all the lines (as in
+		 * {@link #lineString(double[], int)})
+		 * @param lineEnds The end (exclusive) point indices of the lines:
+		 * line <CODE>i</CODE> has the points from
+		 * <CODE>lineEnds[i-1]</CODE> (or 0) to <CODE>lineEnds[i]-1</CODE>
+		 * @param nrofLines Number of lines
+		 * @throws IOException if the handler can't handle the data
+		 */
+		public void multiLineString(double[] coords, int[] lineEnds,
+				int nrofLines) throws IOException { }
+	}
+
+	/**
+	 * Constructor.
+	 * @param input The input to read the data from
+	 */
+	public WKTParser(Reader input) {
+		this.input = input;
+		this.buffer = new char[BUFFER_SIZE];
+		this.pos = 0;
+		this.limit = 0;
+		this.token = new char[64];
+		this.coords = new double[INIT_COORDS];
+		this.lineEnds = new int[16];
+	}
+
+	/**
+	 * Parses all the data from the input
+	 * @param handler The handler to give the parsed data to
+	 * @throws IOException if the input can't be read or its data is invalid
+	 */
+	public void parse(Handler handler) throws IOException {
+		String type;
+		while ((type = readWord()) != null) {
+			if (type.equals(WKTReader.POINT)) {
+				skipUntil('(');
+				nrofValues = 0;
+				readCoordinates();
+				if (nrofValues < 2) {
+					throw new IOException("Bad coordinate values in POINT");
+				}
+				handler.point(coords[0], coords[1]);
+			}
+			else if (type.equals(WKTReader.LINESTRING)) {
+				skipUntil('(');
+				nrofValues = 0;
+				readCoordinates();
+				handler.lineString(coords, nrofValues / 2);
+			}
+			else if (type.equals(WKTReader.MULTILINESTRING)) {
+				int nrofLines = readMultiLineString();
+				handler.multiLineString(coords, lineEnds, nrofLines);
+			}
+			else {
+				// known type but not interesting -> skip
+				skipNested();
+			}
+		}
+	}
+
+	/**
+	 * Reads the lines of a multilinestring to the coordinate array
+	 * @return Number of lines read
+	 */
+	private int readMultiLineString() throws IOException {
+		int nrofLines = 0;
+		nrofValues = 0;
+		skipUntil('(');
+
+		while (true) {
+			int c = skipWhitespace();
+			if (c == '(') {
+				readCoordinates();
+				if (nrofLines == lineEnds.length) {
+					lineEnds = Arrays.copyOf(lineEnds, nrofLines * 2);
+				}
+				lineEnds[nrofLines++] = nrofValues / 2;
+			}
+			else if (c == ')' || c == EOF) {
+				return nrofLines;
+			}
+			// else: a comma between the lines
+		}
+	}
+
+	/**
+	 * Reads coordinate tuples until the closing parenthesis and appends
+	 * them to the coordinate array. The opening parenthesis must have been
+	 * read already.
+	 */
+	private void readCoordinates() throws IOException {
+		int c = skipWhitespace();
+		while (c != ')') {
+			if (c == EOF) {
+				throw new IOException("Unexpected end of WKT data");
+			}
+			pos--; // the first character of the x value
+			double x = readNumber();
+			double y = readNumber();
+			if (nrofValues + 2 > coords.length) {
+				coords = Arrays.copyOf(coords, coords.length * 2);
+			}
+			coords[nrofValues++] = x;
+			coords[nrofValues++] = y;
+
+			// skip the possible extra values (e.g., z) of the tuple
+			c = skipWhitespace();
+			while (c != ',' && c != ')') {
+				if (c == EOF) {
+					throw new IOException("Unexpected end of WKT data");
+				}
+				pos--;
+				readNumber();
+				c = skipWhitespace();
+			}
+			if (c == ',') {
+				c = skipWhitespace();
+			}
+		}
+	}
+
+	/**
+	 * Reads a whitespace, comma or parenthesis delimited number
+	 * @return The value of the number
+	 * @throws IOException if the number is not valid
+	 */
+	private double readNumber() throws IOException {
+		int length = readToken();
+		char[] t = this.token;
+		int i = 0;
+		boolean negative = false;
+		if (length > 0 && t[0] == '-') {
+			negative = true;
+			i = 1;
+		}
+
+		long mantissa = 0;
+		int fractionDigits = 0;
+		boolean dot = false;
+		boolean digits = false;
+		for (; i < length; i++) {
+			char c = t[i];
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				if (mantissa > MAX_EXACT_MANTISSA) {
+					return parseDouble(length); // too many digits
+				}
+				digits = true;
+				if (dot) {
+					fractionDigits++;
+				}
+			}
+			else if (c == '.' && !dot) {
+				dot = true;
+			}
+			else {
+				return parseDouble(length); // exponent, sign, etc.
+			}
+		}
+
+		if (!digits || fractionDigits >= POWERS_OF_TEN.length) {
+			return parseDouble(length);
+		}
+
+		/* both the mantissa and the power of ten are exact doubles, so the
+		 * division is rounded correctly, as Double.parseDouble rounds */
+		double value = mantissa / POWERS_OF_TEN[fractionDigits];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses the current token with {@link Double#parseDouble(String)}
+	 * @param length Length of the token
+	 * @return The value of the token
+	 * @throws IOException if the token is not a valid number
+	 */
+	private double parseDouble(int length) throws IOException {
+		String s = new String(token, 0, length);
+		try {
+			return Double.parseDouble(s);
+		} catch (NumberFormatException e) {
+			throw new IOException("Bad coordinate value: '" + s + "'");
+		}
+	}
+
+	/**
+	 * Reads the next whitespace or parenthesis delimited word
+	 * @return The word or null if there are no more words
+	 */
+	private String readWord() throws IOException {
+		int length;
+		while ((length = readToken()) == 0) {
+			if (read() == EOF) {
+				return null;
+			}
+			// else: skipped a delimiter that was not after a type
+		}
+		return new String(token, 0, length);
+	}
+
+	/**
+	 * Skips whitespace and reads the following characters until the next
+	 * whitespace, comma or parenthesis to the token array
+	 * @return Length of the token
+	 */
+	private int readToken() throws IOException {
+		int length = 0;
+		int c = skipWhitespace();
+		while (c != EOF && c != ',' && c != '(' && c != ')' &&
+				!Character.isWhitespace(c)) {
+			if (length == token.length) {
+				token = Arrays.copyOf(token, length * 2);
+			}
+			token[length++] = (char)c;
+			c = read();
+		}
+		if (c != EOF) {
+			pos--; // leave the delimiter to the buffer
+		}
+		return length;
+	}
+
+	/**
+	 * Skips the contents from the next opening parenthesis to the matching
+	 * closing parenthesis
+	 */
+	private void skipNested() throws IOException {
+		skipUntil('(');
+		int parOpen = 1;
+		while (parOpen > 0) {
+			int c = read();
+			if (c == '(') {
+				parOpen++;
+			}
+			else if (c == ')') {
+				parOpen--;
+			}
+			else if (c == EOF) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads and skips all characters until character "until" is read or
+	 * end of input is reached. Also the expected character is discarded.
+	 * @param until What character to expect
+	 */
+	private void skipUntil(char until) throws IOException {
+		int c;
+		do {
+			c = read();
+		} while (c != until && c != EOF);
+	}
+
+	/**
+	 * Skips all consecutive whitespace characters
+	 * @return First non-whitespace character (or {@link #EOF})
+	 */
+	private int skipWhitespace() throws IOException {
+		int c;
+		do {
+			c = read();
+		} while (c != EOF && Character.isWhitespace(c));
+		return c;
+	}
+
+	/**
+	 * Reads the next character. After reading a character (that was not
+	 * {@link #EOF}), it can be put back with <CODE>pos--</CODE>.
+	 * @return The character or {@link #EOF}
+	 */
+	private int read() throws IOException {
+		if (pos == limit) {
+			int n = input.read(buffer, 0, buffer.length);
+			if (n <= 0) {
+				return EOF;
+			}
+			pos = 0;
+			limit = n;
+		}
+		return buffer[pos++];
+	}
+}
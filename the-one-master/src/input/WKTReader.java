@@ -21,6 +21,7 @@ import core.Coord;
  * <A HREF="http://en.wikipedia.org/wiki/Well-known_text">Wikipedia</A> for
  * WKT syntax details. For example, <A HREF="http://openjump.org/">Open JUMP</A>
  * GIS program can save compatible data from many other formats.<BR>
+ * The points and lines are parsed with {@link WKTParser}.
  */
 public class WKTReader {
 	/** known WKT type LINESTRING */
@@ -52,20 +53,14 @@ public class WKTReader {
 	 * @throws IOException if something went wrong while reading
 	 */
 	public List<Coord> readPoints(Reader r) throws IOException {
-		List<Coord> points = new ArrayList<Coord>();
+		final List<Coord> points = new ArrayList<Coord>();
 
-		String type;
-		init(r);
-
-		while((type = nextType()) != null) {
-			if (type.equals(POINT)) {
-				points.add(parsePoint());
-			}
-			else {
-				// known type but not interesting -> skip
-				readNestedContents();
+		new WKTParser(r).parse(new WKTParser.Handler() {
+			@Override
+			public void point(double x, double y) {
+				points.add(new Coord(x,y));
 			}
-		}
+		});
 
 		return points;
 	}
@@ -77,20 +72,18 @@ public class WKTReader {
 	 * @throws IOException if something went wrong while reading
 	 */
 	public List<List<Coord>> readLines(File file) throws IOException {
-		List<List<Coord>> lines = new ArrayList<List<Coord>>();
-
-		String type;
-		init(new FileReader(file));
-
-		while((type = nextType()) != null) {
-			if (type.equals(LINESTRING)) {
-				lines.add(parseLineString(readNestedContents()));
-			}
-			else {
-				// known type but not interesting -> skip
-				readNestedContents();
+		final List<List<Coord>> lines = new ArrayList<List<Coord>>();
+
+		new WKTParser(new FileReader(file)).parse(new WKTParser.Handler() {
+			@Override
+			public void lineString(double[] coords, int nrofPoints) {
+				List<Coord> line = new ArrayList<Coord>(nrofPoints);
+				for (int i = 0; i < nrofPoints; i++) {
+					line.add(new Coord(coords[2*i], coords[2*i + 1]));
+				}
+				lines.add(line);
 			}
-		}
+		});
 
 		return lines;
 	}
@@ -5,16 +5,23 @@
 package interfaces;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import movement.MovementModel;
 
+import core.Connection;
 import core.Coord;
+import core.DTNHost;
 import core.DTNSim;
+import core.HostStates;
 import core.NetworkInterface;
 import core.Settings;
 import core.SettingsError;
+import core.SimClock;
 import core.World;
 
 /**
@@ -54,14 +61,90 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
 
-	private GridCell[][] cells;
-	private HashMap<NetworkInterface, GridCell> ginterfaces;
+	/**
+	 * Pairwise contact detection -setting id ({@value}). Boolean. Used in
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} name space. If true, the
+	 * contacts are detected once per update for all interfaces of a grid
+	 * (see {@link #detectAllContacts()}): every nearby pair of interfaces
+	 * is checked only once and the interfaces only apply the changes.
+	 * The connections are then created before any host is updated, so
+	 * the results differ from the default, per interface detection.
+	 * Default = false.
+	 */
+	public static final String PAIRWISE_CONTACTS_S = "pairwiseContacts";
+
+	/**
+	 * Kinetic contact detection -setting id ({@value}). Boolean. Used in
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} name space. If true, the
+	 * contacts are detected pairwise (like with {@link #PAIRWISE_CONTACTS_S})
+	 * but, instead of comparing only the hosts' locations at the end of the
+	 * update interval, the exact times when the hosts' paths come into and go
+	 * out of range during the interval are solved from the hosts' moves.
+	 * The connections are created and torn down in time order at the end of
+	 * the interval and the connection listeners (reports) get the time of
+	 * each contact event (see
+	 * {@link NetworkInterface#getConnectionEventTime()}), so contacts that
+	 * are shorter than the update interval are not missed and the reported
+	 * contact times don't depend on the update interval. The cell size
+	 * (see {@link #CELL_SIZE_MULT_S}) must be at least the range plus twice
+	 * the distance a host can move during one update interval.
+	 * Default = false.
+	 */
+	public static final String KINETIC_CONTACTS_S = "kineticContacts";
+
+	/** how large the cells' index arrays are initially */
+	private static final int EXPECTED_INTERFACE_COUNT = 5;
+
+	/** indices of the interfaces in each cell (cell = row * width + col) */
+	private int[][] cellMembers;
+	/** number of interfaces in each cell */
+	private int[] cellSizes;
+	/** the interfaces of the grid by their index */
+	private NetworkInterface[] interfaces;
+	/** the cell of each interface by its index */
+	private int[] interfaceCells;
+	/** number of interfaces in the grid */
+	private int nrofInterfaces;
+	/** width of the cell matrix (including the empty border cells) */
+	private int width;
 	private int cellSize;
 	private int rows;
 	private int cols;
 	private static int worldSizeX;
 	private static int worldSizeY;
 	private static int cellSizeMultiplier;
+	private static boolean pairwiseContacts;
+	private static boolean kineticContacts;
+
+	/* packed state of the interfaces for the contact detection */
+	private double[] xs;
+	private double[] ys;
+	private double[] ranges;
+	/** is the radio of the interface's host active */
+	private boolean[] radioActive;
+	/** is the interface scanning */
+	private boolean[] scanning;
+	/** detection round when the interface was last marked connected */
+	private int[] connectedMark;
+	/** current detection round of {@link #connectedMark} */
+	private int markRound;
+
+	/* state of the kinetic contact detection */
+	/** locations of the interfaces at the previous detection */
+	private double[] prevXs;
+	private double[] prevYs;
+	/** time of the previous detection (NaN if the interfaces have changed
+	 * after it) */
+	private double lastDetection;
+	/** trajectories (time, x, y) of the two interfaces being checked */
+	private double[] trajectoryA;
+	private double[] trajectoryB;
+	private int trajectoryLength;
+	/** how far the interfaces have moved since the previous detection */
+	private double[] travels;
+	private KineticContacts kinetics;
+	/** true if too small cell size has been already warned about */
+	private boolean cellSizeWarned;
 
 	static HashMap<Integer,ConnectivityGrid> gridobjects;
 
@@ -90,6 +173,23 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 					") for " + World.OPTIMIZATION_SETTINGS_NS +
 					"." + CELL_SIZE_MULT_S);
 		}
+		pairwiseContacts = s.getBoolean(PAIRWISE_CONTACTS_S, false);
+		kineticContacts = s.getBoolean(KINETIC_CONTACTS_S, false);
+	}
+
+	/**
+	 * Detects the contacts of all the grids' interfaces if pairwise
+	 * contact detection is enabled (see {@link #PAIRWISE_CONTACTS_S} and
+	 * {@link #KINETIC_CONTACTS_S}). Should be called before updating the
+	 * hosts.
+	 */
+	public static void detectAllContacts() {
+		if (!pairwiseContacts && !kineticContacts) {
+			return;
+		}
+		for (ConnectivityGrid grid : gridobjects.values()) {
+			grid.detectContacts();
+		}
 	}
 
 	/**
@@ -101,15 +201,25 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		this.rows = worldSizeY/cellSize + 1;
 		this.cols = worldSizeX/cellSize + 1;
 		// leave empty cells on both sides to make neighbor search easier
-		this.cells = new GridCell[rows+2][cols+2];
+		this.width = cols + 2;
+		this.cellMembers = new int[(rows+2) * width][];
+		this.cellSizes = new int[(rows+2) * width];
 		this.cellSize = cellSize;
 
-		for (int i=0; i<rows+2; i++) {
-			for (int j=0; j<cols+2; j++) {
-				this.cells[i][j] = new GridCell();
-			}
+		for (int i=0; i<cellMembers.length; i++) {
+			this.cellMembers[i] = new int[EXPECTED_INTERFACE_COUNT];
+		}
+		this.interfaces = new NetworkInterface[EXPECTED_INTERFACE_COUNT];
+		this.interfaceCells = new int[EXPECTED_INTERFACE_COUNT];
+		this.nrofInterfaces = 0;
+		this.connectedMark = new int[0];
+		this.markRound = 0;
+		this.lastDetection = Double.NaN;
+		if (kineticContacts) {
+			this.trajectoryA = new double[3 * 4];
+			this.trajectoryB = new double[3 * 4];
+			this.kinetics = new KineticContacts();
 		}
-		ginterfaces = new HashMap<NetworkInterface,GridCell>();
 	}
 
 	/**
@@ -133,13 +243,30 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 
 	/**
-	 * Adds a network interface to the overlay grid
+	 * Adds a network interface to the overlay grid (unless it is already
+	 * present)
 	 * @param ni The new network interface
 	 */
 	public void addInterface(NetworkInterface ni) {
-		GridCell c = cellFromCoord(ni.getLocation());
-		c.addInterface(ni);
-		ginterfaces.put(ni,c);
+		if (indexOf(ni) >= 0) {
+			return;
+		}
+		if (nrofInterfaces == interfaces.length) {
+			interfaces = Arrays.copyOf(interfaces, nrofInterfaces * 2);
+			interfaceCells = Arrays.copyOf(interfaceCells, nrofInterfaces * 2);
+		}
+
+		int index = nrofInterfaces++;
+		int cell = cellFromCoord(ni.getLocation());
+		interfaces[index] = ni;
+		interfaceCells[index] = cell;
+		ni.setOptimizerIndex(index);
+		addToCell(cell, index);
+
+		if (kineticContacts) {
+			ni.getHost().traceMoves();
+			lastDetection = Double.NaN; /* no previous location for this one */
+		}
 	}
 
 	/**
@@ -147,11 +274,30 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to be removed
 	 */
 	public void removeInterface(NetworkInterface ni) {
-		GridCell c = ginterfaces.get(ni);
-		if (c != null) {
-			c.removeInterface(ni);
+		int index = indexOf(ni);
+		if (index < 0) {
+			return;
 		}
-		ginterfaces.remove(ni);
+		removeFromCell(interfaceCells[index], index);
+		ni.setOptimizerIndex(-1);
+
+		/* move the last interface to the freed index */
+		int last = --nrofInterfaces;
+		if (index != last) {
+			int cell = interfaceCells[last];
+			int[] members = cellMembers[cell];
+			for (int i=0, n = cellSizes[cell]; i < n; i++) {
+				if (members[i] == last) {
+					members[i] = index;
+					break;
+				}
+			}
+			interfaces[index] = interfaces[last];
+			interfaceCells[index] = cell;
+			interfaces[index].setOptimizerIndex(index);
+		}
+		interfaces[last] = null;
+		lastDetection = Double.NaN;
 	}
 
 	/**
@@ -169,63 +315,102 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to update
 	 */
 	public void updateLocation(NetworkInterface ni) {
-		GridCell oldCell = (GridCell)ginterfaces.get(ni);
-		GridCell newCell = cellFromCoord(ni.getLocation());
+		int index = ni.getOptimizerIndex();
+		moveToCell(index, cellFromCoord(ni.getLocation()));
+	}
 
+	/**
+	 * Moves an interface to a cell (if it isn't there already)
+	 * @param index Index of the interface
+	 * @param newCell The cell
+	 */
+	private void moveToCell(int index, int newCell) {
+		int oldCell = interfaceCells[index];
 		if (newCell != oldCell) {
-			oldCell.moveInterface(ni, newCell);
-			ginterfaces.put(ni,newCell);
+			addToCell(newCell, index);
+			removeFromCell(oldCell, index);
+			interfaceCells[index] = newCell;
 		}
 	}
 
 	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
-	 * @return Array of neighboring cells
+	 * Returns the index of an interface in this grid
+	 * @param ni The interface
+	 * @return The index or -1 if the interface is not in this grid
 	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
-		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
-		return getNeighborCells(row,col);
+	private int indexOf(NetworkInterface ni) {
+		int index = ni.getOptimizerIndex();
+		if (index >= 0 && index < nrofInterfaces && interfaces[index] == ni) {
+			return index;
+		}
+		return -1;
 	}
 
 	/**
-	 * Returns an array of Cells that contains the neighbors of a certain
-	 * cell and the cell itself.
-	 * @param row Row index of the cell
-	 * @param col Column index of the cell
-	 * @return Array of neighboring Cells
+	 * Appends an interface index to a cell
+	 * @param cell The cell
+	 * @param index Index of the interface
 	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] {
-			cells[row-1][col-1],cells[row-1][col],cells[row-1][col+1],//1st row
-			cells[row][col-1],cells[row][col],cells[row][col+1],//2nd row
-			cells[row+1][col-1],cells[row+1][col],cells[row+1][col+1]//3rd row
-		};
+	private void addToCell(int cell, int index) {
+		int size = cellSizes[cell];
+		if (size == cellMembers[cell].length) {
+			cellMembers[cell] = Arrays.copyOf(cellMembers[cell], size * 2);
+		}
+		cellMembers[cell][size] = index;
+		cellSizes[cell] = size + 1;
+	}
+
+	/**
+	 * Removes an interface index from a cell keeping the order of the other
+	 * interfaces in the cell
+	 * @param cell The cell
+	 * @param index Index of the interface
+	 */
+	private void removeFromCell(int cell, int index) {
+		int[] members = cellMembers[cell];
+		int size = cellSizes[cell];
+		int i = 0;
+		while (i < size && members[i] != index) {
+			i++;
+		}
+		assert i < size : "interface " + interfaces[index] +
+			" not found from cell " + cell;
+		System.arraycopy(members, i + 1, members, i, size - i - 1);
+		cellSizes[cell] = size - 1;
 	}
 
 	/**
 	 * Get the cell having the specific coordinates
 	 * @param c Coordinates
-	 * @return The cell
+	 * @return Index of the cell
+	 */
+	private int cellFromCoord(Coord c) {
+		return cellFromCoord(c.getX(), c.getY());
+	}
+
+	/**
+	 * Get the cell having the specific coordinates
+	 * @param x The x coordinate
+	 * @param y The y coordinate
+	 * @return Index of the cell
 	 */
-	private GridCell cellFromCoord(Coord c) {
+	private int cellFromCoord(double x, double y) {
 		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
+		int row = (int)(y/cellSize) + 1;
+		int col = (int)(x/cellSize) + 1;
 
-		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " +
-		c + " is out of world's bounds";
+		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location (" +
+		x + "," + y + ") is out of world's bounds";
 
-		return this.cells[row][col];
+		return row * width + col;
 	}
 
 	/**
 	 * Returns all interfaces that use the same technology and channel
 	 */
 	public Collection<NetworkInterface> getAllInterfaces() {
-		return (Collection<NetworkInterface>)ginterfaces.keySet();
+		return Collections.unmodifiableList(
+				Arrays.asList(interfaces).subList(0, nrofInterfaces));
 	}
 
 	/**
@@ -236,88 +421,414 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni) {
-		ArrayList<NetworkInterface> niList = new ArrayList<NetworkInterface>();
-		GridCell loc = (GridCell)ginterfaces.get(ni);
-
-		if (loc != null) {
-			GridCell[] neighbors =
-				getNeighborCellsByCoord(ni.getLocation());
-			for (int i=0; i < neighbors.length; i++) {
-				niList.addAll(neighbors[i].getInterfaces());
+		final ArrayList<NetworkInterface> niList =
+			new ArrayList<NetworkInterface>();
+		visitNearInterfaces(ni, new InterfaceVisitor() {
+			public void visit(NetworkInterface near) {
+				niList.add(near);
 			}
+		});
+		return niList;
+	}
+
+	/**
+	 * Calls the visitor for every interface in the same or neighboring grid
+	 * cells as the given interface (including the interface itself), in the
+	 * same order as {@link #getNearInterfaces(NetworkInterface)} returns
+	 * them. Doesn't allocate any memory. The visitor must not add, remove or
+	 * move interfaces.
+	 * @param ni The interface whose neighboring interfaces are visited
+	 * @param visitor The visitor
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		if (indexOf(ni) < 0) {
+			return;
 		}
 
-		return niList;
+		int center = cellFromCoord(ni.getLocation());
+		for (int row = center - width; row <= center + width; row += width) {
+			for (int cell = row - 1; cell <= row + 1; cell++) {
+				int[] members = cellMembers[cell];
+				for (int i=0, n = cellSizes[cell]; i < n; i++) {
+					visitor.visit(interfaces[members[i]]);
+				}
+			}
+		}
 	}
 
+	/**
+	 * Returns true if pairwise or kinetic contact detection is enabled
+	 */
+	@Override
+	public boolean detectsContacts() {
+		return pairwiseContacts || kineticContacts;
+	}
 
 	/**
-	 * Returns a string representation of the ConnectivityCells object
-	 * @return a string representation of the ConnectivityCells object
+	 * Detects the contacts of all the interfaces in this grid: tears down
+	 * the connections that have gone out of range and connects the
+	 * interfaces that have come into range. Every pair of interfaces in the
+	 * same or neighboring cells is checked only once, using the squared
+	 * distance. Like in {@link NetworkInterface#connect(NetworkInterface)},
+	 * an interface can connect to another if it is scanning and the radio
+	 * of the other host is active. With kinetic contact detection the
+	 * changes are first collected as contact events and then applied in
+	 * time order (see {@link #KINETIC_CONTACTS_S}).
 	 */
-	public String toString() {
-		return getClass().getSimpleName() + " of size " +
-			this.cols + "x" + this.rows + ", cell size=" + this.cellSize;
+	public void detectContacts() {
+		packInterfaces();
+		boolean kinetic = kineticContacts && !Double.isNaN(lastDetection);
+		if (kinetic) {
+			kinetics.clearEvents();
+			computeTravels();
+		}
+
+		/* tear down the connections that have gone out of range */
+		for (int i=0; i < nrofInterfaces; i++) {
+			NetworkInterface ni = interfaces[i];
+			List<Connection> cons = ni.getConnections();
+			for (int k=0; k < cons.size(); ) {
+				NetworkInterface other = cons.get(k).getOtherInterface(ni);
+				int j = indexOf(other);
+				if (j >= 0 && j < i) {
+					k++; /* checked already from the other end */
+				}
+				else if (kinetic && j >= 0) {
+					addContactEvents(i, j, true);
+					k++;
+				}
+				else if (!isWithinRange(i, j, other)) {
+					ni.disconnect(k);
+				}
+				else {
+					k++;
+				}
+			}
+		}
+
+		/* connect the pairs that have come into range; each pair of cells
+		   is visited once: the cell itself and the next four neighbors */
+		for (int cell = width + 1, n = cellMembers.length - width - 1;
+				cell < n; cell++) {
+			int[] members = cellMembers[cell];
+			for (int p=0, size = cellSizes[cell]; p < size; p++) {
+				int i = members[p];
+				markConnected(i);
+				for (int q = p + 1; q < size; q++) {
+					tryConnect(i, members[q]);
+				}
+				tryConnectAll(i, cell + 1);
+				tryConnectAll(i, cell + width - 1);
+				tryConnectAll(i, cell + width);
+				tryConnectAll(i, cell + width + 1);
+			}
+		}
+
+		if (kinetic) {
+			applyContactEvents();
+		}
+		if (kineticContacts) {
+			savePositions();
+		}
 	}
 
 	/**
-	 * A single cell in the cell grid. Contains the interfaces that are
-	 * currently in that part of the grid.
+	 * Copies the locations, ranges, radio activeness and scanning state of
+	 * the interfaces to the packed arrays and updates the interfaces' cells
 	 */
-	public class GridCell {
-		// how large array is initially chosen
-		private static final int EXPECTED_INTERFACE_COUNT = 5;
-		private ArrayList<NetworkInterface> interfaces;
+	private void packInterfaces() {
+		if (connectedMark.length < nrofInterfaces) {
+			int capacity = interfaces.length;
+			xs = new double[capacity];
+			ys = new double[capacity];
+			ranges = new double[capacity];
+			radioActive = new boolean[capacity];
+			scanning = new boolean[capacity];
+			connectedMark = new int[capacity];
+			markRound = 0;
+		}
 
-		private GridCell() {
-			this.interfaces = new ArrayList<NetworkInterface>(
-					EXPECTED_INTERFACE_COUNT);
+		double[] hostXs = HostStates.getXs();
+		double[] hostYs = HostStates.getYs();
+		for (int i=0; i < nrofInterfaces; i++) {
+			NetworkInterface ni = interfaces[i];
+			DTNHost host = ni.getHost();
+			xs[i] = hostXs[host.getAddress()];
+			ys[i] = hostYs[host.getAddress()];
+			moveToCell(i, cellFromCoord(xs[i], ys[i]));
+			ranges[i] = ni.getTransmitRange();
+			radioActive[i] = host.isRadioActive();
+			scanning[i] = radioActive[i] && ni.isScanning();
 		}
+	}
 
-		/**
-		 * Returns a list of of interfaces in this cell
-		 * @return a list of of interfaces in this cell
-		 */
-		public ArrayList<NetworkInterface> getInterfaces() {
-			return this.interfaces;
+	/**
+	 * Returns true if two interfaces are within each others' range
+	 * @param i Index of the first interface
+	 * @param j Index of the other interface or -1 if it's not in this grid
+	 * @param other The other interface
+	 * @return True if the interfaces are within range
+	 */
+	private boolean isWithinRange(int i, int j, NetworkInterface other) {
+		double dx, dy, range;
+		if (j >= 0) {
+			dx = xs[i] - xs[j];
+			dy = ys[i] - ys[j];
+			range = Math.min(ranges[i], ranges[j]);
 		}
+		else {
+			Coord c = other.getLocation();
+			dx = xs[i] - c.getX();
+			dy = ys[i] - c.getY();
+			range = Math.min(ranges[i], other.getTransmitRange());
+		}
+		return dx*dx + dy*dy <= range*range;
+	}
 
-		/**
-		 * Adds an interface to this cell
-		 * @param ni The interface to add
-		 */
-		public void addInterface(NetworkInterface ni) {
-			this.interfaces.add(ni);
+	/**
+	 * Marks the interfaces that are connected to the given interface
+	 * @param i Index of the interface
+	 */
+	private void markConnected(int i) {
+		if (markRound == Integer.MAX_VALUE) {
+			Arrays.fill(connectedMark, 0);
+			markRound = 0;
+		}
+		markRound++;
+
+		NetworkInterface ni = interfaces[i];
+		List<Connection> cons = ni.getConnections();
+		for (int k=0, n = cons.size(); k < n; k++) {
+			int j = indexOf(cons.get(k).getOtherInterface(ni));
+			if (j >= 0) {
+				connectedMark[j] = markRound;
+			}
 		}
+	}
 
-		/**
-		 * Removes an interface from this cell
-		 * @param ni The interface to remove
-		 */
-		public void removeInterface(NetworkInterface ni) {
-			this.interfaces.remove(ni);
+	/**
+	 * Tries to connect an interface to all interfaces in a cell
+	 * @param i Index of the interface (whose connections are marked)
+	 * @param cell The cell
+	 */
+	private void tryConnectAll(int i, int cell) {
+		int[] members = cellMembers[cell];
+		for (int q=0, size = cellSizes[cell]; q < size; q++) {
+			tryConnect(i, members[q]);
 		}
+	}
 
-		/**
-		 * Moves a interface in a Cell to another Cell
-		 * @param ni The interface to move
-		 * @param to The cell where the interface should be moved to
-		 */
-		public void moveInterface(NetworkInterface ni, GridCell to) {
-			to.addInterface(ni);
-			boolean removeOk = this.interfaces.remove(ni);
-			assert removeOk : "interface " + ni +
-				" not found from cell with " + interfaces.toString();
+	/**
+	 * Connects two interfaces if they are within range, not connected yet
+	 * and one of them is scanning while the other one's radio is active
+	 * @param i Index of the interface whose connections are marked
+	 * @param j Index of the other interface
+	 */
+	private void tryConnect(int i, int j) {
+		if (connectedMark[j] == markRound) {
+			return;
 		}
+		if (kinetics != null && !Double.isNaN(lastDetection)) {
+			addContactEvents(i, j, false);
+			return;
+		}
+		if (!isWithinRange(i, j, null)) {
+			return;
+		}
+		if (scanning[i] && radioActive[j]) {
+			interfaces[i].createConnection(interfaces[j]);
+		}
+		else if (scanning[j] && radioActive[i]) {
+			interfaces[j].createConnection(interfaces[i]);
+		}
+	}
 
-		/**
-		 * Returns a string representation of the cell
-		 * @return a string representation of the cell
-		 */
-		public String toString() {
-			return getClass().getSimpleName() + " with " +
-				this.interfaces.size() + " interfaces :" + this.interfaces;
+	/**
+	 * Finds out when two interfaces come into and go out of range during the
+	 * current update interval and adds the resulting contact events
+	 * @param i Index of the first interface
+	 * @param j Index of the other interface
+	 * @param connected True if the interfaces are connected now
+	 */
+	private void addContactEvents(int i, int j, boolean connected) {
+		double range = Math.min(ranges[i], ranges[j]);
+		double dx = xs[i] - xs[j];
+		double dy = ys[i] - ys[j];
+		double dist = Math.sqrt(dx*dx + dy*dy);
+		double travel = travels[i] + travels[j];
+		if (dist - travel > range && !connected) {
+			return; /* out of range during the whole interval */
 		}
+		if (dist + travel <= range && connected) {
+			return; /* within range during the whole interval */
+		}
+
+		int na = buildTrajectory(i, true);
+		int nb = buildTrajectory(j, false);
+		boolean inRange = kinetics.findFlips(trajectoryA, na, trajectoryB, nb,
+				range);
+
+		/* the initiator of new connections, like in tryConnect */
+		int from = -1;
+		if (scanning[i] && radioActive[j]) {
+			from = i;
+		}
+		else if (scanning[j] && radioActive[i]) {
+			from = j;
+		}
+		int to = (from == i ? j : i);
+
+		boolean state = connected;
+		for (int f = -1, n = kinetics.getNrofFlips(); f < n; f++) {
+			double time = lastDetection;
+			if (f >= 0) {
+				inRange = !inRange;
+				time = kinetics.getFlip(f);
+			}
+			if (inRange == state) {
+				continue;
+			}
+			if (!inRange) {
+				kinetics.addEvent(time, i, j, false);
+				state = false;
+			}
+			else if (from >= 0) {
+				kinetics.addEvent(time, from, to, true);
+				state = true;
+			}
+		}
+	}
+
+	/**
+	 * Builds the trajectory of an interface during the current update
+	 * interval from the location at the previous detection, the moves of the
+	 * host and the current location
+	 * @param i Index of the interface
+	 * @param first True to build to {@link #trajectoryA}, false to
+	 * {@link #trajectoryB}
+	 * @return Number of values in the trajectory
+	 */
+	private int buildTrajectory(int i, boolean first) {
+		double now = SimClock.getTime();
+		DTNHost host = interfaces[i].getHost();
+		double[] trace = host.getMoveTrace();
+
+		trajectoryLength = 0;
+		double[] t = addToTrajectory(first ? trajectoryA : trajectoryB,
+				lastDetection, prevXs[i], prevYs[i]);
+		for (int k=0, n = host.getMoveTraceLength(); k < n; k += 3) {
+			if (trace[k] > lastDetection && trace[k] < now) {
+				t = addToTrajectory(t, trace[k], trace[k+1], trace[k+2]);
+			}
+		}
+		t = addToTrajectory(t, now, xs[i], ys[i]);
+
+		if (first) {
+			trajectoryA = t;
+		}
+		else {
+			trajectoryB = t;
+		}
+		return trajectoryLength;
+	}
+
+	private double[] addToTrajectory(double[] t, double time, double x,
+			double y) {
+		if (trajectoryLength + 3 > t.length) {
+			t = Arrays.copyOf(t, t.length * 2);
+		}
+		t[trajectoryLength++] = time;
+		t[trajectoryLength++] = x;
+		t[trajectoryLength++] = y;
+		return t;
+	}
+
+	/**
+	 * Applies the contact events in time order. The simulation clock is not
+	 * touched: the routers handle the events at the current time and the
+	 * connection listeners get the exact event times (see
+	 * {@link NetworkInterface#getConnectionEventTime()}).
+	 */
+	private void applyContactEvents() {
+		kinetics.sortEvents();
+		for (int n=0, nrof = kinetics.getNrofEvents(); n < nrof; n++) {
+			NetworkInterface from = interfaces[kinetics.getEventFrom(n)];
+			NetworkInterface to = interfaces[kinetics.getEventTo(n)];
+			double time = kinetics.getEventTime(n);
+			if (kinetics.isEventUp(n)) {
+				from.createConnection(to, time);
+			}
+			else {
+				List<Connection> cons = from.getConnections();
+				for (int k=0, size = cons.size(); k < size; k++) {
+					if (cons.get(k).getOtherInterface(from) == to) {
+						from.disconnect(k, time);
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stores the current locations of the interfaces for the next kinetic
+	 * detection
+	 */
+	private void savePositions() {
+		if (prevXs == null || prevXs.length < nrofInterfaces) {
+			prevXs = new double[xs.length];
+			prevYs = new double[xs.length];
+		}
+		System.arraycopy(xs, 0, prevXs, 0, nrofInterfaces);
+		System.arraycopy(ys, 0, prevYs, 0, nrofInterfaces);
+		lastDetection = SimClock.getTime();
+	}
+
+	/**
+	 * Computes how far each interface has moved along its trajectory since
+	 * the previous detection. Warns (once) if the cells are too small for
+	 * the kinetic detection: the interfaces that are within range at some
+	 * point of the update interval must be in the same or neighboring cells
+	 * at the end of it.
+	 */
+	private void computeTravels() {
+		if (travels == null || travels.length < nrofInterfaces) {
+			travels = new double[xs.length];
+		}
+		double maxRange = 0;
+		double maxTravel = 0;
+		for (int i=0; i < nrofInterfaces; i++) {
+			int n = buildTrajectory(i, true);
+			double travel = 0;
+			for (int k=3; k < n; k += 3) {
+				double dx = trajectoryA[k+1] - trajectoryA[k-2];
+				double dy = trajectoryA[k+2] - trajectoryA[k-1];
+				travel += Math.sqrt(dx*dx + dy*dy);
+			}
+			travels[i] = travel;
+			maxRange = Math.max(maxRange, ranges[i]);
+			maxTravel = Math.max(maxTravel, travel);
+		}
+
+		if (!cellSizeWarned && maxRange + 2 * maxTravel > cellSize) {
+			cellSizeWarned = true;
+			System.err.println("Warning: cell size " + cellSize + " is " +
+					"too small for kinetic contact detection (range " +
+					maxRange + ", movement per update " + maxTravel + "); " +
+					"some contacts may be missed. Increase " +
+					World.OPTIMIZATION_SETTINGS_NS + "." + CELL_SIZE_MULT_S);
+		}
+	}
+
+	/**
+	 * Returns a string representation of the ConnectivityCells object
+	 * @return a string representation of the ConnectivityCells object
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of size " +
+			this.cols + "x" + this.rows + ", cell size=" + this.cellSize;
 	}
 
 }
@@ -14,6 +14,18 @@ import core.NetworkInterface;
  */
 abstract public class ConnectivityOptimizer {
 
+	/**
+	 * Interface for classes that want to go through the interfaces found by
+	 * {@link ConnectivityOptimizer#visitNearInterfaces}
+	 */
+	public interface InterfaceVisitor {
+		/**
+		 * Called for every found interface
+		 * @param ni The interface
+		 */
+		public void visit(NetworkInterface ni);
+	}
+
 	/**
 	 * Adds a network interface to the optimizer (unless it is already present)
 	 */
@@ -40,6 +52,34 @@ abstract public class ConnectivityOptimizer {
 	abstract public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
+	/**
+	 * Calls the visitor for all network interfaces that might be located so
+	 * that they can be connected with the network interface. This
+	 * implementation visits the interfaces returned by
+	 * {@link #getNearInterfaces(NetworkInterface)}; optimizers that can
+	 * do the same without creating the collection should override this.
+	 *
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor to call for every interface
+	 */
+	public void visitNearInterfaces(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		for (NetworkInterface near : getNearInterfaces(ni)) {
+			visitor.visit(near);
+		}
+	}
+
+	/**
+	 * Returns true if this optimizer detects the contacts (creates and
+	 * tears down the connections) of its interfaces itself. The interfaces
+	 * then only update their location and the state of their connections.
+	 * This implementation returns false.
+	 * @return true if the optimizer detects the contacts
+	 */
+	public boolean detectsContacts() {
+		return false;
+	}
+
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
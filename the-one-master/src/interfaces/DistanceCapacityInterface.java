@@ -4,7 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
 import core.Connection;
 import core.NetworkInterface;
 import core.Settings;
@@ -77,29 +76,7 @@ public class DistanceCapacityInterface extends NetworkInterface {
 			return; /* nothing to do */
 		}
 
-		// First break the old ones
-		optimizer.updateLocation(this);
-		for (int i=0; i<this.connections.size(); ) {
-			Connection con = this.connections.get(i);
-			NetworkInterface anotherInterface = con.getOtherInterface(this);
-
-			// all connections should be up at this stage
-			assert con.isUp() : "Connection " + con + " was down!";
-
-			if (!isWithinRange(anotherInterface)) {
-				disconnect(con,anotherInterface);
-				connections.remove(i);
-			}
-			else {
-				i++;
-			}
-		}
-		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
-		}
+		updateContacts();
 
 		/* update all connections */
 		for (Connection con : getConnections()) {
@@ -152,6 +129,15 @@ public class DistanceCapacityInterface extends NetworkInterface {
 		return (int)speed;
 	}
 
+	/**
+	 * Returns true if the interface is idle and has no connections (the
+	 * connections are updated on every update)
+	 */
+	@Override
+	public boolean isIdle() {
+		return this.connections.isEmpty() && super.isIdle();
+	}
+
 	/**
 	 * Returns a string representation of the object.
 	 * @return a string representation of the object.
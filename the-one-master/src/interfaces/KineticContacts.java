@@ -0,0 +1,326 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.Arrays;
+
+/**
+ * Computes when two interfaces come into and go out of each other's range
+ * while their hosts move along piecewise linear trajectories, and orders
+ * the resulting contact events by time. Used by {@link ConnectivityGrid}
+ * for kinetic contact detection.
+ * <P>Trajectories are given as consecutive (time, x, y) values with
+ * increasing times. Between the points the host moves along a straight line
+ * at constant speed; before the first and after the last point it stays
+ * still. On every piece where both hosts move linearly, the squared
+ * distance is a quadratic function of time, so the range crossings are the
+ * roots of a quadratic equation.</P>
+ */
+public class KineticContacts {
+	/** relative locations (time, dx, dy) at the merged trajectory points */
+	private double[] relative;
+	/** the times when the in-range state flips (found by the last call) */
+	private double[] flips;
+	private int nrofFlips;
+
+	/* the contact events: time, the interfaces, and up (true) or down */
+	private double[] eventTimes;
+	private int[] eventFrom;
+	private int[] eventTo;
+	private boolean[] eventUp;
+	/** event indices in time order (after sortEvents) */
+	private int[] eventOrder;
+	/** work space for sorting the event indices */
+	private int[] sortBuffer;
+	private int nrofEvents;
+
+	/**
+	 * Constructor.
+	 */
+	public KineticContacts() {
+		this.relative = new double[3 * 8];
+		this.flips = new double[4];
+		this.eventTimes = new double[16];
+		this.eventFrom = new int[16];
+		this.eventTo = new int[16];
+		this.eventUp = new boolean[16];
+		this.eventOrder = new int[16];
+		this.sortBuffer = new int[16];
+	}
+
+	/**
+	 * Finds the times when the distance of two hosts crosses the range.
+	 * @param a Trajectory of the first host
+	 * @param na Number of values in the first trajectory
+	 * @param b Trajectory of the second host
+	 * @param nb Number of values in the second trajectory
+	 * @param range The range
+	 * @return True if the hosts are within range at the first point of the
+	 * trajectories. The crossing times are available through
+	 * {@link #getFlip(int)}.
+	 */
+	public boolean findFlips(double[] a, int na, double[] b, int nb,
+			double range) {
+		int n = mergeTrajectories(a, na, b, nb);
+		double r2 = range * range;
+		nrofFlips = 0;
+
+		boolean initial = squared(relative[1], relative[2]) <= r2;
+		boolean inRange = initial;
+
+		for (int k = 3; k < n; k += 3) {
+			double start = relative[k - 3];
+			double len = relative[k] - start;
+			double dx = relative[k - 2];
+			double dy = relative[k - 1];
+			if (len <= 0) {
+				continue;
+			}
+			double vx = (relative[k + 1] - dx) / len;
+			double vy = (relative[k + 2] - dy) / len;
+
+			/* |d + v*t|^2 - r^2 = A*t^2 + 2*B*t + C */
+			double A = squared(vx, vy);
+			double B = dx * vx + dy * vy;
+			double C = squared(dx, dy) - r2;
+			double disc = B * B - A * C;
+
+			if (A == 0 || disc < 0) {
+				continue; /* distance doesn't cross the range */
+			}
+			double root = Math.sqrt(disc);
+			double enter = (-B - root) / A;
+			double exit = (-B + root) / A;
+
+			if (!inRange && enter > 0 && enter <= len) {
+				addFlip(start + enter);
+				inRange = true;
+			}
+			if (inRange && exit >= 0 && exit < len) {
+				addFlip(start + exit);
+				inRange = false;
+			}
+		}
+
+		return initial;
+	}
+
+	/**
+	 * Returns the number of range crossings found by the last
+	 * {@link #findFlips(double[], int, double[], int, double)} call
+	 * @return The number of crossings
+	 */
+	public int getNrofFlips() {
+		return this.nrofFlips;
+	}
+
+	/**
+	 * Returns the time of a range crossing
+	 * @param index Index of the crossing (in time order)
+	 * @return The time
+	 */
+	public double getFlip(int index) {
+		return this.flips[index];
+	}
+
+	/**
+	 * Removes all the contact events
+	 */
+	public void clearEvents() {
+		this.nrofEvents = 0;
+	}
+
+	/**
+	 * Adds a contact event
+	 * @param time Time of the event
+	 * @param from Index of the interface that creates or tears down the
+	 * connection
+	 * @param to Index of the other interface
+	 * @param up True for a new connection, false for a connection that goes
+	 * down
+	 */
+	public void addEvent(double time, int from, int to, boolean up) {
+		if (nrofEvents == eventTimes.length) {
+			int capacity = nrofEvents * 2;
+			eventTimes = Arrays.copyOf(eventTimes, capacity);
+			eventFrom = Arrays.copyOf(eventFrom, capacity);
+			eventTo = Arrays.copyOf(eventTo, capacity);
+			eventUp = Arrays.copyOf(eventUp, capacity);
+			eventOrder = Arrays.copyOf(eventOrder, capacity);
+			sortBuffer = new int[capacity];
+		}
+		eventTimes[nrofEvents] = time;
+		eventFrom[nrofEvents] = from;
+		eventTo[nrofEvents] = to;
+		eventUp[nrofEvents] = up;
+		nrofEvents++;
+	}
+
+	/**
+	 * Sorts the events by time. Events with the same time stay in the order
+	 * they were added in (e.g., the up event of a contact that only touches
+	 * the range stays before its down event). The event indices are sorted
+	 * with a bottom-up merge sort, which is stable and O(n log n).
+	 */
+	public void sortEvents() {
+		int[] src = eventOrder;
+		int[] dst = sortBuffer;
+		for (int i = 0; i < nrofEvents; i++) {
+			src[i] = i;
+		}
+
+		for (int width = 1; width < nrofEvents; width *= 2) {
+			for (int lo = 0; lo < nrofEvents; lo += 2 * width) {
+				int mid = Math.min(lo + width, nrofEvents);
+				int hi = Math.min(lo + 2 * width, nrofEvents);
+				merge(src, dst, lo, mid, hi);
+			}
+			int[] tmp = src;
+			src = dst;
+			dst = tmp;
+		}
+
+		eventOrder = src;
+		sortBuffer = dst;
+	}
+
+	/**
+	 * Merges two sorted runs of event indices; on equal times the index
+	 * from the first run comes first
+	 * @param src The indices to merge
+	 * @param dst Where to put the merged indices
+	 * @param lo Start of the first run
+	 * @param mid End of the first run and start of the second run
+	 * @param hi End of the second run
+	 */
+	private void merge(int[] src, int[] dst, int lo, int mid, int hi) {
+		int i = lo;
+		int j = mid;
+		for (int k = lo; k < hi; k++) {
+			if (j >= hi || (i < mid &&
+					eventTimes[src[i]] <= eventTimes[src[j]])) {
+				dst[k] = src[i++];
+			}
+			else {
+				dst[k] = src[j++];
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of contact events
+	 * @return The number of events
+	 */
+	public int getNrofEvents() {
+		return this.nrofEvents;
+	}
+
+	/**
+	 * Returns the time of the n'th event in time order
+	 * @param n Position of the event in time order
+	 * @return The time
+	 */
+	public double getEventTime(int n) {
+		return eventTimes[eventOrder[n]];
+	}
+
+	/**
+	 * Returns the index of the interface that creates or tears down the
+	 * connection of the n'th event in time order
+	 * @param n Position of the event in time order
+	 * @return Index of the interface
+	 */
+	public int getEventFrom(int n) {
+		return eventFrom[eventOrder[n]];
+	}
+
+	/**
+	 * Returns the index of the other interface of the n'th event in time
+	 * order
+	 * @param n Position of the event in time order
+	 * @return Index of the interface
+	 */
+	public int getEventTo(int n) {
+		return eventTo[eventOrder[n]];
+	}
+
+	/**
+	 * Returns true if the n'th event (in time order) is a new connection
+	 * @param n Position of the event in time order
+	 * @return True for a connection up event, false for down
+	 */
+	public boolean isEventUp(int n) {
+		return eventUp[eventOrder[n]];
+	}
+
+	/**
+	 * Merges the times of two trajectories and computes the location of
+	 * the second host relative to the first one at every merged time
+	 * @return Number of values in the {@link #relative} array
+	 */
+	private int mergeTrajectories(double[] a, int na, double[] b, int nb) {
+		int n = 0;
+		int i = 0;
+		int j = 0;
+
+		while (i < na || j < nb) {
+			double t;
+			if (j >= nb || (i < na && a[i] <= b[j])) {
+				t = a[i];
+			}
+			else {
+				t = b[j];
+			}
+			if (n + 3 > relative.length) {
+				relative = Arrays.copyOf(relative, relative.length * 2);
+			}
+			relative[n] = t;
+			relative[n + 1] = locationAt(b, nb, t, 1) - locationAt(a, na, t, 1);
+			relative[n + 2] = locationAt(b, nb, t, 2) - locationAt(a, na, t, 2);
+			n += 3;
+
+			while (i < na && a[i] == t) {
+				i += 3;
+			}
+			while (j < nb && b[j] == t) {
+				j += 3;
+			}
+		}
+
+		return n;
+	}
+
+	/**
+	 * Returns a coordinate of a host's location at the given time
+	 * @param p The trajectory
+	 * @param n Number of values in the trajectory
+	 * @param t The time
+	 * @param axis 1 for x and 2 for y coordinate
+	 * @return The coordinate
+	 */
+	private static double locationAt(double[] p, int n, double t, int axis) {
+		if (t <= p[0]) {
+			return p[axis];
+		}
+		for (int k = 3; k < n; k += 3) {
+			if (t <= p[k]) {
+				double f = (t - p[k - 3]) / (p[k] - p[k - 3]);
+				return p[k - 3 + axis] + f * (p[k + axis] - p[k - 3 + axis]);
+			}
+		}
+		return p[n - 3 + axis];
+	}
+
+	private void addFlip(double time) {
+		if (nrofFlips == flips.length) {
+			flips = Arrays.copyOf(flips, nrofFlips * 2);
+		}
+		flips[nrofFlips++] = time;
+	}
+
+	private static double squared(double x, double y) {
+		return x * x + y * y;
+	}
+}
@@ -73,6 +73,11 @@ public class BusMovement extends MapRouteMovement {
 		return path;
 	}
 
+	@Override
+	protected boolean isIndependent() {
+		return false; /* coordinated by the bus control system */
+	}
+
 	@Override
 	public BusMovement replicate() {
 		return new BusMovement(this);
@@ -7,8 +7,8 @@ package movement;
 import java.util.List;
 import java.util.Random;
 
-import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
+import movement.map.RouteCache;
 import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
@@ -45,7 +45,6 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	private ContinueBusTripDecider cbtd;
 	private double[] probabilities;
 	private double probTakeOtherBus;
-	private DijkstraPathFinder pathFinder;
 
 	private Coord startBusStop;
 	private Coord endBusStop;
@@ -73,7 +72,6 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			probTakeOtherBus = settings.getDouble(PROBABILITY_TAKE_OTHER_BUS);
 		}
 		cbtd = new ContinueBusTripDecider(rng, probabilities);
-		pathFinder = new DijkstraPathFinder(null);
 		takeBus = true;
 	}
 
@@ -93,7 +91,6 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		controlSystem.registerTraveller(this);
 		probabilities = proto.probabilities;
 		cbtd = new ContinueBusTripDecider(rng, probabilities);
-		pathFinder = proto.pathFinder;
 		this.probTakeOtherBus = proto.probTakeOtherBus;
 		takeBus = true;
 	}
@@ -133,8 +130,8 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			}
 			MapNode thisNode = map.getNodeByCoord(location);
 			MapNode destinationNode = map.getNodeByCoord(latestBusStop);
-			List<MapNode> nodes = pathFinder.getShortestPath(thisNode,
-					destinationNode);
+			List<MapNode> nodes = RouteCache.getInstance(map, null).
+				getShortestPath(thisNode, destinationNode);
 			Path path = new Path(generateSpeed());
 			for (MapNode node : nodes) {
 				path.addWaypoint(node.getLocation());
@@ -162,6 +159,11 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		return 0;
 	}
 
+	@Override
+	protected boolean isIndependent() {
+		return false; /* coordinated by the bus control system */
+	}
+
 	@Override
 	public MapBasedMovement replicate() {
 		return new BusTravellerMovement(this);
@@ -6,8 +6,8 @@ package movement;
 
 import java.util.List;
 
-import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
+import movement.map.RouteCache;
 import core.Coord;
 import core.Settings;
 
@@ -22,7 +22,7 @@ public class CarMovement extends MapBasedMovement implements
 	private Coord from;
 	private Coord to;
 
-	private DijkstraPathFinder pathFinder;
+	private RouteCache routes;
 
 	/**
 	 * Car movement constructor
@@ -30,7 +30,7 @@ public class CarMovement extends MapBasedMovement implements
 	 */
 	public CarMovement(Settings settings) {
 		super(settings);
-		pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+		routes = RouteCache.getInstance(getMap(), getOkMapNodeTypes());
 	}
 
 	/**
@@ -39,7 +39,7 @@ public class CarMovement extends MapBasedMovement implements
 	 */
 	public CarMovement(CarMovement proto) {
 		super(proto);
-		this.pathFinder = proto.pathFinder;
+		this.routes = proto.routes;
 	}
 
 	/**
@@ -59,7 +59,8 @@ public class CarMovement extends MapBasedMovement implements
 		MapNode fromNode = getMap().getNodeByCoord(from);
 		MapNode toNode = getMap().getNodeByCoord(to);
 
-		List<MapNode> nodePath = pathFinder.getShortestPath(fromNode, toNode);
+		/* not an anchor: the destinations of the car trips are arbitrary */
+		List<MapNode> nodePath = routes.getShortestPath(fromNode, toNode);
 
 		for (MapNode node : nodePath) { // create a Path from the shortest path
 			path.addWaypoint(node.getLocation());
@@ -10,8 +10,8 @@ import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
 
-import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
+import movement.map.RouteCache;
 import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
@@ -48,7 +48,6 @@ public class EveningActivityMovement extends MapBasedMovement
 
 	private int mode;
 	private boolean ready;
-	private DijkstraPathFinder pathFinder;
 
 	private Coord lastWaypoint;
 	private Coord startAtLocation;
@@ -72,7 +71,6 @@ public class EveningActivityMovement extends MapBasedMovement
 	public EveningActivityMovement(Settings settings) {
 		super(settings);
 		super.backAllowed = false;
-		pathFinder = new DijkstraPathFinder(null);
 		mode = WALKING_TO_MEETING_SPOT_MODE;
 
 		nrOfMeetingSpots = settings.getInt(NR_OF_MEETING_SPOTS_SETTING);
@@ -142,7 +140,6 @@ public class EveningActivityMovement extends MapBasedMovement
 	 */
 	public EveningActivityMovement(EveningActivityMovement proto) {
 		super(proto);
-		this.pathFinder = proto.pathFinder;
 		this.mode = proto.mode;
 		this.id = nextID++;
 		scs = proto.scs;
@@ -179,8 +176,10 @@ public class EveningActivityMovement extends MapBasedMovement
 			MapNode thisNode = map.getNodeByCoord(lastWaypoint);
 			MapNode destinationNode = map.getNodeByCoord(startAtLocation);
 
-			List<MapNode> nodes = pathFinder.getShortestPath(thisNode,
+			RouteCache routes = RouteCache.getInstance(map, null);
+			List<MapNode> nodes = routes.getShortestPath(thisNode,
 					destinationNode);
+			routes.addAnchor(destinationNode); // next trip starts from here
 			Path path = new Path(generateSpeed());
 			for (MapNode node : nodes) {
 				path.addWaypoint(node.getLocation());
@@ -222,6 +221,11 @@ public class EveningActivityMovement extends MapBasedMovement
 		}
 	}
 
+	@Override
+	protected boolean isIndependent() {
+		return false; /* coordinated by the evening activity control system */
+	}
+
 	@Override
 	public MapBasedMovement replicate() {
 		return new EveningActivityMovement(this);
@@ -4,8 +4,10 @@
  */
 package movement;
 
+import input.BinaryTraceReader;
 import input.ExternalMovementReader;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -20,7 +22,10 @@ import core.Settings;
 import core.SimClock;
 
 /**
- * Movement model that uses external data of node locations.
+ * Movement model that uses external data of node locations. The data can be
+ * a text trace ({@link ExternalMovementReader}) or a binary trace converted
+ * from one with {@link input.BinaryTraceWriter}. The type of the trace is
+ * detected from the file's contents.
  */
 public class ExternalMovement extends MovementModel {
 	/** Namespace for settings */
@@ -33,10 +38,14 @@ public class ExternalMovement extends MovementModel {
 	/** default initial location for excess nodes */
 	private static final Coord DEF_INIT_LOC = new Coord(0,0);
 	private static ExternalMovementReader reader;
+	/** reader of a binary trace (null if the trace is a text trace) */
+	private static BinaryTraceReader traceReader;
 	private static String inputFileName;
 
 	/** mapping of external id to movement model */
 	private static Map<String, ExternalMovement> idMapping;
+	/** mapping of binary trace's node index to movement model */
+	private static ExternalMovement[] indexMapping;
 	/** initial locations for nodes */
 	private static List<Tuple<String, Coord>> initLocations;
 	/** time of the very first location data */
@@ -82,10 +91,20 @@ public class ExternalMovement extends MovementModel {
 			Settings s = new Settings(EXTERNAL_MOVEMENT_NS);
 			idMapping = new HashMap<String, ExternalMovement>();
 			inputFileName = s.getSetting(MOVEMENT_FILE_S);
-			reader = new ExternalMovementReader(inputFileName);
 
-			initLocations = reader.readNextMovements();
-			initTime = reader.getLastTimeStamp();
+			if (BinaryTraceReader.isBinaryTrace(inputFileName)) {
+				reader = null;
+				traceReader = new BinaryTraceReader(inputFileName);
+				indexMapping = new ExternalMovement[traceReader.getNrofIds()];
+				initLocations = readBinaryInitLocations();
+				initTime = traceReader.getLastTimeStamp();
+			}
+			else {
+				traceReader = null;
+				reader = new ExternalMovementReader(inputFileName);
+				initLocations = reader.readNextMovements();
+				initTime = reader.getLastTimeStamp();
+			}
 			samplingInterval = -1;
 			lastPreloadTime = -1;
 
@@ -118,6 +137,9 @@ public class ExternalMovement extends MovementModel {
 
 			// puts the new model to model map for later updates
 			idMapping.put(initLoc.getKey(), this);
+			if (traceReader != null) {
+				indexMapping[traceReader.getIndex(initLoc.getKey())] = this;
+			}
 			isActive = true;
 		}
 		else {
@@ -138,6 +160,10 @@ public class ExternalMovement extends MovementModel {
 
 		if (!Double.isNaN(lastPreloadTime) && SimClock.getTime() >=
 				lastPreloadTime - (samplingInterval * MIN_AHEAD_INTERVALS) ) {
+			if (traceReader != null) {
+				// load the data of this and the next preload run
+				traceReader.prefetch(2 * (int)nrofPreload);
+			}
 			for (int i=0; i < nrofPreload &&
 					!Double.isNaN(lastPreloadTime); i++) {
 				lastPreloadTime = readMorePaths();
@@ -224,11 +250,17 @@ public class ExternalMovement extends MovementModel {
 
 	@Override
 	public int getMaxX() {
+		if (traceReader != null) {
+			return (int)(traceReader.getMaxX() - traceReader.getMinX()) + 1;
+		}
 		return (int)(reader.getMaxX() - reader.getMinX()) + 1;
 	}
 
 	@Override
 	public int getMaxY() {
+		if (traceReader != null) {
+			return (int)(traceReader.getMaxY() - traceReader.getMinY()) + 1;
+		}
 		return (int)(reader.getMaxY() - reader.getMinY()) + 1;
 	}
 
@@ -244,6 +276,10 @@ public class ExternalMovement extends MovementModel {
 	 * were read.
 	 */
 	private static double readMorePaths() {
+		if (traceReader != null) {
+			return readMoreBinaryPaths();
+		}
+
 		List<Tuple<String, Coord>> list = reader.readNextMovements();
 		double time = reader.getLastTimeStamp();
 
@@ -267,11 +303,66 @@ public class ExternalMovement extends MovementModel {
 		}
 	}
 
+	/**
+	 * Reads paths for the next time instance from the binary trace reader
+	 * @return The time stamp of the reading or Double.NaN if no movements
+	 * were read.
+	 */
+	private static double readMoreBinaryPaths() {
+		int n = traceReader.readNextMovements();
+		double time = traceReader.getLastTimeStamp();
+
+		if (samplingInterval == -1) {
+			samplingInterval = time - initTime;
+		}
+
+		int[] indices = traceReader.getNodeIndices();
+		double[] xs = traceReader.getXs();
+		double[] ys = traceReader.getYs();
+		for (int i = 0; i < n; i++) {
+			ExternalMovement em = indexMapping[indices[i]];
+			if (em != null) { // skip IDs not mentioned in the init phase etc.
+				em.addLocation(new Coord(xs[i], ys[i]), time);
+			}
+		}
+
+		if (n > 0) {
+			return time;
+		}
+		else {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Reads the initial locations from the first time instance of the
+	 * binary trace
+	 * @return The initial locations
+	 */
+	private static List<Tuple<String, Coord>> readBinaryInitLocations() {
+		int n = traceReader.readNextMovements();
+		List<Tuple<String, Coord>> locations =
+			new ArrayList<Tuple<String, Coord>>(n);
+		int[] indices = traceReader.getNodeIndices();
+		double[] xs = traceReader.getXs();
+		double[] ys = traceReader.getYs();
+		for (int i = 0; i < n; i++) {
+			locations.add(new Tuple<String, Coord>(
+					traceReader.getId(indices[i]), new Coord(xs[i], ys[i])));
+		}
+		return locations;
+	}
+
 	/**
 	 * Reset state so that next instance will have a fresh state
 	 */
 	public static void reset() {
 		idMapping = null;
+		indexMapping = null;
+		if (traceReader != null) {
+			traceReader.close();
+			traceReader = null;
+		}
 	}
 
 }
@@ -10,8 +10,8 @@ import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
 
-import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
+import movement.map.RouteCache;
 import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
@@ -38,7 +38,6 @@ public class HomeActivityMovement extends MapBasedMovement
 	public static final String STD_FOR_TIME_DIFF_SETTING = "timeDiffSTD";
 
 	private int mode;
-	private DijkstraPathFinder pathFinder;
 
 	private int distance;
 
@@ -57,7 +56,6 @@ public class HomeActivityMovement extends MapBasedMovement
 	public HomeActivityMovement(Settings settings) {
 		super(settings);
 		distance = 100;
-		pathFinder = new DijkstraPathFinder(null);
 		mode = WALKING_HOME_MODE;
 
 		String homeLocationsFile = null;
@@ -117,7 +115,6 @@ public class HomeActivityMovement extends MapBasedMovement
 	public HomeActivityMovement(HomeActivityMovement proto) {
 		super(proto);
 		this.distance = proto.distance;
-		this.pathFinder = proto.pathFinder;
 		this.mode = proto.mode;
 
 		this.timeDiffSTD = proto.timeDiffSTD;
@@ -167,8 +164,10 @@ public class HomeActivityMovement extends MapBasedMovement
 			}
 			MapNode thisNode = map.getNodeByCoord(lastWaypoint);
 			MapNode destinationNode = map.getNodeByCoord(homeLocation);
-			List<MapNode> nodes = pathFinder.getShortestPath(thisNode,
+			RouteCache routes = RouteCache.getInstance(map, null);
+			List<MapNode> nodes = routes.getShortestPath(thisNode,
 					destinationNode);
+			routes.addAnchor(destinationNode); // next trip starts from here
 			Path path = new Path(generateSpeed());
 			for (MapNode node : nodes) {
 				path.addWaypoint(node.getLocation());
@@ -17,12 +17,14 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.Vector;
 
+import movement.map.MapArtifact;
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
 import core.SettingsError;
 import core.SimError;
+import core.World;
 
 /**
  * Map based movement model which gives out Paths that use the
@@ -55,6 +57,16 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	 */
 	public static final String MAP_SELECT_S = "okMaps";
 
+	/**
+	 * Should the prepared maps be stored in, and read from, binary map
+	 * artifacts -setting id ({@value}) in the optimization settings namespace
+	 * ({@link World#OPTIMIZATION_SETTINGS_NS}). Boolean. If true, the map
+	 * read from the map files is written to a {@link MapArtifact} file next
+	 * to the first map file and later runs with the same map files read the
+	 * artifact instead of parsing the files. Default is false.
+	 */
+	public static final String MAP_ARTIFACTS_S = "mapArtifacts";
+
 	/** the indexes of the OK map files or null if all maps are OK */
 	private int [] okMapNodeTypes;
 
@@ -283,32 +295,91 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 			}
 		}
 
-		try {
-			int nrofMapFiles = settings.getInt(NROF_FILES_S);
+		int nrofMapFiles = settings.getInt(NROF_FILES_S);
+		for (int i = 1; i <= nrofMapFiles; i++ ) {
+			cachedMapFiles.add(settings.getSetting(FILE_S + i));
+		}
+		nrofMapFilesRead = nrofMapFiles;
 
-			for (int i = 1; i <= nrofMapFiles; i++ ) {
-				String pathFile = settings.getSetting(FILE_S + i);
-				cachedMapFiles.add(pathFile);
-				r.addPaths(new File(pathFile), i);
+		boolean useArtifacts = nrofMapFiles > 0 &&
+			new Settings(World.OPTIMIZATION_SETTINGS_NS).getBoolean(
+					MAP_ARTIFACTS_S, false);
+		String artifactFile = null;
+		byte[] key = null;
+		simMap = null;
+
+		try {
+			if (useArtifacts) {
+				key = MapArtifact.computeKey(cachedMapFiles, "bidi", true,
+						"mirror", true, "toOrigo", true);
+				artifactFile = MapArtifact.getFileName(cachedMapFiles.get(0),
+						key);
+				simMap = readMapArtifact(artifactFile, key);
 			}
 
-			nrofMapFilesRead = nrofMapFiles;
+			if (simMap == null) {
+				for (int i = 1; i <= nrofMapFiles; i++ ) {
+					r.addPaths(new File(cachedMapFiles.get(i-1)), i);
+				}
+			}
 		} catch (IOException e) {
 			throw new SimError(e.toString(),e);
 		}
 
-		simMap = r.getMap();
-		checkMapConnectedness(simMap.getNodes());
-		// mirrors the map (y' = -y) and moves its upper left corner to origo
-		simMap.mirror();
-		Coord offset = simMap.getMinBound().clone();
-		simMap.translate(-offset.getX(), -offset.getY());
+		if (simMap == null) {
+			simMap = r.getMap();
+			checkMapConnectedness(simMap.getNodes());
+			// mirrors the map (y' = -y) and moves its upper left corner to origo
+			simMap.mirror();
+			Coord offset = simMap.getMinBound().clone();
+			simMap.translate(-offset.getX(), -offset.getY());
+
+			if (useArtifacts) {
+				writeMapArtifact(artifactFile, key, simMap);
+			}
+		}
 		checkCoordValidity(simMap.getNodes());
 
 		cachedMap = simMap;
 		return simMap;
 	}
 
+	/**
+	 * Reads a map from a map artifact file
+	 * @param artifactFile Path of the artifact file
+	 * @param key Key of the map
+	 * @return The map or null if there was no (valid) artifact of the map
+	 */
+	private SimMap readMapArtifact(String artifactFile, byte[] key) {
+		try {
+			return MapArtifact.read(artifactFile, key);
+		} catch (IOException e) {
+			System.err.println("Warning: couldn't read the map from " +
+					artifactFile + ": " + e);
+			return null;
+		} catch (RuntimeException e) { // e.g., a truncated artifact
+			System.err.println("Warning: invalid map artifact " +
+					artifactFile + ": " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a map to a map artifact file
+	 * @param artifactFile Path of the artifact file
+	 * @param key Key of the map
+	 * @param simMap The map
+	 */
+	private void writeMapArtifact(String artifactFile, byte[] key,
+			SimMap simMap) {
+		try {
+			MapArtifact.write(artifactFile, key, simMap);
+		} catch (IOException e) {
+			System.err.println("Warning: couldn't save the map to " +
+					artifactFile + ": " + e);
+		}
+	}
+
 	/**
 	 * Checks that all map nodes can be reached from all other map nodes
 	 * @param nodes The list of nodes to check
@@ -396,6 +467,11 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		return cachedMap;
 	}
 
+	@Override
+	protected boolean isIndependent() {
+		return true;
+	}
+
 	@Override
 	public MapBasedMovement replicate() {
 		return new MapBasedMovement(this);
@@ -7,16 +7,16 @@ package movement;
 import java.util.List;
 
 import core.SettingsError;
-import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.MapRoute;
+import movement.map.RouteCache;
 import core.Coord;
 import core.Settings;
 
 /**
  * Map based movement model that uses predetermined paths within the map area.
  * Nodes using this model (can) stop on every route waypoint and find their
- * way to next waypoint using {@link DijkstraPathFinder}. There can be
+ * way to next waypoint using {@link RouteCache}. There can be
  * different type of routes; see {@link #ROUTE_TYPE_S}.
  */
 public class MapRouteMovement extends MapBasedMovement implements
@@ -37,8 +37,8 @@ public class MapRouteMovement extends MapBasedMovement implements
 	 */
 	public static final String ROUTE_FIRST_STOP_S = "routeFirstStop";
 
-	/** the Dijkstra shortest path finder */
-	private DijkstraPathFinder pathFinder;
+	/** the shared shortest path finder */
+	private RouteCache routes;
 
 	/** Prototype's reference to all routes read for the group */
 	private List<MapRoute> allRoutes = null;
@@ -60,7 +60,12 @@ public class MapRouteMovement extends MapBasedMovement implements
 		int type = settings.getInt(ROUTE_TYPE_S);
 		allRoutes = MapRoute.readRoutes(fileName, type, getMap());
 		nextRouteIndex = 0;
-		pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+		routes = RouteCache.getInstance(getMap(), getOkMapNodeTypes());
+		for (MapRoute r : allRoutes) {
+			for (MapNode stop : r.getStops()) {
+				routes.addAnchor(stop);
+			}
+		}
 		this.route = this.allRoutes.get(this.nextRouteIndex).replicate();
 		if (this.nextRouteIndex >= this.allRoutes.size()) {
 			this.nextRouteIndex = 0;
@@ -94,7 +99,7 @@ public class MapRouteMovement extends MapBasedMovement implements
 			this.route.setNextIndex(this.firstStopIndex);
 		}
 
-		this.pathFinder = proto.pathFinder;
+		this.routes = proto.routes; // can be used concurrently
 
 		proto.nextRouteIndex++; // give routes in order
 		if (proto.nextRouteIndex >= proto.allRoutes.size()) {
@@ -107,7 +112,7 @@ public class MapRouteMovement extends MapBasedMovement implements
 		Path p = new Path(generateSpeed());
 		MapNode to = route.nextStop();
 
-		List<MapNode> nodePath = pathFinder.getShortestPath(lastMapNode, to);
+		List<MapNode> nodePath = routes.getShortestPath(lastMapNode, to);
 
 		// this assertion should never fire if the map is checked in read phase
 		assert nodePath.size() > 0 : "No path from " + lastMapNode + " to " +
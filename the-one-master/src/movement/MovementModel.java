@@ -47,6 +47,8 @@ public abstract class MovementModel {
 
 	/** common rng for all movement models in the simulation */
 	protected static Random rng;
+	/** seed of the rng (and base of the per host streams' seeds) */
+	private static long rngSeed;
 
 	/** DTNHost to which this movement model is attached */
 	protected DTNHost host;
@@ -223,6 +225,37 @@ public abstract class MovementModel {
 		this.host = host;
 	}
 
+	/**
+	 * Returns true if the host of this model can be moved concurrently with
+	 * the other hosts, i.e., the model doesn't share mutable state with
+	 * other models (the random numbers are drawn from the host's own stream
+	 * then; see {@link #setRandomStream(Random)}).
+	 * @return true if the host can be moved in parallel with other hosts
+	 */
+	public boolean canMoveInParallel() {
+		return isIndependent() && (ah == null || !ah.hasActiveTimes());
+	}
+
+	/**
+	 * Returns true if this model only changes its own state when it
+	 * creates paths. The default implementation returns false; models
+	 * (whose subclasses are also) known to be independent override this.
+	 * @return true if the model is independent of other models
+	 * @see #canMoveInParallel()
+	 */
+	protected boolean isIndependent() {
+		return false;
+	}
+
+	/**
+	 * Returns true if this model is always active (its activeness doesn't
+	 * depend on the simulation time)
+	 * @return true if the model is always active
+	 */
+	public boolean isAlwaysActive() {
+		return ah == null || ah.isAlwaysActive();
+	}
+
 	/**
 	 * Returns true if this node is active at the moment (false if not)
 	 * @return true if this node is active (false if not)
@@ -277,12 +310,33 @@ public abstract class MovementModel {
 	public static void reset() {
 		Settings s = new Settings(MOVEMENT_MODEL_NS);
 		if (s.contains(RNG_SEED)) {
-			int seed = s.getInt(RNG_SEED);
-			rng = new Random(seed);
+			rngSeed = s.getInt(RNG_SEED);
 		}
 		else {
-			rng = new Random(0);
+			rngSeed = 0;
 		}
+		rng = new MovementRandom(rngSeed);
+	}
+
+	/**
+	 * Creates the random number stream of a host. The stream only depends
+	 * on the rng seed and the host's address.
+	 * @param address Address of the host
+	 * @return A new random number generator for the host
+	 */
+	public static Random createHostRandom(int address) {
+		long seed = rngSeed * 0x5DEECE66DL + address;
+		return new Random(seed * 0x9E3779B97F4A7C15L);
+	}
+
+	/**
+	 * Selects the random number stream that the movement models use in the
+	 * calling thread
+	 * @param stream The stream (see {@link #createHostRandom(int)}) or null
+	 * to use the common stream of all hosts
+	 */
+	public static void setRandomStream(Random stream) {
+		((MovementRandom)rng).setStream(stream);
 	}
 
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement;
+
+import java.util.Random;
+
+/**
+ * Random number generator of the movement models. By default all the
+ * numbers are drawn from a single shared generator. A thread can select a
+ * stream of its own (e.g., the stream of the host it is moving) with
+ * {@link #setStream(Random)}, so that hosts can be moved in parallel and
+ * still get the same numbers in every run.
+ */
+class MovementRandom extends Random {
+	private static final long serialVersionUID = 1L;
+
+	private final Random shared;
+	private final ThreadLocal<Random> stream;
+	/** true if any thread has selected a stream (checking the thread
+	 * local is skipped until then) */
+	private volatile boolean streamsInUse;
+
+	/**
+	 * Constructor.
+	 * @param seed Seed of the shared generator
+	 */
+	MovementRandom(long seed) {
+		this.shared = new Random(seed);
+		this.stream = new ThreadLocal<Random>();
+		this.streamsInUse = false;
+	}
+
+	/**
+	 * Selects the generator the calling thread draws its numbers from
+	 * @param r The generator or null to use the shared generator
+	 */
+	void setStream(Random r) {
+		if (r == null) {
+			stream.remove();
+		} else {
+			streamsInUse = true;
+			stream.set(r);
+		}
+	}
+
+	private Random current() {
+		if (!streamsInUse) {
+			return shared;
+		}
+		Random r = stream.get();
+		return r != null ? r : shared;
+	}
+
+	@Override
+	public synchronized void setSeed(long seed) {
+		if (shared != null) { /* null when called by Random's constructor */
+			current().setSeed(seed);
+		}
+	}
+
+	@Override
+	protected int next(int bits) {
+		return current().nextInt() >>> (32 - bits);
+	}
+
+	@Override
+	public void nextBytes(byte[] bytes) {
+		current().nextBytes(bytes);
+	}
+
+	@Override
+	public int nextInt() {
+		return current().nextInt();
+	}
+
+	@Override
+	public int nextInt(int bound) {
+		return current().nextInt(bound);
+	}
+
+	@Override
+	public long nextLong() {
+		return current().nextLong();
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return current().nextBoolean();
+	}
+
+	@Override
+	public float nextFloat() {
+		return current().nextFloat();
+	}
+
+	@Override
+	public double nextDouble() {
+		return current().nextDouble();
+	}
+
+	@Override
+	public double nextGaussian() {
+		return current().nextGaussian();
+	}
+}
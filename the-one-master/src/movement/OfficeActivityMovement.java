@@ -12,8 +12,8 @@ import java.util.List;
 
 import util.ParetoRNG;
 
-import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
+import movement.map.RouteCache;
 import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
@@ -53,7 +53,6 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 	private int workDayLength;
 	private int startedWorkingTime;
 	private boolean ready;;
-	private DijkstraPathFinder pathFinder;
 
 	private ParetoRNG paretoRNG;
 
@@ -87,7 +86,6 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		officeMaxWaitTime = settings.getDouble(OFFICE_MAX_WAIT_TIME_SETTING);
 
 		startedWorkingTime = -1;
-		pathFinder = new DijkstraPathFinder(null);
 		mode = WALKING_TO_OFFICE_MODE;
 
 		String officeLocationsFile = null;
@@ -140,7 +138,6 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		this.workDayLength = proto.workDayLength;
 		startedWorkingTime = -1;
 		this.distance = proto.distance;
-		this.pathFinder = proto.pathFinder;
 		this.mode = proto.mode;
 
 		if (proto.allOffices == null) {
@@ -201,8 +198,10 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 			}
 			MapNode thisNode = map.getNodeByCoord(lastWaypoint);
 			MapNode destinationNode = map.getNodeByCoord(officeLocation);
-			List<MapNode> nodes = pathFinder.getShortestPath(thisNode,
+			RouteCache routes = RouteCache.getInstance(map, null);
+			List<MapNode> nodes = routes.getShortestPath(thisNode,
 					destinationNode);
+			routes.addAnchor(destinationNode); // next trip starts from here
 			Path path = new Path(generateSpeed());
 			for (MapNode node : nodes) {
 				path.addWaypoint(node.getLocation());
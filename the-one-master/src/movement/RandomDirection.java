@@ -58,6 +58,11 @@ extends MovementModel {
         return c;
     }
 
+    @Override
+    protected boolean isIndependent() {
+        return true;
+    }
+
     @Override
     public MovementModel replicate() {
         return new RandomDirection( this );
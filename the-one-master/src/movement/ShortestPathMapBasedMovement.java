@@ -6,9 +6,9 @@ package movement;
 
 import java.util.List;
 
-import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.PointsOfInterest;
+import movement.map.RouteCache;
 import core.Settings;
 
 /**
@@ -17,8 +17,8 @@ import core.Settings;
  */
 public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 	SwitchableMovement {
-	/** the Dijkstra shortest path finder */
-	private DijkstraPathFinder pathFinder;
+	/** the shared shortest path finder */
+	private RouteCache routes;
 
 	/** Points Of Interest handler */
 	private PointsOfInterest pois;
@@ -29,9 +29,12 @@ public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 	 */
 	public ShortestPathMapBasedMovement(Settings settings) {
 		super(settings);
-		this.pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+		this.routes = RouteCache.getInstance(getMap(), getOkMapNodeTypes());
 		this.pois = new PointsOfInterest(getMap(), getOkMapNodeTypes(),
 				settings, rng);
+		for (MapNode poi : pois.getAllPois()) {
+			routes.addAnchor(poi);
+		}
 	}
 
 	/**
@@ -41,7 +44,7 @@ public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 	 */
 	protected ShortestPathMapBasedMovement(ShortestPathMapBasedMovement mbm) {
 		super(mbm);
-		this.pathFinder = mbm.pathFinder;
+		this.routes = mbm.routes; // can be used concurrently
 		this.pois = mbm.pois;
 	}
 
@@ -50,7 +53,7 @@ public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 		Path p = new Path(generateSpeed());
 		MapNode to = pois.selectDestination();
 
-		List<MapNode> nodePath = pathFinder.getShortestPath(lastMapNode, to);
+		List<MapNode> nodePath = routes.getShortestPath(lastMapNode, to);
 
 		// this assertion should never fire if the map is checked in read phase
 		assert nodePath.size() > 0 : "No path from " + lastMapNode + " to " +
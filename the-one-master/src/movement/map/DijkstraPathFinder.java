@@ -106,6 +106,26 @@ public class DijkstraPathFinder {
 		return path;
 	}
 
+	/**
+	 * Finds the shortest paths from a map node to all the nodes that can be
+	 * reached from it. The paths are the same that
+	 * {@link #getShortestPath(MapNode, MapNode)} finds.
+	 * @param from The source of the paths
+	 * @return The shortest path tree as a mapping from each reachable node
+	 * (except the source) to the previous node on its path
+	 */
+	public Map<MapNode, MapNode> getShortestPathTree(MapNode from) {
+		initWith(from);
+		MapNode node = null;
+
+		while ((node = unvisited.poll()) != null) {
+			visited.add(node); // mark the node as visited
+			relax(node); // add/update neighbor nodes' distances
+		}
+
+		return prevNodes;
+	}
+
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
 	 * @param node The node whose neighbors are relaxed
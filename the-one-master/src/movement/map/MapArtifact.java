@@ -0,0 +1,219 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.Coord;
+
+/**
+ * Preprocessed binary form of a {@link SimMap}. The artifact contains the
+ * map nodes (in the order of {@link SimMap#getNodes()}), their types and
+ * neighbors, and the map's offset and mirroring, so reading it gives
+ * exactly the same map as parsing the map files and preparing the map
+ * again. The artifact is identified by a key that is the hash of the
+ * contents of the map files and of the settings used to prepare the map,
+ * so it is only reused by runs that would have created the same map.
+ * The artifact files are read through memory mapping.
+ */
+public class MapArtifact {
+	/** Identifies map artifact files ("ONEP") */
+	private static final int MAGIC = 0x4F4E4550;
+	/** Version of the file format (also part of the key) */
+	public static final int VERSION = 1;
+	/** Length of the key in bytes */
+	public static final int KEY_LENGTH = 32;
+	/** Minimum number of bytes a map node takes (location, types and the
+	 * number of neighbors) */
+	private static final int NODE_BYTES = 8 + 8 + 4 + 4;
+
+	/**
+	 * Computes the key of a map
+	 * @param mapFiles Paths of the map files in the order they are read
+	 * @param parameters All the other settings that affect the map
+	 * @return The key
+	 * @throws IOException if a map file can't be read
+	 */
+	public static byte[] computeKey(List<String> mapFiles,
+			Object... parameters) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		byte[] buffer = new byte[64 * 1024];
+		for (String mapFile : mapFiles) {
+			InputStream in = new FileInputStream(mapFile);
+			try {
+				for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+					digest.update(buffer, 0, n);
+				}
+			} finally {
+				in.close();
+			}
+			digest.update((";" + new File(mapFile).length()).getBytes(
+					StandardCharsets.UTF_8));
+		}
+
+		digest.update(("v" + VERSION).getBytes(StandardCharsets.UTF_8));
+		for (Object p : parameters) {
+			digest.update((";" + p).getBytes(StandardCharsets.UTF_8));
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Returns the name of the artifact file of a map. The file is in the
+	 * same directory as the first map file and its name contains the
+	 * beginning of the key, so that different maps made of the same files
+	 * don't overwrite each other's artifacts.
+	 * @param mapFile Path of the first map file
+	 * @param key Key of the map
+	 * @return Path of the artifact file
+	 */
+	public static String getFileName(String mapFile, byte[] key) {
+		StringBuilder sb = new StringBuilder(mapFile);
+		sb.append('.');
+		for (int i = 0; i < 8; i++) {
+			sb.append(String.format("%02x", key[i]));
+		}
+		return sb.append(".map").toString();
+	}
+
+	/**
+	 * Reads the map of the artifact file if it has the given key.
+	 * @param file Path of the artifact file
+	 * @param key The key the map must have
+	 * @return The map or null if the file doesn't exist, is of different
+	 * version, or is for some other key
+	 * @throws IOException if the file exists but can't be read or is
+	 * obviously corrupt. Other kind of corruption may also cause runtime
+	 * exceptions.
+	 */
+	public static SimMap read(String file, byte[] key) throws IOException {
+		File f = new File(file);
+		if (!f.isFile()) {
+			return null;
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, channel.size());
+
+			if (in.remaining() < 8 + KEY_LENGTH || in.getInt() != MAGIC ||
+					in.getInt() != VERSION) {
+				return null;
+			}
+			byte[] fileKey = new byte[KEY_LENGTH];
+			in.get(fileKey);
+			if (!Arrays.equals(key, fileKey)) {
+				return null;
+			}
+
+			Coord offset = new Coord(in.getDouble(), in.getDouble());
+			boolean mirrored = in.get() != 0;
+
+			int nrofNodes = in.getInt();
+			if (nrofNodes < 0 || nrofNodes > in.remaining() / NODE_BYTES) {
+				throw new IOException("Invalid number of map nodes (" +
+						nrofNodes + ")");
+			}
+			List<MapNode> nodes = new ArrayList<MapNode>(nrofNodes);
+			for (int i = 0; i < nrofNodes; i++) {
+				MapNode node = new MapNode(new Coord(in.getDouble(),
+						in.getDouble()));
+				node.setTypeMask(in.getInt());
+				nodes.add(node);
+			}
+			for (MapNode node : nodes) {
+				for (int i = in.getInt(); i > 0; i--) {
+					node.addNeighbor(nodes.get(in.getInt()));
+				}
+			}
+
+			return new SimMap(nodes, offset, mirrored);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes a map to an artifact file. The file is first written with a
+	 * temporary name and then renamed, so that simulations running at the
+	 * same time never read a partially written artifact.
+	 * @param file Path of the artifact file
+	 * @param key Key of the map
+	 * @param map The map to write
+	 * @throws IOException if writing fails
+	 */
+	public static void write(String file, byte[] key, SimMap map)
+			throws IOException {
+		File target = new File(file);
+		File temp = File.createTempFile(target.getName(), ".tmp",
+				target.getAbsoluteFile().getParentFile());
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(temp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.write(key);
+			out.writeDouble(map.getOffset().getX());
+			out.writeDouble(map.getOffset().getY());
+			out.writeByte(map.isMirrored() ? 1 : 0);
+
+			List<MapNode> nodes = map.getNodes();
+			out.writeInt(nodes.size());
+			for (MapNode node : nodes) {
+				out.writeDouble(node.getLocation().getX());
+				out.writeDouble(node.getLocation().getY());
+				out.writeInt(node.getTypeMask());
+			}
+
+			Map<MapNode, Integer> indices =
+				new IdentityHashMap<MapNode, Integer>(nodes.size());
+			for (int i = 0; i < nodes.size(); i++) {
+				indices.put(nodes.get(i), i);
+			}
+			for (MapNode node : nodes) {
+				out.writeInt(node.getNeighbors().size());
+				for (MapNode neighbor : node.getNeighbors()) {
+					out.writeInt(indices.get(neighbor));
+				}
+			}
+		} finally {
+			out.close();
+		}
+
+		if (!temp.renameTo(target)) {
+			target.delete();
+			if (!temp.renameTo(target)) {
+				temp.delete();
+				throw new IOException("Can't rename " + temp + " to " + target);
+			}
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.Coord;
+
+/**
+ * Compiled, read-only representation of the road graph of a {@link SimMap}.
+ * The nodes are numbered from 0 in the order of their coordinates
+ * (see {@link MapNode#compareTo(MapNode)}) and the edges are stored in
+ * compressed sparse row form: the neighbors of node <CODE>i</CODE> are
+ * <CODE>getTarget(j)</CODE> for <CODE>j</CODE> from
+ * <CODE>getFirstEdge(i)</CODE> to <CODE>getFirstEdge(i+1)-1</CODE>, in the
+ * same order they are in the node's neighbor list. Path finders can then
+ * work with primitive arrays and translate the results back to
+ * {@link MapNode}s only at the end.
+ */
+public class MapGraph {
+	/** the map nodes by index */
+	private final MapNode[] nodes;
+	/** indices of the map nodes */
+	private final Map<MapNode, Integer> indices;
+	/** index of the first edge of every node (and the number of edges) */
+	private final int[] offsets;
+	/** target nodes of the edges */
+	private final int[] targets;
+	/** lengths of the edges */
+	private final double[] lengths;
+	/** type bit masks of the nodes */
+	private final int[] types;
+	/** x coordinates of the nodes */
+	private final double[] xs;
+	/** y coordinates of the nodes */
+	private final double[] ys;
+
+	/**
+	 * Compiles a graph of map nodes. The nodes' neighbors must all be in
+	 * the given list.
+	 * @param mapNodes The nodes of the graph
+	 */
+	public MapGraph(List<MapNode> mapNodes) {
+		int n = mapNodes.size();
+		this.nodes = mapNodes.toArray(new MapNode[n]);
+		Arrays.sort(this.nodes);
+
+		this.indices = new IdentityHashMap<MapNode, Integer>(n);
+		this.types = new int[n];
+		this.xs = new double[n];
+		this.ys = new double[n];
+		this.offsets = new int[n + 1];
+		int nrofEdges = 0;
+		for (int i = 0; i < n; i++) {
+			MapNode node = nodes[i];
+			indices.put(node, i);
+			types[i] = node.getTypeMask();
+			xs[i] = node.getLocation().getX();
+			ys[i] = node.getLocation().getY();
+			offsets[i] = nrofEdges;
+			nrofEdges += node.getNeighbors().size();
+		}
+		offsets[n] = nrofEdges;
+
+		this.targets = new int[nrofEdges];
+		this.lengths = new double[nrofEdges];
+		for (int i = 0; i < n; i++) {
+			Coord c = nodes[i].getLocation();
+			int e = offsets[i];
+			for (MapNode neighbor : nodes[i].getNeighbors()) {
+				Integer target = indices.get(neighbor);
+				assert target != null : "Neighbor " + neighbor + " of " +
+					nodes[i] + " is not in the graph";
+				targets[e] = target;
+				lengths[e] = c.distance(neighbor.getLocation());
+				e++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of nodes in the graph
+	 * @return The number of nodes
+	 */
+	public int getNrofNodes() {
+		return nodes.length;
+	}
+
+	/**
+	 * Returns the index of a map node
+	 * @param node The map node
+	 * @return The index or -1 if the node is not in the graph
+	 */
+	public int getIndex(MapNode node) {
+		Integer index = indices.get(node);
+		return index != null ? index : -1;
+	}
+
+	/**
+	 * Returns the map node of an index
+	 * @param index The index
+	 * @return The map node
+	 */
+	public MapNode getNode(int index) {
+		return nodes[index];
+	}
+
+	/**
+	 * Returns the index of the first edge of a node
+	 * @param node Index of the node (or the number of nodes to get the
+	 * number of edges)
+	 * @return The index of the node's first edge
+	 */
+	public int getFirstEdge(int node) {
+		return offsets[node];
+	}
+
+	/**
+	 * Returns the target node of an edge
+	 * @param edge Index of the edge
+	 * @return Index of the target node
+	 */
+	public int getTarget(int edge) {
+		return targets[edge];
+	}
+
+	/**
+	 * Returns the (euclidean) length of an edge
+	 * @param edge Index of the edge
+	 * @return Length of the edge
+	 */
+	public double getLength(int edge) {
+		return lengths[edge];
+	}
+
+	/**
+	 * Returns true if the node's types match any of the types in a type
+	 * bit mask (see {@link #getTypeMask(int[])})
+	 * @param node Index of the node
+	 * @param typeMask The type bit mask
+	 * @return True if at least one of the types matched
+	 */
+	public boolean isType(int node, int typeMask) {
+		return (types[node] & typeMask) != 0;
+	}
+
+	/**
+	 * Returns the euclidean distance between two nodes
+	 * @param node1 Index of the first node
+	 * @param node2 Index of the second node
+	 * @return The distance
+	 */
+	public double getDistance(int node1, int node2) {
+		double dx = xs[node1] - xs[node2];
+		double dy = ys[node1] - ys[node2];
+		return Math.sqrt(dx*dx + dy*dy);
+	}
+
+	/**
+	 * Returns a type bit mask of map node types
+	 * @param types The types (values in range [{@value MapNode#MIN_TYPE},
+	 * {@value MapNode#MAX_TYPE}])
+	 * @return Bit mask of the types
+	 */
+	public static int getTypeMask(int[] types) {
+		int mask = 0;
+		for (int type : types) {
+			mask |= MapNode.typeToBitMask(type);
+		}
+		return mask;
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+/**
+ * Shortest path finder that works on the compiled graph of a map
+ * ({@link MapGraph}) using node indices. The search state is kept in
+ * primitive arrays that are reused between the searches and the priority
+ * queue is an indexed binary heap. Without the A* heuristic the paths are
+ * exactly the ones {@link DijkstraPathFinder} finds: nodes with equal
+ * distances are taken from the queue in the order of their coordinates and
+ * the neighbors are relaxed in the order of the nodes' neighbor lists.
+ * <P>With the A* heuristic (euclidean distance to the destination) the
+ * search visits less nodes and the found paths are equally short, but when
+ * there are several shortest paths, a different one may be chosen.</P>
+ * <P>A path finder is not thread safe; use one path finder per thread.</P>
+ */
+public class MapGraphPathFinder {
+	/** Value for infinite distance  */
+	private static final double INFINITY = Double.MAX_VALUE;
+
+	/** the graph the paths are searched from */
+	private final MapGraph graph;
+	/** type mask of the OK map nodes */
+	private final int okMask;
+	/** are all map nodes OK */
+	private final boolean allOk;
+	/** should the A* heuristic be used when searching single paths */
+	private final boolean aStar;
+
+	/** Node distances from the source node */
+	private double[] distances;
+	/** Keys of the nodes in the queue (distance + heuristic estimate) */
+	private double[] keys;
+	/** Previous nodes on the shortest path(s) */
+	private int[] prevNodes;
+	/** Search round when the node's distance was last set (distances of
+	 * nodes with an older round are infinite) */
+	private int[] distanceRounds;
+	/** Search round when the node was visited (the shortest path is known) */
+	private int[] visitedRounds;
+	/** Binary heap of unvisited nodes discovered so far */
+	private int[] heap;
+	/** Positions of the nodes in the heap (valid only for nodes in it) */
+	private int[] heapPositions;
+	/** Number of nodes in the heap */
+	private int heapSize;
+	/** Number of the current search round */
+	private int round;
+	/** destination of the current search or -1 if the heuristic is not used */
+	private int target;
+
+	/**
+	 * Constructor.
+	 * @param graph The graph to find the paths from
+	 * @param okMapNodes The map node types that are OK for paths or null if
+	 * all nodes are OK
+	 * @param aStar Should the A* heuristic be used when searching paths
+	 * between two nodes
+	 */
+	public MapGraphPathFinder(MapGraph graph, int[] okMapNodes,
+			boolean aStar) {
+		this.graph = graph;
+		this.allOk = okMapNodes == null;
+		this.okMask = allOk ? 0 : MapGraph.getTypeMask(okMapNodes);
+		this.aStar = aStar;
+
+		int n = graph.getNrofNodes();
+		this.distances = new double[n];
+		this.keys = new double[n];
+		this.prevNodes = new int[n];
+		this.distanceRounds = new int[n];
+		this.visitedRounds = new int[n];
+		this.heap = new int[n];
+		this.heapPositions = new int[n];
+		this.round = 0;
+	}
+
+	/**
+	 * Returns the graph this path finder searches the paths from
+	 * @return The graph
+	 */
+	public MapGraph getGraph() {
+		return this.graph;
+	}
+
+	/**
+	 * Initializes a new search with a source node
+	 * @param node The path's source node
+	 * @param target The destination node or -1 if the heuristic is not used
+	 */
+	private void initWith(int node, int target) {
+		assert allOk || graph.isType(node, okMask);
+
+		this.round++;
+		this.heapSize = 0;
+		this.target = target;
+
+		// set distance to source 0 and initialize unvisited queue
+		prevNodes[node] = -1;
+		setDistance(node, 0);
+	}
+
+	/**
+	 * Finds and returns a shortest path between two nodes
+	 * @param from Index of the source of the path
+	 * @param to Index of the destination of the path
+	 * @return Indices of the nodes of a shortest path between the source and
+	 * destination nodes or an empty array if such path is not available
+	 */
+	public int[] getShortestPath(int from, int to) {
+		if (from == to) { // source and destination are the same
+			return new int[] {from};
+		}
+
+		initWith(from, aStar ? to : -1);
+		int node = -1;
+
+		// always take the node with smallest key
+		while (heapSize > 0) {
+			node = poll();
+			if (node == to) {
+				break; // we found the destination -> no need to search further
+			}
+
+			visitedRounds[node] = round; // mark the node as visited
+			relax(node); // add/update neighbor nodes' distances
+		}
+
+		if (node != to) {
+			return new int[0]; // such path isn't available
+		}
+
+		int length = 1;
+		for (int prev = prevNodes[to]; prev != -1; prev = prevNodes[prev]) {
+			length++;
+		}
+
+		int[] path = new int[length];
+		for (int n = to; n != -1; n = prevNodes[n]) {
+			path[--length] = n;
+		}
+		return path;
+	}
+
+	/**
+	 * Finds the shortest paths from a node to all the nodes that can be
+	 * reached from it (see
+	 * {@link DijkstraPathFinder#getShortestPathTree(MapNode)}).
+	 * The heuristic is never used for this.
+	 * @param from Index of the source of the paths
+	 * @return The shortest path tree: the previous node on the path of every
+	 * node, or -1 for the source and the nodes that can't be reached
+	 */
+	public int[] getShortestPathTree(int from) {
+		initWith(from, -1);
+
+		while (heapSize > 0) {
+			int node = poll();
+			visitedRounds[node] = round; // mark the node as visited
+			relax(node); // add/update neighbor nodes' distances
+		}
+
+		int[] tree = new int[graph.getNrofNodes()];
+		for (int i = 0; i < tree.length; i++) {
+			tree[i] = (distanceRounds[i] == round ? prevNodes[i] : -1);
+		}
+		return tree;
+	}
+
+	/**
+	 * Relaxes the neighbors of a node (updates the shortest distances).
+	 * @param node The node whose neighbors are relaxed
+	 */
+	private void relax(int node) {
+		double nodeDist = distances[node];
+		for (int e = graph.getFirstEdge(node), last = graph.getFirstEdge(
+				node + 1); e < last; e++) {
+			int n = graph.getTarget(e);
+			if (visitedRounds[n] == round) {
+				continue; // skip visited nodes
+			}
+
+			if (!allOk && !graph.isType(n, okMask)) {
+				continue; // skip nodes that are not OK
+			}
+
+			// n node's distance from path's source node
+			double nDist = nodeDist + graph.getLength(e);
+
+			if (getDistance(n) > nDist) { // stored distance > found dist?
+				prevNodes[n] = node;
+				setDistance(n, nDist);
+			}
+		}
+	}
+
+	/**
+	 * Returns the distance of a node from the source node in this search
+	 * @param n The node
+	 * @return The distance or {@link #INFINITY} if the node hasn't been
+	 * discovered yet
+	 */
+	private double getDistance(int n) {
+		return distanceRounds[n] == round ? distances[n] : INFINITY;
+	}
+
+	/**
+	 * Sets the distance from source node to a node and inserts the node to,
+	 * or moves it to its new place in, the queue
+	 * @param n The node whose distance is set
+	 * @param distance The distance of the node from the source node
+	 */
+	private void setDistance(int n, double distance) {
+		boolean inQueue = distanceRounds[n] == round;
+		distances[n] = distance;
+		distanceRounds[n] = round;
+		keys[n] = (target < 0 ? distance :
+			distance + graph.getDistance(n, target));
+
+		if (!inQueue) {
+			heap[heapSize] = n;
+			heapPositions[n] = heapSize;
+			heapSize++;
+		}
+		siftUp(heapPositions[n]); // key only decreases
+	}
+
+	/**
+	 * Removes and returns the node with the smallest key from the queue
+	 * @return The node
+	 */
+	private int poll() {
+		int first = heap[0];
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapPositions[heap[0]] = 0;
+			siftDown(0);
+		}
+		return first;
+	}
+
+	/**
+	 * Moves the node at the given heap position up until the heap order
+	 * holds
+	 */
+	private void siftUp(int pos) {
+		int node = heap[pos];
+		while (pos > 0) {
+			int parentPos = (pos - 1) / 2;
+			int parent = heap[parentPos];
+			if (!isBefore(node, parent)) {
+				break;
+			}
+			heap[pos] = parent;
+			heapPositions[parent] = pos;
+			pos = parentPos;
+		}
+		heap[pos] = node;
+		heapPositions[node] = pos;
+	}
+
+	/**
+	 * Moves the node at the given heap position down until the heap order
+	 * holds
+	 */
+	private void siftDown(int pos) {
+		int node = heap[pos];
+		while (true) {
+			int childPos = 2 * pos + 1;
+			if (childPos >= heapSize) {
+				break;
+			}
+			if (childPos + 1 < heapSize &&
+					isBefore(heap[childPos + 1], heap[childPos])) {
+				childPos++;
+			}
+			int child = heap[childPos];
+			if (!isBefore(child, node)) {
+				break;
+			}
+			heap[pos] = child;
+			heapPositions[child] = pos;
+			pos = childPos;
+		}
+		heap[pos] = node;
+		heapPositions[node] = pos;
+	}
+
+	/**
+	 * Compares two nodes by their keys (nodes with equal keys are ordered by
+	 * their indices, i.e., coordinates)
+	 * @return True if node1 should be taken from the queue before node2
+	 */
+	private boolean isBefore(int node1, int node2) {
+		double key1 = keys[node1];
+		double key2 = keys[node2];
+		if (key1 != key2) {
+			return key1 < key2;
+		}
+		return node1 < node2;
+	}
+}
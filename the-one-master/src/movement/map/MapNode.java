@@ -83,11 +83,27 @@ public class MapNode implements Comparable<MapNode> {
 	 * @return A bit mask for the given type
 	 * @throws SettingsError if the type is out of range
 	 */
-	private int typeToBitMask(int type) {
+	static int typeToBitMask(int type) {
 		assert type >= MIN_TYPE && type <= MAX_TYPE : "Invalid node type "+type;
 		return 1 << type; // create the mask by bitwise shift
 	}
 
+	/**
+	 * Returns the bit mask of the node's types
+	 * @return The type bit mask or 0 if the node has no types
+	 */
+	int getTypeMask() {
+		return this.type;
+	}
+
+	/**
+	 * Sets the bit mask of the node's types
+	 * @param typeMask The type bit mask
+	 */
+	void setTypeMask(int typeMask) {
+		this.type = typeMask;
+	}
+
 	/**
 	 * Adds the node as this node's neighbour (unless the node is null)
 	 * @param node The node to add or null for no action
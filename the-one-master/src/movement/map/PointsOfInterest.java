@@ -100,6 +100,18 @@ public class PointsOfInterest {
 		return node;
 	}
 
+	/**
+	 * Returns all the POIs of all the POI groups
+	 * @return A list of the POI map nodes
+	 */
+	public List<MapNode> getAllPois() {
+		List<MapNode> all = new ArrayList<MapNode>();
+		for (List<MapNode> pois : poiLists) {
+			all.addAll(pois);
+		}
+		return all;
+	}
+
 	/**
 	 * Reads POI selections and their probabilities from given Settings and
 	 * stores them to <CODE>poiLists</CODE> and <CODE>poiProbs</CODE>.
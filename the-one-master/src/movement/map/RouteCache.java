@@ -0,0 +1,369 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import core.DTNSim;
+import core.Settings;
+import core.World;
+
+/**
+ * Shortest path service that is shared by all the movement models that use
+ * the same {@link SimMap} with the same OK map node types. The routes are
+ * searched from the compiled graph of the map ({@link SimMap#getGraph()})
+ * with {@link MapGraphPathFinder} and kept in a least recently used cache,
+ * so hosts that travel between the same places (e.g., points of interest,
+ * homes and offices) don't search the same paths again. Optionally the
+ * shortest path trees rooted at such anchor nodes are also kept, so that
+ * any route starting from an anchor is found without a search. The routes
+ * and the trees are dropped when the map is translated or mirrored.
+ * <P>Unless the A* heuristic is enabled, the routes are exactly the ones
+ * {@link DijkstraPathFinder} finds. The cache can be used concurrently from
+ * several threads.</P>
+ */
+public class RouteCache {
+	/**
+	 * Maximum number of routes in a route cache -setting id ({@value}) in
+	 * the optimization settings namespace
+	 * ({@link World#OPTIMIZATION_SETTINGS_NS}). Integer. 0 disables the
+	 * caching. Default is {@link #DEF_ROUTE_CACHE_SIZE}.
+	 */
+	public static final String ROUTE_CACHE_SIZE_S = "routeCacheSize";
+	/** default value for the route cache size ({@value}) */
+	public static final int DEF_ROUTE_CACHE_SIZE = 10000;
+	/**
+	 * Should the shortest path trees of the anchor nodes be kept -setting id
+	 * ({@value}) in the optimization settings namespace. Boolean. Default
+	 * is false.
+	 */
+	public static final String ROUTE_TREES_S = "routeTrees";
+	/**
+	 * Maximum number of shortest path trees in a route cache -setting id
+	 * ({@value}) in the optimization settings namespace. Integer. When
+	 * there are more anchors, the least recently used trees are dropped
+	 * and calculated again when needed. Default is
+	 * {@link #DEF_ROUTE_TREE_CACHE_SIZE}.
+	 */
+	public static final String ROUTE_TREE_CACHE_SIZE_S = "routeTreeCacheSize";
+	/** default value for the route tree cache size ({@value}) */
+	public static final int DEF_ROUTE_TREE_CACHE_SIZE = 1000;
+	/**
+	 * Should routes be searched using the A* heuristic -setting id
+	 * ({@value}) in the optimization settings namespace. Boolean. A* visits
+	 * less map nodes, but when there are several shortest routes, it may
+	 * choose a different one than Dijkstra's algorithm. Default is false.
+	 */
+	public static final String ROUTE_A_STAR_S = "aStarRoutes";
+
+	/** route caches of the maps by OK map node types */
+	private static Map<SimMap, Map<String, RouteCache>> caches;
+
+	static {
+		DTNSim.registerForReset(RouteCache.class.getCanonicalName());
+		reset();
+	}
+
+	/** the map of the routes */
+	private final SimMap map;
+	/** the map node types that are OK for routes or null if all are OK */
+	private final int[] okMapNodes;
+	/** maximum number of cached routes */
+	private final int capacity;
+	/** should the shortest path trees of the anchor nodes be kept */
+	private final boolean keepTrees;
+	/** should the A* heuristic be used */
+	private final boolean aStar;
+	/** the graph whose node indices the routes and trees are */
+	private MapGraph graph;
+	/** the cached routes (node indices) in least recently used order */
+	private final LinkedHashMap<RouteKey, int[]> routes;
+	/** the anchor nodes whose shortest path trees are kept */
+	private final Set<MapNode> anchors;
+	/** shortest path trees (previous nodes) of the anchor nodes in least
+	 * recently used order */
+	private final LinkedHashMap<MapNode, int[]> trees;
+	/** path finders of the threads */
+	private final ThreadLocal<MapGraphPathFinder> finders;
+
+	/**
+	 * Creates a new route cache
+	 * @param map The map of the routes
+	 * @param okMapNodes The map node types that are OK for routes or null if
+	 * all nodes are OK
+	 * @param capacity Maximum number of cached routes
+	 * @param keepTrees Should the shortest path trees of the anchor nodes
+	 * be kept
+	 * @param treeCapacity Maximum number of kept shortest path trees
+	 * @param aStar Should the A* heuristic be used
+	 */
+	private RouteCache(SimMap map, int[] okMapNodes, final int capacity,
+			boolean keepTrees, final int treeCapacity, boolean aStar) {
+		this.map = map;
+		this.okMapNodes = okMapNodes;
+		this.capacity = capacity;
+		this.keepTrees = keepTrees;
+		this.aStar = aStar;
+		this.routes = new LinkedHashMap<RouteKey, int[]>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<RouteKey, int[]> eldest) {
+				return size() > capacity;
+			}
+		};
+		this.anchors = Collections.newSetFromMap(
+				new IdentityHashMap<MapNode, Boolean>());
+		this.trees = new LinkedHashMap<MapNode, int[]>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<MapNode, int[]> eldest) {
+				return size() > treeCapacity;
+			}
+		};
+		this.finders = new ThreadLocal<MapGraphPathFinder>();
+	}
+
+	/**
+	 * Resets the caches of all maps
+	 */
+	public static synchronized void reset() {
+		caches = new IdentityHashMap<SimMap, Map<String, RouteCache>>();
+	}
+
+	/**
+	 * Returns the route cache of a map for the given OK map node types.
+	 * The cache is created if it doesn't exist yet.
+	 * @param map The map
+	 * @param okMapNodes The map node types that are OK for routes or null if
+	 * all nodes are OK
+	 * @return The route cache
+	 */
+	public static synchronized RouteCache getInstance(SimMap map,
+			int[] okMapNodes) {
+		Map<String, RouteCache> mapCaches = caches.get(map);
+		if (mapCaches == null) {
+			mapCaches = new HashMap<String, RouteCache>();
+			caches.put(map, mapCaches);
+		}
+
+		String types = Arrays.toString(okMapNodes);
+		RouteCache cache = mapCaches.get(types);
+		if (cache == null) {
+			Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+			int capacity = s.getInt(ROUTE_CACHE_SIZE_S, DEF_ROUTE_CACHE_SIZE);
+			s.ensurePositiveValue(capacity, ROUTE_CACHE_SIZE_S);
+			int treeCapacity = s.getInt(ROUTE_TREE_CACHE_SIZE_S,
+					DEF_ROUTE_TREE_CACHE_SIZE);
+			s.ensurePositiveValue(treeCapacity, ROUTE_TREE_CACHE_SIZE_S);
+			cache = new RouteCache(map, okMapNodes, capacity,
+					s.getBoolean(ROUTE_TREES_S, false) && treeCapacity > 0,
+					treeCapacity, s.getBoolean(ROUTE_A_STAR_S, false));
+			mapCaches.put(types, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Adds an anchor node, i.e., a node that many routes start from. If
+	 * shortest path trees are kept, the tree rooted at the node is
+	 * calculated when the first route from it is requested and all the
+	 * routes from the node are taken from the tree after that.
+	 * @param node The anchor node
+	 */
+	public synchronized void addAnchor(MapNode node) {
+		if (keepTrees) {
+			anchors.add(node);
+		}
+	}
+
+	/**
+	 * Returns a shortest path between two map nodes (see
+	 * {@link DijkstraPathFinder#getShortestPath(MapNode, MapNode)})
+	 * @param from The source of the path
+	 * @param to The destination of the path
+	 * @return a shortest path between the source and destination nodes in
+	 * a list of MapNodes or an empty list if such path is not available.
+	 * The list is the caller's own.
+	 */
+	public List<MapNode> getShortestPath(MapNode from, MapNode to) {
+		MapGraphPathFinder finder = getFinder();
+		MapGraph graph = finder.getGraph();
+		int fromIndex = graph.getIndex(from);
+		int toIndex = graph.getIndex(to);
+		if (fromIndex < 0 || toIndex < 0) { // not nodes of this map
+			return new DijkstraPathFinder(okMapNodes).getShortestPath(from,
+					to);
+		}
+
+		int[] tree = getTree(from, finder);
+		if (tree != null) {
+			return toNodes(graph, getPath(tree, fromIndex, toIndex));
+		}
+
+		if (capacity == 0) {
+			return toNodes(graph, finder.getShortestPath(fromIndex, toIndex));
+		}
+
+		RouteKey key = new RouteKey(from, to);
+		int[] route;
+		synchronized (this) {
+			checkGraph(graph);
+			route = routes.get(key);
+		}
+
+		if (route == null) {
+			route = finder.getShortestPath(fromIndex, toIndex);
+			synchronized (this) {
+				if (graph == this.graph) {
+					routes.put(key, route);
+				}
+			}
+		}
+
+		return toNodes(graph, route);
+	}
+
+	/**
+	 * Returns the path finder of the calling thread for the current graph
+	 * of the map
+	 * @return The path finder
+	 */
+	private MapGraphPathFinder getFinder() {
+		MapGraph graph = map.getGraph();
+		MapGraphPathFinder finder = finders.get();
+		if (finder == null || finder.getGraph() != graph) {
+			finder = new MapGraphPathFinder(graph, okMapNodes, aStar);
+			finders.set(finder);
+		}
+		return finder;
+	}
+
+	/**
+	 * Drops the cached routes and trees if the graph of the map has changed
+	 * (the map was translated or mirrored), since they are node indices of
+	 * the old graph. Must be called while holding the lock of this cache.
+	 * @param graph The current graph of the map
+	 */
+	private void checkGraph(MapGraph graph) {
+		if (graph != this.graph) {
+			routes.clear();
+			trees.clear();
+			this.graph = graph;
+		}
+	}
+
+	/**
+	 * Returns the shortest path tree rooted at a node, calculating it first
+	 * if needed
+	 * @param root The root node
+	 * @param finder The path finder to calculate the tree with
+	 * @return The tree (previous node indices) or null if the node is not an
+	 * anchor whose tree is kept
+	 */
+	private int[] getTree(MapNode root, MapGraphPathFinder finder) {
+		if (!keepTrees) {
+			return null;
+		}
+
+		MapGraph graph = finder.getGraph();
+		synchronized (this) {
+			if (!anchors.contains(root)) {
+				return null;
+			}
+			checkGraph(graph);
+			int[] tree = trees.get(root);
+			if (tree != null) {
+				return tree;
+			}
+		}
+
+		int[] tree = finder.getShortestPathTree(graph.getIndex(root));
+		synchronized (this) {
+			if (graph == this.graph) {
+				trees.put(root, tree);
+			}
+		}
+		return tree;
+	}
+
+	/**
+	 * Returns the path from the root of a shortest path tree to a node
+	 * @param tree The shortest path tree
+	 * @param from Index of the root of the tree
+	 * @param to Index of the destination node
+	 * @return Indices of the nodes of the path or an empty array if the
+	 * destination is not in the tree
+	 */
+	private int[] getPath(int[] tree, int from, int to) {
+		if (from == to) { // source and destination are the same
+			return new int[] {from};
+		}
+		if (tree[to] < 0) {
+			return new int[0]; // such path isn't available
+		}
+
+		int length = 1;
+		for (int prev = tree[to]; prev != from; prev = tree[prev]) {
+			length++;
+		}
+
+		int[] path = new int[length + 1];
+		for (int n = to; n != from; n = tree[n]) {
+			path[length--] = n;
+		}
+		path[0] = from;
+		return path;
+	}
+
+	/**
+	 * Translates a path of node indices to a list of map nodes
+	 * @param graph The graph of the indices
+	 * @param path The node indices
+	 * @return A new list of the map nodes
+	 */
+	private List<MapNode> toNodes(MapGraph graph, int[] path) {
+		List<MapNode> nodes = new ArrayList<MapNode>(path.length);
+		for (int n : path) {
+			nodes.add(graph.getNode(n));
+		}
+		return nodes;
+	}
+
+	/**
+	 * Key of a cached route
+	 */
+	private static class RouteKey {
+		private final MapNode from;
+		private final MapNode to;
+
+		public RouteKey(MapNode from, MapNode to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof RouteKey)) {
+				return false;
+			}
+			RouteKey k = (RouteKey)o;
+			return this.from == k.from && this.to == k.to;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(from) +
+				System.identityHashCode(to);
+		}
+	}
+}
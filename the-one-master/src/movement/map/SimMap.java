@@ -6,6 +6,7 @@ package movement.map;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,6 +29,8 @@ public class SimMap implements Serializable {
 
 	/** is re-hash needed before using hash mode (some coordinates changed) */
 	private boolean needsRehash = false;
+	/** compiled graph of the map (created when first needed) */
+	private transient MapGraph graph;
 
 	public SimMap(Map<Coord, MapNode> nodes) {
 		this.offset = new Coord(0,0);
@@ -37,6 +40,25 @@ public class SimMap implements Serializable {
 		setBounds();
 	}
 
+	/**
+	 * Creates a map of prepared map nodes (e.g., read from a
+	 * {@link MapArtifact}), whose coordinates already have the offset and
+	 * mirroring applied
+	 * @param nodes The map nodes in the order {@link #getNodes()} returns them
+	 * @param offset Offset of the translations made to the map
+	 * @param isMirrored Has the map data been mirrored
+	 */
+	SimMap(List<MapNode> nodes, Coord offset, boolean isMirrored) {
+		this.offset = offset;
+		this.nodes = new ArrayList<MapNode>(nodes);
+		this.nodesMap = new HashMap<Coord, MapNode>();
+		for (MapNode node : nodes) {
+			nodesMap.put(node.getLocation(), node);
+		}
+		this.isMirrored = isMirrored;
+		setBounds();
+	}
+
 	/**
 	 * Returns all the map nodes in a list
 	 * @return all the map nodes in a list
@@ -62,6 +84,19 @@ public class SimMap implements Serializable {
 		return nodesMap.get(c);
 	}
 
+	/**
+	 * Returns the compiled graph of the map. The graph is created when this
+	 * method is called for the first time and again after the map has been
+	 * translated or mirrored.
+	 * @return The compiled graph of the map
+	 */
+	public synchronized MapGraph getGraph() {
+		if (graph == null) {
+			graph = new MapGraph(nodes);
+		}
+		return graph;
+	}
+
 	/**
 	 * Returns the upper left corner coordinate of the map
 	 * @return the upper left corner coordinate of the map
@@ -111,6 +146,7 @@ public class SimMap implements Serializable {
 		offset.translate(dx, dy);
 
 		needsRehash = true;
+		graph = null;
 	}
 
 	/**
@@ -127,6 +163,7 @@ public class SimMap implements Serializable {
 		setBounds();
 		this.isMirrored = true;
 		needsRehash = true;
+		graph = null;
 	}
 
 	/**
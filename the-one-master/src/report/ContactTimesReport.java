@@ -133,7 +133,7 @@ public class ContactTimesReport extends Report implements ConnectionListener {
 		public ConnectionInfo (DTNHost h1, DTNHost h2){
 			this.h1 = h1;
 			this.h2 = h2;
-			this.startTime = getSimTime();
+			this.startTime = getEventTime();
 			this.endTime = -1;
 		}
 
@@ -143,7 +143,7 @@ public class ContactTimesReport extends Report implements ConnectionListener {
 		 * the time of the request.
 		 */
 		public void connectionEnd() {
-			this.endTime = getSimTime();
+			this.endTime = getEventTime();
 		}
 
 		/**
@@ -5,8 +5,8 @@
 
 package report;
 
-import core.Coord;
 import core.DTNHost;
+import core.HostStates;
 
 /**
  * Node location snapshot report. Reports the location of all 
@@ -18,9 +18,9 @@ public class LocationSnapshotReport extends SnapshotReport {
 
 	@Override
 	protected void writeSnapshot(DTNHost h) {
-		Coord location = h.getLocation();
-		write(h.toString() + " " +  format(location.getX()) + 
-				" " + format(location.getY()));
+		int address = h.getAddress();
+		write(h.toString() + " " +  format(HostStates.getX(address)) + 
+				" " + format(HostStates.getY(address)));
 	}
 
 }
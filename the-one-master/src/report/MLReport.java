@@ -4,14 +4,24 @@
  */
 package report;
 
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import core.*;
 import routing.IWDMLRouter;
 import routing.MLProph;
+import routing.MessageRouter;
+import util.PairCounterTable;
 import weka.core.DenseInstance;
 import weka.core.Instance;
 
@@ -22,90 +32,185 @@ import static core.SimScenario.ROUTER_S;
  * Report for generating different kind of total statistics about message
  * relaying performance. Messages that were created during the warm up period
  * are ignored.
+ * <P>By default the training data (the details of all transfers) is kept in
+ * memory and written when the simulation is done. In the streaming mode
+ * ({@link #STREAMING_S}) the details of a message are written as soon as
+ * they are labeled, i.e., when the message is delivered or when it can't be
+ * delivered anymore (all its copies expired or were dropped).</P>
  *
  * <strong>Note:</strong> if some statistics could not be created (e.g. overhead
  * ratio if no messages were delivered) "NaN" is reported for double values and
  * zero for integer median(s).
  */
 public class MLReport extends Report implements MessageListener {
-
-    private static Map<DTNHost, Map<DTNHost, Integer>> noOfSuccessfulContactsBetweenToNodeAndFromNode = new HashMap<DTNHost, Map<DTNHost, Integer>>();
-    private static Map<DTNHost, Map<DTNHost, Ratio>> ratioOfSuccessfulTransfersToTotalTransferInitiated = new HashMap<DTNHost, Map<DTNHost, Ratio>>();
+    /** Number of values in a decision vector */
+    public static final int DECISION_VECTOR_LENGTH = 10;
+
+    /** Stream the training data while the simulation runs -setting id
+     * ({@value}). Boolean. Default = false (write all when done). */
+    public static final String STREAMING_S = "streaming";
+    /** Output format of the training data -setting id ({@value}). Either
+     * {@value #FORMAT_ARFF} (default) or {@value #FORMAT_CSV} (a header
+     * line with the attribute names and a line per transfer). */
+    public static final String FORMAT_S = "format";
+    /** Compress the output with gzip -setting id ({@value}). Boolean.
+     * Default = false. ".gz" is appended to the output file name. */
+    public static final String GZIP_S = "gzip";
+    /** Maximum number of unlabeled transfer details kept in memory in the
+     * streaming mode -setting id ({@value}). When the window is full, the
+     * details of the oldest pending messages are written as not delivered.
+     * Default = {@value #DEF_PENDING_WINDOW}. */
+    public static final String PENDING_WINDOW_S = "pendingWindow";
+    /** Default value of {@link #PENDING_WINDOW_S} */
+    public static final int DEF_PENDING_WINDOW = 1000000;
+
+    /** ARFF format -setting value ({@value}) */
+    public static final String FORMAT_ARFF = "arff";
+    /** CSV format -setting value ({@value}) */
+    public static final String FORMAT_CSV = "csv";
+
+    /** Names of the numeric attributes of the training data */
+    private static final String[] ATTRIBUTES = {"prophet_probability",
+            "buffer_occupency", "successful_deliveries", "success_ratio",
+            "from_speed", "to_speed", "distance_to_end",
+            "distance_from_source", "message_live_time", "from_energy",
+            "to_energy", "current_hop_count"};
+    /** Name of the class attribute of the training data */
+    private static final String CLASS_ATTRIBUTE = "is_succesfully_delivered";
+
+    /** Index of the started transfers counter in the pair statistics */
+    private static final int TRANSFERS_STARTED = 0;
+    /** Index of the completed transfers counter in the pair statistics */
+    private static final int TRANSFERS_COMPLETED = 1;
+
+    /**
+     * Transfer statistics of (from, to) host address pairs. Completed
+     * transfers are the successful contacts of the pair and, divided by the
+     * started transfers, the success ratio of the pair.
+     */
+    private static PairCounterTable transferStats;
     private List<Detail> conn_details;
-    private Map<DTNHost, Map<DTNHost, Integer>> noOfSuccessfulMsgDeliveriesBetweenToNodeAndFromNode = new HashMap<DTNHost, Map<DTNHost, Integer>>();
-    private Map<DTNHost, Map<DTNHost, Ratio>> ratioOfSuccessfulMsgDeliveriesToTotalMsgCreated = new HashMap<DTNHost, Map<DTNHost, Ratio>>();
+    /** Transfer details of messages that can still be delivered, by id */
+    private Map<String, PendingMessage> pending;
+    /** Number of transfer details of the pending messages */
+    private int nrofPendingDetails;
+
+    private boolean streaming;
+    private boolean csv;
+    private boolean gzip;
+    private int pendingWindow;
+    private boolean windowOverflowed;
+
+    static {
+        DTNSim.registerForReset(MLReport.class.getCanonicalName());
+        reset();
+    }
+
     public MLReport() {
+        Settings s = getSettings();
+        this.streaming = s.getBoolean(STREAMING_S, false);
+        String format = s.getSetting(FORMAT_S, FORMAT_ARFF);
+        if (!format.equals(FORMAT_ARFF) && !format.equals(FORMAT_CSV)) {
+            throw new SettingsError("Unknown " + FORMAT_S + " '" + format +
+                    "'; use " + FORMAT_ARFF + " or " + FORMAT_CSV);
+        }
+        this.csv = format.equals(FORMAT_CSV);
+        this.gzip = s.getBoolean(GZIP_S, false);
+        this.pendingWindow = s.getInt(PENDING_WINDOW_S, DEF_PENDING_WINDOW);
+        s.ensurePositiveValue(this.pendingWindow, PENDING_WINDOW_S);
+
         init();
     }
 
-    public static Double get_success_ratio(DTNHost from, DTNHost to) {
-        Double ratio;
-        if (ratioOfSuccessfulTransfersToTotalTransferInitiated.get(to) == null) {
-            ratio = 0.0;
-        } else {
-            if (ratioOfSuccessfulTransfersToTotalTransferInitiated.get(to).get(from) == null) {
-                ratio = 0.0;
-            } else {
-                ratio = ratioOfSuccessfulTransfersToTotalTransferInitiated
-                        .get(to)
-                        .get(from).evaluateRatio();
-            }
+    /**
+     * Resets the transfer statistics of all host pairs
+     */
+    public static void reset() {
+        transferStats = new PairCounterTable(2);
+    }
+
+    public static double get_success_ratio(DTNHost from, DTNHost to) {
+        int started = transferStats.get(from.getAddress(), to.getAddress(),
+                TRANSFERS_STARTED);
+        if (started == 0) {
+            return 0.0;
         }
-        return ratio;
+        return transferStats.get(from.getAddress(), to.getAddress(),
+                TRANSFERS_COMPLETED) / (double) started;
     }
 
     public static int get_contact_no(DTNHost from, DTNHost to) {
-        int x;
-        if (noOfSuccessfulContactsBetweenToNodeAndFromNode.get(to) == null) {
-            x = 0;
-        } else {
-            if (noOfSuccessfulContactsBetweenToNodeAndFromNode.get(to).get(from) == null) {
-                x = 0;
-            } else {
-                x = noOfSuccessfulContactsBetweenToNodeAndFromNode
-                        .get(to)
-                        .get(from);
-            }
-        }
-        return x;
+        return transferStats.get(from.getAddress(), to.getAddress(),
+                TRANSFERS_COMPLETED);
     }
 
+    /**
+     * Returns the decision vector of a (message, connection) candidate as
+     * a Weka instance.
+     * @see #fill_decision_vector(DTNHost, DTNHost, Message, double[])
+     */
     public static Instance get_decision_vector(DTNHost from, DTNHost to,
                                                Message m) {
-        Double pred_val;
-        if ((new Settings(GROUP_NS).getSetting(ROUTER_S)).equals("IWDMLRouter")) {
-            pred_val = ((IWDMLRouter) to.getRouter()).getPredFor(m.getTo());
+        double[] values = new double[DECISION_VECTOR_LENGTH];
+        fill_decision_vector(from, to, m, values);
+        return new DenseInstance(1.0, values);
+    }
+
+    /**
+     * Writes the decision vector of a (message, connection) candidate into
+     * a row of a primitive feature matrix. The row must have room for at
+     * least {@link #DECISION_VECTOR_LENGTH} values.
+     * @param from The host that is carrying the message
+     * @param to The host the message would be forwarded to
+     * @param m The message
+     * @param row The row where the values are written to
+     */
+    public static void fill_decision_vector(DTNHost from, DTNHost to,
+                                            Message m, double[] row) {
+        double pred_val;
+        MessageRouter toRouter = to.getRouter();
+        if (toRouter instanceof IWDMLRouter) {
+            pred_val = ((IWDMLRouter) toRouter).getPredFor(m.getTo());
         } else {
-            pred_val = ((MLProph) to.getRouter()).getPredFor(m.getTo());
+            pred_val = ((MLProph) toRouter).getPredFor(m.getTo());
         }
+        fill_decision_vector(from, to, m, pred_val, row);
+    }
+
+    /**
+     * Writes the decision vector of a candidate with a given delivery
+     * predictability of the receiving host. Doesn't change the state of the
+     * hosts, so it can be called concurrently for different rows.
+     * @param from The host that is carrying the message
+     * @param to The host the message would be forwarded to
+     * @param m The message
+     * @param pred_val Delivery predictability of "to" for the destination
+     * @param row The row where the values are written to
+     * @see #fill_decision_vector(DTNHost, DTNHost, Message, double[])
+     */
+    public static void fill_decision_vector(DTNHost from, DTNHost to,
+                                            Message m, double pred_val,
+                                            double[] row) {
+        MessageRouter toRouter = to.getRouter();
         if (m.getTo() == to) {
             pred_val = 1.0;
         }
-        Double distance_to_end = to.getLocation().distance(m.getTo().getLocation());
-        Double free_buf = (to.getRouter().getFreeBufferSize() - m.getSize()) / 1.0;
-        Double time_from_creation = SimClock.getTime() - m.timeCreated;
 
         Double to_energy = (Double) to.getComBus().
                 getProperty(routing.util.EnergyModel.ENERGY_VALUE_ID);
-
         Double from_energy = (Double) from.getComBus().
                 getProperty(routing.util.EnergyModel.ENERGY_VALUE_ID);
-        int contacts = MLReport.get_contact_no(from, to);
-        Double ratio = MLReport.get_success_ratio(from, to);
-
-        Instance newInstance = new DenseInstance(10);
-        newInstance.setValue(0, pred_val);
-        newInstance.setValue(1, free_buf);
-        newInstance.setValue(2, contacts);
-        newInstance.setValue(3, ratio);
-        newInstance.setValue(4, to.speed);
-        newInstance.setValue(5, distance_to_end);
-        newInstance.setValue(6, time_from_creation);
-        newInstance.setValue(7, from_energy);
-        newInstance.setValue(8, to_energy);
-        newInstance.setValue(9, m.getHopCount());
-        return newInstance;
 
+        row[0] = pred_val;
+        row[1] = (toRouter.getFreeBufferSize() - m.getSize()) / 1.0;
+        row[2] = MLReport.get_contact_no(from, to);
+        row[3] = MLReport.get_success_ratio(from, to);
+        row[4] = to.speed;
+        row[5] = to.getLocation().distance(m.getTo().getLocation());
+        row[6] = SimClock.getTime() - m.timeCreated;
+        row[7] = from_energy;
+        row[8] = to_energy;
+        row[9] = m.getHopCount();
     }
 
     @Override
@@ -113,6 +218,27 @@ public class MLReport extends Report implements MessageListener {
         super.init();
 
         this.conn_details = new ArrayList<Detail>();
+        /* in creation order, so the window drops the oldest messages */
+        this.pending = new LinkedHashMap<String, PendingMessage>();
+        this.nrofPendingDetails = 0;
+        this.windowOverflowed = false;
+
+        if (this.streaming) {
+            writeHeader();
+        }
+    }
+
+    @Override
+    protected Writer createWriter(String outFileName) throws IOException {
+        if (!this.gzip) {
+            return super.createWriter(outFileName);
+        }
+        if (!outFileName.endsWith(".gz")) {
+            outFileName += ".gz";
+        }
+        return new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(outFileName)),
+                StandardCharsets.UTF_8));
     }
 
     public void messageDeleted(Message m, DTNHost where, boolean dropped) {
@@ -120,6 +246,7 @@ public class MLReport extends Report implements MessageListener {
             return;
         }
 
+        removeCopy(m);
     }
 
     public void messageTransferAborted(Message m, DTNHost from, DTNHost to) {
@@ -127,79 +254,64 @@ public class MLReport extends Report implements MessageListener {
             return;
         }
 
+        removeCopy(m);
     }
 
-    public void messageTransferred(Message m, DTNHost from, DTNHost to,
-                                   boolean finalTarget) {
-        if (isWarmupID(m.getId())) {
-            return;
+    /**
+     * Decrements the number of live copies of a message and releases the
+     * transfer details of the message when no copies are left (e.g., all
+     * of them expired or were dropped) and thus it can't be delivered.
+     */
+    private void removeCopy(Message m) {
+        PendingMessage pm = pending.get(m.getId());
+        if (pm != null && --pm.copies <= 0) {
+            release(m.getId());
         }
+    }
 
-        updateSuccessCounter(noOfSuccessfulContactsBetweenToNodeAndFromNode,
-                from, to);
-        updateNumaratorInRatioMap(
-                ratioOfSuccessfulTransfersToTotalTransferInitiated, from, to);
-
-        if (finalTarget) {
-            // updateSuccessCounter(noOfSuccessfulMsgDeliveriesBetweenToNodeAndFromNode,
-            // from, to);8800928054
-            // updateNumaratorInRatioMap(ratioOfSuccessfulMsgDeliveriesToTotalMsgCreated,
-            // from, to);9868861080
-            for (int i = 0; i < conn_details.size(); i++) {
-                if (m.path.contains(conn_details.get(i).from)
-                        && m.path.contains(conn_details.get(i).to)
-                        && m.getId() == conn_details.get(i).mid) {// means that
-                    // success
-                    // connection
-                    // delivery.
-                    conn_details.get(i).set_successful_delivery();
-                }
+    /**
+     * Removes a message from the pending messages. In the streaming mode
+     * the (now labeled) details of the message are written.
+     */
+    private void release(String id) {
+        PendingMessage pm = pending.remove(id);
+        nrofPendingDetails -= pm.details.size();
+        if (streaming) {
+            for (Detail d : pm.details) {
+                writeDetail(d);
             }
-
         }
     }
 
-    private void updateSuccessCounter(
-            Map<DTNHost, Map<DTNHost, Integer>> ratioMap, DTNHost from,
-            DTNHost to) {
-        if (!ratioMap.containsKey(to)) {
-            ratioMap.put(to, new HashMap<DTNHost, Integer>());
-            ratioMap.get(to).put(from, 1);
-        } else {
-            if (!ratioMap.get(to).containsKey(from)) {
-                ratioMap.get(to).put(from, 1);
-            } else {
-                Integer updatedNoOfContacts = ratioMap.get(to).get(from) + 1;
-                ratioMap.get(to).put(from, updatedNoOfContacts);
-            }
+    public void messageTransferred(Message m, DTNHost from, DTNHost to,
+                                   boolean finalTarget) {
+        if (isWarmupID(m.getId())) {
+            return;
         }
-    }
 
-    private void updateNumaratorInRatioMap(
-            Map<DTNHost, Map<DTNHost, Ratio>> ratioMap, DTNHost from, DTNHost to) {
-        if (!ratioMap.containsKey(to)) {
-            throw new RuntimeException("");
-        } else if (!ratioMap.get(to).containsKey(from)) {
-            throw new RuntimeException("");
-        } else {
-            double prevNumerator = ratioMap.get(to).get(from).getNumerator();
-            ratioMap.get(to).get(from).setNumerator(++prevNumerator);
+        if (!transferStats.contains(from.getAddress(), to.getAddress())) {
+            throw new RuntimeException("No transfer started from " + from +
+                    " to " + to);
         }
-    }
+        transferStats.increment(from.getAddress(), to.getAddress(),
+                TRANSFERS_COMPLETED);
 
-    private void updateDenominatorInRatioMap(
-            Map<DTNHost, Map<DTNHost, Ratio>> ratioMap, DTNHost from, DTNHost to) {
-        if (!ratioMap.containsKey(to)) {
-            ratioMap.put(to, new HashMap<DTNHost, Ratio>());
-            ratioMap.get(to).put(from, new Ratio(0, 1));
-        } else {
-            if (!ratioMap.get(to).containsKey(from)) {
-                ratioMap.get(to).put(from, new Ratio(0, 1));
-            } else {
-                double prevDenominator = ratioMap.get(to).get(from)
-                        .getDenominator();
-                ratioMap.get(to).get(from).setDenominator(++prevDenominator);
+        /* a transfer to a non-final hop only moves a live copy from the
+           connection to the receiver's buffer */
+        PendingMessage pm = pending.get(m.getId());
+        if (pm == null) {
+            return;
+        }
+
+        if (finalTarget) {
+            /* transfers where both hosts are on the delivery path were part
+               of a successful delivery; no later transfer can be */
+            for (Detail d : pm.details) {
+                if (m.hasPassed(d.from) && m.hasPassed(d.to)) {
+                    d.set_successful_delivery();
+                }
             }
+            release(m.getId());
         }
     }
 
@@ -209,6 +321,8 @@ public class MLReport extends Report implements MessageListener {
             return;
         }
 
+        pending.put(m.getId(), new PendingMessage());
+
         if (m.getResponseSize() > 0) {
         }
         // updateDenominatorInRatioMap(ratioOfSuccessfulTransfersToTotalTransferInitiated,
@@ -241,141 +355,101 @@ public class MLReport extends Report implements MessageListener {
 
         Double from_energy = (Double) from.getComBus().
                 getProperty(routing.util.EnergyModel.ENERGY_VALUE_ID);
-        int x;
-        Double ratio;
-        if (noOfSuccessfulContactsBetweenToNodeAndFromNode.get(to) == null) {
-            x = 0;
-        } else {
-            if (noOfSuccessfulContactsBetweenToNodeAndFromNode.get(to).get(from) == null) {
-                x = 0;
-            } else {
-                x = noOfSuccessfulContactsBetweenToNodeAndFromNode
-                        .get(to)
-                        .get(from);
-            }
-        }
-        if (ratioOfSuccessfulTransfersToTotalTransferInitiated.get(to) == null) {
-            ratio = 0.0;
-        } else {
-            if (ratioOfSuccessfulTransfersToTotalTransferInitiated.get(to).get(from) == null) {
-                ratio = 0.0;
-            } else {
-                ratio = ratioOfSuccessfulTransfersToTotalTransferInitiated
-                        .get(to)
-                        .get(from).evaluateRatio();
-            }
-        }
+        int x = get_contact_no(from, to);
+        double ratio = get_success_ratio(from, to);
         Detail det = new Detail(from, to, m.getId(), free_buf,
                 pred_val, from.speed, to.speed, distance_to_end, m_dist_travelled, time_from_creation, from_energy, to_energy, x, ratio, m.getHopCount());
         //System.out.println(String.valueOf(pred_val));
-        conn_details.add(det);
-        updateDenominatorInRatioMap(
-                ratioOfSuccessfulTransfersToTotalTransferInitiated, from,
-                to);
-
-    }
-
-    @Override
-    public void done() {
-        write("@relation EpidemicML\n@attribute prophet_probability numeric\n@attribute buffer_occupency numeric\n@attribute successful_deliveries numeric\n@attribute success_ratio numeric\n@attribute from_speed numeric\n@attribute to_speed numeric\n@attribute distance_to_end numeric\n@attribute distance_from_source numeric\n@attribute message_live_time numeric\n@attribute from_energy numeric\n@attribute to_energy numeric\n@attribute current_hop_count numeric\n@attribute is_succesfully_delivered {0,1}\n@data\n");
-        for (int i = 0; i < conn_details.size(); i++) {
-
-            write(conn_details.get(i).prophet_prob
-                    + ","
-                    + conn_details.get(i).buffer_occupency
-                    + ","
-                    + conn_details.get(i).contacts
-                    + ","
-                    + conn_details.get(i).ratio
-                    + "," + conn_details.get(i).from_speed + ","
-                    + conn_details.get(i).to_speed +
-                    "," + conn_details.get(i).distance_to_end + ","
-                    + conn_details.get(i).m_from_source + "," +
-                    conn_details.get(i).m_time_from_creation + "," +
-                    conn_details.get(i).from_energy + "," +
-                    conn_details.get(i).to_energy
-
-                    + ","
-                    + (conn_details).get(i).current_hop_count
-                    + ","
-                    + (conn_details.get(i).is_successfully_delivered ? "1" : "0"));
+        if (!streaming) {
+            conn_details.add(det);
         }
+        PendingMessage pm = pending.get(m.getId());
+        if (pm != null) {
+            pm.details.add(det);
+            pm.copies++;
+            nrofPendingDetails++;
+        } else if (streaming) {
+            /* delivered or dropped from the window already: can't succeed */
+            writeDetail(det);
+        }
+        if (streaming && nrofPendingDetails > pendingWindow) {
+            trimPendingWindow();
+        }
+        transferStats.increment(from.getAddress(), to.getAddress(),
+                TRANSFERS_STARTED);
 
-        super.done();
-    }
-
-    public Map<DTNHost, Map<DTNHost, Integer>> getNoOfSuccessfulContactsBetweenToNodeAndFromNode() {
-        return noOfSuccessfulContactsBetweenToNodeAndFromNode;
-    }
-
-    public void setNoOfSuccessfulContactsBetweenToNodeAndFromNode(
-            Map<DTNHost, Map<DTNHost, Integer>> noOfContactsBetweenToNodeAndFromNode) {
-        noOfSuccessfulContactsBetweenToNodeAndFromNode = noOfContactsBetweenToNodeAndFromNode;
-    }
-
-    public Map<DTNHost, Map<DTNHost, Ratio>> getRatioOfSuccessfulMsgDeliveriesToTotalMsgCreated() {
-        return ratioOfSuccessfulMsgDeliveriesToTotalMsgCreated;
-    }
-
-    public void setRatioOfSuccessfulMsgDeliveriesToTotalMsgCreated(
-            Map<DTNHost, Map<DTNHost, Ratio>> ratioOfSuccessfulTransfersToTotalTransfersInitiated) {
-        this.ratioOfSuccessfulMsgDeliveriesToTotalMsgCreated = ratioOfSuccessfulTransfersToTotalTransfersInitiated;
-    }
-
-    public Map<DTNHost, Map<DTNHost, Ratio>> getRatioOfSuccessfulTransfersToTotalTransferInitiated() {
-        return ratioOfSuccessfulTransfersToTotalTransferInitiated;
-    }
-
-    public void setRatioOfSuccessfulTransfersToTotalTransferInitiated(
-            Map<DTNHost, Map<DTNHost, Ratio>> ratioOfSuccessfulTransfersToTotalTransferInitiated) {
-        MLReport.ratioOfSuccessfulTransfersToTotalTransferInitiated = ratioOfSuccessfulTransfersToTotalTransferInitiated;
-    }
-
-    public Map<DTNHost, Map<DTNHost, Integer>> getNoOfSuccessfulMsgDeliveriesBetweenToNodeAndFromNode() {
-        return noOfSuccessfulMsgDeliveriesBetweenToNodeAndFromNode;
-    }
-
-    public void setNoOfSuccessfulMsgDeliveriesBetweenToNodeAndFromNode(
-            Map<DTNHost, Map<DTNHost, Integer>> noOfSuccessfulDeliveriesBetweenToNodeAndFromNode) {
-        this.noOfSuccessfulMsgDeliveriesBetweenToNodeAndFromNode = noOfSuccessfulDeliveriesBetweenToNodeAndFromNode;
     }
 
-    class Ratio {
-        private double Numerator;
-        private double Denominator;
-
-        public Ratio(int n, int d) {
-            this.setNumerator(n);
-            this.setDenominator(d);
+    /**
+     * Writes the details of the oldest pending messages until the number of
+     * pending details fits in the window
+     */
+    private void trimPendingWindow() {
+        if (!windowOverflowed) {
+            System.err.println("Warning: " + getClass().getSimpleName() +
+                    " pending window (" + pendingWindow + ") is full; " +
+                    "writing details of undelivered messages early");
+            windowOverflowed = true;
         }
-
-        public Ratio() {
-            this.setNumerator(0);
-            this.setDenominator(0);
-        }
-
-        public double evaluateRatio() {
-            if (getDenominator() == 0)
-                throw new NumberFormatException("Divide by Zero attempted");
-            return getNumerator() / getDenominator();
+        Iterator<String> oldest = pending.keySet().iterator();
+        while (nrofPendingDetails > pendingWindow) {
+            release(oldest.next());
+            oldest = pending.keySet().iterator();
         }
+    }
 
-        public double getDenominator() {
-            return Denominator;
+    private void writeHeader() {
+        StringBuilder header = new StringBuilder();
+        if (csv) {
+            for (String name : ATTRIBUTES) {
+                header.append(name).append(',');
+            }
+            header.append(CLASS_ATTRIBUTE);
+        } else {
+            header.append("@relation EpidemicML\n");
+            for (String name : ATTRIBUTES) {
+                header.append("@attribute ").append(name)
+                        .append(" numeric\n");
+            }
+            header.append("@attribute ").append(CLASS_ATTRIBUTE)
+                    .append(" {0,1}\n@data\n");
         }
+        write(header.toString());
+    }
 
-        public void setDenominator(double prevDenominator) {
-            Denominator = prevDenominator;
-        }
+    private void writeDetail(Detail d) {
+        write(d.prophet_prob + "," + d.buffer_occupency + "," + d.contacts +
+                "," + d.ratio + "," + d.from_speed + "," + d.to_speed + "," +
+                d.distance_to_end + "," + d.m_from_source + "," +
+                d.m_time_from_creation + "," + d.from_energy + "," +
+                d.to_energy + "," + d.current_hop_count + "," +
+                (d.is_successfully_delivered ? "1" : "0"));
+    }
 
-        public double getNumerator() {
-            return Numerator;
+    @Override
+    public void done() {
+        if (streaming) {
+            /* the rest were not delivered during the simulation */
+            while (!pending.isEmpty()) {
+                release(pending.keySet().iterator().next());
+            }
+        } else {
+            writeHeader();
+            for (Detail d : conn_details) {
+                writeDetail(d);
+            }
         }
 
-        public void setNumerator(double prevNumerator) {
-            Numerator = prevNumerator;
-        }
+        super.done();
     }
 
-
-}
\ No newline at end of file
+    /**
+     * Transfer details of a message that hasn't been delivered yet and the
+     * number of its live copies (buffered or in transfer). The count can
+     * only overestimate the real number of copies.
+     */
+    private static class PendingMessage {
+        private List<Detail> details = new ArrayList<Detail>();
+        private int copies = 1;
+    }
+}
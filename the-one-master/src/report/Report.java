@@ -8,12 +8,14 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import core.NetworkInterface;
 import core.Settings;
 import core.SimClock;
 import core.SimError;
@@ -192,13 +194,24 @@ public abstract class Report {
 	 */
 	private void createOutput(String outFileName) {
 		try {
-			this.out = new PrintWriter(new FileWriter(outFileName));
+			this.out = new PrintWriter(createWriter(outFileName));
 		} catch (IOException e) {
 			throw new SimError("Couldn't open file '" + outFileName +
 					"' for report output\n" + e.getMessage(), e);
 		}
 	}
 
+	/**
+	 * Opens the writer for an output file. Subclasses can override this
+	 * to e.g. compress the output.
+	 * @param outFileName Name (&path) of the file to create
+	 * @return The writer
+	 * @throws IOException if the file can't be opened
+	 */
+	protected Writer createWriter(String outFileName) throws IOException {
+		return new FileWriter(outFileName);
+	}
+
 	/**
 	 * Creates a number-suffixed output file with increasing number suffix
 	 * @param outFileName Prefix of the output file's name
@@ -272,6 +285,18 @@ public abstract class Report {
 		return SimClock.getTime();
 	}
 
+	/**
+	 * Returns the time of the event being reported. For connection events
+	 * this is the exact time of the event, which can be earlier than the
+	 * current simulation time if the connectivity optimizer detected the
+	 * event between two updates. For other events it is the current
+	 * simulation time.
+	 * @return the time of the event being reported
+	 */
+	protected double getEventTime() {
+		return NetworkInterface.getConnectionEventTime();
+	}
+
 	/**
 	 * Returns true if the warm up period is still ongoing (simTime < warmup)
 	 * @return true if the warm up period is still ongoing, false if not
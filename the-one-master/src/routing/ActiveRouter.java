@@ -7,10 +7,12 @@ package routing;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
 
 import routing.util.EnergyModel;
+import routing.util.MessageIndex;
 import routing.util.MessageTransferAcceptPolicy;
 import routing.util.RoutingInfo;
 import util.Tuple;
@@ -37,6 +39,15 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * from message buffer */
 	protected boolean deleteDelivered;
 
+	/** Order of the messages by their receive time (oldest first) */
+	private static final Comparator<Message> RECEIVE_TIME_ORDER =
+		new Comparator<Message>() {
+			public int compare(Message m1, Message m2) {
+				return Double.compare(m1.getReceiveTime(),
+						m2.getReceiveTime());
+			}
+		};
+
 	/** prefix of all response message IDs */
 	public static final String RESPONSE_PREFIX = "R_";
 	/** how often TTL check (discarding old messages) is performed */
@@ -45,6 +56,8 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ArrayList<Connection> sendingConnections;
 	/** sim time when the last TTL check was done */
 	private double lastTtlCheck;
+	/** the buffered messages by receive time (null until needed) */
+	private MessageIndex receiveTimeIndex;
 
 	private MessageTransferAcceptPolicy policy;
 	private EnergyModel energy;
@@ -84,6 +97,7 @@ public abstract class ActiveRouter extends MessageRouter {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
 		this.lastTtlCheck = 0;
+		this.receiveTimeIndex = null;
 	}
 
 	/**
@@ -323,6 +337,36 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * exludeMsgBeingSent is true)
 	 */
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
+		Message oldest = null;
+		for (Message m : getReceiveTimeIndex()) {
+			if (excludeMsgBeingSent && isSending(m.getId())) {
+				continue; // skip the message(s) that router is sending
+			}
+
+			if (oldest == null) {
+				oldest = m;
+			}
+			else if (getReceiveTimeIndex().isTie(oldest, m)) {
+				/* many equally old messages: return the first one in the
+				   buffer's order (like when going through the buffer) */
+				return findOldestMessage(excludeMsgBeingSent);
+			}
+			else {
+				break;
+			}
+		}
+
+		return oldest;
+	}
+
+	/**
+	 * Returns the oldest message by going through the message buffer.
+	 * Of equally old messages, the first one in the buffer is returned.
+	 * @param excludeMsgBeingSent If true, excludes message(s) that are
+	 * being sent
+	 * @return The oldest message or null if no message could be returned
+	 */
+	private Message findOldestMessage(boolean excludeMsgBeingSent) {
 		Collection<Message> messages = this.getMessageCollection();
 		Message oldest = null;
 		for (Message m : messages) {
@@ -453,13 +497,43 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		List<Message> messages =
-			new ArrayList<Message>(this.getMessageCollection());
-		this.sortByQueueMode(messages);
+		List<Message> messages;
+		if (getSendQueueMode() == Q_MODE_FIFO &&
+				!getReceiveTimeIndex().hasTies()) {
+			/* the receive times define the order alone; no need to sort */
+			messages = new ArrayList<Message>(this.getNrofMessages());
+			for (Message m : getReceiveTimeIndex()) {
+				messages.add(m);
+			}
+		}
+		else {
+			messages = new ArrayList<Message>(this.getMessageCollection());
+			this.sortByQueueMode(messages);
+		}
 
 		return tryMessagesToConnections(messages, connections);
 	}
 
+	/**
+	 * Returns the index of the buffered messages by receive time (oldest
+	 * first). The index is created when it is needed the first time.
+	 * <P>Only messages received (or created) in the same update have equal
+	 * receive times. The index orders such messages by their IDs, but the
+	 * send and drop orders keep them in the buffer's order, so those
+	 * orders are taken from the buffer instead when the index has ties
+	 * (see {@link MessageIndex#hasTies()}). Ties are rare unless many
+	 * messages arrive in the same update, e.g., with long update intervals
+	 * and high message rates.</P>
+	 * @return The receive time index
+	 */
+	protected MessageIndex getReceiveTimeIndex() {
+		if (this.receiveTimeIndex == null) {
+			this.receiveTimeIndex = new MessageIndex(RECEIVE_TIME_ORDER);
+			addBufferIndex(this.receiveTimeIndex);
+		}
+		return this.receiveTimeIndex;
+	}
+
 	/**
 	 * Exchanges deliverable (to final recipient) messages between this host
 	 * and all hosts this host is currently connected to. First all messages
@@ -631,6 +705,24 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 	}
 
+	/**
+	 * Returns the time of the next TTL check if this router doesn't
+	 * send anything, has no energy model nor applications and either has no
+	 * messages or no connections (so that {@link #canStartTransfer()} is
+	 * false). Otherwise returns the current time. Subclasses that do other
+	 * time dependent work in {@link #update()} must override this.
+	 */
+	@Override
+	public double getIdleUntil() {
+		if (this.energy != null || hasApplications() ||
+				this.sendingConnections.size() > 0 ||
+				(this.getNrofMessages() > 0 &&
+						this.getConnections().size() > 0)) {
+			return SimClock.getTime();
+		}
+		return this.lastTtlCheck + TTL_CHECK_INTERVAL;
+	}
+
 	/**
 	 * Method is called just before a transfer is aborted at {@link #update()}
 	 * due connection going down. This happens on the sending host.
@@ -4,13 +4,10 @@
  */
 package routing;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import core.Connection;
 import core.DTNHost;
 import core.Settings;
-import core.SimClock;
+import routing.util.PredictabilityTable;
 import routing.util.RoutingInfo;
 
 /**
@@ -44,9 +41,7 @@ public class EpidemicML extends ActiveRouter {
 	private double beta;
 
 	/** delivery predictabilities */
-	public Map<DTNHost, Double> preds;
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
+	public PredictabilityTable preds;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -69,7 +64,7 @@ public class EpidemicML extends ActiveRouter {
 		//TODO: read&use epidemic router specific settings (if any)
 	}
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new PredictabilityTable(GAMMA, secondsInTimeUnit);
 	}
 
 	/**
@@ -129,7 +124,7 @@ public class EpidemicML extends ActiveRouter {
 	private void updateDeliveryPredFor(DTNHost host) {
 		double oldValue = getPredFor(host);
 		double newValue = oldValue + (1 - oldValue) * P_INIT;
-		preds.put(host, newValue);
+		preds.set(host, newValue);
 	}
 
 
@@ -145,18 +140,8 @@ public class EpidemicML extends ActiveRouter {
 		//			" with other routers of same type";
 
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
-				((EpidemicML)otherRouter).getDeliveryPreds();
-
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
-			}
-
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
-		}
+		preds.updateTransitive(getHost(), pForHost,
+				((EpidemicML)otherRouter).preds, beta);
 	}
 	/**
 	 * Returns the current prediction (P) value for a host or 0 if entry for
@@ -165,61 +150,12 @@ public class EpidemicML extends ActiveRouter {
 	 * @return the current P value
 	 */
 	public double getPredFor(DTNHost host) {
-		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
-	}
-	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
-	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
-		ageDeliveryPreds(); // make sure the aging is done
-		return this.preds;
-	}
-
-	/**
-	 * Ages all entries in the delivery predictions.
-	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
-	 * time units that have elapsed since the last time the metric was aged.
-	 * @see #SECONDS_IN_UNIT_S
-	 */
-	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) / 
-				secondsInTimeUnit;
-
-		if (timeDiff == 0) {
-			return;
-		}
-	
-		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
-
-		this.lastAgeUpdate = SimClock.getTime();
+		return preds.get(host);
 	}
-	
 	@Override
 	public RoutingInfo getRoutingInfo() {
-		ageDeliveryPreds();
 		RoutingInfo top = super.getRoutingInfo();
-		RoutingInfo ri = new RoutingInfo(preds.size() +
-				" delivery prediction(s)");
-
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
-
-			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f",
-					host, value)));
-		}
-
-		top.addMoreInfo(ri);
+		top.addMoreInfo(preds.getRoutingInfo());
 		return top;
 	}
 	//--------------this is all from ML report------------------------
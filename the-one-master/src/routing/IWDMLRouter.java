@@ -1,9 +1,9 @@
 package routing;
 
 import core.*;
-import report.MLReport;
+import routing.util.DecisionBatch;
+import routing.util.PredictabilityTable;
 import util.Tuple;
-import weka.core.Instance;
 
 import java.util.*;
 
@@ -38,12 +38,14 @@ public class IWDMLRouter extends ActiveRouter{
 	private double beta;
 
 	/** delivery predictabilities */
-	public Map<DTNHost, Double> preds;
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
+	public PredictabilityTable preds;
 
-	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
+	/** indices of the IDs (see {@link Message#getIdIndex()}) of the
+	 * messages that are known to have reached the final dst */
+	private BitSet ackedMessages;
+
+	/** forwarding candidates of the latest update and their ML scores */
+	private DecisionBatch decisions;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -74,15 +76,16 @@ public class IWDMLRouter extends ActiveRouter{
 		this.secondsInTimeUnit = r.secondsInTimeUnit;
 		this.beta = r.beta;
     this.threshold = r.threshold;
-		this.ackedMessageIds = new HashSet<String>();
+		this.ackedMessages = new BitSet();
+		this.decisions = new DecisionBatch();
 		initPreds();
 	}
 
 	/**
-	 * Initializes predictability hash
+	 * Initializes predictability table
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new PredictabilityTable(GAMMA, secondsInTimeUnit);
 	}
 
 	@Override
@@ -96,8 +99,8 @@ public class IWDMLRouter extends ActiveRouter{
 			updateTransitivePreds(otherHost);
 
 			/* exchange ACKed message data */
-			this.ackedMessageIds.addAll(otherRouter.ackedMessageIds);
-			otherRouter.ackedMessageIds.addAll(this.ackedMessageIds);
+			this.ackedMessages.or(otherRouter.ackedMessages);
+			otherRouter.ackedMessages.or(this.ackedMessages);
 			deleteAckedMessages();
 			otherRouter.deleteAckedMessages();
 		}
@@ -107,11 +110,16 @@ public class IWDMLRouter extends ActiveRouter{
 	 * Deletes the messages for which ACKs have been received
 	 */
 	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+		List<String> ackedIds = new ArrayList<String>();
+		for (Message m : getMessageCollection()) {
+			if (this.ackedMessages.get(m.getIdIndex()) &&
+					!isSending(m.getId())) {
+				ackedIds.add(m.getId());
 			}
 		}
+		for (String id : ackedIds) {
+			this.deleteMessage(id, false);
+		}
 	}
 
 	/**
@@ -122,7 +130,7 @@ public class IWDMLRouter extends ActiveRouter{
 	private void updateDeliveryPredFor(DTNHost host) {
 		double oldValue = getPredFor(host);
 		double newValue = oldValue + (1 - oldValue) * P_INIT;
-		preds.put(host, newValue);
+		preds.set(host, newValue);
 	}
 
 	/**
@@ -132,13 +140,18 @@ public class IWDMLRouter extends ActiveRouter{
 	 * @return the current P value
 	 */
 	public double getPredFor(DTNHost host) {
-		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host);
+	}
+
+	/**
+	 * Returns the same prediction value for a host as
+	 * {@link #getPredFor(DTNHost)}, but without aging the stored values, so
+	 * that it can be called concurrently from several threads.
+	 * @param host The host to look the P for
+	 * @return the current P value
+	 */
+	public double peekPredFor(DTNHost host) {
+		return preds.peek(host);
 	}
 
 	/**
@@ -153,49 +166,8 @@ public class IWDMLRouter extends ActiveRouter{
 			" with other routers of same type";
 
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds =
-			((IWDMLRouter)otherRouter).getDeliveryPreds();
-
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
-			}
-
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
-		}
-	}
-
-	/**
-	 * Ages all entries in the delivery predictions.
-	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
-	 * time units that have elapsed since the last time the metric was aged.
-	 * @see #SECONDS_IN_UNIT_S
-	 */
-	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) /
-			secondsInTimeUnit;
-
-		if (timeDiff == 0) {
-			return;
-		}
-
-		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
-
-		this.lastAgeUpdate = SimClock.getTime();
-	}
-
-	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
-	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
-		ageDeliveryPreds(); // make sure the aging is done
-		return this.preds;
+		preds.updateTransitive(getHost(), pForHost,
+				((IWDMLRouter)otherRouter).preds, beta);
 	}
 
 	@Override
@@ -213,10 +185,39 @@ public class IWDMLRouter extends ActiveRouter{
 		tryOtherMessages();
 	}
 
+	/**
+	 * Prescores the forwarding candidates of the next update so that the
+	 * scoring of all routers can be done in parallel.
+	 */
+	@Override
+	public void prepareUpdate() {
+		if (!canStartTransfer() || isTransferring()) {
+			return;
+		}
+
+		decisions.clear();
+		for (Connection con : getConnections()) {
+			DTNHost other = con.getOtherNode(getHost());
+			IWDMLRouter otherRouter = (IWDMLRouter) other.getRouter();
+
+			if (otherRouter.isTransferring()) {
+				continue;
+			}
+
+			for (Message message : getMessageCollection()) {
+				decisions.add(getHost(), con, message,
+						otherRouter.peekPredFor(message.getTo()));
+			}
+		}
+		decisions.prescore();
+	}
+
 	private void tryOtherMessages() {
 	    List<Tuple<Message, Connection>> messagesToSend = new ArrayList<>();
         Collection<Message> messages = getMessageCollection();
 
+        /* gather all candidates into one batch and score them in one pass */
+        decisions.clear();
         for (Connection con : getConnections()) {
             DTNHost other= con.getOtherNode(getHost());
             IWDMLRouter otherRouter = (IWDMLRouter) other.getRouter();
@@ -225,12 +226,16 @@ public class IWDMLRouter extends ActiveRouter{
                 continue;
 
             for (Message message : messages) {
-                Instance instanceVector = MLReport.get_decision_vector(getHost(), other, message);
-                double deliveryProbability = MLTrainer.get_delivery_prob(instanceVector);
-                if (deliveryProbability > threshold)
-                    messagesToSend.add(new Tuple<>(message,con));
+                decisions.add(getHost(), con, message);
             }
         }
+        decisions.score();
+
+        for (int i = 0, n = decisions.size(); i < n; i++) {
+            if (decisions.getProbability(i) > threshold)
+                messagesToSend.add(new Tuple<>(decisions.getMessage(i),
+                        decisions.getConnection(i)));
+        }
         Collections.sort(messagesToSend, new TupleComparator());
         tryMessagesForConnected(messagesToSend);
 	}
@@ -239,7 +244,7 @@ public class IWDMLRouter extends ActiveRouter{
 	public Message messageTransferred(String id, DTNHost from) {
 		Message m =  super.messageTransferred(id, from);
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			this.ackedMessages.set(m.getIdIndex());
 		}
 		return m;
 	}
@@ -252,7 +257,7 @@ public class IWDMLRouter extends ActiveRouter{
 
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == recipient) {
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
+			this.ackedMessages.set(m.getIdIndex()); // yes, add to ACKed messages
 			this.deleteMessage(m.getId(), false); // delete from buffer
 		}
 	}
@@ -4,47 +4,112 @@
 package routing;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
 
+import core.Settings;
+import routing.util.ModelArtifact;
 import weka.classifiers.functions.IWDClassifier;
 import weka.core.Instance;
 import weka.core.Instances;
 
 public class IWDTrainer {
 
+	/** Namespace of the trainer's settings ({@value}). Uses the same
+	 * setting ids as {@link MLTrainer}. */
+	public static final String IWDTRAINER_NS = "IWDTrainer";
+
+	private static final String DEFAULT_TRAINING_DATA =
+		"C:\\Users\\smriti srivastava\\Documents\\data25.arff";
+
+	private static final int NROF_EPOCHS = 1;
+	private static final int NROF_ITERATIONS = 1;
+	private static final int NROF_IWDS = 801;
+
 	public static IWDClassifier model;
 	public static Instances data;
+	/** key of the currently loaded model */
+	private static byte[] modelKey;
 	
+	/** @see MLTrainer#readDataFile(String) */
 	public static BufferedReader readDataFile(String filename) {
-		BufferedReader inputReader = null;
-
-		try {
-			inputReader = new BufferedReader(new FileReader(filename));
-		} catch (FileNotFoundException ex) {
-			System.err.println("File not found: " + filename);
-		}
-
-		return inputReader;
+		return MLTrainer.readDataFile(filename);
 	}
 
 
 	public static void train_data() throws Exception {
-		BufferedReader datafile = readDataFile("C:\\Users\\smriti srivastava\\Documents\\data25.arff");
-		data = new Instances(datafile);
-		data.setClassIndex(data.numAttributes() - 1);
+		Settings trainerSettings = new Settings(IWDTRAINER_NS);
+		String dataFile = trainerSettings.getSetting(
+				MLTrainer.TRAINING_DATA_S, DEFAULT_TRAINING_DATA);
+		String modelFile = trainerSettings.getSetting(MLTrainer.MODEL_FILE_S,
+				dataFile + MLTrainer.MODEL_FILE_SUFFIX);
+
+		byte[] key = ModelArtifact.computeKey(dataFile, "IWDClassifier",
+				NROF_EPOCHS, NROF_ITERATIONS, NROF_IWDS);
+		if (Arrays.equals(key, modelKey)) {
+			return; /* same model already loaded (e.g., previous batch run) */
+		}
+		if (load(modelFile, key)) {
+			System.out.println("Classifier loaded from " + modelFile);
+			return;
+		}
+
+		data = MLTrainer.readInstances(dataFile);
 		
 		model=new IWDClassifier();//set the classifier
-		model.setNumEpochs(1);
-		model.setNumIterations(1);
-		model.setNumIWDs(801);
+		model.setNumEpochs(NROF_EPOCHS);
+		model.setNumIterations(NROF_ITERATIONS);
+		model.setNumIWDs(NROF_IWDS);
 		Instances training_data = new Instances(data, 0, data.numInstances()-1);
 		model.buildClassifier(training_data);
+		modelKey = key;
 
 		System.out.println("Classifier has been built YAY!!!!");
 
+		try {
+			ModelArtifact.writeSerialized(modelFile, key, model,
+					new Instances(data, 0));
+		} catch (IOException e) {
+			System.err.println("Warning: couldn't save the classifier to " +
+					modelFile + ": " + e);
+		}
 	}
 	
+	/**
+	 * Loads a previously trained model from an artifact file
+	 * @param modelFile Path of the artifact file
+	 * @param key Key of the wanted model
+	 * @return True if the model was loaded, false if the file didn't
+	 * contain the model with the key or it couldn't be read (e.g., it was
+	 * truncated or corrupted)
+	 */
+	private static boolean load(String modelFile, byte[] key) {
+		IWDClassifier loadedModel;
+		Instances loadedData;
+		try {
+			ModelArtifact artifact = ModelArtifact.read(modelFile, key);
+			if (artifact == null) {
+				return false;
+			}
+			loadedModel = (IWDClassifier)artifact.getSerialized()[0];
+			loadedData = (Instances)artifact.getSerialized()[1];
+		} catch (IOException e) {
+			System.err.println("Warning: couldn't read the classifier from " +
+					modelFile + ": " + e);
+			return false;
+		} catch (RuntimeException e) {
+			/* e.g., BufferUnderflowException from a truncated artifact */
+			System.err.println("Warning: invalid classifier artifact " +
+					modelFile + ": " + e);
+			return false;
+		}
+
+		model = loadedModel;
+		data = loadedData;
+		modelKey = key;
+		return true;
+	}
+
 	public static Double get_delivery_prob(Instance instance)
 	{
 		
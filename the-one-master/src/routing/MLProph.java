@@ -8,19 +8,16 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import report.MLReport;
+import routing.util.PredictabilityTable;
 import routing.util.RoutingInfo;
 import util.Tuple;
-import weka.core.Instance;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
 import core.Settings;
-import core.SimClock;
 
 /**
  * Implementation of PRoPHET router as described in 
@@ -55,9 +52,10 @@ public class MLProph extends ActiveRouter {
 	private double beta;
 
 	/** delivery predictabilities */
-	public Map<DTNHost, Double> preds;
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
+	public PredictabilityTable preds;
+	/** reusable row for the decision vectors of forwarding candidates */
+	private double[] decisionVector =
+		new double[MLReport.DECISION_VECTOR_LENGTH];
 	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -90,10 +88,10 @@ public class MLProph extends ActiveRouter {
 	}
 	
 	/**
-	 * Initializes predictability hash
+	 * Initializes predictability table
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new PredictabilityTable(GAMMA, secondsInTimeUnit);
 	}
 
 	@Override
@@ -115,7 +113,7 @@ public class MLProph extends ActiveRouter {
 	private void updateDeliveryPredFor(DTNHost host) {
 		double oldValue = getPredFor(host);
 		double newValue = oldValue + (1 - oldValue) * P_INIT;
-		preds.put(host, newValue);
+		preds.set(host, newValue);
 	}
 	
 	/**
@@ -125,13 +123,7 @@ public class MLProph extends ActiveRouter {
 	 * @return the current P value
 	 */
 	public double getPredFor(DTNHost host) {
-		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host);
 	}
 	
 	/**
@@ -146,51 +138,10 @@ public class MLProph extends ActiveRouter {
 			" with other routers of same type";
 		
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
-			((MLProph)otherRouter).getDeliveryPreds();
-		
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
-			}
-			
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
-		}
+		preds.updateTransitive(getHost(), pForHost,
+				((MLProph)otherRouter).preds, beta);
 	}
 
-	/**
-	 * Ages all entries in the delivery predictions.
-	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
-	 * time units that have elapsed since the last time the metric was aged.
-	 * @see #SECONDS_IN_UNIT_S
-	 */
-	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) / 
-			secondsInTimeUnit;
-		
-		if (timeDiff == 0) {
-			return;
-		}
-		
-		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
-		
-		this.lastAgeUpdate = SimClock.getTime();
-	}
-	
-	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
-	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
-		ageDeliveryPreds(); // make sure the aging is done
-		return this.preds;
-	}
-	
 	@Override
 	public void update() {
 		super.update();
@@ -231,8 +182,9 @@ public class MLProph extends ActiveRouter {
 				if (othRouter.hasMessage(m.getId())) {
 					continue; // skip messages that the other one has
 				}
-				Instance vector=MLReport.get_decision_vector(getHost(),other,m);
-				Double delivery_prob=MLTrainer.get_delivery_prob(vector);
+				MLReport.fill_decision_vector(getHost(), other, m,
+						decisionVector);
+				Double delivery_prob=MLTrainer.get_delivery_prob(decisionVector);
 				if (delivery_prob > 0.8*getPredFor(m.getTo())) {
 					//if other router has a higher chance of delivery than my current router.
 					// the other node has higher probability of delivery
@@ -286,20 +238,8 @@ public class MLProph extends ActiveRouter {
 	
 	@Override
 	public RoutingInfo getRoutingInfo() {
-		ageDeliveryPreds();
 		RoutingInfo top = super.getRoutingInfo();
-		RoutingInfo ri = new RoutingInfo(preds.size() + 
-				" delivery prediction(s)");
-		
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
-			
-			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f", 
-					host, value)));
-		}
-		
-		top.addMoreInfo(ri);
+		top.addMoreInfo(preds.getRoutingInfo());
 		return top;
 	}
 	
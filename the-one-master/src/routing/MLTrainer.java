@@ -1,16 +1,29 @@
 package routing;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 
 import core.Settings;
+import routing.util.FeedForwardEvaluator;
+import routing.util.ModelArtifact;
 import weka.classifiers.Classifier;
 import weka.classifiers.functions.IWDCOClassifier;
 import weka.classifiers.functions.MultilayerPerceptron;
 import weka.classifiers.meta.FilteredClassifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Utils;
 import weka.filters.unsupervised.attribute.Normalize;
 
 import static core.SimScenario.GROUP_NS;
@@ -18,8 +31,30 @@ import static core.SimScenario.ROUTER_S;
 
 public class MLTrainer{
 
+	/** Namespace of the trainer's settings ({@value}) */
+	public static final String MLTRAINER_NS = "MLTrainer";
+
+	/** Path of the training data -setting id ({@value}). ARFF or CSV,
+	 * optionally gzip compressed; see {@link #readInstances(String)} */
+	public static final String TRAINING_DATA_S = "trainingData";
+
+	/** Path of the trained model file -setting id ({@value}). Default is
+	 * the training data path + {@value #MODEL_FILE_SUFFIX}. The model is
+	 * loaded from the file if it was trained with the same data and
+	 * settings, otherwise the model is trained and the file rewritten. */
+	public static final String MODEL_FILE_S = "modelFile";
+
+	/** Suffix of the default model file name ({@value}) */
+	public static final String MODEL_FILE_SUFFIX = ".model";
+
+	private static final String DEFAULT_TRAINING_DATA =
+		"C:\\Users\\smriti srivastava\\Desktop\\IWD\\Data_Final_10.arff";
+
 	private static final String IWDCO_NS = "IWDCO";
 
+	/** Max length of the data file header line(s) checked for the format */
+	private static final int HEADER_READ_LIMIT = 64 * 1024;
+
 	private static final String ITERATIONS = "iterations";
 
 	private static final String NUM_IWDS = "numIWDs";
@@ -32,24 +67,135 @@ public class MLTrainer{
 
 	public static FilteredClassifier model;
 	public static Instances data;
+	/** the trained network compiled for fast scoring (null if the model
+	 * could not be compiled) */
+	public static FeedForwardEvaluator network;
+	/** work array for {@link #network} */
+	private static double[] networkWork;
+	/** key of the currently loaded model */
+	private static byte[] modelKey;
 	
+	/**
+	 * Returns a reader for a training data file. Gzip compressed files are
+	 * decompressed transparently.
+	 * @param filename Path of the file
+	 * @return The reader or null if the file can't be opened
+	 */
 	public static BufferedReader readDataFile(String filename) {
 		BufferedReader inputReader = null;
 
 		try {
-			inputReader = new BufferedReader(new FileReader(filename));
+			InputStream in = new BufferedInputStream(
+					new FileInputStream(filename));
+			in.mark(2);
+			int magic = in.read() | (in.read() << 8);
+			in.reset();
+			if (magic == GZIPInputStream.GZIP_MAGIC) {
+				in = new GZIPInputStream(in);
+			}
+			inputReader = new BufferedReader(new InputStreamReader(in,
+					StandardCharsets.UTF_8));
 		} catch (FileNotFoundException ex) {
 			System.err.println("File not found: " + filename);
+		} catch (IOException ex) {
+			System.err.println("Can't read " + filename + ": " + ex);
 		}
 
 		return inputReader;
 	}
 
+	/**
+	 * Reads training data from an ARFF or CSV file (optionally gzip
+	 * compressed), as written by {@link report.MLReport}. The first line of
+	 * a CSV file has the attribute names and the last attribute is the
+	 * {0,1} class; all other attributes are numeric. The class index of the
+	 * returned data is set to the last attribute.
+	 * @param filename Path of the file
+	 * @return The data
+	 * @throws IOException if the file can't be read or parsed
+	 */
+	public static Instances readInstances(String filename)
+			throws IOException {
+		BufferedReader reader = readDataFile(filename);
+		if (reader == null) {
+			throw new FileNotFoundException(filename);
+		}
+
+		Instances instances;
+		try {
+			reader.mark(HEADER_READ_LIMIT);
+			String line = reader.readLine();
+			while (line != null && line.trim().isEmpty()) {
+				line = reader.readLine();
+			}
+			if (line == null || line.startsWith("@") ||
+					line.startsWith("%")) {
+				reader.reset();
+				instances = new Instances(reader);
+			} else {
+				instances = readCsv(line, reader);
+			}
+		} finally {
+			reader.close();
+		}
+
+		instances.setClassIndex(instances.numAttributes() - 1);
+		return instances;
+	}
+
+	private static Instances readCsv(String header, BufferedReader reader)
+			throws IOException {
+		String[] names = header.split(",");
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < names.length - 1; i++) {
+			attributes.add(new Attribute(names[i].trim()));
+		}
+		Attribute classAttribute = new Attribute(
+				names[names.length - 1].trim(), Arrays.asList("0", "1"));
+		attributes.add(classAttribute);
+
+		Instances instances = new Instances("EpidemicML", attributes, 0);
+		int lineNro = 1;
+		for (String line = reader.readLine(); line != null;
+				line = reader.readLine()) {
+			lineNro++;
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			String[] values = line.split(",");
+			if (values.length != names.length) {
+				throw new IOException("Expected " + names.length +
+						" values at line " + lineNro + ": " + line);
+			}
+			double[] row = new double[values.length];
+			try {
+				for (int i = 0; i < values.length - 1; i++) {
+					String v = values[i].trim();
+					row[i] = v.equals("?") ? Utils.missingValue() :
+						Double.parseDouble(v);
+				}
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid value at line " + lineNro +
+						": " + line, e);
+			}
+			row[values.length - 1] = classAttribute.indexOfValue(
+					values[values.length - 1].trim());
+			if (row[values.length - 1] < 0) {
+				throw new IOException("Invalid class value at line " +
+						lineNro + ": " + line);
+			}
+			instances.add(new DenseInstance(1.0, row));
+		}
+
+		return instances;
+	}
 
 	public static void train_data() throws Exception {
-		BufferedReader datafile = readDataFile("C:\\Users\\smriti srivastava\\Desktop\\IWD\\Data_Final_10.arff");
-		data = new Instances(datafile);
-		data.setClassIndex(data.numAttributes() - 1);
+		Settings trainerSettings = new Settings(MLTRAINER_NS);
+		String dataFile = trainerSettings.getSetting(TRAINING_DATA_S,
+				DEFAULT_TRAINING_DATA);
+		String modelFile = trainerSettings.getSetting(MODEL_FILE_S,
+				dataFile + MODEL_FILE_SUFFIX);
 
 		Settings iwdSettings = new Settings(IWDCO_NS);
 		int iterations = iwdSettings.getInt(ITERATIONS, 10);
@@ -57,6 +203,20 @@ public class MLTrainer{
 		int mutations = iwdSettings.getInt(MUTATIONS, 500);
 		int precision = iwdSettings.getInt(PRECISION, 5);
 		int weightRanges[] = iwdSettings.getCsvInts(WEIGHT_RANGE, 2);
+		String routerName = new Settings(GROUP_NS).getSetting(ROUTER_S);
+
+		byte[] key = ModelArtifact.computeKey(dataFile, routerName,
+				iterations, numIWDs, mutations, precision, weightRanges[0],
+				weightRanges[1]);
+		if (Arrays.equals(key, modelKey)) {
+			return; /* same model already loaded (e.g., previous batch run) */
+		}
+		if (load(modelFile, key)) {
+			System.out.println("Classifier loaded from " + modelFile);
+			return;
+		}
+
+		data = readInstances(dataFile);
 
 		Normalize normalize = new Normalize();
 
@@ -64,7 +224,7 @@ public class MLTrainer{
 		model.setFilter(normalize);
 		model.setSeed(12345);
 
-		if ((new Settings(GROUP_NS).getSetting(ROUTER_S)).equals("IWDMLRouter")) {
+		if (routerName.equals("IWDMLRouter")) {
 			IWDCOClassifier classifier = new IWDCOClassifier();//set the classifier
 			classifier.setNumIWDs(numIWDs);
 			classifier.setMutations(mutations);
@@ -84,13 +244,81 @@ public class MLTrainer{
 		Instances training_data = new Instances(data, 0, data.numInstances()-1);
 		model.buildClassifier(training_data);
 
+		network = FeedForwardEvaluator.compile(model);
+		if (network != null) {
+			networkWork = network.newWorkArray();
+		}
+		modelKey = key;
 
 		System.out.println("Classifier has been built");
 
+		try {
+			if (network != null) {
+				ModelArtifact.write(modelFile, key, network);
+			}
+			else {
+				ModelArtifact.writeSerialized(modelFile, key, model,
+						new Instances(data, 0));
+			}
+		} catch (IOException e) {
+			System.err.println("Warning: couldn't save the classifier to " +
+					modelFile + ": " + e);
+		}
 	}
+
+	/**
+	 * Loads a previously trained model from an artifact file
+	 * @param modelFile Path of the artifact file
+	 * @param key Key of the wanted model
+	 * @return True if the model was loaded, false if the file didn't
+	 * contain the model with the key or it couldn't be read (e.g., it was
+	 * truncated or corrupted)
+	 */
+	private static boolean load(String modelFile, byte[] key) {
+		ModelArtifact artifact;
+		FilteredClassifier loadedModel = null;
+		Instances loadedData = null;
+		try {
+			artifact = ModelArtifact.read(modelFile, key);
+			if (artifact == null) {
+				return false;
+			}
+			if (artifact.getNetwork() == null) {
+				loadedModel = (FilteredClassifier)artifact.getSerialized()[0];
+				loadedData = (Instances)artifact.getSerialized()[1];
+			}
+		} catch (IOException e) {
+			System.err.println("Warning: couldn't read the classifier from " +
+					modelFile + ": " + e);
+			return false;
+		} catch (RuntimeException e) {
+			/* e.g., BufferUnderflowException from a truncated artifact */
+			System.err.println("Warning: invalid classifier artifact " +
+					modelFile + ": " + e);
+			return false;
+		}
+
+		if (artifact.getNetwork() != null) {
+			model = null;
+			data = null;
+			network = artifact.getNetwork();
+			networkWork = network.newWorkArray();
+		}
+		else {
+			model = loadedModel;
+			data = loadedData;
+			network = null;
+		}
+		modelKey = key;
+		return true;
+	}
+
 	public static Double get_delivery_prob(Instance instance)
 	{
-		
+		if (network != null) {
+			return get_delivery_prob(instance.toDoubleArray());
+		}
+
 		try {
 			instance.setDataset(data);
 			double[] class1=model.distributionForInstance(instance);
@@ -102,5 +330,53 @@ public class MLTrainer{
 		return null;
 		
 	}
-	
+
+	/**
+	 * Returns the delivery probability of a decision vector
+	 * @param row The decision vector
+	 * @return The delivery probability or null if it could not be computed
+	 */
+	public static Double get_delivery_prob(double[] row) {
+		if (network != null) {
+			return network.probability(row, networkWork, 1);
+		}
+		return get_delivery_prob(new DenseInstance(1.0, row));
+	}
+
+	/**
+	 * Scores a batch of decision vectors with one call to the trained model.
+	 * Rows that could not be scored get the value NaN.
+	 * @param rows The feature matrix (one decision vector per row)
+	 * @param nrofRows How many rows, starting from the first, to score
+	 * @param probs Array where the delivery probability of each row is stored
+	 */
+	public static void get_delivery_probs(double[][] rows, int nrofRows,
+			double[] probs) {
+		if (nrofRows == 0) {
+			return;
+		}
+
+		if (network != null) {
+			for (int i = 0; i < nrofRows; i++) {
+				probs[i] = network.probability(rows[i], networkWork, 1);
+			}
+			return;
+		}
+
+		Instances batch = new Instances(data, nrofRows);
+		for (int i = 0; i < nrofRows; i++) {
+			batch.add(new DenseInstance(1.0, rows[i]));
+		}
+
+		try {
+			double[][] dists = model.distributionsForInstances(batch);
+			for (int i = 0; i < nrofRows; i++) {
+				probs[i] = dists[i][1];
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			Arrays.fill(probs, 0, nrofRows, Double.NaN);
+		}
+	}
+
 }
@@ -5,15 +5,15 @@
 package routing;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
+import routing.maxprop.CostCache;
 import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
 import routing.util.RoutingInfo;
@@ -53,17 +53,17 @@ public class MaxPropRouter extends ActiveRouter {
 	private Map<Integer, MeetingProbabilitySet> allProbs;
 	/** the cost-to-node calculator */
 	private MaxPropDijkstra dijkstra;
-	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
-
-	/** Map of which messages have been sent to which hosts from this host */
-	private Map<DTNHost, Set<String>> sentMessages;
+	/** indices of the IDs (see {@link Message#getIdIndex()}) of the
+	 * messages that are known to have reached the final dst */
+	private BitSet ackedMessages;
+	/** the calculated costs for all messages from different hosts. This
+	 * should be cleared always when the costs should be updated (a host is
+	 * met or a new message is received) */
+	private CostCache costsForMessages;
+
+	/** Map of which messages (ID indices) have been sent to which hosts
+	 * from this host */
+	private Map<DTNHost, BitSet> sentMessages;
 
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -115,9 +115,10 @@ public class MaxPropRouter extends ActiveRouter {
 		this.probs = new MeetingProbabilitySet(probSetMaxSize, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.costsForMessages = new CostCache();
+		this.ackedMessages = new BitSet();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
-		this.sentMessages = new HashMap<DTNHost, Set<String>>();
+		this.sentMessages = new HashMap<DTNHost, BitSet>();
 	}
 
 	@Override
@@ -125,7 +126,7 @@ public class MaxPropRouter extends ActiveRouter {
 		super.changedConnection(con);
 
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
+			this.costsForMessages.clear(); // invalidate old cost estimates
 
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
@@ -139,8 +140,8 @@ public class MaxPropRouter extends ActiveRouter {
 				MaxPropRouter otherRouter = (MaxPropRouter)mRouter;
 
 				/* exchange ACKed message data */
-				this.ackedMessageIds.addAll(otherRouter.ackedMessageIds);
-				otherRouter.ackedMessageIds.addAll(this.ackedMessageIds);
+				this.ackedMessages.or(otherRouter.ackedMessages);
+				otherRouter.ackedMessages.or(this.ackedMessages);
 				deleteAckedMessages();
 				otherRouter.deleteAckedMessages();
 
@@ -183,20 +184,31 @@ public class MaxPropRouter extends ActiveRouter {
 	 * Deletes the messages from the message buffer that are known to be ACKed
 	 */
 	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+		List<String> ackedIds = new ArrayList<String>();
+		for (Message m : getMessageCollection()) {
+			if (this.ackedMessages.get(m.getIdIndex()) &&
+					!isSending(m.getId())) {
+				ackedIds.add(m.getId());
 			}
 		}
+		for (String id : ackedIds) {
+			this.deleteMessage(id, false);
+		}
+	}
+
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		super.addToMessages(m, newMessage);
+		this.costsForMessages.messageAdded();
 	}
 
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
+		this.costsForMessages.clear(); // new message -> invalidate costs
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			this.ackedMessages.set(m.getIdIndex());
 		}
 		return m;
 	}
@@ -210,22 +222,21 @@ public class MaxPropRouter extends ActiveRouter {
 	@Override
 	protected void transferDone(Connection con) {
 		Message m = con.getMessage();
-		String id = m.getId();
 		DTNHost recipient = con.getOtherNode(getHost());
-		Set<String> sentMsgIds = this.sentMessages.get(recipient);
+		BitSet sentMsgIds = this.sentMessages.get(recipient);
 
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == recipient) {
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
+			this.ackedMessages.set(m.getIdIndex()); // yes, add to ACKed messages
 			this.deleteMessage(m.getId(), false); // delete from buffer
 		}
 
 		/* update the map of where each message is already sent */
 		if (sentMsgIds == null) {
-			sentMsgIds = new HashSet<String>();
+			sentMsgIds = new BitSet();
 			this.sentMessages.put(recipient, sentMsgIds);
 		}
-		sentMsgIds.add(id);
+		sentMsgIds.set(m.getIdIndex());
 	}
 
 	/**
@@ -270,19 +281,39 @@ public class MaxPropRouter extends ActiveRouter {
     @Override
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
 		Collection<Message> messages = this.getMessageCollection();
-		List<Message> validMessages = new ArrayList<Message>();
+		MaxPropComparator comparator =
+			new MaxPropComparator(this.calcThreshold());
+
+		if (getSendQueueMode() == Q_MODE_RANDOM) {
+			/* the random queue order is not transitive, so the last message
+			   depends on how the sort compares the messages -> sort */
+			List<Message> validMessages = new ArrayList<Message>();
+			for (Message m : messages) {
+				if (excludeMsgBeingSent && isSending(m.getId())) {
+					continue; // skip the message(s) that router is sending
+				}
+				validMessages.add(m);
+			}
+			if (validMessages.isEmpty()) {
+				return null;
+			}
+			Collections.sort(validMessages, comparator);
+			return validMessages.get(validMessages.size()-1);
+		}
 
+		/* find the message that would be the last one if the messages were
+		   sorted (the last one of the equally ordered messages) */
+		Message last = null;
 		for (Message m : messages) {
 			if (excludeMsgBeingSent && isSending(m.getId())) {
 				continue; // skip the message(s) that router is sending
 			}
-			validMessages.add(m);
+			if (last == null || comparator.compare(m, last) >= 0) {
+				last = m;
+			}
 		}
 
-		Collections.sort(validMessages,
-				new MaxPropComparator(this.calcThreshold()));
-
-		return validMessages.get(validMessages.size()-1); // return last message
+		return last;
 	}
 
 	@Override
@@ -312,29 +343,25 @@ public class MaxPropRouter extends ActiveRouter {
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
 		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
+		double[] costs = this.costsForMessages.get(from.getAddress());
+		if (costs == null) {
 			/* cached costs are invalid -> calculate new costs */
 			this.allProbs.put(getHost().getAddress(), this.probs);
 			int fromIndex = from.getAddress();
 
 			/* calculate paths only to nodes we have messages to
 			 * (optimization) */
-			Set<Integer> toSet = new HashSet<Integer>();
+			BitSet toSet = new BitSet();
 			for (Message m : getMessageCollection()) {
-				toSet.add(m.getTo().getAddress());
+				toSet.set(m.getTo().getAddress());
 			}
 
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
+			costs = dijkstra.getCosts(fromIndex, toSet);
+			this.costsForMessages.put(fromIndex, costs);
 		}
 
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
-		}
-		else {
-			/* there's no known path to the given host */
-			return Double.MAX_VALUE;
-		}
+		/* Double.MAX_VALUE if there's no known path to the given host */
+		return CostCache.getCost(costs, to.getAddress());
 	}
 
 	/**
@@ -353,7 +380,7 @@ public class MaxPropRouter extends ActiveRouter {
 		for (Connection con : getConnections()) {
 			DTNHost other = con.getOtherNode(getHost());
 			MaxPropRouter othRouter = (MaxPropRouter)other.getRouter();
-			Set<String> sentMsgIds = this.sentMessages.get(other);
+			BitSet sentMsgIds = this.sentMessages.get(other);
 
 			if (othRouter.isTransferring()) {
 				continue; // skip hosts that are transferring
@@ -363,12 +390,12 @@ public class MaxPropRouter extends ActiveRouter {
 				/* skip messages that the other host has or that have
 				 * passed the other host */
 				if (othRouter.hasMessage(m.getId()) ||
-						m.getHops().contains(other)) {
+						m.hasPassed(other)) {
 					continue;
 				}
 				/* skip message if this host has already sent it to the other
 				   host (regardless of if the other host still has it) */
-				if (sentMsgIds != null && sentMsgIds.contains(m.getId())) {
+				if (sentMsgIds != null && sentMsgIds.get(m.getIdIndex())) {
 					continue;
 				}
 				/* message was a good candidate for sending */
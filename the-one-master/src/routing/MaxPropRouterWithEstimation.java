@@ -5,15 +5,15 @@
 package routing;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
+import routing.maxprop.CostCache;
 import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
 import routing.util.RoutingInfo;
@@ -51,14 +51,13 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	private Map<Integer, MeetingProbabilitySet> allProbs;
 	/** the cost-to-node calculator */
 	private MaxPropDijkstra dijkstra;
-	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
+	/** indices of the IDs (see {@link Message#getIdIndex()}) of the
+	 * messages that are known to have reached the final dst */
+	private BitSet ackedMessages;
+	/** the calculated costs for all messages from different hosts. This
+	 * should be cleared always when the costs should be updated (a host is
+	 * met or a new message is received) */
+	private CostCache costsForMessages;
 
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -122,7 +121,8 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				MeetingProbabilitySet.INFINITE_SET_SIZE, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.costsForMessages = new CostCache();
+		this.ackedMessages = new BitSet();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 		initMeetings();
 	}
@@ -145,7 +145,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		super.changedConnection(con);
 
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
+			this.costsForMessages.clear(); // invalidate old cost estimates
 
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
@@ -167,8 +167,8 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				}
 
 				/* exchange ACKed message data */
-				this.ackedMessageIds.addAll(otherRouter.ackedMessageIds);
-				otherRouter.ackedMessageIds.addAll(this.ackedMessageIds);
+				this.ackedMessages.or(otherRouter.ackedMessages);
+				otherRouter.ackedMessages.or(this.ackedMessages);
 				deleteAckedMessages();
 				otherRouter.deleteAckedMessages();
 
@@ -323,20 +323,31 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	 * Deletes the messages from the message buffer that are known to be ACKed
 	 */
 	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+		List<String> ackedIds = new ArrayList<String>();
+		for (Message m : getMessageCollection()) {
+			if (this.ackedMessages.get(m.getIdIndex()) &&
+					!isSending(m.getId())) {
+				ackedIds.add(m.getId());
 			}
 		}
+		for (String id : ackedIds) {
+			this.deleteMessage(id, false);
+		}
+	}
+
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		super.addToMessages(m, newMessage);
+		this.costsForMessages.messageAdded();
 	}
 
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
+		this.costsForMessages.clear(); // new message -> invalidate costs
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			this.ackedMessages.set(m.getIdIndex());
 		}
 		return m;
 	}
@@ -352,7 +363,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		Message m = con.getMessage();
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == con.getOtherNode(getHost())) {
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
+			this.ackedMessages.set(m.getIdIndex()); // yes, add to ACKed messages
 			this.deleteMessage(m.getId(), false); // delete from buffer
 		}
 	}
@@ -398,19 +409,39 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	 */
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
 		Collection<Message> messages = this.getMessageCollection();
-		List<Message> validMessages = new ArrayList<Message>();
+		MaxPropComparator comparator =
+			new MaxPropComparator(this.calcThreshold());
+
+		if (getSendQueueMode() == Q_MODE_RANDOM) {
+			/* the random queue order is not transitive, so the last message
+			   depends on how the sort compares the messages -> sort */
+			List<Message> validMessages = new ArrayList<Message>();
+			for (Message m : messages) {
+				if (excludeMsgBeingSent && isSending(m.getId())) {
+					continue; // skip the message(s) that router is sending
+				}
+				validMessages.add(m);
+			}
+			if (validMessages.isEmpty()) {
+				return null;
+			}
+			Collections.sort(validMessages, comparator);
+			return validMessages.get(validMessages.size()-1);
+		}
 
+		/* find the message that would be the last one if the messages were
+		   sorted (the last one of the equally ordered messages) */
+		Message last = null;
 		for (Message m : messages) {
 			if (excludeMsgBeingSent && isSending(m.getId())) {
 				continue; // skip the message(s) that router is sending
 			}
-			validMessages.add(m);
+			if (last == null || comparator.compare(m, last) >= 0) {
+				last = m;
+			}
 		}
 
-		Collections.sort(validMessages,
-				new MaxPropComparator(this.calcThreshold()));
-
-		return validMessages.get(validMessages.size()-1); // return last message
+		return last;
 	}
 
 	@Override
@@ -440,29 +471,25 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
 		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
+		double[] costs = this.costsForMessages.get(from.getAddress());
+		if (costs == null) {
 			/* cached costs are invalid -> calculate new costs */
 			this.allProbs.put(getHost().getAddress(), this.probs);
 			int fromIndex = from.getAddress();
 
 			/* calculate paths only to nodes we have messages to
 			 * (optimization) */
-			Set<Integer> toSet = new HashSet<Integer>();
+			BitSet toSet = new BitSet();
 			for (Message m : getMessageCollection()) {
-				toSet.add(m.getTo().getAddress());
+				toSet.set(m.getTo().getAddress());
 			}
 
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
+			costs = dijkstra.getCosts(fromIndex, toSet);
+			this.costsForMessages.put(fromIndex, costs);
 		}
 
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
-		}
-		else {
-			/* there's no known path to the given host */
-			return Double.MAX_VALUE;
-		}
+		/* Double.MAX_VALUE if there's no known path to the given host */
+		return CostCache.getCost(costs, to.getAddress());
 	}
 
 	/**
@@ -490,7 +517,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				/* skip messages that the other host has or that have
 				 * passed the other host */
 				if (othRouter.hasMessage(m.getId()) ||
-						m.getHops().contains(other)) {
+						m.hasPassed(other)) {
 					continue;
 				}
 				messages.add(new Tuple<Message, Connection>(m,con));
@@ -4,6 +4,7 @@
  */
 package routing;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -20,6 +21,7 @@ import core.Settings;
 import core.SettingsError;
 import core.SimClock;
 import core.SimError;
+import routing.util.MessageIndex;
 import routing.util.RoutingInfo;
 import util.Tuple;
 
@@ -87,6 +89,10 @@ public abstract class MessageRouter {
 	private HashMap<String, Message> incomingMessages;
 	/** The messages this router is carrying */
 	private HashMap<String, Message> messages;
+	/** Total size of the messages this router is carrying (bytes) */
+	private long bufferOccupancy;
+	/** Indices that are kept up to date with the messages in the buffer */
+	private List<MessageIndex> bufferIndices;
 	/** The messages this router has received as the final recipient */
 	private HashMap<String, Message> deliveredMessages;
 	/** The messages that Applications on this router have blacklisted */
@@ -153,6 +159,8 @@ public abstract class MessageRouter {
 	public void init(DTNHost host, List<MessageListener> mListeners) {
 		this.incomingMessages = new HashMap<String, Message>();
 		this.messages = new HashMap<String, Message>();
+		this.bufferOccupancy = 0;
+		this.bufferIndices = new ArrayList<MessageIndex>(1);
 		this.deliveredMessages = new HashMap<String, Message>();
 		this.blacklistedMessages = new HashMap<String, Object>();
 		this.mListeners = mListeners;
@@ -176,6 +184,16 @@ public abstract class MessageRouter {
 		}
 	}
 
+	/**
+	 * Prepares the router for the next {@link #update()}. Called for all
+	 * the hosts before any of them is updated, possibly concurrently from
+	 * several threads (see {@link core.World#UPDATE_THREADS_S}). Implementations
+	 * must not change any state that other hosts or the simulation can see;
+	 * they can only precompute values that update() validates before use.
+	 * The default implementation does nothing.
+	 */
+	public void prepareUpdate() { }
+
 	/**
 	 * Updates router.
 	 * This method should be called (at least once) on every simulation
@@ -189,6 +207,26 @@ public abstract class MessageRouter {
 		}
 	}
 
+	/**
+	 * Returns the simulation time until which calling {@link #update()} has
+	 * no effect, provided that no events occur and no host moves or
+	 * connects before that. Used for skipping idle update intervals. This
+	 * implementation returns the current time (i.e., the router must always
+	 * be updated); routers that know better should override this.
+	 * @return The time until which the router is idle
+	 */
+	public double getIdleUntil() {
+		return SimClock.getTime();
+	}
+
+	/**
+	 * Returns true if any applications are attached to this router
+	 * @return true if the router has applications
+	 */
+	protected boolean hasApplications() {
+		return !this.applications.isEmpty();
+	}
+
 	/**
 	 * Informs the router about change in connections state.
 	 * @param con The connection that changed
@@ -269,22 +307,54 @@ public abstract class MessageRouter {
 	/**
 	 * Returns the amount of free space in the buffer. May return a negative
 	 * value if there are more messages in the buffer than should fit there
-	 * (because of creating new messages).
+	 * (because of creating new messages). The occupancy is kept up to date
+	 * when messages are added to and removed from the buffer; with
+	 * assertions enabled it is checked against a full recount.
 	 * @return The amount of free space (Integer.MAX_VALUE if the buffer
 	 * size isn't defined)
 	 */
 	public long getFreeBufferSize() {
-		long occupancy = 0;
-
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 
+		assert this.bufferOccupancy == countBufferOccupancy() : "Buffer " +
+			"occupancy of " + getHost() + " is " + this.bufferOccupancy +
+			" but the messages take " + countBufferOccupancy() + " bytes";
+
+		return this.getBufferSize() - this.bufferOccupancy;
+	}
+
+	/**
+	 * Counts the total size of the messages in the buffer
+	 * @return The total size of the messages (bytes)
+	 */
+	private long countBufferOccupancy() {
+		long occupancy = 0;
 		for (Message m : getMessageCollection()) {
 			occupancy += m.getSize();
 		}
+		return occupancy;
+	}
+
+	/**
+	 * Adds an index that is kept up to date with the messages in the
+	 * buffer. The messages already in the buffer are added to the index.
+	 * @param index The index to add
+	 */
+	protected void addBufferIndex(MessageIndex index) {
+		for (Message m : getMessageCollection()) {
+			index.add(m);
+		}
+		this.bufferIndices.add(index);
+	}
 
-		return this.getBufferSize() - occupancy;
+	/**
+	 * Returns the sending queue mode of this router
+	 * @return The queue mode ({@link #Q_MODE_RANDOM} or {@link #Q_MODE_FIFO})
+	 */
+	protected int getSendQueueMode() {
+		return this.sendQueueMode;
 	}
 
 	/**
@@ -437,7 +507,17 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		Message replaced = this.messages.put(m.getId(), m);
+		if (replaced != null) {
+			this.bufferOccupancy -= replaced.getSize();
+		}
+		this.bufferOccupancy += m.getSize();
+		for (int i=0, n = this.bufferIndices.size(); i < n; i++) {
+			if (replaced != null) {
+				this.bufferIndices.get(i).remove(replaced);
+			}
+			this.bufferIndices.get(i).add(m);
+		}
 
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -453,6 +533,12 @@ public abstract class MessageRouter {
 	 */
 	protected Message removeFromMessages(String id) {
 		Message m = this.messages.remove(id);
+		if (m != null) {
+			this.bufferOccupancy -= m.getSize();
+			for (int i=0, n = this.bufferIndices.size(); i < n; i++) {
+				this.bufferIndices.get(i).remove(m);
+			}
+		}
 		return m;
 	}
 
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.maxprop;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of the path costs a MaxProp router has calculated from different
+ * source hosts (see {@link MaxPropDijkstra#getCosts(int, java.util.BitSet)}).
+ * The costs are calculated only to the destinations of the buffered messages,
+ * so the router tells the cache when new messages are added to the buffer:
+ * costs from the source of the latest calculation are still used after that
+ * (as if only one set of costs was cached), but the costs from other sources
+ * are calculated again. The whole cache must be cleared when the meeting
+ * probabilities change.
+ */
+public class CostCache {
+	/** calculated costs by the source host's address */
+	private Map<Integer, double[]> costs;
+	/** buffer versions at the time of the calculations */
+	private Map<Integer, Integer> versions;
+	/** the current buffer version */
+	private int bufferVersion;
+	/** the source of the last calculation or used costs (-1 if none) */
+	private int lastFrom;
+
+	/**
+	 * Constructor. Creates an empty cache.
+	 */
+	public CostCache() {
+		this.costs = new HashMap<Integer, double[]>();
+		this.versions = new HashMap<Integer, Integer>();
+		this.bufferVersion = 0;
+		this.lastFrom = -1;
+	}
+
+	/**
+	 * Removes all the costs from the cache
+	 */
+	public void clear() {
+		this.costs.clear();
+		this.versions.clear();
+		this.lastFrom = -1;
+	}
+
+	/**
+	 * Tells the cache that a new message was added to the buffer
+	 */
+	public void messageAdded() {
+		this.bufferVersion++;
+	}
+
+	/**
+	 * Returns the cached costs from a source host
+	 * @param from Address of the source host
+	 * @return The costs by destination address or null if they must be
+	 * calculated
+	 */
+	public double[] get(int from) {
+		double[] c = this.costs.get(from);
+		if (c == null ||
+				(from != lastFrom && versions.get(from) != bufferVersion)) {
+			return null;
+		}
+		this.lastFrom = from;
+		return c;
+	}
+
+	/**
+	 * Stores new costs from a source host
+	 * @param from Address of the source host
+	 * @param c The costs by destination address
+	 */
+	public void put(int from, double[] c) {
+		this.costs.put(from, c);
+		this.versions.put(from, bufferVersion);
+		this.lastFrom = from;
+	}
+
+	/**
+	 * Returns the cost to a destination from cost array
+	 * @param c The costs by destination address
+	 * @param to Address of the destination
+	 * @return The cost or Double.MAX_VALUE if it is not known
+	 */
+	public static double getCost(double[] c, int to) {
+		return to < c.length ? c[to] : Double.MAX_VALUE;
+	}
+}
@@ -4,33 +4,40 @@
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * The search state (distances, visited nodes and the priority queue) is kept
+ * in primitive arrays indexed by the node addresses and reused between the
+ * searches, and the priority queue is an indexed binary heap so that
+ * updating a node's distance takes O(log n) time.
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Initial size of the search state arrays */
+	private static final int INIT_SIZE = 16;
+
+	/** Node distances from the source node */
+	private double[] distances;
+	/** Search round when the node's distance was last set (distances of
+	 * nodes with an older round are infinite) */
+	private int[] distanceRounds;
+	/** Search round when the node was visited (the shortest path is known) */
+	private int[] visitedRounds;
+	/** Binary heap of unvisited nodes discovered so far */
+	private int[] heap;
+	/** Positions of the nodes in the heap (valid only for nodes in it) */
+	private int[] heapPositions;
+	/** Number of nodes in the heap */
+	private int heapSize;
+	/** Number of the current search round */
+	private int round;
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
 
@@ -41,22 +48,25 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.distances = new double[INIT_SIZE];
+		this.distanceRounds = new int[INIT_SIZE];
+		this.visitedRounds = new int[INIT_SIZE];
+		this.heap = new int[INIT_SIZE];
+		this.heapPositions = new int[INIT_SIZE];
+		this.round = 0;
 	}
 
 	/**
 	 * Initializes a new search with the first hop router node
 	 * @param firstHop The first hop router node
 	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE,
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
+	private void initWith(int firstHop) {
+		ensureCapacity(firstHop);
+		this.round++;
+		this.heapSize = 0;
 
 		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
+		setDistance(firstHop, 0);
 	}
 
 	/**
@@ -68,157 +78,211 @@ public class MaxPropDijkstra {
 	 * @return A map of (destination node, cost) tuples
 	 */
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
+		BitSet targets = new BitSet();
+		for (Integer i : to) {
+			targets.set(i);
+		}
+
+		double[] costs = getCosts(from, targets);
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
-		int nrofNodesToFind = to.size();
+		for (int i = targets.nextSetBit(0); i >= 0;
+				i = targets.nextSetBit(i + 1)) {
+			if (i < costs.length && costs[i] != INFINITY) {
+				distMap.put(i, costs[i]);
+			}
+		}
+
+		return distMap;
+	}
+
+	/**
+	 * Calculates total costs to the given set of target nodes (see
+	 * {@link #getCosts(Integer, Set)}).
+	 * @param from The index (address) of the start node
+	 * @param to The addresses of the destination nodes
+	 * @return The costs indexed by the node addresses. The cost of nodes
+	 * that were not requested or can't be reached is Double.MAX_VALUE, as is
+	 * the cost of nodes whose address is beyond the end of the array.
+	 */
+	public double[] getCosts(int from, BitSet to) {
+		double[] costs = new double[to.length()];
+		Arrays.fill(costs, INFINITY);
+		int nrofNodesToFind = to.cardinality();
+		if (nrofNodesToFind == 0) {
+			return costs;
+		}
 
 		initWith(from);
-		Integer node = null;
 
 		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (to.contains(node)) {
+		while (heapSize > 0) {
+			int node = poll();
+			if (to.get(node)) {
 				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
+				costs[node] = distances[node];
 				nrofNodesToFind--;
 				if (nrofNodesToFind == 0) {
 					break; // all requested nodes found
 				}
 			}
 
-			visited.add(node); // mark the node as visited
+			visitedRounds[node] = round; // mark the node as visited
 			relax(node);       // add/update neighbor nodes' distances
 		}
 
-		return distMap;
+		return costs;
 	}
 
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
 	 * @param node The node whose neighbors are relaxed
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
+	private void relax(int node) {
+		double nodeDist = distances[node];
+		MeetingProbabilitySet mps = this.probs.get(node);
 
-		if (!this.probs.containsKey(node)) {
+		if (mps == null) {
 			return; // node's neighbors are not known
 		}
 
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
+		int[] neighbors = mps.getNodeArray();
+		double[] neighborProbs = mps.getProbArray();
 
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
+		for (int i = 0; i < neighbors.length; i++) {
+			int n = neighbors[i];
+			ensureCapacity(n);
+			if (visitedRounds[n] == round) {
 				continue; // skip visited nodes
 			}
 
 			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
+			double nDist = nodeDist + (1 - neighborProbs[i]);
 
-			if (distancesFromStart.get(n) > nDist) {
+			if (getDistance(n) > nDist) {
 				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
 				setDistance(n, nDist);
 			}
 		}
 	}
 
 	/**
-	 * Sets the distance from source node to a node
+	 * Returns the distance of a node from the source node in this search
+	 * @param n The node
+	 * @return The distance or {@link #INFINITY} if the node hasn't been
+	 * discovered yet
+	 */
+	private double getDistance(int n) {
+		return distanceRounds[n] == round ? distances[n] : INFINITY;
+	}
+
+	/**
+	 * Sets the distance from source node to a node and inserts the node to,
+	 * or moves it to its new place in, the queue
 	 * @param n The node whose distance is set
 	 * @param distance The distance of the node from the source node
 	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+	private void setDistance(int n, double distance) {
+		boolean inQueue = distanceRounds[n] == round;
+		distances[n] = distance;
+		distanceRounds[n] = round;
+
+		if (!inQueue) {
+			heap[heapSize] = n;
+			heapPositions[n] = heapSize;
+			heapSize++;
+		}
+		siftUp(heapPositions[n]); // distance only decreases
 	}
 
 	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to".
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
+	 * Removes and returns the node with the shortest distance from the queue
+	 * @return The node
 	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
+	private int poll() {
+		int first = heap[0];
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapPositions[heap[0]] = 0;
+			siftDown(0);
+		}
+		return first;
 	}
 
 	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
+	 * Moves the node at the given heap position up until the heap order
+	 * holds
 	 */
-	private class DistanceComparator implements
-		Comparator<Integer> {
-
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
-
-			if (dist1 > dist2) {
-				return 1;
-			}
-			else if (dist1 < dist2) {
-				return -1;
-			}
-			else {
-				return node1.compareTo(node2);
+	private void siftUp(int pos) {
+		int node = heap[pos];
+		while (pos > 0) {
+			int parentPos = (pos - 1) / 2;
+			int parent = heap[parentPos];
+			if (!isBefore(node, parent)) {
+				break;
 			}
+			heap[pos] = parent;
+			heapPositions[parent] = pos;
+			pos = parentPos;
 		}
+		heap[pos] = node;
+		heapPositions[node] = pos;
 	}
 
 	/**
-	 * Simple Map implementation for storing distances.
+	 * Moves the node at the given heap position down until the heap order
+	 * holds
 	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
-
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>();
-		}
-
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+	private void siftDown(int pos) {
+		int node = heap[pos];
+		while (true) {
+			int childPos = 2 * pos + 1;
+			if (childPos >= heapSize) {
+				break;
+			}
+			if (childPos + 1 < heapSize &&
+					isBefore(heap[childPos + 1], heap[childPos])) {
+				childPos++;
 			}
-			else {
-				return INFINITY;
+			int child = heap[childPos];
+			if (!isBefore(child, node)) {
+				break;
 			}
+			heap[pos] = child;
+			heapPositions[child] = pos;
+			pos = childPos;
 		}
+		heap[pos] = node;
+		heapPositions[node] = pos;
+	}
 
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
+	/**
+	 * Compares two nodes by their distance from the source node (nodes with
+	 * equal distances are ordered by their addresses)
+	 * @return True if node1 should be taken from the queue before node2
+	 */
+	private boolean isBefore(int node1, int node2) {
+		double dist1 = distances[node1];
+		double dist2 = distances[node2];
+		if (dist1 != dist2) {
+			return dist1 < dist2;
 		}
+		return node1 < node2;
+	}
 
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
+	/**
+	 * Makes sure that the search state arrays have room for the given node
+	 * @param node The node (address)
+	 */
+	private void ensureCapacity(int node) {
+		if (node < distances.length) {
+			return;
 		}
+		int size = Math.max(distances.length * 2, node + 1);
+		distances = Arrays.copyOf(distances, size);
+		distanceRounds = Arrays.copyOf(distanceRounds, size);
+		visitedRounds = Arrays.copyOf(visitedRounds, size);
+		heap = Arrays.copyOf(heap, size);
+		heapPositions = Arrays.copyOf(heapPositions, size);
 	}
 }
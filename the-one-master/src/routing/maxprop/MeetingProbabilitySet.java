@@ -25,6 +25,11 @@ public class MeetingProbabilitySet {
 	/** the alpha parameter */
 	private double alpha;
     private int maxSetSize;
+	/** nodes of the probability map as an array (null if not created or
+	 * out of date) */
+	private int[] nodeArray;
+	/** probabilities of the nodes in {@link #nodeArray} */
+	private double[] probArray;
 
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
@@ -79,6 +84,7 @@ public class MeetingProbabilitySet {
         double smallestValue = Double.MAX_VALUE;
 
 		this.lastUpdateTime = SimClock.getTime();
+		this.nodeArray = null;
 
 		if (probs.size() == 0) { // first entry
 			probs.put(index, 1.0);
@@ -107,6 +113,7 @@ public class MeetingProbabilitySet {
 
 	public void updateMeetingProbFor(Integer index, double iet)	{
 		probs.put(index, iet);
+		this.nodeArray = null;
 	}
 
 	/**
@@ -125,13 +132,56 @@ public class MeetingProbabilitySet {
 	}
 
 	/**
-	 * Returns a reference to the probability map of this probability set
+	 * Returns a reference to the probability map of this probability set.
+	 * The map must not be modified.
 	 * @return a reference to the probability map of this probability set
 	 */
 	public Map<Integer, Double> getAllProbs() {
 		return this.probs;
 	}
 
+	/**
+	 * Returns the indexes of the nodes that have a probability value in
+	 * this set. The array is shared and must not be modified.
+	 * @return The node indexes
+	 * @see #getProbArray()
+	 */
+	public int[] getNodeArray() {
+		if (this.nodeArray == null) {
+			createArrays();
+		}
+		return this.nodeArray;
+	}
+
+	/**
+	 * Returns the probabilities of the nodes in the same order as the nodes
+	 * are in {@link #getNodeArray()}. The array is shared and must not be
+	 * modified.
+	 * @return The probability values
+	 */
+	public double[] getProbArray() {
+		if (this.nodeArray == null) {
+			createArrays();
+		}
+		return this.probArray;
+	}
+
+	/**
+	 * Creates the node and probability arrays from the probability map
+	 */
+	private void createArrays() {
+		int[] nodes = new int[probs.size()];
+		double[] values = new double[probs.size()];
+		int i = 0;
+		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
+			nodes[i] = e.getKey();
+			values[i] = e.getValue();
+			i++;
+		}
+		this.probArray = values;
+		this.nodeArray = nodes;
+	}
+
 	/**
 	 * Returns the time when this probability set was last updated
 	 * @return the time when this probability set was last updated
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+
+import report.MLReport;
+import routing.MLTrainer;
+import core.Connection;
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Batch of (message, connection) forwarding candidates that are scored
+ * with the trained ML model in one pass. The decision vectors of the
+ * candidates are gathered into a primitive feature matrix that is reused
+ * between the updates of the router. The delivery probabilities of the
+ * previous batch are cached and a candidate is re-scored only if its
+ * decision vector has changed since the last time it was scored, or if it
+ * couldn't be scored then (the probability is NaN, e.g., when the Weka
+ * model failed to score the batch).
+ * <P>A batch can also be {@link #prescore() prescored} before the update of
+ * the router, e.g., concurrently with the batches of other routers. This
+ * only fills the cache: the batch of the update is validated against it
+ * like against any previous batch.</P>
+ */
+public class DecisionBatch {
+	/** feature matrix of the current batch */
+	private double[][] rows;
+	private Message[] messages;
+	private Connection[] connections;
+	private double[] probs;
+	private int size;
+
+	/** feature matrix and scores of the previous batch */
+	private double[][] cachedRows;
+	private Message[] cachedMessages;
+	private Connection[] cachedConnections;
+	private double[] cachedProbs;
+	private int cachedSize;
+
+	/** rows (and their indexes) that need to be scored */
+	private double[][] dirtyRows;
+	private int[] dirtyIndexes;
+	private double[] dirtyProbs;
+	/** work array of the compiled network for {@link #prescore()} */
+	private double[] networkWork;
+	/** the network {@link #networkWork} was created for */
+	private FeedForwardEvaluator workNetwork;
+
+	/**
+	 * Constructor.
+	 */
+	public DecisionBatch() {
+		this.rows = new double[0][];
+		this.messages = new Message[0];
+		this.connections = new Connection[0];
+		this.probs = new double[0];
+		this.cachedRows = new double[0][];
+		this.cachedMessages = new Message[0];
+		this.cachedConnections = new Connection[0];
+		this.cachedProbs = new double[0];
+		this.size = 0;
+		this.cachedSize = 0;
+	}
+
+	/**
+	 * Starts a new batch. The scores of the previous batch are kept for
+	 * reuse.
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+
+	/**
+	 * Adds a forwarding candidate to the batch
+	 * @param from The host carrying the message
+	 * @param con The connection the message would be sent over
+	 * @param m The message
+	 */
+	public void add(DTNHost from, Connection con, Message m) {
+		ensureCapacity(size + 1);
+		MLReport.fill_decision_vector(from, con.getOtherNode(from), m,
+				rows[size]);
+		messages[size] = m;
+		connections[size] = con;
+		size++;
+	}
+
+	/**
+	 * Adds a forwarding candidate to the batch using a given delivery
+	 * predictability of the receiving host. Doesn't change the state of the
+	 * hosts.
+	 * @param from The host carrying the message
+	 * @param con The connection the message would be sent over
+	 * @param m The message
+	 * @param pred Delivery predictability of the receiving host for the
+	 * destination of the message
+	 * @see MLReport#fill_decision_vector(DTNHost, DTNHost, Message, double,
+	 * double[])
+	 */
+	public void add(DTNHost from, Connection con, Message m, double pred) {
+		ensureCapacity(size + 1);
+		MLReport.fill_decision_vector(from, con.getOtherNode(from), m, pred,
+				rows[size]);
+		messages[size] = m;
+		connections[size] = con;
+		size++;
+	}
+
+	/**
+	 * Scores all the candidates of the batch like {@link #score()}, but
+	 * with the compiled network ({@link MLTrainer#network}) and a work array
+	 * of this batch, so that different batches can be prescored
+	 * concurrently. If there is no compiled network, the batch is only
+	 * cleared.
+	 */
+	public void prescore() {
+		FeedForwardEvaluator network = MLTrainer.network;
+		if (network == null) {
+			clear();
+			return;
+		}
+		if (network != workNetwork) {
+			networkWork = network.newWorkArray();
+			workNetwork = network;
+		}
+
+		int nrofDirty = collectDirtyRows();
+		for (int i = 0; i < nrofDirty; i++) {
+			probs[dirtyIndexes[i]] = network.probability(dirtyRows[i],
+					networkWork, 1);
+			dirtyRows[i] = null;
+		}
+
+		swapWithCache();
+	}
+
+	/**
+	 * Scores all the candidates of the batch. Candidates whose decision
+	 * vector is equal to the one of the same candidate in the previous batch
+	 * reuse the previous score, the rest are scored with a single call to
+	 * {@link MLTrainer#get_delivery_probs(double[][], int, double[])}.
+	 */
+	public void score() {
+		int nrofDirty = collectDirtyRows();
+
+		MLTrainer.get_delivery_probs(dirtyRows, nrofDirty, dirtyProbs);
+		for (int i = 0; i < nrofDirty; i++) {
+			probs[dirtyIndexes[i]] = dirtyProbs[i];
+			dirtyRows[i] = null;
+		}
+
+		swapWithCache();
+	}
+
+	/**
+	 * Copies the scores of the candidates that are unchanged since the
+	 * previous batch and collects the rest (and the candidates whose
+	 * previous score is NaN) to the dirty rows
+	 * @return Number of dirty rows
+	 */
+	private int collectDirtyRows() {
+		int nrofDirty = 0;
+		ensureDirtyCapacity(size);
+
+		for (int i = 0; i < size; i++) {
+			if (i < cachedSize && messages[i] == cachedMessages[i] &&
+					connections[i] == cachedConnections[i] &&
+					!Double.isNaN(cachedProbs[i]) &&
+					sameValues(rows[i], cachedRows[i])) {
+				probs[i] = cachedProbs[i];
+			}
+			else {
+				dirtyRows[nrofDirty] = rows[i];
+				dirtyIndexes[nrofDirty] = i;
+				nrofDirty++;
+			}
+		}
+
+		return nrofDirty;
+	}
+
+	/**
+	 * Returns the number of candidates in the (last scored) batch
+	 * @return the number of candidates
+	 */
+	public int size() {
+		return this.cachedSize;
+	}
+
+	/**
+	 * Returns the message of a scored candidate
+	 * @param index Index of the candidate
+	 * @return the message
+	 */
+	public Message getMessage(int index) {
+		return this.cachedMessages[index];
+	}
+
+	/**
+	 * Returns the connection of a scored candidate
+	 * @param index Index of the candidate
+	 * @return the connection
+	 */
+	public Connection getConnection(int index) {
+		return this.cachedConnections[index];
+	}
+
+	/**
+	 * Returns the delivery probability of a scored candidate
+	 * @param index Index of the candidate
+	 * @return the delivery probability
+	 */
+	public double getProbability(int index) {
+		return this.cachedProbs[index];
+	}
+
+	/**
+	 * Makes the just scored batch the cached one. The old cached arrays are
+	 * reused for the next batch.
+	 */
+	private void swapWithCache() {
+		double[][] tmpRows = cachedRows;
+		Message[] tmpMessages = cachedMessages;
+		Connection[] tmpConnections = cachedConnections;
+		double[] tmpProbs = cachedProbs;
+
+		cachedRows = rows;
+		cachedMessages = messages;
+		cachedConnections = connections;
+		cachedProbs = probs;
+		cachedSize = size;
+
+		rows = tmpRows;
+		messages = tmpMessages;
+		connections = tmpConnections;
+		probs = tmpProbs;
+
+		/* don't keep references to messages/connections of old batches */
+		for (int i = cachedSize; i < cachedMessages.length; i++) {
+			cachedMessages[i] = null;
+			cachedConnections[i] = null;
+		}
+		size = 0;
+	}
+
+	private static boolean sameValues(double[] a, double[] b) {
+		for (int i = 0; i < MLReport.DECISION_VECTOR_LENGTH; i++) {
+			if (Double.doubleToLongBits(a[i]) != Double.doubleToLongBits(b[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= rows.length) {
+			return;
+		}
+		int newCapacity = Math.max(capacity, rows.length * 2);
+		rows = growRows(rows, newCapacity);
+		cachedRows = growRows(cachedRows, newCapacity);
+		messages = Arrays.copyOf(messages, newCapacity);
+		cachedMessages = Arrays.copyOf(cachedMessages, newCapacity);
+		connections = Arrays.copyOf(connections, newCapacity);
+		cachedConnections = Arrays.copyOf(cachedConnections,
+				newCapacity);
+		probs = Arrays.copyOf(probs, newCapacity);
+		cachedProbs = Arrays.copyOf(cachedProbs, newCapacity);
+	}
+
+	private void ensureDirtyCapacity(int capacity) {
+		if (dirtyRows != null && capacity <= dirtyRows.length) {
+			return;
+		}
+		dirtyRows = new double[rows.length][];
+		dirtyIndexes = new int[rows.length];
+		dirtyProbs = new double[rows.length];
+	}
+
+	private static double[][] growRows(double[][] old, int capacity) {
+		double[][] grown = Arrays.copyOf(old, capacity);
+		for (int i = old.length; i < capacity; i++) {
+			grown[i] = new double[MLReport.DECISION_VECTOR_LENGTH];
+		}
+		return grown;
+	}
+}
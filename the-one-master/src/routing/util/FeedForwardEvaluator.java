@@ -0,0 +1,500 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.functions.MultilayerPerceptron;
+import weka.classifiers.functions.neural.LinearUnit;
+import weka.classifiers.functions.neural.NeuralConnection;
+import weka.classifiers.functions.neural.NeuralNode;
+import weka.classifiers.functions.neural.SigmoidUnit;
+import weka.classifiers.meta.FilteredClassifier;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Normalize;
+import weka.filters.unsupervised.attribute.ReplaceMissingValues;
+
+/**
+ * Allocation-free evaluator for a trained feed-forward network. The
+ * weights, biases and normalization parameters of a Weka
+ * {@link FilteredClassifier} that wraps a {@link Normalize} filter and a
+ * {@link MultilayerPerceptron} are exported into flat arrays, so that a
+ * feature vector can be scored without creating any Weka objects. The
+ * produced class distribution is the same as the one of
+ * {@link FilteredClassifier#distributionForInstance(weka.core.Instance)}.
+ * Like the perceptron's input units, the evaluator feeds 0 to the network
+ * for missing (NaN) attribute values. Subclasses of the perceptron are not
+ * supported since they may evaluate the network differently.
+ * <P>The evaluator itself is immutable; the values of the network's units
+ * are stored into a work array given by the caller (see
+ * {@link #newWorkArray()}) so one evaluator can be shared by all
+ * threads as long as each of them uses its own work array.</P>
+ */
+public class FeedForwardEvaluator {
+	/** Weka's sigmoid saturates to 0/1 outside [-LIMIT, LIMIT] */
+	private static final double SIGMOID_LIMIT = 45;
+
+	/** number of attributes in the (unfiltered) data set */
+	private final int nrofAttributes;
+	/** index of the class attribute */
+	private final int classIndex;
+
+	/** Normalize filter's minimum values per attribute (NaN = not used) */
+	private final double[] filterMin;
+	/** Normalize filter's maximum - minimum per attribute (0 = constant) */
+	private final double[] filterDiff;
+	private final double filterScale;
+	private final double filterTranslation;
+
+	/** Attribute index of each input unit */
+	private final int[] inputAttributes;
+	/** The perceptron's own attribute normalization (null if not used) */
+	private final double[] mlpBases;
+	private final double[] mlpRanges;
+
+	/** for each unit: where its sources start in the sources/weights
+	 * arrays (the last value is the total number of sources) */
+	private final int[] sourceOffsets;
+	/** work array indexes of the units' sources */
+	private final int[] sources;
+	/** weights of the units' sources */
+	private final double[] weights;
+	/** bias (threshold) of each unit */
+	private final double[] biases;
+	/** is the unit a sigmoid unit (or a linear one) */
+	private final boolean[] sigmoid;
+	/** work array indexes of the output values of each class */
+	private final int[] outputs;
+
+	private FeedForwardEvaluator(int nrofAttributes, int classIndex,
+			double[] filterMin, double[] filterDiff, double filterScale,
+			double filterTranslation, int[] inputAttributes,
+			double[] mlpBases, double[] mlpRanges, int[] sourceOffsets,
+			int[] sources, double[] weights, double[] biases,
+			boolean[] sigmoid, int[] outputs) {
+		this.nrofAttributes = nrofAttributes;
+		this.classIndex = classIndex;
+		this.filterMin = filterMin;
+		this.filterDiff = filterDiff;
+		this.filterScale = filterScale;
+		this.filterTranslation = filterTranslation;
+		this.inputAttributes = inputAttributes;
+		this.mlpBases = mlpBases;
+		this.mlpRanges = mlpRanges;
+		this.sourceOffsets = sourceOffsets;
+		this.sources = sources;
+		this.weights = weights;
+		this.biases = biases;
+		this.sigmoid = sigmoid;
+		this.outputs = outputs;
+	}
+
+	/**
+	 * Exports the network of a trained classifier.
+	 * @param model The trained classifier
+	 * @return An evaluator for the network or null if the classifier is not
+	 * a normalizing filtered classifier wrapping a (nominal class)
+	 * multilayer perceptron (and not a subclass of it)
+	 */
+	public static FeedForwardEvaluator compile(FilteredClassifier model) {
+		Filter filter = model.getFilter();
+		Classifier classifier = model.getClassifier();
+		if (!(filter instanceof Normalize) || classifier == null ||
+				classifier.getClass() != MultilayerPerceptron.class) {
+			return null;
+		}
+
+		try {
+			return compile((Normalize)filter,
+					(MultilayerPerceptron)classifier);
+		} catch (ReflectiveOperationException e) {
+			return null; /* unknown perceptron implementation */
+		}
+	}
+
+	private static FeedForwardEvaluator compile(Normalize normalize,
+			MultilayerPerceptron mlp) throws ReflectiveOperationException {
+		Instances header = (Instances)field(mlp, "m_instances");
+		if (header == null || (Boolean)field(mlp, "m_useDefaultModel") ||
+				!header.classAttribute().isNominal()) {
+			return null; /* not built, default model or numeric class */
+		}
+		if (hasFieldOfType(mlp, ReplaceMissingValues.class)) {
+			return null; /* missing values are not fed to the network as 0 */
+		}
+		for (int i = 0; i < header.numAttributes(); i++) {
+			if (i != header.classIndex() && !header.attribute(i).isNumeric()) {
+				return null; /* nominal to binary conversion is not supported */
+			}
+		}
+
+		int nrofAttributes = header.numAttributes();
+		double[] min = normalize.getMinArray();
+		double[] max = normalize.getMaxArray();
+		double[] filterMin = new double[nrofAttributes];
+		double[] filterDiff = new double[nrofAttributes];
+		for (int i = 0; i < nrofAttributes; i++) {
+			filterMin[i] = min[i];
+			filterDiff[i] = max[i] - min[i];
+		}
+
+		double[] mlpBases = null;
+		double[] mlpRanges = null;
+		if ((Boolean)field(mlp, "m_normalizeAttributes")) {
+			mlpBases = ((double[])field(mlp, "m_attributeBases")).clone();
+			mlpRanges = ((double[])field(mlp, "m_attributeRanges")).clone();
+		}
+
+		NeuralConnection[] inputEnds =
+			(NeuralConnection[])field(mlp, "m_inputs");
+		NeuralConnection[] outputEnds =
+			(NeuralConnection[])field(mlp, "m_outputs");
+
+		/* work array slots: input units first, then the other units in
+		 * topological order */
+		Map<NeuralConnection, Integer> slots =
+			new IdentityHashMap<NeuralConnection, Integer>();
+		int[] inputAttributes = new int[inputEnds.length];
+		for (int i = 0; i < inputEnds.length; i++) {
+			inputAttributes[i] = (Integer)inputEnds[i].getClass().
+				getMethod("getLink").invoke(inputEnds[i]);
+			slots.put(inputEnds[i], i);
+		}
+
+		List<NeuralConnection> units = new ArrayList<NeuralConnection>();
+		for (NeuralConnection end : outputEnds) {
+			addInTopologicalOrder(end, slots, units, inputEnds.length);
+		}
+
+		int nrofSources = 0;
+		for (NeuralConnection unit : units) {
+			nrofSources += unit.getNumInputs();
+		}
+
+		int[] sourceOffsets = new int[units.size() + 1];
+		int[] sources = new int[nrofSources];
+		double[] weights = new double[nrofSources];
+		double[] biases = new double[units.size()];
+		boolean[] sigmoid = new boolean[units.size()];
+		int next = 0;
+		for (int u = 0; u < units.size(); u++) {
+			NeuralConnection unit = units.get(u);
+			NeuralConnection[] in = unit.getInputs();
+			sourceOffsets[u] = next;
+
+			if (unit instanceof NeuralNode) {
+				NeuralNode node = (NeuralNode)unit;
+				double[] w = node.getWeights();
+				if (node.getMethod() instanceof SigmoidUnit) {
+					sigmoid[u] = true;
+				}
+				else if (!(node.getMethod() instanceof LinearUnit)) {
+					return null; /* unknown activation function */
+				}
+				biases[u] = w[0];
+				for (int i = 0; i < unit.getNumInputs(); i++) {
+					sources[next] = slots.get(in[i]);
+					weights[next] = w[i + 1];
+					next++;
+				}
+			}
+			else { /* output end: sum of its inputs */
+				biases[u] = 0;
+				for (int i = 0; i < unit.getNumInputs(); i++) {
+					sources[next] = slots.get(in[i]);
+					weights[next] = 1.0;
+					next++;
+				}
+			}
+		}
+		sourceOffsets[units.size()] = next;
+
+		int[] outputs = new int[outputEnds.length];
+		for (int i = 0; i < outputEnds.length; i++) {
+			outputs[i] = slots.get(outputEnds[i]);
+		}
+
+		return new FeedForwardEvaluator(nrofAttributes, header.classIndex(),
+				filterMin, filterDiff, normalize.getScale(),
+				normalize.getTranslation(), inputAttributes, mlpBases,
+				mlpRanges, sourceOffsets, sources, weights, biases, sigmoid,
+				outputs);
+	}
+
+	/**
+	 * Adds a unit and (recursively) the units it depends on to the list of
+	 * units so that each unit comes after all of its sources.
+	 */
+	private static void addInTopologicalOrder(NeuralConnection unit,
+			Map<NeuralConnection, Integer> slots, List<NeuralConnection> units,
+			int nrofInputs) {
+		if (slots.containsKey(unit)) {
+			return;
+		}
+		NeuralConnection[] in = unit.getInputs();
+		for (int i = 0; i < unit.getNumInputs(); i++) {
+			addInTopologicalOrder(in[i], slots, units, nrofInputs);
+		}
+		slots.put(unit, nrofInputs + units.size());
+		units.add(unit);
+	}
+
+	/**
+	 * Returns true if the object (or its superclasses) declares a field of
+	 * the given type
+	 */
+	private static boolean hasFieldOfType(Object o, Class<?> type) {
+		for (Class<?> c = o.getClass(); c != null; c = c.getSuperclass()) {
+			for (Field f : c.getDeclaredFields()) {
+				if (type.isAssignableFrom(f.getType())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static Object field(Object o, String name)
+			throws ReflectiveOperationException {
+		for (Class<?> c = o.getClass(); c != null; c = c.getSuperclass()) {
+			try {
+				Field f = c.getDeclaredField(name);
+				f.setAccessible(true);
+				return f.get(o);
+			} catch (NoSuchFieldException e) {
+				/* try the superclass */
+			}
+		}
+		throw new NoSuchFieldException(name);
+	}
+
+	/**
+	 * Writes the network's parameters to an output. The network can be
+	 * read back with {@link #readFrom(ByteBuffer)}.
+	 * @param out The output to write to
+	 * @throws IOException if writing fails
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(nrofAttributes);
+		out.writeInt(classIndex);
+		out.writeDouble(filterScale);
+		out.writeDouble(filterTranslation);
+		writeDoubles(out, filterMin);
+		writeDoubles(out, filterDiff);
+		writeInts(out, inputAttributes);
+		writeDoubles(out, mlpBases);
+		writeDoubles(out, mlpRanges);
+		writeInts(out, sourceOffsets);
+		writeInts(out, sources);
+		writeDoubles(out, weights);
+		writeDoubles(out, biases);
+		out.writeInt(sigmoid.length);
+		for (boolean b : sigmoid) {
+			out.writeBoolean(b);
+		}
+		writeInts(out, outputs);
+	}
+
+	/**
+	 * Reads a network that was written with {@link #writeTo(DataOutput)}
+	 * @param in The buffer to read from (e.g., a memory mapped file)
+	 * @return The network
+	 */
+	public static FeedForwardEvaluator readFrom(ByteBuffer in) {
+		int nrofAttributes = in.getInt();
+		int classIndex = in.getInt();
+		double filterScale = in.getDouble();
+		double filterTranslation = in.getDouble();
+		double[] filterMin = readDoubles(in);
+		double[] filterDiff = readDoubles(in);
+		int[] inputAttributes = readInts(in);
+		double[] mlpBases = readDoubles(in);
+		double[] mlpRanges = readDoubles(in);
+		int[] sourceOffsets = readInts(in);
+		int[] sources = readInts(in);
+		double[] weights = readDoubles(in);
+		double[] biases = readDoubles(in);
+		boolean[] sigmoid = new boolean[in.getInt()];
+		for (int i = 0; i < sigmoid.length; i++) {
+			sigmoid[i] = in.get() != 0;
+		}
+		int[] outputs = readInts(in);
+
+		return new FeedForwardEvaluator(nrofAttributes, classIndex,
+				filterMin, filterDiff, filterScale, filterTranslation,
+				inputAttributes, mlpBases, mlpRanges, sourceOffsets, sources,
+				weights, biases, sigmoid, outputs);
+	}
+
+	/** writes an array with its length (-1 for null) */
+	private static void writeDoubles(DataOutput out, double[] values)
+			throws IOException {
+		if (values == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(values.length);
+		for (double d : values) {
+			out.writeDouble(d);
+		}
+	}
+
+	private static void writeInts(DataOutput out, int[] values)
+			throws IOException {
+		out.writeInt(values.length);
+		for (int i : values) {
+			out.writeInt(i);
+		}
+	}
+
+	private static double[] readDoubles(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0) {
+			return null;
+		}
+		double[] values = new double[length];
+		in.asDoubleBuffer().get(values);
+		in.position(in.position() + length * 8);
+		return values;
+	}
+
+	private static int[] readInts(ByteBuffer in) {
+		int[] values = new int[in.getInt()];
+		in.asIntBuffer().get(values);
+		in.position(in.position() + values.length * 4);
+		return values;
+	}
+
+	/**
+	 * Creates a new work array that is big enough for this network
+	 * @return a new work array
+	 */
+	public double[] newWorkArray() {
+		return new double[inputAttributes.length + biases.length];
+	}
+
+	/**
+	 * Returns the number of classes the network gives probabilities for
+	 * @return the number of classes
+	 */
+	public int getNrofClasses() {
+		return outputs.length;
+	}
+
+	/**
+	 * Returns the number of attributes (including the class) the feature
+	 * vectors are expected to have
+	 * @return the number of attributes
+	 */
+	public int getNrofAttributes() {
+		return nrofAttributes;
+	}
+
+	/**
+	 * Returns the probability of one class for a feature vector.
+	 * @param row The feature vector (value of the class attribute, if
+	 * present, is ignored)
+	 * @param work Work array (see {@link #newWorkArray()})
+	 * @param classValue Index of the class whose probability is returned
+	 * @return The probability of the class
+	 */
+	public double probability(double[] row, double[] work, int classValue) {
+		evaluate(row, work);
+		double sum = 0;
+		for (int i = 0; i < outputs.length; i++) {
+			sum += work[outputs[i]];
+		}
+		return work[outputs[classValue]] / sum;
+	}
+
+	/**
+	 * Computes the class distribution for a feature vector.
+	 * @param row The feature vector
+	 * @param work Work array (see {@link #newWorkArray()})
+	 * @param dist Array where the probability of each class is stored
+	 */
+	public void distribution(double[] row, double[] work, double[] dist) {
+		evaluate(row, work);
+		double sum = 0;
+		for (int i = 0; i < outputs.length; i++) {
+			dist[i] = work[outputs[i]];
+			sum += dist[i];
+		}
+		for (int i = 0; i < outputs.length; i++) {
+			dist[i] /= sum;
+		}
+	}
+
+	/**
+	 * Propagates a feature vector through the network. After the call the
+	 * work array contains the output values of all units.
+	 */
+	private void evaluate(double[] row, double[] work) {
+		int nrofInputs = inputAttributes.length;
+
+		for (int i = 0; i < nrofInputs; i++) {
+			int a = inputAttributes[i];
+			double value = row[a];
+			if (a != classIndex) {
+				value = normalize(a, value);
+			}
+			/* the perceptron's input units give 0 for missing values */
+			work[i] = Double.isNaN(value) ? 0 : value;
+		}
+
+		for (int u = 0, n = biases.length; u < n; u++) {
+			double value = biases[u];
+			for (int s = sourceOffsets[u], end = sourceOffsets[u + 1];
+					s < end; s++) {
+				value += work[sources[s]] * weights[s];
+			}
+			if (sigmoid[u]) {
+				if (value < -SIGMOID_LIMIT) {
+					value = 0;
+				}
+				else if (value > SIGMOID_LIMIT) {
+					value = 1;
+				}
+				else {
+					value = 1.0 / (1.0 + Math.exp(-value));
+				}
+			}
+			work[nrofInputs + u] = value;
+		}
+	}
+
+	/**
+	 * Applies the Normalize filter's and the perceptron's own normalization
+	 * to an attribute value
+	 */
+	private double normalize(int attribute, double value) {
+		if (Double.isNaN(filterMin[attribute]) || filterDiff[attribute] == 0) {
+			value = 0;
+		}
+		else {
+			value = (value - filterMin[attribute]) / filterDiff[attribute] *
+				filterScale + filterTranslation;
+		}
+
+		if (mlpBases != null) {
+			if (mlpRanges[attribute] != 0) {
+				value = (value - mlpBases[attribute]) / mlpRanges[attribute];
+			}
+			else {
+				value = value - mlpBases[attribute];
+			}
+		}
+		return value;
+	}
+}
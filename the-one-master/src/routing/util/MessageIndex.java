@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+import core.Message;
+
+/**
+ * Index of the messages in a router's buffer, ordered by a router specific
+ * key (e.g., the receive time for dropping the oldest message first).
+ * Messages are added and removed in O(log n) time and the first message in
+ * the order is found without going through the buffer.
+ * <P>The key must not change while the message is in the index. Messages
+ * with equal keys are ordered by their IDs; the index also keeps count of
+ * such ties so that the user can check whether the order is fully defined
+ * by the key (see {@link #hasTies()}).</P>
+ */
+public class MessageIndex implements Iterable<Message> {
+	/** the order of the messages (ties are broken by the message IDs) */
+	private final TreeSet<Message> messages;
+	/** the order defined by the key only */
+	private final Comparator<Message> keyOrder;
+	/** number of adjacent message pairs with equal keys */
+	private int nrofTies;
+
+	/**
+	 * Constructor.
+	 * @param keyOrder Comparator that defines the order of the messages
+	 */
+	public MessageIndex(final Comparator<Message> keyOrder) {
+		this.keyOrder = keyOrder;
+		this.messages = new TreeSet<Message>(new Comparator<Message>() {
+			public int compare(Message m1, Message m2) {
+				int c = keyOrder.compare(m1, m2);
+				return c != 0 ? c : m1.getId().compareTo(m2.getId());
+			}
+		});
+		this.nrofTies = 0;
+	}
+
+	/**
+	 * Adds a message to the index
+	 * @param m The message to add
+	 */
+	public void add(Message m) {
+		if (!messages.add(m)) {
+			return;
+		}
+		Message lower = messages.lower(m);
+		Message higher = messages.higher(m);
+		nrofTies += tie(lower, m) + tie(m, higher) - tie(lower, higher);
+	}
+
+	/**
+	 * Removes a message from the index
+	 * @param m The message to remove
+	 */
+	public void remove(Message m) {
+		Message lower = messages.lower(m);
+		Message higher = messages.higher(m);
+		if (!messages.remove(m)) {
+			return;
+		}
+		nrofTies -= tie(lower, m) + tie(m, higher) - tie(lower, higher);
+	}
+
+	/**
+	 * Returns true if some messages in the index have equal keys (i.e., their
+	 * order is defined only by their IDs)
+	 * @return True if there are ties in the order
+	 */
+	public boolean hasTies() {
+		return nrofTies > 0;
+	}
+
+	/**
+	 * Returns true if two messages have equal keys
+	 * @param m1 The first message
+	 * @param m2 The second message
+	 * @return True if the keys are equal
+	 */
+	public boolean isTie(Message m1, Message m2) {
+		return keyOrder.compare(m1, m2) == 0;
+	}
+
+	/**
+	 * Returns the number of messages in the index
+	 * @return The number of messages
+	 */
+	public int size() {
+		return messages.size();
+	}
+
+	/**
+	 * Returns an iterator over the messages in the index's order. The index
+	 * must not be modified while iterating.
+	 */
+	public Iterator<Message> iterator() {
+		return messages.iterator();
+	}
+
+	/**
+	 * Returns 1 if both messages are non-null and have equal keys, 0
+	 * otherwise
+	 */
+	private int tie(Message m1, Message m2) {
+		if (m1 == null || m2 == null) {
+			return 0;
+		}
+		return isTie(m1, m2) ? 1 : 0;
+	}
+}
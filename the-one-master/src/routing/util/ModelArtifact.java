@@ -0,0 +1,266 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Persisted trained model of the ML routers. The artifact is identified
+ * by a key that is the hash of the training data and of the training
+ * settings, so a model is only reused by runs that would have trained
+ * exactly the same model. If the model could be compiled, the artifact
+ * contains the {@link FeedForwardEvaluator} parameters that are read from
+ * a memory mapped file; otherwise the serialized Weka objects are stored.
+ */
+public class ModelArtifact {
+	/** Identifies model artifact files ("ONEM") */
+	private static final int MAGIC = 0x4F4E454D;
+	/** Version of the file format (also part of the key). Version 2: the
+	 * perceptron subclasses are no longer compiled. */
+	public static final int VERSION = 2;
+	/** Length of the key in bytes */
+	public static final int KEY_LENGTH = 32;
+
+	private static final byte TYPE_NETWORK = 1;
+	private static final byte TYPE_SERIALIZED = 2;
+
+	private FeedForwardEvaluator network;
+	private Object[] serialized;
+
+	private ModelArtifact(FeedForwardEvaluator network, Object[] serialized) {
+		this.network = network;
+		this.serialized = serialized;
+	}
+
+	/**
+	 * Returns the compiled network of the model
+	 * @return the network or null if the artifact contains serialized
+	 * objects instead
+	 */
+	public FeedForwardEvaluator getNetwork() {
+		return this.network;
+	}
+
+	/**
+	 * Returns the serialized (Weka) objects of the model
+	 * @return the objects in the order they were written or null if the
+	 * artifact contains a compiled network
+	 */
+	public Object[] getSerialized() {
+		return this.serialized;
+	}
+
+	/**
+	 * Computes the key of a model
+	 * @param dataFile Path of the training data file
+	 * @param parameters All the settings that affect training
+	 * @return The key
+	 * @throws IOException if the training data can't be read
+	 */
+	public static byte[] computeKey(String dataFile, Object... parameters)
+			throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		byte[] buffer = new byte[64 * 1024];
+		InputStream in = new FileInputStream(dataFile);
+		try {
+			for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+				digest.update(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+
+		digest.update(("v" + VERSION).getBytes(StandardCharsets.UTF_8));
+		for (Object p : parameters) {
+			digest.update((";" + p).getBytes(StandardCharsets.UTF_8));
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Reads the model of the artifact file if it has the given key.
+	 * @param file Path of the artifact file
+	 * @param key The key the model must have
+	 * @return The model or null if the file doesn't exist, is of different
+	 * version, or is for some other key
+	 * @throws IOException if the file exists but can't be read
+	 */
+	public static ModelArtifact read(String file, byte[] key)
+			throws IOException {
+		File f = new File(file);
+		if (!f.isFile()) {
+			return null;
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, channel.size());
+
+			if (in.remaining() < 8 + KEY_LENGTH + 1 || in.getInt() != MAGIC ||
+					in.getInt() != VERSION) {
+				return null;
+			}
+			byte[] fileKey = new byte[KEY_LENGTH];
+			in.get(fileKey);
+			if (!Arrays.equals(key, fileKey)) {
+				return null;
+			}
+
+			byte type = in.get();
+			if (type == TYPE_NETWORK) {
+				return new ModelArtifact(FeedForwardEvaluator.readFrom(in),
+						null);
+			}
+			else if (type == TYPE_SERIALIZED) {
+				return new ModelArtifact(null, readObjects(in));
+			}
+			return null;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes a compiled network to an artifact file
+	 * @param file Path of the artifact file
+	 * @param key Key of the model
+	 * @param network The network to write
+	 * @throws IOException if writing fails
+	 */
+	public static void write(String file, byte[] key,
+			FeedForwardEvaluator network) throws IOException {
+		File temp = createTempFile(file);
+		try {
+			DataOutputStream out = openFile(temp, key, TYPE_NETWORK);
+			try {
+				network.writeTo(out);
+			} finally {
+				out.close();
+			}
+			rename(temp, new File(file));
+		} finally {
+			temp.delete(); // no-op if the file was renamed
+		}
+	}
+
+	/**
+	 * Writes serializable objects (e.g., a Weka classifier and its data
+	 * header) to an artifact file
+	 * @param file Path of the artifact file
+	 * @param key Key of the model
+	 * @param objects The objects to write
+	 * @throws IOException if writing fails
+	 */
+	public static void writeSerialized(String file, byte[] key,
+			Object... objects) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		oos.writeInt(objects.length);
+		for (Object o : objects) {
+			oos.writeObject(o);
+		}
+		oos.close();
+
+		File temp = createTempFile(file);
+		try {
+			DataOutputStream out = openFile(temp, key, TYPE_SERIALIZED);
+			try {
+				out.writeInt(bytes.size());
+				bytes.writeTo(out);
+			} finally {
+				out.close();
+			}
+			rename(temp, new File(file));
+		} finally {
+			temp.delete(); // no-op if the file was renamed
+		}
+	}
+
+	/**
+	 * Creates a temporary file in the directory of an artifact file. The
+	 * artifact is first written to the temporary file and then renamed, so
+	 * that simulations running at the same time (or a crash during the
+	 * write) never leave a partially written artifact with the real name.
+	 * @param file Path of the artifact file
+	 * @return The temporary file
+	 */
+	private static File createTempFile(String file) throws IOException {
+		File target = new File(file).getAbsoluteFile();
+		File parent = target.getParentFile();
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+		return File.createTempFile(target.getName(), ".tmp", parent);
+	}
+
+	/**
+	 * Replaces an artifact file with a written temporary file
+	 * @param temp The temporary file
+	 * @param target The artifact file
+	 */
+	private static void rename(File temp, File target) throws IOException {
+		if (!temp.renameTo(target)) {
+			target.delete();
+			if (!temp.renameTo(target)) {
+				throw new IOException("Can't rename " + temp + " to " + target);
+			}
+		}
+	}
+
+	private static DataOutputStream openFile(File file, byte[] key,
+			byte type) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.write(key);
+		out.writeByte(type);
+		return out;
+	}
+
+	private static Object[] readObjects(ByteBuffer in) throws IOException {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		ObjectInputStream ois =
+			new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			Object[] objects = new Object[ois.readInt()];
+			for (int i = 0; i < objects.length; i++) {
+				objects[i] = ois.readObject();
+			}
+			return objects;
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		} finally {
+			ois.close();
+		}
+	}
+}
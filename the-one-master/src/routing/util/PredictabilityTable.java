@@ -0,0 +1,234 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * Delivery predictability table of the PRoPHET family of routers. The
+ * predictabilities are kept in a primitive array in the order the hosts were
+ * added and found using an array indexed by the host addresses, so that
+ * aging and the transitive updates are plain loops over doubles without
+ * boxing or hashing.
+ * <P>The values are aged the same way as the routers used to age their
+ * predictability maps: all values are multiplied with
+ * <CODE>GAMMA ^ k</CODE>, where k is the number of time units elapsed since
+ * the last aging, whenever the values are read at a new simulation time.
+ * </P>
+ */
+public class PredictabilityTable {
+	/** initial size of the arrays */
+	private static final int INIT_SIZE = 16;
+
+	/** the aging constant */
+	private final double gamma;
+	/** how many seconds one time unit is when aging the values */
+	private final int secondsInTimeUnit;
+
+	/** predictability values in the order the hosts were added */
+	private double[] values;
+	/** the hosts of the values */
+	private DTNHost[] hosts;
+	/** indices of the values by host address (-1 if the host has no value) */
+	private int[] indices;
+	/** number of values */
+	private int size;
+	/** last aging (sim)time */
+	private double lastAgeUpdate;
+
+	/**
+	 * Constructor. Creates an empty table.
+	 * @param gamma The aging constant
+	 * @param secondsInTimeUnit How many seconds one time unit is
+	 */
+	public PredictabilityTable(double gamma, int secondsInTimeUnit) {
+		this.gamma = gamma;
+		this.secondsInTimeUnit = secondsInTimeUnit;
+		this.values = new double[INIT_SIZE];
+		this.hosts = new DTNHost[INIT_SIZE];
+		this.indices = new int[INIT_SIZE];
+		Arrays.fill(this.indices, -1);
+		this.size = 0;
+		this.lastAgeUpdate = 0;
+	}
+
+	/**
+	 * Returns the current predictability value for a host or 0 if the host
+	 * has no value. Ages the values first.
+	 * @param host The host to look the value for
+	 * @return The current value
+	 */
+	public double get(DTNHost host) {
+		age(); // make sure values are updated before getting
+		return getStored(host.getAddress());
+	}
+
+	/**
+	 * Returns the same value as {@link #get(DTNHost)}, but without aging the
+	 * stored values, so that it can be called concurrently from several
+	 * threads.
+	 * @param host The host to look the value for
+	 * @return The current value
+	 */
+	public double peek(DTNHost host) {
+		int address = host.getAddress();
+		if (address >= indices.length || indices[address] < 0) {
+			return 0;
+		}
+
+		double p = values[indices[address]];
+		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) /
+			secondsInTimeUnit;
+		if (timeDiff == 0) {
+			return p;
+		}
+		return p * Math.pow(gamma, timeDiff);
+	}
+
+	/**
+	 * Sets the predictability value for a host
+	 * @param host The host
+	 * @param value The new value
+	 */
+	public void set(DTNHost host, double value) {
+		int address = host.getAddress();
+		if (address >= indices.length) {
+			int oldLength = indices.length;
+			indices = Arrays.copyOf(indices,
+					Math.max(oldLength * 2, address + 1));
+			Arrays.fill(indices, oldLength, indices.length, -1);
+		}
+
+		int index = indices[address];
+		if (index < 0) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+				hosts = Arrays.copyOf(hosts, size * 2);
+			}
+			index = size++;
+			indices[address] = index;
+			hosts[index] = host;
+		}
+		values[index] = value;
+	}
+
+	/**
+	 * Updates transitive (A->B->C) predictabilities with the values of
+	 * another host's table.
+	 * <CODE>P(a,c) = P(a,c)_old + (1 - P(a,c)_old) * P(a,b) * P(b,c) * beta
+	 * </CODE>
+	 * @param self The host (A) whose table this is
+	 * @param pForHost The predictability of the other host, P(a,b)
+	 * @param other The table of the other host (B)
+	 * @param beta The transitivity scaling constant
+	 */
+	public void updateTransitive(DTNHost self, double pForHost,
+			PredictabilityTable other, double beta) {
+		age();
+		other.age();
+		int selfAddress = self.getAddress();
+
+		for (int i = 0, n = other.size; i < n; i++) {
+			DTNHost c = other.hosts[i];
+			if (c.getAddress() == selfAddress) {
+				continue; // don't add yourself
+			}
+
+			double pOld = getStored(c.getAddress()); // P(a,c)_old
+			double pNew = pOld + (1 - pOld) * pForHost * other.values[i] * beta;
+			set(c, pNew);
+		}
+	}
+
+	/**
+	 * Updates transitive (A->B->C) predictabilities with the values of
+	 * another host's table as PRoPHETv2 does, i.e., the old value is replaced
+	 * only if the transitive value is bigger.
+	 * <CODE>P(a,c) = max(P(a,c)_old, P(a,b) * P(b,c) * beta)</CODE>
+	 * @param self The host (A) whose table this is
+	 * @param pForHost The predictability of the other host, P(a,b)
+	 * @param other The table of the other host (B)
+	 * @param beta The transitivity scaling constant
+	 */
+	public void updateTransitiveMax(DTNHost self, double pForHost,
+			PredictabilityTable other, double beta) {
+		age();
+		other.age();
+		int selfAddress = self.getAddress();
+
+		for (int i = 0, n = other.size; i < n; i++) {
+			DTNHost c = other.hosts[i];
+			if (c.getAddress() == selfAddress) {
+				continue; // don't add yourself
+			}
+
+			double pOld = getStored(c.getAddress()); // P(a,c)_old
+			double pNew = pForHost * other.values[i] * beta;
+			if (pNew > pOld) {
+				set(c, pNew);
+			}
+		}
+	}
+
+	/**
+	 * Ages all the values.
+	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
+	 * time units that have elapsed since the last time the values were aged.
+	 */
+	public void age() {
+		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) /
+			secondsInTimeUnit;
+
+		if (timeDiff == 0) {
+			return;
+		}
+
+		double mult = Math.pow(gamma, timeDiff);
+		double[] v = this.values;
+		for (int i = 0, n = this.size; i < n; i++) {
+			v[i] *= mult;
+		}
+
+		this.lastAgeUpdate = SimClock.getTime();
+	}
+
+	/**
+	 * Returns the number of hosts that have a value in the table
+	 * @return The number of values
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns routing info of the (aged) values
+	 * @return Routing info with the value of every host
+	 */
+	public RoutingInfo getRoutingInfo() {
+		age();
+		RoutingInfo ri = new RoutingInfo(size + " delivery prediction(s)");
+
+		for (int i = 0; i < size; i++) {
+			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f",
+					hosts[i], values[i])));
+		}
+
+		return ri;
+	}
+
+	/**
+	 * Returns the stored (not aged) value of a host or 0 if the host has no
+	 * value
+	 */
+	private double getStored(int address) {
+		if (address >= indices.length || indices[address] < 0) {
+			return 0;
+		}
+		return values[indices[address]];
+	}
+}
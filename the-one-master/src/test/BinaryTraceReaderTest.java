@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.BinaryTraceReader;
+import input.BinaryTraceWriter;
+import input.ExternalMovementReader;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.List;
+
+import util.Tuple;
+
+import junit.framework.TestCase;
+import core.Coord;
+
+public class BinaryTraceReaderTest extends TestCase {
+	private static final String INPUT =
+		"100 150 1000 1040.1 0 0\n"+
+		"100 a 1010 10.1\n"+
+		"100 b 1010 20\n" +
+		"110 b 1020 20.3\n" +
+		"110 c 1030 30\n" +
+		"120 a 1030 20\n" +
+		"130 a 1040.1 30\n" +
+		"130 c 1040 30\n" +
+		"140 b 1040 30\n" +
+		"150 a 1000 0\n" +
+		"150 c 1000 0";
+	private static final double [] times = {0, 10, 20, 30, 40, 50};
+
+	private File textFile;
+	private File binFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		textFile = File.createTempFile("BTRTest", ".txt");
+		textFile.deleteOnExit();
+		binFile = File.createTempFile("BTRTest", ".bin");
+		binFile.deleteOnExit();
+
+		PrintWriter pw = new PrintWriter(textFile);
+		pw.println(INPUT);
+		pw.close();
+	}
+
+	private BinaryTraceReader convert(boolean doubles, int blockSize)
+			throws Exception {
+		BinaryTraceWriter.convert(textFile.getAbsolutePath(),
+				binFile.getAbsolutePath(), doubles, blockSize);
+		return new BinaryTraceReader(binFile.getAbsolutePath());
+	}
+
+	public void testReader() throws Exception {
+		for (int blockSize : new int[] {1, 64, 1024}) {
+			BinaryTraceReader r = convert(true, blockSize);
+			ExternalMovementReader text = new ExternalMovementReader(
+					textFile.getAbsolutePath());
+
+			assertEquals(100.0, r.getMinTime());
+			assertEquals(150.0, r.getMaxTime());
+			assertEquals(1000.0, r.getMinX());
+			assertEquals(1040.1, r.getMaxX());
+			assertEquals(3, r.getNrofIds());
+			assertEquals("a", r.getId(0));
+			assertEquals(2, r.getIndex("c"));
+			assertEquals(-1, r.getIndex("d"));
+
+			for (int i = 0; i < times.length; i++) {
+				r.prefetch(2);
+				int n = r.readNextMovements();
+				assertEquals(times[i], r.getLastTimeStamp());
+				checkSamples(text.readNextMovements(), r, n, true);
+			}
+			assertEquals(0, r.readNextMovements());
+			assertEquals(50.0, r.getLastTimeStamp());
+			r.close();
+		}
+	}
+
+	public void testFloats() throws Exception {
+		BinaryTraceReader r = convert(false, 1024);
+		ExternalMovementReader text = new ExternalMovementReader(
+				textFile.getAbsolutePath());
+		assertFalse(r.hasDoubleCoordinates());
+
+		for (int i = 0; i < times.length; i++) {
+			int n = r.readNextMovements();
+			checkSamples(text.readNextMovements(), r, n, false);
+		}
+		r.close();
+	}
+
+	public void testSeek() throws Exception {
+		BinaryTraceReader r = convert(true, 1);
+
+		r.seek(25);
+		r.readNextMovements();
+		assertEquals(30.0, r.getLastTimeStamp());
+
+		r.seek(10);
+		r.readNextMovements();
+		assertEquals(10.0, r.getLastTimeStamp());
+
+		r.seek(-5);
+		r.readNextMovements();
+		assertEquals(0.0, r.getLastTimeStamp());
+
+		r.seek(60);
+		assertEquals(0, r.readNextMovements());
+
+		r = convert(true, 1024); // all instances in the same block
+		r.seek(35);
+		assertEquals(1, r.readNextMovements());
+		assertEquals(40.0, r.getLastTimeStamp());
+		assertEquals(2, r.readNextMovements());
+		assertEquals(0, r.readNextMovements());
+		r.close();
+	}
+
+	public void testIsBinaryTrace() throws Exception {
+		assertFalse(BinaryTraceReader.isBinaryTrace(
+				textFile.getAbsolutePath()));
+		convert(true, 1024).close();
+		assertTrue(BinaryTraceReader.isBinaryTrace(binFile.getAbsolutePath()));
+	}
+
+	private void checkSamples(List<Tuple<String, Coord>> expected,
+			BinaryTraceReader r, int n, boolean exact) {
+		assertEquals(expected.size(), n);
+		for (int i = 0; i < n; i++) {
+			Tuple<String, Coord> t = expected.get(i);
+			assertEquals(t.getKey(), r.getId(r.getNodeIndices()[i]));
+			if (exact) {
+				assertEquals(t.getValue(),
+						new Coord(r.getXs()[i], r.getYs()[i]));
+			}
+			else {
+				assertEquals(t.getValue().getX(), r.getXs()[i], 1e-5);
+				assertEquals(t.getValue().getY(), r.getYs()[i], 1e-5);
+				assertEquals((double)(float)t.getValue().getY(),
+						r.getYs()[i]);
+			}
+		}
+	}
+}
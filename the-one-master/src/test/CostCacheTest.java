@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.maxprop.CostCache;
+
+/**
+ * Tests for the cost cache of the MaxProp routers.
+ */
+public class CostCacheTest extends TestCase {
+	private CostCache cache;
+	private double[] c1, c2, c3;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		cache = new CostCache();
+		c1 = new double[] {0.5, 1.0};
+		c2 = new double[] {0.25};
+		c3 = new double[] {0.75, 0.75, 0.75};
+	}
+
+	public void testGetAndPut() {
+		assertNull(cache.get(1));
+		cache.put(1, c1);
+		cache.put(2, c2);
+		assertSame(c1, cache.get(1));
+		assertSame(c2, cache.get(2));
+		assertNull(cache.get(3));
+
+		cache.put(1, c3);
+		assertSame(c3, cache.get(1));
+	}
+
+	public void testMessageAddedKeepsLastSource() {
+		cache.put(1, c1);
+		cache.put(2, c2);
+		cache.messageAdded();
+
+		/* the costs from the latest calculation are still used */
+		assertSame(c2, cache.get(2));
+		assertNull(cache.get(1));
+		assertSame(c2, cache.get(2));
+
+		cache.put(1, c3);
+		assertSame(c3, cache.get(1));
+		assertNull(cache.get(2)); // not the last source anymore
+	}
+
+	public void testGetChangesLastSource() {
+		cache.put(1, c1);
+		cache.put(2, c2);
+		assertSame(c1, cache.get(1)); // up to date -> the last source
+		cache.messageAdded();
+		cache.messageAdded();
+
+		assertSame(c1, cache.get(1));
+		assertNull(cache.get(2));
+	}
+
+	public void testStaleGetDoesntChangeLastSource() {
+		cache.put(1, c1);
+		cache.put(2, c2);
+		cache.messageAdded();
+		assertNull(cache.get(1));
+		assertSame(c2, cache.get(2));
+	}
+
+	/**
+	 * The routers clear the cache on a new contact and when a message is
+	 * transferred to them
+	 */
+	public void testClear() {
+		cache.put(1, c1);
+		cache.put(2, c2);
+		cache.clear();
+		assertNull(cache.get(1));
+		assertNull(cache.get(2));
+
+		/* no last source after clearing */
+		cache.put(1, c1);
+		cache.messageAdded();
+		cache.clear();
+		cache.put(2, c2);
+		cache.messageAdded();
+		assertNull(cache.get(1));
+		assertSame(c2, cache.get(2));
+
+		cache.put(3, c3);
+		assertSame(c3, cache.get(3));
+	}
+
+	public void testGetCost() {
+		assertEquals(0.5, CostCache.getCost(c1, 0));
+		assertEquals(1.0, CostCache.getCost(c1, 1));
+		assertEquals(Double.MAX_VALUE, CostCache.getCost(c1, 2));
+		assertEquals(Double.MAX_VALUE, CostCache.getCost(c2, 100));
+	}
+}
@@ -3,6 +3,7 @@ package test;
 
 import core.Coord;
 import core.DTNHost;
+import core.HostStates;
 import core.MessageListener;
 import core.MovementListener;
 import core.NetworkInterface;
@@ -67,6 +68,37 @@ public class DTNHostTest extends TestCase {
     assertFalse("Radio reported as active.", host.isRadioActive());
   }
 
+  /**
+   * Tests that the host keeps its state up to date in the host state store.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testHostStates()
+  throws Exception {
+    final DTNHost host = new DTNHost(
+            new ArrayList<MessageListener>(),
+            new ArrayList<MovementListener>(),
+            "",
+            new ArrayList<NetworkInterface>(),
+            null,
+            makeMovementModel(),
+            makeMessageRouter());
+    final int address = host.getAddress();
+
+    // Tests
+    assertTrue("Host not in the store.",
+        address < HostStates.getNrofHosts());
+    assertTrue("No location stored.", Double.isNaN(HostStates.getX(address)));
+
+    host.setLocation(new Coord(12.5, 20));
+    host.setSpeed(3);
+    assertEquals(12.5, HostStates.getX(address));
+    assertEquals(20.0, HostStates.getY(address));
+    assertEquals(3.0, HostStates.getSpeed(address));
+    assertEquals(12.5, HostStates.getXs()[address]);
+  }
+
   private static MovementModel makeMovementModel() {
     return new MovementModel() {
       @Override
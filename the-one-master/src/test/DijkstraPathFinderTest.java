@@ -4,7 +4,9 @@
  */
 package test;
 
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 import movement.map.DijkstraPathFinder;
@@ -73,6 +75,28 @@ public class DijkstraPathFinderTest extends TestCase {
 		checkPath(getPath(n8,n4), n8, n7, n6, n5, n4);
 	}
 
+	public void testShortestPathTree() {
+		MapNode[] all = {n1, n2, n3, n4, n5, n6, n7, n8};
+
+		for (MapNode from : all) {
+			Map<MapNode, MapNode> tree =
+				new DijkstraPathFinder(null).getShortestPathTree(from);
+			assertNull(tree.get(from));
+
+			for (MapNode to : all) {
+				if (to == from) {
+					continue;
+				}
+				List<MapNode> treePath = new LinkedList<MapNode>();
+				for (MapNode n = to; n != null; n = tree.get(n)) {
+					treePath.add(0, n);
+				}
+				checkPath(treePath,
+						getPath(from, to).toArray(new MapNode[0]));
+			}
+		}
+	}
+
 	private void checkPath(List<MapNode> path, MapNode ... nodes) {
 		assertEquals(nodes.length,path.size());
 
@@ -4,6 +4,8 @@
  */
 package test;
 
+import input.BinaryTraceWriter;
+
 import java.io.File;
 import java.io.PrintWriter;
 
@@ -49,6 +51,11 @@ public class ExternalMovementTest extends TestCase {
 	private SimClock clock;
 
 	protected void setUpUsing(String[] input) throws Exception {
+		setUpUsing(input, false);
+	}
+
+	protected void setUpUsing(String[] input, boolean binary)
+			throws Exception {
 		super.setUp();
 		ExternalMovement.reset();
 		TestSettings ts = new TestSettings();
@@ -64,6 +71,14 @@ public class ExternalMovementTest extends TestCase {
 
 		pw.close();
 
+		if (binary) {
+			File binFile = File.createTempFile("eMovementTest", ".bin");
+			binFile.deleteOnExit();
+			BinaryTraceWriter.convert(outFile.getAbsolutePath(),
+					binFile.getAbsolutePath(), true, 32);
+			outFile = binFile;
+		}
+
 		ts.putSetting(ExternalMovement.EXTERNAL_MOVEMENT_NS + "." +
 				ExternalMovement.MOVEMENT_FILE_S, outFile.getAbsolutePath());
 
@@ -80,7 +95,15 @@ public class ExternalMovementTest extends TestCase {
 
 	public void testMovement() throws Exception {
 		setUpUsing(INPUT);
+		checkMovement();
+	}
 
+	public void testBinaryMovement() throws Exception {
+		setUpUsing(INPUT, true);
+		checkMovement();
+	}
+
+	private void checkMovement() {
 		// h3 should not get any fancy coordinates
 		assertEquals(c0, h3.getLocation());
 		assertFalse(h3.isMovementActive());
@@ -99,7 +122,15 @@ public class ExternalMovementTest extends TestCase {
 
 	public void testStationary() throws Exception {
 		setUpUsing(STATIONARY_INPUT);
+		checkStationary();
+	}
+
+	public void testBinaryStationary() throws Exception {
+		setUpUsing(STATIONARY_INPUT, true);
+		checkStationary();
+	}
 
+	private void checkStationary() {
 		for (int i=0; i<3; i++) {
 			// hosts h1 & h2 should stay in the same place all the time
 			assertEquals((i+1) + ". coord of h1",
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import routing.util.FeedForwardEvaluator;
+import weka.classifiers.functions.MultilayerPerceptron;
+import weka.classifiers.meta.FilteredClassifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.unsupervised.attribute.Normalize;
+
+/**
+ * Micro benchmark that compares scoring decision vectors with the Weka
+ * model and with the compiled {@link FeedForwardEvaluator}. Run with
+ * <CODE>java test.FeedForwardEvaluatorBenchmark [rows] [rounds]</CODE>.
+ */
+public class FeedForwardEvaluatorBenchmark {
+	private static final int NROF_FEATURES = 9;
+	private static final int WARMUP_ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		int nrofRows = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		Instances data = createData(nrofRows, new Random(1));
+		FilteredClassifier model = new FilteredClassifier();
+		MultilayerPerceptron mlp = new MultilayerPerceptron();
+		mlp.setNormalizeAttributes(false);
+		mlp.setHiddenLayers("5");
+		mlp.setTrainingTime(20);
+		model.setFilter(new Normalize());
+		model.setClassifier(mlp);
+		model.buildClassifier(data);
+
+		FeedForwardEvaluator eval = FeedForwardEvaluator.compile(model);
+		double[][] rows = new double[nrofRows][];
+		for (int i = 0; i < nrofRows; i++) {
+			rows[i] = data.instance(i).toDoubleArray();
+		}
+		double[] work = eval.newWorkArray();
+
+		double sink = 0;
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			sink += scoreWeka(model, data, rows);
+			sink += scoreCompiled(eval, work, rows);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			sink += scoreWeka(model, data, rows);
+		}
+		long wekaTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			sink += scoreCompiled(eval, work, rows);
+		}
+		long compiledTime = System.nanoTime() - start;
+
+		long nrofScores = (long)nrofRows * rounds;
+		System.out.println(String.format("weka:     %.1f ns/score",
+				wekaTime / (double)nrofScores));
+		System.out.println(String.format("compiled: %.1f ns/score",
+				compiledTime / (double)nrofScores));
+		System.out.println("(checksum " + sink + ")");
+	}
+
+	private static double scoreWeka(FilteredClassifier model, Instances data,
+			double[][] rows) throws Exception {
+		double sum = 0;
+		for (double[] row : rows) {
+			Instance instance = new DenseInstance(1.0, row);
+			instance.setDataset(data);
+			sum += model.distributionForInstance(instance)[1];
+		}
+		return sum;
+	}
+
+	private static double scoreCompiled(FeedForwardEvaluator eval,
+			double[] work, double[][] rows) {
+		double sum = 0;
+		for (double[] row : rows) {
+			sum += eval.probability(row, work, 1);
+		}
+		return sum;
+	}
+
+	private static Instances createData(int nrofRows, Random rng) {
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < NROF_FEATURES; i++) {
+			attributes.add(new Attribute("a" + i));
+		}
+		ArrayList<String> classes = new ArrayList<String>();
+		classes.add("0");
+		classes.add("1");
+		attributes.add(new Attribute("class", classes));
+
+		Instances data = new Instances("benchmark", attributes, nrofRows);
+		data.setClassIndex(NROF_FEATURES);
+		for (int i = 0; i < nrofRows; i++) {
+			double[] values = new double[NROF_FEATURES + 1];
+			for (int j = 0; j < NROF_FEATURES; j++) {
+				values[j] = rng.nextDouble() * 1000;
+			}
+			values[NROF_FEATURES] = values[0] > values[1] ? 1 : 0;
+			data.add(new DenseInstance(1.0, values));
+		}
+		return data;
+	}
+}
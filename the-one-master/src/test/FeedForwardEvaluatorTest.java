@@ -0,0 +1,185 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.util.FeedForwardEvaluator;
+import routing.util.ModelArtifact;
+import weka.classifiers.functions.MultilayerPerceptron;
+import weka.classifiers.meta.FilteredClassifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.filters.unsupervised.attribute.Normalize;
+
+/**
+ * Tests that the compiled network gives the same probabilities as the
+ * Weka model it was exported from.
+ */
+public class FeedForwardEvaluatorTest extends TestCase {
+	private static final double DELTA = 1e-9;
+	private static final int NROF_FEATURES = 9;
+	private static final int NROF_ROWS = 300;
+
+	private Instances data;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		Random rng = new Random(42);
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < NROF_FEATURES; i++) {
+			attributes.add(new Attribute("a" + i));
+		}
+		ArrayList<String> classes = new ArrayList<String>();
+		classes.add("0");
+		classes.add("1");
+		attributes.add(new Attribute("class", classes));
+
+		data = new Instances("test", attributes, NROF_ROWS);
+		data.setClassIndex(NROF_FEATURES);
+		for (int i = 0; i < NROF_ROWS; i++) {
+			double[] values = new double[NROF_FEATURES + 1];
+			for (int j = 0; j < NROF_FEATURES; j++) {
+				values[j] = rng.nextDouble() * (j + 1) * 1000;
+			}
+			values[3] = 7; // constant attribute
+			values[NROF_FEATURES] = values[0] + values[1] > 1500 ? 1 : 0;
+			data.add(new DenseInstance(1.0, values));
+		}
+	}
+
+	private FilteredClassifier train(MultilayerPerceptron mlp)
+			throws Exception {
+		mlp.setTrainingTime(50);
+		FilteredClassifier model = new FilteredClassifier();
+		model.setFilter(new Normalize());
+		model.setClassifier(mlp);
+		model.buildClassifier(data);
+		return model;
+	}
+
+	private void assertSameDistributions(FilteredClassifier model)
+			throws Exception {
+		assertSameDistributions(model, false);
+	}
+
+	/**
+	 * Asserts that the evaluator gives the same distributions as the model
+	 * @param model The model
+	 * @param missing If true, some values of the rows are missing
+	 */
+	private void assertSameDistributions(FilteredClassifier model,
+			boolean missing) throws Exception {
+		FeedForwardEvaluator eval = FeedForwardEvaluator.compile(model);
+		assertNotNull(eval);
+		assertEquals(2, eval.getNrofClasses());
+
+		double[] work = eval.newWorkArray();
+		double[] dist = new double[2];
+		Random rng = new Random(7);
+		for (int i = 0; i < NROF_ROWS; i++) {
+			double[] row = data.instance(i).toDoubleArray();
+			if (i % 3 == 0) { /* also values outside the training range */
+				row[rng.nextInt(NROF_FEATURES)] *= 5;
+			}
+			if (missing) {
+				for (int j = 0; j < NROF_FEATURES; j++) {
+					if (i % 10 == 0 || rng.nextInt(4) == 0) {
+						row[j] = Double.NaN; // also rows with no values
+					}
+				}
+			}
+			DenseInstance instance = new DenseInstance(1.0, row);
+			instance.setDataset(data);
+			double[] expected = model.distributionForInstance(instance);
+			eval.distribution(row, work, dist);
+
+			assertEquals(expected[0], dist[0], DELTA);
+			assertEquals(expected[1], dist[1], DELTA);
+			assertEquals(expected[1], eval.probability(row, work, 1), DELTA);
+		}
+	}
+
+	public void testSingleHiddenLayer() throws Exception {
+		MultilayerPerceptron mlp = new MultilayerPerceptron();
+		mlp.setNormalizeAttributes(false);
+		mlp.setHiddenLayers("5");
+		assertSameDistributions(train(mlp));
+	}
+
+	public void testPerceptronNormalization() throws Exception {
+		MultilayerPerceptron mlp = new MultilayerPerceptron();
+		mlp.setHiddenLayers("4,3");
+		assertSameDistributions(train(mlp));
+	}
+
+	public void testNoHiddenLayers() throws Exception {
+		MultilayerPerceptron mlp = new MultilayerPerceptron();
+		mlp.setNormalizeAttributes(false);
+		mlp.setHiddenLayers("0");
+		assertSameDistributions(train(mlp));
+	}
+
+	public void testMissingValues() throws Exception {
+		MultilayerPerceptron mlp = new MultilayerPerceptron();
+		mlp.setNormalizeAttributes(false);
+		mlp.setHiddenLayers("5");
+		assertSameDistributions(train(mlp), true);
+
+		mlp = new MultilayerPerceptron();
+		mlp.setHiddenLayers("4,3");
+		assertSameDistributions(train(mlp), true);
+	}
+
+	public void testArtifactRoundTrip() throws Exception {
+		MultilayerPerceptron mlp = new MultilayerPerceptron();
+		mlp.setHiddenLayers("5");
+		FilteredClassifier model = train(mlp);
+		FeedForwardEvaluator eval = FeedForwardEvaluator.compile(model);
+
+		File dataFile = File.createTempFile("data", ".arff");
+		File modelFile = File.createTempFile("model", ".model");
+		dataFile.deleteOnExit();
+		modelFile.deleteOnExit();
+		PrintWriter out = new PrintWriter(dataFile);
+		out.print(data.toString());
+		out.close();
+
+		byte[] key = ModelArtifact.computeKey(dataFile.getPath(), 1, "a");
+		byte[] otherKey = ModelArtifact.computeKey(dataFile.getPath(), 2, "a");
+		assertFalse(Arrays.equals(key, otherKey));
+
+		ModelArtifact.write(modelFile.getPath(), key, eval);
+		assertNull(ModelArtifact.read(modelFile.getPath(), otherKey));
+		FeedForwardEvaluator read =
+			ModelArtifact.read(modelFile.getPath(), key).getNetwork();
+
+		double[] work = eval.newWorkArray();
+		for (int i = 0; i < NROF_ROWS; i++) {
+			double[] row = data.instance(i).toDoubleArray();
+			assertEquals(eval.probability(row, work, 1),
+					read.probability(row, work, 1), 0.0);
+		}
+	}
+
+	public void testUnsupportedModel() throws Exception {
+		FilteredClassifier model = new FilteredClassifier();
+		assertNull(FeedForwardEvaluator.compile(model));
+	}
+
+	public void testSubclassNotCompiled() throws Exception {
+		MultilayerPerceptron mlp = new MultilayerPerceptron() {
+			private static final long serialVersionUID = 1L;
+		};
+		mlp.setHiddenLayers("5");
+		assertNull(FeedForwardEvaluator.compile(train(mlp)));
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.KineticContacts;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class KineticContactsTest extends TestCase {
+	private static final double DELTA = 1e-9;
+	private KineticContacts kc;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		kc = new KineticContacts();
+	}
+
+	public void testCrossingTrajectories() {
+		/* the hosts move towards each other and pass each other at t=5 */
+		double[] a = {0, 0, 0,  10, 100, 0};
+		double[] b = {0, 100, 0,  10, 0, 0};
+
+		assertFalse(kc.findFlips(a, a.length, b, b.length, 10));
+		assertEquals(2, kc.getNrofFlips());
+		assertEquals(4.5, kc.getFlip(0), DELTA); // up
+		assertEquals(5.5, kc.getFlip(1), DELTA); // down
+	}
+
+	public void testWaypoints() {
+		/* the first host stops at a waypoint within range and leaves it */
+		double[] a = {0, 0, 0,  5, 50, 0,  8, 50, 0,  10, 50, 40};
+		double[] b = {0, 60, 0};
+
+		assertFalse(kc.findFlips(a, a.length, b, b.length, 20));
+		assertEquals(2, kc.getNrofFlips());
+		assertEquals(4.0, kc.getFlip(0), DELTA);
+		/* leaves at 8: distance sqrt(10^2 + (20(t-8))^2) = 20 */
+		assertEquals(8 + Math.sqrt(300) / 20, kc.getFlip(1), DELTA);
+	}
+
+	public void testInitiallyInRange() {
+		double[] a = {0, 0, 0,  10, 0, 0};
+		double[] b = {0, 5, 0,  10, 25, 0};
+
+		assertTrue(kc.findFlips(a, a.length, b, b.length, 10));
+		assertEquals(1, kc.getNrofFlips());
+		assertEquals(2.5, kc.getFlip(0), DELTA);
+	}
+
+	public void testTouchingRange() {
+		/* the hosts' distance touches the range at t=5 */
+		double[] a = {0, 0, 0,  10, 100, 0};
+		double[] b = {0, 50, 10};
+
+		assertFalse(kc.findFlips(a, a.length, b, b.length, 10));
+		assertEquals(2, kc.getNrofFlips());
+		assertEquals(5.0, kc.getFlip(0), DELTA);
+		assertEquals(5.0, kc.getFlip(1), DELTA);
+	}
+
+	public void testEventOrder() {
+		double[] a = {0, 0, 0,  10, 100, 0};
+		double[] b = {0, 100, 0,  10, 0, 0};
+		double[] c = {0, 50, 10};
+
+		kc.clearEvents();
+		addEvents(a, b, 1, 2, 10);
+		addEvents(a, c, 1, 3, 10);
+		addEvents(b, c, 2, 3, 10);
+		kc.sortEvents();
+
+		assertEquals(6, kc.getNrofEvents());
+		double[] times = {4.5, 5, 5, 5, 5, 5.5};
+		int[] others = {2, 3, 3, 3, 3, 2};
+		boolean[] ups = {true, true, false, true, false, false};
+		for (int n = 0; n < times.length; n++) {
+			assertEquals(times[n], kc.getEventTime(n), DELTA);
+			assertEquals(others[n], kc.getEventTo(n));
+			assertEquals(ups[n], kc.isEventUp(n));
+		}
+		/* the events with equal times stay in the order they were added */
+		assertEquals(1, kc.getEventFrom(1));
+		assertEquals(2, kc.getEventFrom(3));
+	}
+
+	public void testSortIsStable() {
+		Random rng = new Random(3);
+		int nrof = 1000;
+		double[] times = new double[nrof];
+		kc.clearEvents();
+		for (int i = 0; i < nrof; i++) {
+			times[i] = rng.nextInt(50);
+			kc.addEvent(times[i], i, 0, true);
+		}
+		kc.sortEvents();
+
+		for (int n = 1; n < nrof; n++) {
+			double prev = kc.getEventTime(n - 1);
+			double cur = kc.getEventTime(n);
+			assertTrue(prev <= cur);
+			if (prev == cur) {
+				assertTrue(kc.getEventFrom(n - 1) < kc.getEventFrom(n));
+			}
+		}
+	}
+
+	private void addEvents(double[] a, double[] b, int from, int to,
+			double range) {
+		boolean up = !kc.findFlips(a, a.length, b, b.length, range);
+		for (int i = 0; i < kc.getNrofFlips(); i++) {
+			kc.addEvent(kc.getFlip(i), from, to, up);
+			up = !up;
+		}
+	}
+}
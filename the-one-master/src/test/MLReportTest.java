@@ -0,0 +1,264 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+import report.MLReport;
+import report.Report;
+import routing.IWDMLRouter;
+import routing.util.EnergyModel;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.SimClock;
+import core.SimScenario;
+
+/**
+ * Tests for the training data output of MLReport, especially the
+ * streaming mode.
+ */
+public class MLReportTest extends TestCase {
+	private static final String NS = "MLReport.";
+	/** Index of the message_live_time attribute on a data line */
+	private static final int LIVE_TIME = 8;
+
+	private File outFile;
+	private SimClock clock;
+	private DTNHost h0, h1, h2, h3, h4, h5;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		outFile = File.createTempFile("mltest", ".tmp");
+		outFile.deleteOnExit();
+		clock = SimClock.getInstance();
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		new File(outFile.getAbsolutePath() + ".gz").delete();
+		MLReport.reset();
+	}
+
+	/**
+	 * Creates the hosts and the report with the given MLReport settings
+	 * @param settings MLReport setting names and values
+	 * @return The report
+	 */
+	private MLReport createReport(String... settings) {
+		core.NetworkInterface.reset();
+		core.DTNHost.reset();
+		MLReport.reset();
+		clock.setTime(0);
+
+		TestSettings ts = new TestSettings();
+		ts.putSetting(SimScenario.GROUP_NS + "." + SimScenario.ROUTER_S,
+				"IWDMLRouter");
+		ts.putSetting("IWDMLRouter.secondsInTimeUnit", "30");
+		ts.putSetting("IWDMLRouter.threshold", "0.5");
+		ts.putSetting(NS + Report.OUTPUT_SETTING, outFile.getAbsolutePath());
+		for (int i = 0; i < settings.length; i += 2) {
+			ts.putSetting(NS + settings[i], settings[i + 1]);
+		}
+
+		MLReport r = new MLReport();
+		Vector<MessageListener> ml = new Vector<MessageListener>();
+		ml.add(r);
+		TestUtils utils = new TestUtils(null, ml, ts);
+		utils.setMessageRouterProto(new IWDMLRouter(ts));
+
+		h0 = utils.createHost(new Coord(0, 0), "h0");
+		h1 = utils.createHost(new Coord(1, 0), "h1");
+		h2 = utils.createHost(new Coord(2, 0), "h2");
+		h3 = utils.createHost(new Coord(3, 0), "h3");
+		h4 = utils.createHost(new Coord(4, 0), "h4");
+		h5 = utils.createHost(new Coord(5, 0), "h5");
+		h0.getComBus().addProperty(EnergyModel.ENERGY_VALUE_ID, 100.0);
+
+		return r;
+	}
+
+	/**
+	 * Starts a transfer at the next full second, so the live time of all
+	 * messages (created at 0) tells the transfers apart in the output
+	 */
+	private void start(String id, DTNHost from, DTNHost to) {
+		clock.advance(1);
+		from.sendMessage(id, to);
+	}
+
+	private void transfer(String id, DTNHost from, DTNHost to) {
+		start(id, from, to);
+		to.messageTransferred(id, from);
+	}
+
+	/**
+	 * Runs the scenario:
+	 * M1 (h0->h3) is delivered through h1 and h2, copies go to h4 and,
+	 * after the delivery, to h5;
+	 * M2 (h1->h4) can't be delivered since all its copies are dropped or
+	 * aborted; M3 (h2->h0) is never delivered.
+	 */
+	private void runScenario(MLReport r) {
+		h0.createNewMessage(new Message(h0, h3, "M1", 1));
+		h1.createNewMessage(new Message(h1, h4, "M2", 1));
+		h2.createNewMessage(new Message(h2, h0, "M3", 1));
+
+		transfer("M1", h0, h1);      // 1: delivery path
+		transfer("M3", h2, h4);      // 2: never delivered
+		transfer("M1", h1, h2);      // 3: delivery path
+		transfer("M1", h0, h4);      // 4: not on the path
+		transfer("M2", h1, h2);      // 5: dropped
+		start("M2", h1, h0);         // 6: aborted
+		h0.messageAborted("M2", h1, 1);
+		h2.deleteMessage("M2", true);
+		h1.deleteMessage("M2", false); // no copies left -> released
+		transfer("M1", h2, h3);      // 7: delivered -> released
+		transfer("M1", h4, h5);      // 8: after the first delivery
+		transfer("M3", h4, h1);      // 9: never delivered
+
+		r.done();
+	}
+
+	private List<String> readLines(File file, boolean gzip)
+			throws IOException {
+		InputStream in = new FileInputStream(file);
+		if (gzip) {
+			in = new GZIPInputStream(in);
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+		List<String> lines = new ArrayList<String>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lines.add(line);
+		}
+		reader.close();
+		return lines;
+	}
+
+	/**
+	 * Returns true for data lines, i.e., not for ARFF or CSV header lines
+	 */
+	private boolean isData(String line) {
+		return !line.startsWith("@") && line.contains(",") &&
+			!line.startsWith("prophet");
+	}
+
+	private List<String> dataLines(List<String> lines) {
+		List<String> data = new ArrayList<String>();
+		for (String line : lines) {
+			if (isData(line)) {
+				data.add(line);
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Returns the data lines as "transfer:label" strings where the
+	 * transfer is the number of the transfer in the scenario
+	 */
+	private List<String> labels(List<String> lines) {
+		List<String> labels = new ArrayList<String>();
+		for (String line : dataLines(lines)) {
+			String[] values = line.split(",");
+			labels.add((int)Double.parseDouble(values[LIVE_TIME]) + ":" +
+					values[values.length - 1]);
+		}
+		return labels;
+	}
+
+	private String join(List<String> values) {
+		StringBuilder sb = new StringBuilder();
+		for (String s : values) {
+			sb.append(s).append(' ');
+		}
+		return sb.toString().trim();
+	}
+
+	public void testNonStreaming() throws IOException {
+		runScenario(createReport());
+		List<String> lines = readLines(outFile, false);
+
+		assertEquals("@relation EpidemicML", lines.get(0));
+		assertEquals("@data", lines.get(14));
+		assertEquals("1:1 2:0 3:1 4:0 5:0 6:0 7:1 8:0 9:0",
+				join(labels(lines)));
+	}
+
+	public void testStreamingLabelsMatch() throws IOException {
+		runScenario(createReport());
+		List<String> expected = readLines(outFile, false);
+
+		runScenario(createReport(MLReport.STREAMING_S, "true"));
+		List<String> lines = readLines(outFile, false);
+
+		/* same header; M2 when its copies were gone, M1 when delivered,
+		   transfers of delivered messages at once, the rest when done */
+		assertEquals(expected.subList(0, 15), lines.subList(0, 15));
+		assertEquals("5:0 6:0 1:1 3:1 4:0 7:1 8:0 2:0 9:0",
+				join(labels(lines)));
+
+		List<String> expectedData = dataLines(expected);
+		List<String> data = dataLines(lines);
+		Collections.sort(expectedData);
+		Collections.sort(data);
+		assertEquals(expectedData, data);
+	}
+
+	public void testPendingWindow() throws IOException {
+		runScenario(createReport(MLReport.STREAMING_S, "true",
+				MLReport.PENDING_WINDOW_S, "2"));
+		List<String> lines = readLines(outFile, false);
+
+		/* the window overflows at the third transfer and the details of
+		   M1 are written as not delivered; its later transfers, too.
+		   Same for M2 at the sixth transfer. */
+		assertEquals("1:0 3:0 4:0 5:0 6:0 7:0 8:0 2:0 9:0",
+				join(labels(lines)));
+	}
+
+	public void testCsv() throws IOException {
+		runScenario(createReport(MLReport.STREAMING_S, "true",
+				MLReport.FORMAT_S, MLReport.FORMAT_CSV));
+		List<String> lines = readLines(outFile, false);
+
+		assertTrue(lines.get(0).startsWith("prophet_probability,"));
+		assertTrue(lines.get(0).endsWith(",is_succesfully_delivered"));
+		assertEquals(13, lines.get(0).split(",").length);
+		assertEquals(10, lines.size());
+		assertEquals(13, lines.get(1).split(",").length);
+		assertEquals("5:0 6:0 1:1 3:1 4:0 7:1 8:0 2:0 9:0",
+				join(labels(lines)));
+	}
+
+	public void testGzip() throws IOException {
+		runScenario(createReport());
+		List<String> expected = readLines(outFile, false);
+
+		File gzFile = new File(outFile.getAbsolutePath() + ".gz");
+		runScenario(createReport(MLReport.GZIP_S, "true"));
+		assertTrue(gzFile.exists());
+		assertEquals(expected, readLines(gzFile, true));
+
+		runScenario(createReport(MLReport.GZIP_S, "true",
+				MLReport.FORMAT_S, MLReport.FORMAT_CSV));
+		List<String> lines = readLines(gzFile, true);
+		assertTrue(lines.get(0).startsWith("prophet_probability,"));
+		assertEquals(dataLines(expected), dataLines(lines));
+	}
+}
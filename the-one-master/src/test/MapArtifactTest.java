@@ -0,0 +1,153 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.WKTMapReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.map.MapArtifact;
+import movement.map.MapNode;
+import movement.map.SimMap;
+import core.Coord;
+
+public class MapArtifactTest extends TestCase {
+	private static final String ROADS =
+		"LINESTRING (1.0 1.0, 2.0 1.0, 3.0 1.0, 4.0 1.0)\n" +
+		"LINESTRING (1.0 1.0, 1.0 2.0)\n" +
+		"LINESTRING (2.0 1.0, 2.0 0.0, 3.0 0.0, 3.0 1.0)\n";
+	private static final String PATHS =
+		"LINESTRING (4.0 1.0, 5.5 2.5, 1.0 2.0)\n";
+
+	private File mapFile;
+	private File artifactFile;
+	private SimMap map;
+	private byte[] key;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		WKTMapReader reader = new WKTMapReader(true);
+		reader.addPaths(new StringReader(ROADS), 1);
+		reader.addPaths(new StringReader(PATHS), 2);
+		map = reader.getMap();
+		map.mirror();
+		map.translate(-map.getMinBound().getX(), -map.getMinBound().getY());
+
+		mapFile = File.createTempFile("mapArtifactTest", ".wkt");
+		mapFile.deleteOnExit();
+		PrintWriter out = new PrintWriter(mapFile);
+		out.print(ROADS);
+		out.close();
+
+		key = MapArtifact.computeKey(Arrays.asList(mapFile.getPath()), "x");
+		artifactFile = new File(MapArtifact.getFileName(mapFile.getPath(),
+				key));
+		artifactFile.deleteOnExit();
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		mapFile.delete();
+		artifactFile.delete();
+	}
+
+	public void testReadWrite() throws Exception {
+		MapArtifact.write(artifactFile.getPath(), key, map);
+		SimMap read = MapArtifact.read(artifactFile.getPath(), key);
+
+		assertEquals(map.getOffset(), read.getOffset());
+		assertEquals(map.isMirrored(), read.isMirrored());
+		assertEquals(map.getMinBound(), read.getMinBound());
+		assertEquals(map.getMaxBound(), read.getMaxBound());
+
+		List<MapNode> nodes = map.getNodes();
+		List<MapNode> readNodes = read.getNodes();
+		assertEquals(nodes.size(), readNodes.size());
+
+		for (int i = 0; i < nodes.size(); i++) {
+			MapNode n = nodes.get(i);
+			MapNode r = readNodes.get(i);
+			assertEquals(n.getLocation(), r.getLocation());
+			assertEquals(n.toString(), r.toString()); // includes the types
+			assertSame(r, read.getNodeByCoord(n.getLocation()));
+
+			assertEquals(n.getNeighbors().size(), r.getNeighbors().size());
+			for (int j = 0; j < n.getNeighbors().size(); j++) {
+				assertEquals(n.getNeighbors().get(j).getLocation(),
+						r.getNeighbors().get(j).getLocation());
+			}
+		}
+	}
+
+	public void testKey() throws Exception {
+		assertNull(MapArtifact.read(artifactFile.getPath(), key));
+		MapArtifact.write(artifactFile.getPath(), key, map);
+
+		byte[] otherKey = MapArtifact.computeKey(
+				Arrays.asList(mapFile.getPath()), "y");
+		assertFalse(Arrays.equals(key, otherKey));
+		assertNull(MapArtifact.read(artifactFile.getPath(), otherKey));
+
+		PrintWriter out = new PrintWriter(mapFile);
+		out.print(ROADS + PATHS);
+		out.close();
+		assertFalse(Arrays.equals(key, MapArtifact.computeKey(
+				Arrays.asList(mapFile.getPath()), "x")));
+
+		assertNotNull(MapArtifact.read(artifactFile.getPath(), key));
+		assertEquals(new Coord(0, 0), MapArtifact.read(
+				artifactFile.getPath(), key).getMinBound());
+	}
+
+	public void testCorruptArtifact() throws Exception {
+		MapArtifact.write(artifactFile.getPath(), key, map);
+		long length = artifactFile.length();
+		int nodesOffset = 8 + MapArtifact.KEY_LENGTH + 8 + 8 + 1;
+
+		/* number of nodes that can't be in the file */
+		RandomAccessFile raf = new RandomAccessFile(artifactFile, "rw");
+		raf.seek(nodesOffset);
+		raf.writeInt(Integer.MAX_VALUE);
+		raf.close();
+		checkCorrupt();
+
+		/* truncated file */
+		MapArtifact.write(artifactFile.getPath(), key, map);
+		raf = new RandomAccessFile(artifactFile, "rw");
+		raf.setLength(length - 10);
+		raf.close();
+		checkCorrupt();
+
+		/* neighbor that isn't in the map */
+		MapArtifact.write(artifactFile.getPath(), key, map);
+		raf = new RandomAccessFile(artifactFile, "rw");
+		raf.seek(length - 4);
+		raf.writeInt(map.getNodes().size());
+		raf.close();
+		checkCorrupt();
+	}
+
+	/**
+	 * Checks that reading the artifact fails with an exception that
+	 * MapBasedMovement falls back from
+	 */
+	private void checkCorrupt() {
+		try {
+			MapArtifact.read(artifactFile.getPath(), key);
+			fail("Corrupt artifact was read");
+		} catch (IOException e) {
+			// OK
+		} catch (RuntimeException e) {
+			// OK
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import movement.map.DijkstraPathFinder;
+import movement.map.MapGraph;
+import movement.map.MapGraphPathFinder;
+import movement.map.MapNode;
+import movement.map.RouteCache;
+import movement.map.SimMap;
+import core.Coord;
+import core.World;
+
+public class MapGraphPathFinderTest extends TestCase {
+	private static final int GRID_SIZE = 8;
+	private static final int[] OK_TYPES = {1, 3};
+
+	private SimMap map;
+	private MapGraph graph;
+	private List<MapNode> nodes;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		createGrid();
+		graph = map.getGraph();
+	}
+
+	/**
+	 * Creates a grid map with some missing and diagonal edges, so that there
+	 * are many equally short paths between the nodes
+	 */
+	private void createGrid() {
+		Random rng = new Random(42);
+		MapNode[][] grid = new MapNode[GRID_SIZE][GRID_SIZE];
+		Map<Coord, MapNode> cmap = new HashMap<Coord, MapNode>();
+		nodes = new ArrayList<MapNode>();
+
+		for (int x = 0; x < GRID_SIZE; x++) {
+			for (int y = 0; y < GRID_SIZE; y++) {
+				Coord c = new Coord(x * 10, y * 10);
+				MapNode n = new MapNode(c);
+				n.addType(rng.nextInt(4) == 0 ? 2 : 1);
+				grid[x][y] = n;
+				cmap.put(c, n);
+				nodes.add(n);
+			}
+		}
+
+		for (int x = 0; x < GRID_SIZE; x++) {
+			for (int y = 0; y < GRID_SIZE; y++) {
+				if (x > 0 && rng.nextInt(5) > 0) {
+					connect(grid[x][y], grid[x-1][y]);
+				}
+				if (y > 0 && rng.nextInt(5) > 0) {
+					connect(grid[x][y], grid[x][y-1]);
+				}
+				if (x > 0 && y > 0 && rng.nextInt(4) == 0) {
+					connect(grid[x][y], grid[x-1][y-1]);
+				}
+			}
+		}
+
+		map = new SimMap(cmap);
+	}
+
+	private void connect(MapNode n1, MapNode n2) {
+		n1.addNeighbor(n2);
+		n2.addNeighbor(n1);
+	}
+
+	public void testGraph() {
+		assertEquals(nodes.size(), graph.getNrofNodes());
+
+		for (MapNode n : nodes) {
+			int i = graph.getIndex(n);
+			assertSame(n, graph.getNode(i));
+
+			int first = graph.getFirstEdge(i);
+			assertEquals(n.getNeighbors().size(),
+					graph.getFirstEdge(i + 1) - first);
+			for (int j = 0; j < n.getNeighbors().size(); j++) {
+				MapNode neighbor = n.getNeighbors().get(j);
+				assertSame(neighbor,
+						graph.getNode(graph.getTarget(first + j)));
+				assertEquals(n.getLocation().distance(neighbor.getLocation()),
+						graph.getLength(first + j));
+			}
+		}
+
+		for (int i = 1; i < nodes.size(); i++) {
+			assertTrue(graph.getNode(i-1).compareTo(graph.getNode(i)) < 0);
+		}
+		assertEquals(-1, graph.getIndex(new MapNode(new Coord(0,0))));
+	}
+
+	public void testSamePathsAsDijkstra() {
+		checkSamePaths(null);
+	}
+
+	public void testSamePathsAsDijkstraWithOkTypes() {
+		checkSamePaths(OK_TYPES);
+	}
+
+	public void testShortestPathTree() {
+		MapGraphPathFinder finder = new MapGraphPathFinder(graph, null, false);
+		for (MapNode from : nodes) {
+			int fromIndex = graph.getIndex(from);
+			int[] tree = finder.getShortestPathTree(fromIndex);
+			assertEquals(-1, tree[fromIndex]);
+
+			for (MapNode to : nodes) {
+				int[] path = finder.getShortestPath(fromIndex,
+						graph.getIndex(to));
+				if (to == from || path.length == 0) {
+					continue;
+				}
+				int n = graph.getIndex(to);
+				for (int i = path.length - 1; i > 0; i--) {
+					assertEquals(path[i], n);
+					n = tree[n];
+				}
+				assertEquals(fromIndex, n);
+			}
+		}
+	}
+
+	public void testAStarPathLengths() {
+		MapGraphPathFinder dijkstra = new MapGraphPathFinder(graph, null,
+				false);
+		MapGraphPathFinder aStar = new MapGraphPathFinder(graph, null, true);
+
+		for (int from = 0; from < graph.getNrofNodes(); from++) {
+			for (int to = 0; to < graph.getNrofNodes(); to++) {
+				int[] path = dijkstra.getShortestPath(from, to);
+				int[] aStarPath = aStar.getShortestPath(from, to);
+				assertEquals(path.length == 0, aStarPath.length == 0);
+				if (path.length > 0) {
+					assertEquals(getLength(path), getLength(aStarPath), 1e-9);
+					assertEquals(from, aStarPath[0]);
+					assertEquals(to, aStarPath[aStarPath.length - 1]);
+				}
+			}
+		}
+	}
+
+	public void testRouteCache() {
+		RouteCache cache = createRouteCache("true", "2");
+		for (MapNode n : nodes) {
+			cache.addAnchor(n); // more anchors than kept trees
+		}
+		checkCachedPaths(cache);
+		checkCachedPaths(cache); // from the cache
+
+		/* the graph is rebuilt (and sorted again) after these */
+		map.mirror();
+		checkCachedPaths(cache);
+		map.translate(-100, 50);
+		checkCachedPaths(cache);
+	}
+
+	public void testRouteCacheWithoutTrees() {
+		RouteCache cache = createRouteCache("false", "2");
+		checkCachedPaths(cache);
+		map.mirror();
+		checkCachedPaths(cache);
+	}
+
+	private RouteCache createRouteCache(String trees, String nrofTrees) {
+		TestSettings ts = new TestSettings();
+		String ns = World.OPTIMIZATION_SETTINGS_NS + ".";
+		ts.putSetting(ns + RouteCache.ROUTE_TREES_S, trees);
+		ts.putSetting(ns + RouteCache.ROUTE_TREE_CACHE_SIZE_S, nrofTrees);
+		RouteCache.reset();
+		return RouteCache.getInstance(map, null);
+	}
+
+	private void checkCachedPaths(RouteCache cache) {
+		for (MapNode from : nodes) {
+			for (MapNode to : nodes) {
+				assertEquals(new DijkstraPathFinder(null).getShortestPath(
+						from, to), cache.getShortestPath(from, to));
+			}
+		}
+	}
+
+	private void checkSamePaths(int[] okTypes) {
+		MapGraphPathFinder finder = new MapGraphPathFinder(graph, okTypes,
+				false);
+
+		for (MapNode from : nodes) {
+			if (okTypes != null && !from.isType(okTypes)) {
+				continue;
+			}
+			for (MapNode to : nodes) {
+				List<MapNode> expected = new DijkstraPathFinder(okTypes).
+					getShortestPath(from, to);
+				int[] path = finder.getShortestPath(graph.getIndex(from),
+						graph.getIndex(to));
+
+				assertEquals(expected.size(), path.length);
+				for (int i = 0; i < path.length; i++) {
+					assertSame((i+1)+"th node was wrong",
+							expected.get(i), graph.getNode(path[i]));
+				}
+			}
+		}
+	}
+
+	private double getLength(int[] path) {
+		double length = 0;
+		for (int i = 1; i < path.length; i++) {
+			length += graph.getDistance(path[i-1], path[i]);
+		}
+		return length;
+	}
+}
@@ -5,10 +5,13 @@
 package test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import junit.framework.TestCase;
@@ -154,4 +157,182 @@ public class MaxPropDijkstraTest extends TestCase {
 
 	}
 
+	public void testCostArray() {
+		mapping.get(0).updateMeetingProbFor(1);
+		mapping.get(1).updateMeetingProbFor(2);
+		mapping.get(1).updateMeetingProbFor(3); // 2 and 3: 0.5
+
+		BitSet to = new BitSet();
+		to.set(0);
+		to.set(3);
+		to.set(4); // not reachable
+		double[] costs = mpd.getCosts(0, to);
+
+		assertEquals(5, costs.length);
+		assertEquals(0.0, costs[0]);
+		assertEquals(0.5, costs[3]);
+		assertEquals(Double.MAX_VALUE, costs[4]);
+		/* reachable but not requested */
+		assertEquals(Double.MAX_VALUE, costs[1]);
+		assertEquals(Double.MAX_VALUE, costs[2]);
+
+		assertEquals(0, mpd.getCosts(0, new BitSet()).length);
+
+		/* the same search again and from another source */
+		assertEquals(0.5, mpd.getCosts(0, to)[3]);
+		costs = mpd.getCosts(1, to);
+		assertEquals(0.5, costs[3]);
+		assertEquals(Double.MAX_VALUE, costs[0]);
+	}
+
+	public void testHighAddresses() {
+		/* addresses beyond the initial size of the search state */
+		MeetingProbabilitySet mps = new MeetingProbabilitySet(
+				MeetingProbabilitySet.INFINITE_SET_SIZE, 1.0);
+		mps.updateMeetingProbFor(100);
+		mapping.put(40, mps);
+		mapping.get(0).updateMeetingProbFor(40);
+
+		BitSet to = new BitSet();
+		to.set(100);
+		double[] costs = mpd.getCosts(0, to);
+		assertEquals(101, costs.length);
+		assertEquals(0.0, costs[100]);
+
+		costs = mpd.getCosts(200, to);
+		assertEquals(Double.MAX_VALUE, costs[100]);
+	}
+
+	/**
+	 * Tests a graph with equal distances: the nodes with equal distances
+	 * are taken in the order of their addresses, and the distances of
+	 * queued nodes decrease to the same values the other queued nodes have
+	 */
+	public void testTies() {
+		Map<Integer, MeetingProbabilitySet> probs =
+			new HashMap<Integer, MeetingProbabilitySet>();
+		probs.put(0, newSet(1, 2, 3, 4)); // 1-4: 0.75
+		probs.put(1, newSet(5, 6));       // 5, 6: 1.25
+		probs.put(2, newSet(7));          // 7: 0.75, queued after 3 and 4
+		probs.put(3, newSet(5, 6, 7, 8)); // 8: 1.5
+		probs.put(4, newSet(8));          // 8 decreases to 0.75
+		probs.put(7, newSet(6));          // 6 decreases to 0.75, before 8
+
+		MaxPropDijkstra d = new MaxPropDijkstra(probs);
+		BitSet to = new BitSet();
+		to.set(1, 9);
+		double[] costs = d.getCosts(0, to);
+		double[] expected = {Double.MAX_VALUE,
+				0.75, 0.75, 0.75, 0.75, 1.25, 0.75, 0.75, 0.75};
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals("Cost to " + i, expected[i], costs[i], 0.0);
+		}
+		assertCosts(probs, d, 0, to);
+		assertCosts(probs, d, 3, to);
+	}
+
+	/**
+	 * Compares the costs from random graphs with many equal distances
+	 * to a plain Dijkstra's algorithm
+	 */
+	public void testRandomGraphs() {
+		final int nrofNodes = 60;
+		Random rng = new Random(1);
+		for (int graph = 0; graph < 20; graph++) {
+			Map<Integer, MeetingProbabilitySet> probs =
+				new HashMap<Integer, MeetingProbabilitySet>();
+			for (int i = 0; i < nrofNodes; i++) {
+				if (rng.nextInt(10) == 0) {
+					continue; // neighbors not known
+				}
+				MeetingProbabilitySet mps = newSet(probs, i);
+				int nrofMeetings = 1 + rng.nextInt(6);
+				for (int j = 0; j < nrofMeetings; j++) {
+					mps.updateMeetingProbFor(rng.nextInt(nrofNodes));
+				}
+			}
+
+			MaxPropDijkstra d = new MaxPropDijkstra(probs);
+			for (int from = 0; from < nrofNodes; from += 7) {
+				BitSet to = new BitSet();
+				for (int i = 0; i < nrofNodes; i++) {
+					if (rng.nextInt(3) == 0) {
+						to.set(i);
+					}
+				}
+				assertCosts(probs, d, from, to);
+			}
+		}
+	}
+
+	/**
+	 * Returns a meeting probability set with equal probabilities for the
+	 * given nodes
+	 */
+	private MeetingProbabilitySet newSet(Integer... nodes) {
+		return new MeetingProbabilitySet(1.0, Arrays.asList(nodes));
+	}
+
+	private MeetingProbabilitySet newSet(
+			Map<Integer, MeetingProbabilitySet> probs, int address) {
+		MeetingProbabilitySet mps = new MeetingProbabilitySet(
+				MeetingProbabilitySet.INFINITE_SET_SIZE, 1.0);
+		probs.put(address, mps);
+		return mps;
+	}
+
+	/**
+	 * Asserts that the costs are the same as the ones from a plain
+	 * Dijkstra's algorithm that takes nodes with equal distances in the
+	 * order of their addresses
+	 */
+	private void assertCosts(Map<Integer, MeetingProbabilitySet> probs,
+			MaxPropDijkstra d, int from, BitSet to) {
+		Map<Integer, Double> dist = new HashMap<Integer, Double>();
+		Set<Integer> visited = new HashSet<Integer>();
+		dist.put(from, 0.0);
+		while (true) {
+			int node = -1;
+			for (Map.Entry<Integer, Double> e : dist.entrySet()) {
+				int n = e.getKey();
+				if (visited.contains(n)) {
+					continue;
+				}
+				if (node == -1 || e.getValue() < dist.get(node) ||
+						(e.getValue().equals(dist.get(node)) && n < node)) {
+					node = n;
+				}
+			}
+			if (node == -1) {
+				break;
+			}
+			visited.add(node);
+			MeetingProbabilitySet mps = probs.get(node);
+			if (mps == null) {
+				continue;
+			}
+			int[] nodes = mps.getNodeArray();
+			double[] nodeProbs = mps.getProbArray();
+			for (int i = 0; i < nodes.length; i++) {
+				double nDist = dist.get(node) + (1 - nodeProbs[i]);
+				if (!visited.contains(nodes[i]) &&
+						(!dist.containsKey(nodes[i]) ||
+								dist.get(nodes[i]) > nDist)) {
+					dist.put(nodes[i], nDist);
+				}
+			}
+		}
+
+		double[] costs = d.getCosts(from, to);
+		assertEquals(to.length(), costs.length);
+		for (int i = 0; i < costs.length; i++) {
+			double expected = Double.MAX_VALUE;
+			if (to.get(i) && dist.containsKey(i)) {
+				expected = dist.get(i);
+			}
+			assertEquals("Cost from " + from + " to " + i, expected,
+					costs[i], 0.0);
+		}
+	}
+
 }
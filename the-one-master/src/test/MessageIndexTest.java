@@ -0,0 +1,220 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import routing.util.MessageIndex;
+import core.Message;
+import core.Settings;
+
+/**
+ * Tests for MessageIndex and the receive time index of ActiveRouter
+ */
+public class MessageIndexTest extends AbstractRouterTest {
+	private static final Comparator<Message> RECEIVE_TIME_ORDER =
+		new Comparator<Message>() {
+			public int compare(Message m1, Message m2) {
+				return Double.compare(m1.getReceiveTime(),
+						m2.getReceiveTime());
+			}
+		};
+
+	private MessageIndex index;
+
+	@Override
+	public void setUp() throws Exception {
+		ts.setNameSpace(null);
+		ts.putSetting(MessageRouter.B_SIZE_S, "" + 1000 * BUFFER_SIZE);
+		setRouterProto(new IndexTestRouter(ts));
+		super.setUp();
+		index = new MessageIndex(RECEIVE_TIME_ORDER);
+	}
+
+	private Message msg(String id, double receiveTime) {
+		Message m = new Message(h1, h2, id, 1);
+		m.setReceiveTime(receiveTime);
+		return m;
+	}
+
+	private String order(Iterable<Message> messages) {
+		StringBuilder sb = new StringBuilder();
+		for (Message m : messages) {
+			sb.append(m.getId()).append(' ');
+		}
+		return sb.toString();
+	}
+
+	public void testFifoOrder() {
+		index.add(msg("c", 3));
+		index.add(msg("a", 5));
+		index.add(msg("b", 1));
+		index.add(msg("d", 4));
+
+		assertEquals(4, index.size());
+		assertEquals("b c d a ", order(index));
+		assertFalse(index.hasTies());
+	}
+
+	public void testTies() {
+		Message m1 = msg("m1", 1);
+		Message m2 = msg("m2", 2);
+		Message m3 = msg("m3", 2);
+		Message m4 = msg("m4", 3);
+
+		index.add(m2);
+		index.add(m4);
+		assertFalse(index.hasTies());
+		index.add(m3);
+		assertTrue(index.hasTies());
+		assertTrue(index.isTie(m2, m3));
+		assertFalse(index.isTie(m3, m4));
+		index.add(m1);
+		assertEquals("m1 m2 m3 m4 ", order(index));
+
+		/* equally old messages are ordered by their IDs */
+		index.remove(m2);
+		assertFalse(index.hasTies());
+		index.add(m2);
+		assertTrue(index.hasTies());
+		assertEquals("m1 m2 m3 m4 ", order(index));
+		index.remove(m3);
+		assertFalse(index.hasTies());
+
+		/* removing a message between two tied messages */
+		Message m5 = msg("m5", 3);
+		Message m6 = msg("m6", 3);
+		index.add(m5);
+		index.add(m6);
+		assertTrue(index.hasTies());
+		index.remove(m5);
+		assertTrue(index.hasTies()); // m4 and m6 are still equally old
+		index.remove(m4);
+		assertFalse(index.hasTies());
+	}
+
+	public void testRemoveOldest() {
+		Message m1 = msg("m1", 1);
+		index.add(m1);
+		index.add(msg("m2", 2));
+		index.add(msg("m3", 3));
+
+		index.remove(m1);
+		assertEquals("m2 m3 ", order(index));
+		index.remove(m1); // not in the index anymore
+		assertEquals(2, index.size());
+		index.remove(index.iterator().next());
+		assertEquals("m3 ", order(index));
+	}
+
+	public void testRandomTies() {
+		Random rng = new Random(42);
+		List<Message> in = new ArrayList<Message>();
+		for (int i = 0; i < 2000; i++) {
+			if (in.isEmpty() || rng.nextInt(3) > 0) {
+				Message m = msg("M" + i, rng.nextInt(20));
+				index.add(m);
+				in.add(m);
+			}
+			else {
+				index.remove(in.remove(rng.nextInt(in.size())));
+			}
+
+			assertEquals(in.size(), index.size());
+			boolean ties = false;
+			for (int j = 0; j < in.size() && !ties; j++) {
+				for (int k = j + 1; k < in.size() && !ties; k++) {
+					ties = in.get(j).getReceiveTime() ==
+						in.get(k).getReceiveTime();
+				}
+			}
+			assertEquals(ties, index.hasTies());
+		}
+	}
+
+	public void testRouterIndexFollowsBuffer() {
+		IndexTestRouter r = (IndexTestRouter)h1.getRouter();
+		Message m1 = new Message(h1, h3, msgId1, 1);
+		h1.createNewMessage(m1);
+		clock.advance(10);
+		h1.createNewMessage(new Message(h1, h3, msgId2, 1));
+
+		assertSame(m1, r.getOldest());
+		assertEquals(msgId1 + " " + msgId2 + " ", order(r.getIndex()));
+
+		/* index created lazily; messages added after that are indexed */
+		clock.advance(10);
+		h1.createNewMessage(new Message(h1, h3, msgId3, 1));
+		assertEquals(3, r.getIndex().size());
+
+		/* removing the oldest message */
+		h1.deleteMessage(msgId1, true);
+		assertEquals(2, r.getIndex().size());
+		assertEquals(msgId2, r.getOldest().getId());
+		assertEquals(msgId2 + " " + msgId3 + " ", order(r.getIndex()));
+
+		h1.deleteMessage(msgId2, false);
+		h1.deleteMessage(msgId3, false);
+		assertEquals(0, r.getIndex().size());
+		assertNull(r.getOldest());
+	}
+
+	public void testRouterTieFallback() {
+		IndexTestRouter r = (IndexTestRouter)h1.getRouter();
+		clock.advance(5);
+		for (int i = 0; i < 20; i++) {
+			h1.createNewMessage(new Message(h1, h3, "tie" + i, 1));
+		}
+		clock.advance(5);
+		h1.createNewMessage(new Message(h1, h3, "newer", 1));
+		assertTrue(r.getIndex().hasTies());
+
+		/* equally old messages: the first one in the buffer's order */
+		for (int i = 0; i < 20; i++) {
+			Message expected = null;
+			for (Message m : h1.getMessageCollection()) {
+				if (expected == null ||
+						m.getReceiveTime() < expected.getReceiveTime()) {
+					expected = m;
+				}
+			}
+			assertSame(expected, r.getOldest());
+			h1.deleteMessage(expected.getId(), true);
+		}
+		assertFalse(r.getIndex().hasTies());
+		assertEquals("newer", r.getOldest().getId());
+	}
+
+	/**
+	 * Router that exposes the oldest message and the receive time index
+	 */
+	private static class IndexTestRouter extends EpidemicRouter {
+		public IndexTestRouter(Settings s) {
+			super(s);
+		}
+
+		protected IndexTestRouter(IndexTestRouter r) {
+			super(r);
+		}
+
+		public Message getOldest() {
+			return getNextMessageToRemove(false);
+		}
+
+		public MessageIndex getIndex() {
+			return getReceiveTimeIndex();
+		}
+
+		@Override
+		public EpidemicRouter replicate() {
+			return new IndexTestRouter(this);
+		}
+	}
+}
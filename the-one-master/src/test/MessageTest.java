@@ -4,6 +4,9 @@
  */
 package test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import junit.framework.TestCase;
 
 import org.junit.Before;
@@ -19,12 +22,22 @@ public class MessageTest extends TestCase {
 	private DTNHost from;
 	private DTNHost to;
 	private SimClock sc;
+	private DTNHost h1, h2, h3;
 
 	@Before
 	public void setUp() throws Exception {
 		sc = SimClock.getInstance();
 		sc.setTime(10);
 
+		core.NetworkInterface.reset();
+		core.DTNHost.reset();
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		from = utils.createHost();
+		to = utils.createHost();
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+		h3 = utils.createHost();
+
 		msg = new Message(from, to, "M", 100);
 		msg.setTtl(10);
 
@@ -60,5 +73,74 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testPathsDivergeAfterReplicate() {
+		msg.addNodeOnPath(h1);
+		Message replicate = msg.replicate();
+		replicate.addNodeOnPath(h2);
+		msg.addNodeOnPath(h3);
+
+		assertEquals(Arrays.asList(from, h1, h3), msg.getHops());
+		assertEquals(Arrays.asList(from, h1, h2), replicate.getHops());
+		assertEquals(2, msg.getHopCount());
+		assertEquals(2, replicate.getHopCount());
+
+		/* a replicate of a replicate extends the path of its original */
+		Message second = replicate.replicate();
+		second.addNodeOnPath(h3);
+		assertEquals(Arrays.asList(from, h1, h2, h3), second.getHops());
+		assertEquals(Arrays.asList(from, h1, h2), replicate.getHops());
+	}
+
+	@Test
+	public void testHasPassed() {
+		assertTrue(msg.hasPassed(from));
+		assertFalse(msg.hasPassed(h1));
+
+		msg.addNodeOnPath(h1);
+		Message replicate = msg.replicate();
+		replicate.addNodeOnPath(h2);
+
+		assertTrue(replicate.hasPassed(from));
+		assertTrue(replicate.hasPassed(h1));
+		assertTrue(replicate.hasPassed(h2));
+		assertFalse(msg.hasPassed(h2));
+		assertFalse(replicate.hasPassed(to));
+	}
+
+	@Test
+	public void testHopsCantBeModified() {
+		msg.addNodeOnPath(h1);
+		List<DTNHost> hops = msg.getHops();
+		try {
+			hops.add(h2);
+			fail("Hops list could be modified");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+
+		/* extending the path gives a new list and leaves the old one */
+		msg.addNodeOnPath(h2);
+		assertEquals(Arrays.asList(from, h1), hops);
+		assertEquals(Arrays.asList(from, h1, h2), msg.getHops());
+	}
+
+	@Test
+	public void testUpdatePropertyOnReplicate() {
+		msg.addProperty("foo", "value1");
+		Message replicate = msg.replicate();
+		assertEquals("value1", replicate.getProperty("foo"));
+
+		replicate.updateProperty("foo", "value2");
+		replicate.addProperty("bar", "value3");
+		assertEquals("value1", msg.getProperty("foo"));
+		assertNull(msg.getProperty("bar"));
+		assertEquals("value2", replicate.getProperty("foo"));
+
+		/* and the other way round */
+		msg.updateProperty("foo", "value4");
+		assertEquals("value4", msg.getProperty("foo"));
+		assertEquals("value2", replicate.getProperty("foo"));
+	}
 
 }
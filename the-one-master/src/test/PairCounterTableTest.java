@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import util.PairCounterTable;
+
+/**
+ * Tests for the PairCounterTable.
+ */
+public class PairCounterTableTest extends TestCase {
+
+	public void testIncrementAndGet() {
+		PairCounterTable t = new PairCounterTable(2);
+		assertFalse(t.contains(1, 2));
+		assertEquals(0, t.get(1, 2, 0));
+
+		assertEquals(1, t.increment(1, 2, 0));
+		assertEquals(2, t.increment(1, 2, 0));
+		assertEquals(1, t.increment(1, 2, 1));
+
+		assertTrue(t.contains(1, 2));
+		assertFalse(t.contains(2, 1)); /* pairs are ordered */
+		assertEquals(2, t.get(1, 2, 0));
+		assertEquals(1, t.get(1, 2, 1));
+		assertEquals(0, t.get(2, 1, 0));
+		assertEquals(1, t.size());
+	}
+
+	public void testGrowing() {
+		PairCounterTable t = new PairCounterTable(3);
+		int n = 100;
+		for (int a = 0; a < n; a++) {
+			for (int b = 0; b < n; b++) {
+				for (int i = 0; i <= (a + b) % 3; i++) {
+					t.increment(a, b, (a * b) % 3);
+				}
+			}
+		}
+
+		assertEquals(n * n, t.size());
+		for (int a = 0; a < n; a++) {
+			for (int b = 0; b < n; b++) {
+				for (int c = 0; c < 3; c++) {
+					int expected = c == (a * b) % 3 ? (a + b) % 3 + 1 : 0;
+					assertEquals(expected, t.get(a, b, c));
+				}
+			}
+		}
+
+		t.clear();
+		assertEquals(0, t.size());
+		assertFalse(t.contains(0, 0));
+	}
+}
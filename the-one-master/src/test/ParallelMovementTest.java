@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MapBasedMovement;
+import movement.MapRouteMovement;
+import movement.MovementModel;
+import movement.ShortestPathMapBasedMovement;
+import movement.map.RouteCache;
+import core.DTNHost;
+import core.SimClock;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests that the map based movement models give the same paths when the
+ * hosts are moved in parallel (see {@link World#MOVEMENT_THREADS_S}) as
+ * when they are moved in a single thread.
+ */
+public class ParallelMovementTest extends TestCase {
+	private static final int GRID_SIZE = 20;
+	private static final int NROF_SP_HOSTS = 100;
+	private static final int NROF_ROUTE_HOSTS = 6;
+	private static final int NROF_ROUNDS = 5;
+	private static final int NROF_UPDATES = 20;
+	/** max time to move the hosts (ms) */
+	private static final long TIMEOUT = 30000;
+
+	private File mapFile;
+	private File routeFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		mapFile = File.createTempFile("pmtest", ".wkt");
+		mapFile.deleteOnExit();
+		routeFile = File.createTempFile("pmtest_route", ".wkt");
+		routeFile.deleteOnExit();
+
+		/* a grid with every third vertical road missing (except at the
+		   edges), so that there are both long and equally short routes */
+		PrintWriter out = new PrintWriter(mapFile);
+		for (int y = 0; y < GRID_SIZE; y++) {
+			out.println(line(0, y, GRID_SIZE - 1, y));
+		}
+		for (int x = 0; x < GRID_SIZE; x++) {
+			if (x % 3 != 1 || x == GRID_SIZE - 1) {
+				out.println(line(x, 0, x, GRID_SIZE - 1));
+			}
+		}
+		out.close();
+
+		out = new PrintWriter(routeFile);
+		out.println("LINESTRING (0 0, 110 110, 0 110, 110 0)");
+		out.println("LINESTRING (30 30, 90 60, 60 90)");
+		out.close();
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		mapFile.delete();
+		routeFile.delete();
+		RouteCache.reset();
+		MovementModel.reset();
+	}
+
+	private String line(int x1, int y1, int x2, int y2) {
+		StringBuilder sb = new StringBuilder("LINESTRING (");
+		int dx = Integer.signum(x2 - x1);
+		int dy = Integer.signum(y2 - y1);
+		for (int x = x1, y = y1; ; x += dx, y += dy) {
+			sb.append(x * 10).append(' ').append(y * 10);
+			if (x == x2 && y == y2) {
+				break;
+			}
+			sb.append(", ");
+		}
+		return sb.append(')').toString();
+	}
+
+	/**
+	 * Moves the hosts with the given number of movement threads
+	 * @param nrofThreads Number of movement threads
+	 * @return The locations of all hosts after every round
+	 */
+	private List<String> move(int nrofThreads) {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.RNG_SEED, "7");
+		String mbmNs = MapBasedMovement.MAP_BASE_MOVEMENT_NS + ".";
+		ts.putSetting(mbmNs + MapBasedMovement.NROF_FILES_S, "1");
+		ts.putSetting(mbmNs + MapBasedMovement.FILE_S + "1",
+				mapFile.getAbsolutePath());
+		ts.putSetting(MapRouteMovement.ROUTE_FILE_S,
+				routeFile.getAbsolutePath());
+		ts.putSetting(MapRouteMovement.ROUTE_TYPE_S, "1");
+		/* no cached routes: every path is searched while moving */
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				RouteCache.ROUTE_CACHE_SIZE_S, "0");
+		ts.putSetting(MovementModel.SPEED, "50,100");
+		ts.putSetting(MovementModel.WAIT_TIME, "0,0");
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.MOVEMENT_THREADS_S, "" + nrofThreads);
+
+		MovementModel.reset();
+		RouteCache.reset();
+		core.NetworkInterface.reset();
+		core.DTNHost.reset();
+		SimClock.reset();
+
+		TestUtils utils = new TestUtils(null, null, ts);
+		MovementModel sp = new ShortestPathMapBasedMovement(ts);
+		MovementModel route = new MapRouteMovement(ts);
+		for (int i = 0; i < NROF_SP_HOSTS; i++) {
+			utils.createHost(sp, null);
+		}
+		for (int i = 0; i < NROF_ROUTE_HOSTS; i++) {
+			utils.createHost(route, null);
+		}
+
+		List<DTNHost> hosts = utils.getAllHosts();
+		for (DTNHost h : hosts) {
+			assertTrue(h.canMoveInParallel());
+		}
+
+		World world = new World(hosts, 1000, 1000, 1.0,
+				new ArrayList<UpdateListener>(), false,
+				new ArrayList<EventQueue>());
+		List<String> locations = new ArrayList<String>();
+		for (int round = 0; round < NROF_ROUNDS; round++) {
+			for (int i = 0; i < NROF_UPDATES; i++) {
+				world.update();
+			}
+			StringBuilder sb = new StringBuilder();
+			for (DTNHost h : hosts) {
+				sb.append(h.getLocation()).append(' ');
+			}
+			locations.add(sb.toString());
+		}
+		return locations;
+	}
+
+	/**
+	 * Moves the hosts in another thread and fails if that doesn't finish
+	 * in time (racing path searches can end up in an endless loop)
+	 * @param nrofThreads Number of movement threads
+	 * @return The locations of all hosts after every round
+	 */
+	private List<String> moveWithTimeout(final int nrofThreads)
+			throws InterruptedException {
+		final List<List<String>> result = new ArrayList<List<String>>();
+		final Throwable[] error = new Throwable[1];
+		Thread t = new Thread() {
+			public void run() {
+				try {
+					result.add(move(nrofThreads));
+				} catch (Throwable e) {
+					error[0] = e;
+				}
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+		t.join(TIMEOUT);
+		if (error[0] != null) {
+			throw new AssertionError(error[0]);
+		}
+		assertFalse("Moving with " + nrofThreads + " threads didn't finish",
+				t.isAlive());
+		return result.get(0);
+	}
+
+	public void testSamePathsInParallel() throws InterruptedException {
+		List<String> expected = moveWithTimeout(1);
+		assertFalse(expected.get(0).equals(expected.get(1)));
+		for (int nrofThreads : new int[] {2, 4, 8}) {
+			List<String> locations = moveWithTimeout(nrofThreads);
+			for (int i = 0; i < NROF_ROUNDS; i++) {
+				assertTrue("Different locations after round " + i + " with " +
+						nrofThreads + " threads",
+						expected.get(i).equals(locations.get(i)));
+			}
+		}
+	}
+}
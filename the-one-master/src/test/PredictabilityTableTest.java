@@ -0,0 +1,137 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.util.PredictabilityTable;
+import core.DTNHost;
+import core.SimClock;
+
+public class PredictabilityTableTest extends TestCase {
+	private static final double GAMMA = 0.98;
+	private static final double BETA = 0.25;
+	private static final int SECONDS_IN_UNIT = 30;
+	private static final int NROF_HOSTS = 50;
+
+	private List<DTNHost> hosts;
+	private SimClock clock;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		core.NetworkInterface.reset();
+		core.DTNHost.reset();
+		clock = SimClock.getInstance();
+		clock.setTime(0);
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		hosts = new ArrayList<DTNHost>();
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			hosts.add(utils.createHost());
+		}
+	}
+
+	private PredictabilityTable newTable() {
+		return new PredictabilityTable(GAMMA, SECONDS_IN_UNIT);
+	}
+
+	public void testSetAndGet() {
+		PredictabilityTable t = newTable();
+		assertEquals(0.0, t.get(hosts.get(3)));
+		t.set(hosts.get(3), 0.5);
+		t.set(hosts.get(1), 0.25);
+		t.set(hosts.get(3), 0.75);
+
+		assertEquals(2, t.size());
+		assertEquals(0.75, t.get(hosts.get(3)));
+		assertEquals(0.25, t.get(hosts.get(1)));
+		assertEquals(0.0, t.get(hosts.get(2)));
+	}
+
+	public void testHighAddresses() {
+		PredictabilityTable t = newTable();
+		/* the last hosts first so that the address index must grow */
+		for (int i = NROF_HOSTS - 1; i >= 0; i -= 2) {
+			t.set(hosts.get(i), i / 100.0);
+		}
+		assertEquals(NROF_HOSTS / 2, t.size());
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			double expected = (i % 2 == 1) ? i / 100.0 : 0;
+			assertEquals(expected, t.get(hosts.get(i)));
+			assertEquals(expected, t.peek(hosts.get(i)));
+		}
+	}
+
+	public void testAging() {
+		PredictabilityTable t = newTable();
+		t.set(hosts.get(0), 0.5);
+		clock.setTime(2 * SECONDS_IN_UNIT);
+		assertEquals(0.5 * GAMMA * GAMMA, t.get(hosts.get(0)), 1e-12);
+	}
+
+	public void testPeekEqualsGet() {
+		PredictabilityTable t = newTable();
+		PredictabilityTable peeked = newTable();
+		for (int i = 0; i < 20; i++) {
+			t.set(hosts.get(i), 1.0 / (i + 3));
+			peeked.set(hosts.get(i), 1.0 / (i + 3));
+		}
+
+		double[] times = {0, 1, 17.3, 45, 45, 100.1, 1000, 1234.5};
+		for (double time : times) {
+			clock.setTime(time);
+			for (int i = 0; i < 25; i++) {
+				/* peek must not age; get ages -> compare the bits */
+				double p = peeked.peek(hosts.get(i));
+				assertEquals(Double.doubleToLongBits(t.peek(hosts.get(i))),
+						Double.doubleToLongBits(p));
+				assertEquals("time " + time + ", host " + i,
+						Double.doubleToLongBits(t.get(hosts.get(i))),
+						Double.doubleToLongBits(p));
+			}
+			/* the peeked table gets aged at the same times, too */
+			peeked.age();
+		}
+	}
+
+	public void testUpdateTransitiveSkipsSelf() {
+		DTNHost a = hosts.get(0);
+		DTNHost b = hosts.get(1);
+		DTNHost c = hosts.get(2);
+		PredictabilityTable ta = newTable();
+		PredictabilityTable tb = newTable();
+		ta.set(b, 0.8);
+		ta.set(c, 0.1);
+		tb.set(a, 0.9);
+		tb.set(c, 0.5);
+
+		ta.updateTransitive(a, 0.8, tb, BETA);
+		assertEquals(0.0, ta.get(a));
+		assertEquals(0.1 + 0.9 * 0.8 * 0.5 * BETA, ta.get(c), 1e-12);
+		assertEquals(0.8, ta.get(b));
+		assertEquals(2, ta.size());
+	}
+
+	public void testUpdateTransitiveMaxSkipsSelf() {
+		DTNHost a = hosts.get(0);
+		DTNHost b = hosts.get(1);
+		DTNHost c = hosts.get(2);
+		DTNHost d = hosts.get(40);
+		PredictabilityTable ta = newTable();
+		PredictabilityTable tb = newTable();
+		ta.set(b, 0.8);
+		ta.set(c, 0.5);
+		tb.set(a, 0.9);
+		tb.set(c, 0.5);
+		tb.set(d, 0.6);
+
+		ta.updateTransitiveMax(a, 0.8, tb, BETA);
+		assertEquals(0.0, ta.get(a));
+		assertEquals(0.5, ta.get(c)); // old value was bigger
+		assertEquals(0.8 * 0.6 * BETA, ta.get(d), 1e-12);
+		assertEquals(3, ta.size());
+	}
+}
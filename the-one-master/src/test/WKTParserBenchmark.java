@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.WKTParser;
+import input.WKTReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import core.Coord;
+
+/**
+ * Micro benchmark that compares parsing line strings with the
+ * {@link java.util.Scanner} based parsing of {@link WKTReader} and with
+ * {@link WKTParser}. Run with
+ * <CODE>java test.WKTParserBenchmark [lines] [rounds]</CODE>.
+ */
+public class WKTParserBenchmark {
+	private static final int POINTS_PER_LINE = 20;
+	private static final int WARMUP_ROUNDS = 3;
+
+	public static void main(String[] args) throws Exception {
+		int nrofLines = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		String data = createData(nrofLines, new Random(1));
+
+		double sink = 0;
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			sink += parseScanner(data);
+			sink += parseStreaming(data);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			sink += parseScanner(data);
+		}
+		long scannerTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			sink += parseStreaming(data);
+		}
+		long streamingTime = System.nanoTime() - start;
+
+		double megaBytes = data.length() * (double)rounds / (1024 * 1024);
+		long nrofPoints = (long)nrofLines * POINTS_PER_LINE * rounds;
+		System.out.println(String.format("scanner:   %.1f MB/s, %.0f ns/point",
+				megaBytes / (scannerTime / 1e9),
+				scannerTime / (double)nrofPoints));
+		System.out.println(String.format("streaming: %.1f MB/s, %.0f ns/point",
+				megaBytes / (streamingTime / 1e9),
+				streamingTime / (double)nrofPoints));
+		System.out.println("(checksum " + sink + ")");
+	}
+
+	private static double parseScanner(String data) throws IOException {
+		ScannerReader reader = new ScannerReader();
+		double sum = 0;
+		for (List<Coord> line : reader.readLines(new StringReader(data))) {
+			sum += line.get(0).getX();
+		}
+		return sum;
+	}
+
+	private static double parseStreaming(String data) throws IOException {
+		final double[] sum = {0};
+		new WKTParser(new StringReader(data)).parse(new WKTParser.Handler() {
+			@Override
+			public void lineString(double[] coords, int nrofPoints) {
+				sum[0] += coords[0];
+			}
+		});
+		return sum[0];
+	}
+
+	private static String createData(int nrofLines, Random rng) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < nrofLines; i++) {
+			sb.append("LINESTRING (");
+			for (int j = 0; j < POINTS_PER_LINE; j++) {
+				if (j > 0) {
+					sb.append(", ");
+				}
+				sb.append(2550000 + rng.nextDouble() * 5000).append(' ');
+				sb.append(6670000 + rng.nextDouble() * 5000);
+			}
+			sb.append(")\n\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Reads line strings the way {@link WKTReader} used to: the contents
+	 * of each line string are collected to a string that is parsed with
+	 * scanners
+	 */
+	private static class ScannerReader extends WKTReader {
+		public List<List<Coord>> readLines(Reader r) throws IOException {
+			List<List<Coord>> lines = new ArrayList<List<Coord>>();
+			String type;
+			init(r);
+			while ((type = nextType()) != null) {
+				if (type.equals(LINESTRING)) {
+					lines.add(parseLineString(readNestedContents()));
+				}
+				else {
+					readNestedContents();
+				}
+			}
+			return lines;
+		}
+	}
+}
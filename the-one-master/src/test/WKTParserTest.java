@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.WKTParser;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class WKTParserTest extends TestCase {
+	private List<double[]> points;
+	private List<double[]> lines;
+	private List<Integer> nrofMultiLines;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		points = new ArrayList<double[]>();
+		lines = new ArrayList<double[]>();
+		nrofMultiLines = new ArrayList<Integer>();
+	}
+
+	private void parse(String wkt) throws IOException {
+		new WKTParser(new StringReader(wkt)).parse(new WKTParser.Handler() {
+			@Override
+			public void point(double x, double y) {
+				points.add(new double[] {x, y});
+			}
+
+			@Override
+			public void lineString(double[] coords, int nrofPoints) {
+				lines.add(copy(coords, 0, nrofPoints));
+			}
+
+			@Override
+			public void multiLineString(double[] coords, int[] lineEnds,
+					int nrofLines) {
+				nrofMultiLines.add(nrofLines);
+				int start = 0;
+				for (int i = 0; i < nrofLines; i++) {
+					lines.add(copy(coords, start, lineEnds[i]));
+					start = lineEnds[i];
+				}
+			}
+		});
+	}
+
+	private double[] copy(double[] coords, int start, int end) {
+		double[] c = new double[(end - start) * 2];
+		System.arraycopy(coords, start * 2, c, 0, c.length);
+		return c;
+	}
+
+	public void testTypes() throws IOException {
+		parse("POINT (1.5 -2)\n" +
+				"LINESTRING (1 2, 3 4,5 6)\r\n" +
+				"POLYGON ((1 1, 2 2, 1 1))\n" +
+				"MULTILINESTRING ((1 1, 2 2), (3 3, 4 4, 5 5))\n" +
+				"LINESTRING(7 8, 9 10)");
+
+		assertEquals(1, points.size());
+		assertEquals(1.5, points.get(0)[0]);
+		assertEquals(-2.0, points.get(0)[1]);
+
+		assertEquals(4, lines.size());
+		assertEquals(6, lines.get(0).length);
+		assertEquals(5.0, lines.get(0)[4]);
+		assertEquals(4, lines.get(1).length);
+		assertEquals(6, lines.get(2).length);
+		assertEquals(5.0, lines.get(2)[5]);
+		assertEquals(8.0, lines.get(3)[1]);
+		assertEquals(1, nrofMultiLines.size());
+		assertEquals(2, (int)nrofMultiLines.get(0));
+	}
+
+	public void testExtraValues() throws IOException {
+		parse("LINESTRING (1 2 3, 4 5 6 7)\nPOINT (8 9 10)");
+		assertEquals(4, lines.get(0).length);
+		assertEquals(4.0, lines.get(0)[2]);
+		assertEquals(5.0, lines.get(0)[3]);
+		assertEquals(9.0, points.get(0)[1]);
+	}
+
+	public void testNumbers() throws IOException {
+		String[] values = {"0", "-0.0", "12", "1.", ".5", "-3.25",
+				"2552448.388211649", "6673384.4020657055", "1e3", "-1.5E-7",
+				"+4", "123456789012345678901234567890",
+				"0.00000000000000000000000001", "9007199254740993"};
+		StringBuilder wkt = new StringBuilder("LINESTRING (");
+		for (int i = 0; i < values.length; i++) {
+			wkt.append(i > 0 ? ", " : "").append(values[i]).append(" 0");
+		}
+		parse(wkt.append(")").toString());
+
+		double[] line = lines.get(0);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(values[i], Double.doubleToLongBits(
+					Double.parseDouble(values[i])),
+					Double.doubleToLongBits(line[2 * i]));
+		}
+	}
+
+	public void testRandomNumbers() throws IOException {
+		Random rng = new Random(7);
+		String[] values = new String[1000];
+		StringBuilder wkt = new StringBuilder("LINESTRING (");
+		for (int i = 0; i < values.length; i++) {
+			double v = (rng.nextDouble() - 0.5) * Math.pow(10, rng.nextInt(16));
+			values[i] = (i % 2 == 0 ? Double.toString(v) :
+				String.format(Locale.US, "%." + rng.nextInt(12) + "f", v));
+			wkt.append(i > 0 ? ", " : "").append(values[i]).append(" 1");
+		}
+		parse(wkt.append(")").toString());
+
+		double[] line = lines.get(0);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(values[i], Double.parseDouble(values[i]),
+					line[2 * i]);
+		}
+	}
+
+	public void testBadValues() {
+		try {
+			parse("POINT (1.0 x)");
+			fail("Bad coordinate value was accepted");
+		} catch (IOException e) {
+			// expected
+		}
+		try {
+			parse("LINESTRING (1.0 2.0, 3.0");
+			fail("Unfinished line string was accepted");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
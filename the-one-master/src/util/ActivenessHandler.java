@@ -109,6 +109,24 @@ public class ActivenessHandler {
 		return isActive(0);
 	}
 
+	/**
+	 * Returns true if the activeness is defined by active times (and
+	 * checking it changes the state of this handler)
+	 * @return true if active times are used
+	 */
+	public boolean hasActiveTimes() {
+		return this.activeTimes != null;
+	}
+
+	/**
+	 * Returns true if the node is always active, i.e., neither active times
+	 * nor active periods are defined
+	 * @return true if the activeness doesn't change with time
+	 */
+	public boolean isAlwaysActive() {
+		return this.activeTimes == null && this.activePeriods == null;
+	}
+
 	/**
 	 * Returns true if node should be active after/before offset amount of
 	 * time from now
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Sparse table of integer counters for ordered (a, b) pairs of
+ * non-negative integers (e.g., host addresses). Uses open addressing with
+ * linear probing on primitive arrays, so lookups and in-place updates
+ * don't allocate or box. Each pair has a fixed number of counter columns.
+ */
+public class PairCounterTable {
+	/** marks an unused slot (no valid pair maps to this key) */
+	private static final long EMPTY = -1L;
+	private static final int MIN_CAPACITY = 16;
+
+	private final int nrofColumns;
+	private long[] keys;
+	/** counters of the slots: slot i's columns start at i * nrofColumns */
+	private int[] counters;
+	private int size;
+	private int mask;
+
+	/**
+	 * Creates a new, empty table.
+	 * @param nrofColumns Number of counters per pair
+	 */
+	public PairCounterTable(int nrofColumns) {
+		this.nrofColumns = nrofColumns;
+		allocate(MIN_CAPACITY);
+	}
+
+	/**
+	 * Returns the value of a counter
+	 * @param a First value of the pair
+	 * @param b Second value of the pair
+	 * @param column Index of the counter
+	 * @return The value of the counter or 0 if the pair has no counters
+	 */
+	public int get(int a, int b, int column) {
+		int slot = find(key(a, b));
+		return slot < 0 ? 0 : counters[slot * nrofColumns + column];
+	}
+
+	/**
+	 * Returns true if the table has counters for the pair
+	 * @param a First value of the pair
+	 * @param b Second value of the pair
+	 * @return True if the pair has counters
+	 */
+	public boolean contains(int a, int b) {
+		return find(key(a, b)) >= 0;
+	}
+
+	/**
+	 * Increments a counter of a pair (by one). Counters of a new pair start
+	 * from zero.
+	 * @param a First value of the pair
+	 * @param b Second value of the pair
+	 * @param column Index of the counter
+	 * @return The new value of the counter
+	 */
+	public int increment(int a, int b, int column) {
+		long key = key(a, b);
+		int slot = find(key);
+		if (slot < 0) {
+			slot = insert(key);
+		}
+		return ++counters[slot * nrofColumns + column];
+	}
+
+	/**
+	 * Returns the number of pairs in the table
+	 * @return the number of pairs
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Removes all pairs from the table
+	 */
+	public void clear() {
+		allocate(MIN_CAPACITY);
+	}
+
+	private static long key(int a, int b) {
+		assert a >= 0 && b >= 0 : "Negative pair value";
+		return ((long)a << 32) | (b & 0xFFFFFFFFL);
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+
+	/** returns the slot of the key or -1 if the key is not in the table */
+	private int find(long key) {
+		for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return i;
+			}
+			if (keys[i] == EMPTY) {
+				return -1;
+			}
+		}
+	}
+
+	/** inserts a new key and returns its slot */
+	private int insert(long key) {
+		if ((size + 1) * 4 > keys.length * 3) { /* max load factor 0.75 */
+			rehash(keys.length * 2);
+		}
+		int i = hash(key) & mask;
+		while (keys[i] != EMPTY) {
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		size++;
+		return i;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldCounters = counters;
+		allocate(capacity);
+
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] == EMPTY) {
+				continue;
+			}
+			int slot = insert(oldKeys[j]);
+			System.arraycopy(oldCounters, j * nrofColumns, counters,
+					slot * nrofColumns, nrofColumns);
+		}
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		Arrays.fill(this.keys, EMPTY);
+		this.counters = new int[capacity * nrofColumns];
+		this.mask = capacity - 1;
+		this.size = 0;
+	}
+}